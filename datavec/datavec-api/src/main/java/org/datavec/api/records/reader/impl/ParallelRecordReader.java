@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.split.ByteRangeSplit;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.writable.Writable;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.function.Supplier;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ParallelRecordReader reads large line-oriented files (CSV, SVMLight, JSON lines, etc) concurrently, using multiple
+ * record readers in parallel.<br>
+ * Each file of the input split is divided into newline-aligned byte ranges ({@link ByteRangeSplit}), and each range is
+ * read by a separate record reader (created by the provided factory) on one of the reader threads.
+ * This allows a single large file to be parsed by multiple threads, which is not possible with a single record reader.
+ * <br>
+ * Two modes are supported:<br>
+ * - Ordered (default): records are returned in exactly the same order as for a single record reader<br>
+ * - Unordered: records are returned as soon as they have been read, in an arbitrary order. This can be faster when
+ * parsing time varies between ranges, but the order of the records is not deterministic.<br>
+ * <br>
+ * Notes:<br>
+ * - Header lines should be specified using the headerLines constructor argument, and NOT using the underlying record
+ * reader (such as {@code new CSVRecordReader(1)}), which would otherwise skip the first lines of every byte range.<br>
+ * - Only files with '\n' or "\r\n" line endings are supported, and records must not span multiple lines (for example,
+ * CSV with quoted values containing newlines is not supported)<br>
+ * - Only local files are supported<br>
+ * - Record metadata is not available: {@link #nextRecord()} returns records without metadata
+ */
+@Slf4j
+public class ParallelRecordReader extends BaseRecordReader {
+    public static final long DEFAULT_MIN_SPLIT_BYTES = 1024 * 1024;
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+    public static final int DEFAULT_SPLITS_PER_THREAD = 4;
+
+    //Marker for "no more records in this range". Compared by reference, so must not be used for anything else
+    private static final List<Writable> END = new ArrayList<>(0);
+
+    private final Supplier<RecordReader> readerFactory;
+    private final int numThreads;
+    private final boolean ordered;
+    private final int headerLines;
+    private final long minSplitBytes;
+    private final int queueSize;
+
+    private Configuration conf;
+    private transient List<ByteRangeSplit> splits;
+    private transient Run run;
+    private transient List<Writable> buffered;
+
+    /**
+     * Create an ordered ParallelRecordReader with no header lines
+     *
+     * @param readerFactory Factory for the underlying record readers - must return a new instance on every call
+     * @param numThreads    Number of reader threads
+     */
+    public ParallelRecordReader(@NonNull Supplier<RecordReader> readerFactory, int numThreads) {
+        this(readerFactory, numThreads, true, 0);
+    }
+
+    /**
+     * @param readerFactory Factory for the underlying record readers - must return a new instance on every call
+     * @param numThreads    Number of reader threads
+     * @param ordered       If true: return records in the same order as a single record reader would. If false: return
+     *                      records in the order they are read by the reader threads
+     * @param headerLines   Number of header lines to skip at the start of each file
+     */
+    public ParallelRecordReader(@NonNull Supplier<RecordReader> readerFactory, int numThreads, boolean ordered, int headerLines) {
+        this(readerFactory, numThreads, ordered, headerLines, DEFAULT_MIN_SPLIT_BYTES, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param readerFactory Factory for the underlying record readers - must return a new instance on every call
+     * @param numThreads    Number of reader threads
+     * @param ordered       If true: return records in the same order as a single record reader would. If false: return
+     *                      records in the order they are read by the reader threads
+     * @param headerLines   Number of header lines to skip at the start of each file
+     * @param minSplitBytes Minimum size of each byte range. Files are split into approximately
+     *                      {@code numThreads * 4} ranges in total, but ranges are never smaller than this
+     * @param queueSize     Maximum number of records buffered per range (ordered mode) or in total (unordered mode)
+     */
+    public ParallelRecordReader(@NonNull Supplier<RecordReader> readerFactory, int numThreads, boolean ordered,
+                                int headerLines, long minSplitBytes, int queueSize) {
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        Preconditions.checkArgument(headerLines >= 0, "Number of header lines must be non-negative, got %s", headerLines);
+        Preconditions.checkArgument(minSplitBytes > 0, "Minimum split size must be positive, got %s", minSplitBytes);
+        Preconditions.checkArgument(queueSize > 0, "Queue size must be positive, got %s", queueSize);
+        this.readerFactory = readerFactory;
+        this.numThreads = numThreads;
+        this.ordered = ordered;
+        this.headerLines = headerLines;
+        this.minSplitBytes = minSplitBytes;
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        List<File> files = new ArrayList<>();
+        long totalBytes = 0;
+        Iterator<URI> iter = split.locationsIterator();
+        while (iter.hasNext()) {
+            URI uri = iter.next();
+            if (!"file".equalsIgnoreCase(uri.getScheme())) {
+                throw new IllegalArgumentException("ParallelRecordReader only supports local files, got URI: " + uri);
+            }
+            File f = new File(uri);
+            files.add(f);
+            totalBytes += f.length();
+        }
+
+        long splitBytes = Math.max(minSplitBytes, totalBytes / ((long) numThreads * DEFAULT_SPLITS_PER_THREAD) + 1);
+        splits = new ArrayList<>();
+        for (File f : files) {
+            splits.addAll(ByteRangeSplit.splitBySize(f, splitBytes, headerLines));
+        }
+        log.debug("Reading {} files ({} bytes) as {} byte ranges using {} threads", files.size(), totalBytes,
+                splits.size(), numThreads);
+        start();
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        initialize(split);
+    }
+
+    private void start() {
+        stop();
+        run = new Run();
+        buffered = null;
+    }
+
+    private void stop() {
+        if (run != null) {
+            run.executor.shutdownNow();
+            run = null;
+        }
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element");
+        }
+        List<Writable> ret = buffered;
+        buffered = null;
+        invokeListeners(ret);
+        return ret;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(run != null, "Record reader has not been initialized");
+        if (buffered == null) {
+            buffered = run.fetch();
+        }
+        return buffered != null;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        Preconditions.checkState(splits != null, "Record reader has not been initialized");
+        start();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        return readerFactory.get().record(uri, dataInputStream);
+    }
+
+    @Override
+    public Record nextRecord() {
+        return new org.datavec.api.records.impl.Record(next(), null);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        throw new UnsupportedOperationException("Loading from metadata is not supported by ParallelRecordReader");
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        throw new UnsupportedOperationException("Loading from metadata is not supported by ParallelRecordReader");
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    /**
+     * State for one pass over the data: the reader threads, and the queues they write records to.
+     * In ordered mode, each range has its own queue, and the queues are consumed in order. As the ranges are submitted
+     * to the (FIFO) executor in order, the range currently being consumed is always being read (or has been read), so
+     * a reader blocked on a full queue can never prevent the consumer from making progress.
+     */
+    private class Run {
+        private final ExecutorService executor;
+        private final List<BlockingQueue<List<Writable>>> queues = new ArrayList<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private int current;        //Ordered mode: index of the range currently being consumed
+        private int remaining;      //Unordered mode: number of ranges not yet fully consumed
+
+        private Run() {
+            executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ParallelRecordReader-" + count.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+            if (ordered) {
+                for (int i = 0; i < splits.size(); i++) {
+                    queues.add(new LinkedBlockingQueue<List<Writable>>(queueSize));
+                }
+            } else {
+                queues.add(new LinkedBlockingQueue<List<Writable>>(queueSize));
+                remaining = splits.size();
+            }
+
+            for (int i = 0; i < splits.size(); i++) {
+                final ByteRangeSplit split = splits.get(i);
+                final BlockingQueue<List<Writable>> queue = queues.get(ordered ? i : 0);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        read(split, queue);
+                    }
+                });
+            }
+            executor.shutdown();
+        }
+
+        private void read(ByteRangeSplit split, BlockingQueue<List<Writable>> queue) {
+            try {
+                RecordReader rr = readerFactory.get();
+                try {
+                    if (conf != null) {
+                        rr.initialize(conf, split);
+                    } else {
+                        rr.initialize(split);
+                    }
+                    while (rr.hasNext()) {
+                        queue.put(rr.next());
+                    }
+                } finally {
+                    rr.close();
+                }
+            } catch (InterruptedException e) {
+                //Stopped by reset() or close()
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                error.compareAndSet(null, new RuntimeException("Error reading " + split, t));
+            }
+
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private List<Writable> fetch() {
+            while (true) {
+                BlockingQueue<List<Writable>> queue;
+                if (ordered) {
+                    if (current >= queues.size()) {
+                        return null;
+                    }
+                    queue = queues.get(current);
+                } else {
+                    if (remaining == 0) {
+                        return null;
+                    }
+                    queue = queues.get(0);
+                }
+
+                List<Writable> l;
+                try {
+                    l = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for records", e);
+                }
+
+                if (l == END) {
+                    Throwable t = error.get();
+                    if (t != null) {
+                        throw (RuntimeException) t;
+                    }
+                    if (ordered) {
+                        //Release the queue of the finished range
+                        queues.set(current++, null);
+                    } else {
+                        remaining--;
+                    }
+                    continue;
+                }
+                return l;
+            }
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.Getter;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataLine;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.InputStreamInputSplit;
+import org.datavec.api.split.StringSplit;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.FloatWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A fast record reader for CSV files that contain only numeric values.<br>
+ * Unlike {@link CSVRecordReader}, no String, Text or other per-value objects are created when reading batches:
+ * bytes are parsed directly from a reusable buffer into a reusable column-major primitive buffer, from which
+ * a single [numExamples, numColumns] array is created per batch.<br>
+ * {@link #next(int)} returns an {@link NDArrayRecordBatch} with one [numExamples, 1] column array (a view of the
+ * batch array) per CSV column, for use with RecordReaderDataSetIterator and RecordReaderMultiDataSetIterator
+ * (label and feature column indices, and one-hot labels, work as for CSVRecordReader).<br>
+ * Quote characters are ignored, and empty lines are skipped. All lines must have the same number of columns.
+ * Values are parsed as in {@link Double#parseDouble(String)}.
+ */
+public class NumericCSVRecordReader extends BaseRecordReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    //Doubles up to 2^53 and powers of 10 up to 10^22 are exactly representable, hence m * 10^e and m / 10^e are
+    // correctly rounded for these values
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+    }
+
+    protected int skipNumLines;
+    protected char delimiter;
+    protected char quote;
+    @Getter
+    protected DataType dataType;
+
+    protected Configuration conf;
+    protected URI[] locations;
+    protected int splitIndex;
+    protected int lineIndex;            //Line index within the current location (including skipped lines)
+    protected boolean initialized;
+
+    private InputStream stream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+
+    private int numColumns = -1;
+    private double[] lineValues = new double[16];
+    private char[] scratch = new char[32];
+    private double[] columnBufferDouble;
+    private float[] columnBufferFloat;
+
+    public NumericCSVRecordReader() {
+        this(0, CSVRecordReader.DEFAULT_DELIMITER);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file (header lines)
+     * @param delimiter    Delimiter character
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter) {
+        this(skipNumLines, delimiter, CSVRecordReader.DEFAULT_QUOTE, DataType.FLOAT);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file (header lines)
+     * @param delimiter    Delimiter character
+     * @param quote        Quote character. Quote characters are ignored
+     * @param dataType     Data type for the arrays returned by {@link #next(int)}: FLOAT or DOUBLE
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter, char quote, DataType dataType) {
+        Preconditions.checkArgument(dataType == DataType.FLOAT || dataType == DataType.DOUBLE,
+                "Data type must be FLOAT or DOUBLE, got %s", dataType);
+        Preconditions.checkArgument(delimiter != '\n' && delimiter != '\r' && delimiter != quote,
+                "Invalid delimiter character: %s", delimiter);
+        this.skipNumLines = skipNumLines;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.dataType = dataType;
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        if (!(split instanceof StringSplit || split instanceof InputStreamInputSplit)) {
+            List<URI> uris = new ArrayList<>();
+            Iterator<URI> iter = split.locationsIterator();
+            while (iter.hasNext()) {
+                uris.add(iter.next());
+            }
+            this.locations = uris.toArray(new URI[0]);
+        }
+        this.splitIndex = 0;
+        openLocation(0);
+        this.initialized = true;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        this.skipNumLines = conf.getInt(CSVRecordReader.SKIP_NUM_LINES, this.skipNumLines);
+        this.delimiter = conf.getChar(CSVRecordReader.DELIMITER, this.delimiter);
+        this.quote = conf.getChar(CSVRecordReader.QUOTE, this.quote);
+        initialize(split);
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(initialized, "RecordReader has not been initialized before use");
+        return skipEmptyLines();
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        Preconditions.checkArgument(num > 0, "Number of examples must be positive, got %s", num);
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element found!");
+        }
+
+        int n = 0;
+        boolean isDouble = dataType == DataType.DOUBLE;
+        while (n < num && hasNext()) {
+            parseLine();
+            if (n == 0 && !hasBatchBuffer(num)) {
+                if (isDouble) {
+                    columnBufferDouble = new double[num * numColumns];
+                } else {
+                    columnBufferFloat = new float[num * numColumns];
+                }
+            }
+            //Column-major: value (example i, column j) is at j * num + i
+            for (int j = 0, idx = n; j < numColumns; j++, idx += num) {
+                if (isDouble) {
+                    columnBufferDouble[idx] = lineValues[j];
+                } else {
+                    columnBufferFloat[idx] = (float) lineValues[j];
+                }
+            }
+            n++;
+        }
+
+        long[] shape = {n, numColumns};
+        INDArray arr;
+        if (isDouble) {
+            arr = Nd4j.create(n == num ? columnBufferDouble : compact(columnBufferDouble, num, n), shape, 'f');
+        } else {
+            arr = Nd4j.create(n == num ? columnBufferFloat : compact(columnBufferFloat, num, n), shape, 'f');
+        }
+
+        List<INDArray> columns = new ArrayList<>(numColumns);
+        for (int j = 0; j < numColumns; j++) {
+            columns.add(arr.get(NDArrayIndex.all(), NDArrayIndex.interval(j, j, true)));
+        }
+        return new NDArrayRecordBatch(columns);
+    }
+
+    private boolean hasBatchBuffer(int num) {
+        int length = num * numColumns;
+        if (dataType == DataType.DOUBLE) {
+            return columnBufferDouble != null && columnBufferDouble.length == length;
+        }
+        return columnBufferFloat != null && columnBufferFloat.length == length;
+    }
+
+    /**
+     * Copy the first n values of each column (stored with stride num) to a new array of length n * numColumns
+     */
+    private double[] compact(double[] buffer, int num, int n) {
+        double[] out = new double[n * numColumns];
+        for (int j = 0; j < numColumns; j++) {
+            System.arraycopy(buffer, j * num, out, j * n, n);
+        }
+        return out;
+    }
+
+    private float[] compact(float[] buffer, int num, int n) {
+        float[] out = new float[n * numColumns];
+        for (int j = 0; j < numColumns; j++) {
+            System.arraycopy(buffer, j * num, out, j * n, n);
+        }
+        return out;
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element found!");
+        }
+        parseLine();
+        List<Writable> ret = new ArrayList<>(numColumns);
+        for (int j = 0; j < numColumns; j++) {
+            ret.add(dataType == DataType.DOUBLE ? new DoubleWritable(lineValues[j]) : new FloatWritable((float) lineValues[j]));
+        }
+        invokeListeners(ret);
+        return ret;
+    }
+
+    @Override
+    public Record nextRecord() {
+        List<Writable> next = next();
+        URI uri = (locations == null || locations.length < 1 ? null : locations[splitIndex]);
+        RecordMetaData meta = new RecordMetaDataLine(this.lineIndex - 1, uri, NumericCSVRecordReader.class); //-1 as line number has been incremented already...
+        return new org.datavec.api.records.impl.Record(next, meta);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        //Not a performance sensitive code path: use the standard CSV reader, then convert
+        List<Record> list = new CSVRecordReader(skipNumLines, delimiter, quote).loadFromMetaData(recordMetaDatas);
+        for (Record r : list) {
+            List<Writable> converted = new ArrayList<>(r.getRecord().size());
+            for (Writable w : r.getRecord()) {
+                double d = Double.parseDouble(stripQuotes(w.toString()));
+                converted.add(dataType == DataType.DOUBLE ? new DoubleWritable(d) : new FloatWritable((float) d));
+            }
+            r.setRecord(converted);
+        }
+        return list;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        invokeListeners(uri);
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(skipNumLines, delimiter, quote, dataType);
+        rr.stream = dataInputStream;
+        rr.initialized = true;
+        rr.skipLines();
+        return rr.next();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        if (inputSplit == null)
+            throw new UnsupportedOperationException("Cannot reset without first initializing");
+        try {
+            inputSplit.reset();
+            close();
+            initialize(inputSplit);
+        } catch (Exception e) {
+            throw new RuntimeException("Error during NumericCSVRecordReader reset", e);
+        }
+    }
+
+    @Override
+    public boolean resetSupported() {
+        if (inputSplit != null) {
+            return inputSplit.resetSupported();
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    private void openLocation(int idx) throws IOException {
+        close();
+        bufferPos = 0;
+        bufferLimit = 0;
+        lineIndex = 0;
+        if (inputSplit instanceof StringSplit) {
+            stream = new ByteArrayInputStream(((StringSplit) inputSplit).getData().getBytes(StandardCharsets.UTF_8));
+        } else if (inputSplit instanceof InputStreamInputSplit) {
+            stream = ((InputStreamInputSplit) inputSplit).getIs();
+        } else if (locations.length > 0) {
+            stream = streamCreatorFn.apply(locations[idx]);
+        }
+        if (stream != null) {
+            skipLines();
+        }
+    }
+
+    private void skipLines() {
+        for (int i = 0; i < skipNumLines && peek() >= 0; i++) {
+            int b;
+            while ((b = peek()) >= 0 && b != '\n' && b != '\r') {
+                bufferPos++;
+            }
+            consumeNewLine();
+        }
+    }
+
+    /**
+     * Skip empty lines, opening the next location if required
+     *
+     * @return True if the next byte is the start of a (non-empty) line
+     */
+    private boolean skipEmptyLines() {
+        while (true) {
+            int b = peek();
+            if (b == '\n' || b == '\r') {
+                consumeNewLine();
+            } else if (b >= 0) {
+                return true;
+            } else if (locations != null && splitIndex < locations.length - 1) {
+                splitIndex++;
+                try {
+                    openLocation(splitIndex);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error opening location " + locations[splitIndex], e);
+                }
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private int peek() {
+        if (bufferPos < bufferLimit) {
+            return buffer[bufferPos] & 0xFF;
+        }
+        if (stream == null) {
+            return -1;
+        }
+        try {
+            int read;
+            do {
+                read = stream.read(buffer, 0, buffer.length);
+            } while (read == 0);
+            if (read < 0) {
+                return -1;
+            }
+            bufferPos = 0;
+            bufferLimit = read;
+            return buffer[0] & 0xFF;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading CSV data", e);
+        }
+    }
+
+    private void consumeNewLine() {
+        if (peek() == '\r') {
+            bufferPos++;
+        }
+        if (peek() == '\n') {
+            bufferPos++;
+        }
+        lineIndex++;
+    }
+
+    /**
+     * Parse the values of the next line into lineValues. The line must not be empty
+     */
+    private void parseLine() {
+        int col = 0;
+        while (true) {
+            if (col == lineValues.length) {
+                lineValues = Arrays.copyOf(lineValues, 2 * col);
+            }
+            lineValues[col] = parseValue(col);
+            col++;
+            int b = peek();
+            if (b == delimiter) {
+                bufferPos++;
+            } else {
+                //End of line or end of stream
+                consumeNewLine();
+                break;
+            }
+        }
+
+        if (numColumns < 0) {
+            numColumns = col;
+        } else if (col != numColumns) {
+            throw new IllegalStateException("Invalid CSV line " + lineIndex + location() + ": expected " + numColumns
+                    + " values, got " + col);
+        }
+    }
+
+    /**
+     * Parse a single value, up to (but not including) the next delimiter, new line or end of stream
+     */
+    private double parseValue(int column) {
+        int len = 0;
+        boolean negative = false;
+        boolean exact = true;
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;       //Decimal exponent, adjusted for fraction digits
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+
+        int b;
+        while ((b = peek()) >= 0 && b != delimiter && b != '\n' && b != '\r') {
+            bufferPos++;
+            if (b == quote || b == ' ' || b == '\t') {
+                continue;
+            }
+            if (len == scratch.length) {
+                scratch = Arrays.copyOf(scratch, 2 * len);
+            }
+            scratch[len++] = (char) b;
+
+            if (!exact) {
+                continue;
+            }
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    //Leading zeros: not significant
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else if (numDigits < 18) {
+                    mantissa = 10 * mantissa + (b - '0');
+                    numDigits++;
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else {
+                    exact = false;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if ((b == '-' || b == '+') && len == 1) {
+                negative = b == '-';
+            } else {
+                //Exponent, NaN, Infinity, etc: use slow path
+                exact = false;
+            }
+        }
+
+        if (len == 0) {
+            throw new NumberFormatException("Empty value in column " + column + " of CSV line " + lineIndex + location());
+        }
+        if (exact && seenDigit && mantissa <= MAX_EXACT_MANTISSA && -exponent < POW10.length) {
+            double d = exponent == 0 ? mantissa : mantissa / POW10[-exponent];
+            return negative ? -d : d;
+        }
+        try {
+            return Double.parseDouble(new String(scratch, 0, len));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid value \"" + new String(scratch, 0, len) + "\" in column " + column
+                    + " of CSV line " + lineIndex + location());
+        }
+    }
+
+    private String location() {
+        if (locations == null || locations.length == 0) {
+            return "";
+        }
+        return " of " + locations[splitIndex];
+    }
+
+    private String stripQuotes(String s) {
+        return s.replace(String.valueOf(quote), "").trim();
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.split;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.split.streams.ByteRangeInputStream;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.function.Function;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An InputSplit for a newline-aligned byte range of a single file, for line-oriented formats such as CSV, SVMLight
+ * or JSON lines: see {@link ByteRangeInputStream} for the exact semantics.<br>
+ * As this is a {@link StreamInputSplit}, any record reader that opens its locations through the split's stream creator
+ * function (LineRecordReader, CSVRecordReader, SVMLightRecordReader, JacksonLineRecordReader, NumericCSVRecordReader,
+ * etc) can be used to read only the lines of the range. This allows a single large file to be read concurrently by
+ * multiple record readers: see {@link #split(File, int, int)} and
+ * {@link org.datavec.api.records.reader.impl.ParallelRecordReader}.<br>
+ * Note that header lines should be excluded using the headerLines argument of {@link #split(File, int, int)} and
+ * {@link #splitBySize(File, long, int)} (the first range then starts after the header) rather than by the record reader,
+ * which would otherwise skip lines at the start of every range.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+public class ByteRangeSplit extends StreamInputSplit {
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private final int skipLines;
+
+    /**
+     * @param file      File to read
+     * @param start     First byte of the range (inclusive)
+     * @param end       Last byte of the range (exclusive)
+     * @param skipLines Number of lines to skip at the start of the range
+     */
+    public ByteRangeSplit(@NonNull File file, long start, long end, int skipLines) {
+        super(Collections.singletonList(file.toURI()), new ByteRangeStreamCreator(start, end, skipLines));
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.skipLines = skipLines;
+    }
+
+    /**
+     * Split the file into (up to) the specified number of ranges of approximately equal size
+     *
+     * @param file        File to split
+     * @param numSplits   Number of splits
+     * @param headerLines Number of header lines at the start of the file, excluded from all splits
+     */
+    public static List<ByteRangeSplit> split(@NonNull File file, int numSplits, int headerLines) {
+        Preconditions.checkArgument(numSplits > 0, "Number of splits must be positive, got %s", numSplits);
+        return splitBySize(file, Math.max(1, (file.length() + numSplits - 1) / numSplits), headerLines);
+    }
+
+    /**
+     * Split the file into ranges of the specified size (except the last range, which may be smaller)
+     *
+     * @param file        File to split
+     * @param splitBytes  Size of each range, in bytes
+     * @param headerLines Number of header lines at the start of the file, excluded from all splits
+     */
+    public static List<ByteRangeSplit> splitBySize(@NonNull File file, long splitBytes, int headerLines) {
+        Preconditions.checkArgument(splitBytes > 0, "Split size must be positive, got %s", splitBytes);
+        Preconditions.checkArgument(headerLines >= 0, "Number of header lines must be non-negative, got %s", headerLines);
+        Preconditions.checkArgument(file.isFile(), "File does not exist or is a directory: %s", file);
+        long length = file.length();
+        List<ByteRangeSplit> out = new ArrayList<>();
+        //The first range starts after the header: skipping the header lines within the first range only would leak
+        // header lines into later ranges when the header is longer than the first range
+        long start = headerEnd(file, headerLines);
+        do {
+            long end = Math.min(length, start + splitBytes);
+            out.add(new ByteRangeSplit(file, start, end, 0));
+            start = end;
+        } while (start < length);
+        return out;
+    }
+
+    /**
+     * @return Byte offset of the first line after the specified number of header lines (or the file length, if the
+     * file has fewer lines)
+     */
+    private static long headerEnd(File file, int headerLines) {
+        if (headerLines == 0)
+            return 0;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            long pos = 0;
+            int lines = 0;
+            int b;
+            while (lines < headerLines && (b = is.read()) != -1) {
+                pos++;
+                if (b == '\n')
+                    lines++;
+            }
+            return pos;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading header lines of file: " + file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRangeSplit(file=" + file + ", start=" + start + ", end=" + end + ", skipLines=" + skipLines + ")";
+    }
+
+    private static class ByteRangeStreamCreator implements Function<URI, InputStream>, Serializable {
+        private final long start;
+        private final long end;
+        private final int skipLines;
+
+        private ByteRangeStreamCreator(long start, long end, int skipLines) {
+            this.start = start;
+            this.end = end;
+            this.skipLines = skipLines;
+        }
+
+        @Override
+        public InputStream apply(URI uri) {
+            try {
+                return new ByteRangeInputStream(new File(uri), start, end, skipLines);
+            } catch (IOException e) {
+                throw new RuntimeException("Error opening byte range [" + start + ", " + end + ") of file: " + uri, e);
+            }
+        }
+    }
+}
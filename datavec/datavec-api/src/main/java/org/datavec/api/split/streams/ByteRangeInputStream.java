@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.split.streams;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * An input stream over the lines of a file that start within the byte range [start, end).<br>
+ * If start is not at the beginning of a line, the stream begins at the start of the next line; the last line starting
+ * before end is returned in full, even if it extends past end. Consequently, splitting a file into adjacent byte ranges
+ * and reading each range with this stream returns every line of the file exactly once.<br>
+ * Lines must be terminated by '\n' (or "\r\n").
+ */
+public class ByteRangeInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @Getter
+    private final long start;
+    @Getter
+    private final long end;
+    private final RandomAccessFile file;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+    private long position;          //File offset of buffer[bufferPos]
+    private boolean atLineStart = true;
+    private boolean done;
+
+    /**
+     * @param f     File to read
+     * @param start First byte (inclusive) of the range
+     * @param end   Last byte (exclusive) of the range
+     */
+    public ByteRangeInputStream(@NonNull File f, long start, long end) throws IOException {
+        this(f, start, end, 0);
+    }
+
+    /**
+     * @param f         File to read
+     * @param start     First byte (inclusive) of the range
+     * @param end       Last byte (exclusive) of the range
+     * @param skipLines Number of lines to skip at the start of the range (for example, header lines for the first range
+     *                  of a file)
+     */
+    public ByteRangeInputStream(@NonNull File f, long start, long end, int skipLines) throws IOException {
+        Preconditions.checkArgument(start >= 0 && start <= end, "Invalid byte range: start=%s, end=%s", start, end);
+        this.start = start;
+        this.end = end;
+        this.file = new RandomAccessFile(f, "r");
+        if (start > 0) {
+            //Begin at the first line starting at or after start: i.e., after the first '\n' at or after start-1
+            seek(start - 1);
+            skipLine();
+        }
+        for (int i = 0; i < skipLines && !done; i++) {
+            skipLine();
+        }
+    }
+
+    private void seek(long pos) throws IOException {
+        file.seek(pos);
+        position = pos;
+        bufferPos = 0;
+        bufferLimit = 0;
+    }
+
+    private boolean fill() throws IOException {
+        if (bufferPos < bufferLimit) {
+            return true;
+        }
+        int read = file.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            done = true;
+            return false;
+        }
+        bufferPos = 0;
+        bufferLimit = read;
+        return true;
+    }
+
+    private void skipLine() throws IOException {
+        while (fill()) {
+            byte b = buffer[bufferPos++];
+            position++;
+            if (b == '\n') {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (done || (atLineStart && position >= end) || !fill()) {
+            done = true;
+            return -1;
+        }
+        byte b = buffer[bufferPos++];
+        position++;
+        atLineStart = b == '\n';
+        return b & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            if (done || (atLineStart && position >= end) || !fill()) {
+                done = true;
+                break;
+            }
+            //Copy up to the end of the buffer, or up to the first line end once the end of the range has been reached
+            int n = Math.min(len - count, bufferLimit - bufferPos);
+            if (position + n >= end) {
+                //Search for the end of the line containing byte end-1 (or the current line, if already past it)
+                int i = (int) Math.max(0, end - 1 - position);
+                while (i < n && buffer[bufferPos + i] != '\n') {
+                    i++;
+                }
+                n = Math.min(n, i + 1);
+            }
+            System.arraycopy(buffer, bufferPos, b, off + count, n);
+            bufferPos += n;
+            position += n;
+            count += n;
+            atLineStart = buffer[bufferPos - 1] == '\n';
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        file.close();
+    }
+}
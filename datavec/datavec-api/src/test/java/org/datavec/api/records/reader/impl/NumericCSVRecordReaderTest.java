@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.NumericCSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.StringSplit;
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.common.io.ClassPathResource;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NumericCSVRecordReaderTest extends BaseND4JTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testSameValuesAsCSVRecordReader() throws Exception {
+        File f = new ClassPathResource("datavec-api/iris.dat").getFile();
+        CSVRecordReader csv = new CSVRecordReader();
+        csv.initialize(new FileSplit(f));
+        NumericCSVRecordReader numeric = new NumericCSVRecordReader(0, ',', '"', DataType.DOUBLE);
+        numeric.initialize(new FileSplit(f));
+
+        int count = 0;
+        while (csv.hasNext()) {
+            assertTrue(numeric.hasNext());
+            List<Writable> exp = csv.next();
+            List<Writable> act = numeric.next();
+            assertEquals(exp.size(), act.size());
+            for (int i = 0; i < exp.size(); i++) {
+                assertEquals(exp.get(i).toDouble(), act.get(i).toDouble(), 0.0);
+            }
+            count++;
+        }
+        assertFalse(numeric.hasNext());
+        assertEquals(150, count);
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        File f = new ClassPathResource("datavec-api/iris.dat").getFile();
+        List<List<Writable>> all = new ArrayList<>();
+        CSVRecordReader csv = new CSVRecordReader();
+        csv.initialize(new FileSplit(f));
+        while (csv.hasNext()) {
+            all.add(csv.next());
+        }
+
+        for (DataType dt : new DataType[]{DataType.FLOAT, DataType.DOUBLE}) {
+            NumericCSVRecordReader rr = new NumericCSVRecordReader(0, ',', '"', dt);
+            rr.initialize(new FileSplit(f));
+            assertTrue(rr.batchesSupported());
+
+            for (int reset = 0; reset < 2; reset++) {
+                int row = 0;
+                while (rr.hasNext()) {
+                    List<List<Writable>> batch = rr.next(32);
+                    assertTrue(batch instanceof NDArrayRecordBatch);
+                    List<INDArray> columns = ((NDArrayRecordBatch) batch).getArrays();
+                    assertEquals(5, columns.size());
+                    int n = (int) columns.get(0).size(0);
+                    assertEquals(row + 32 <= 150 ? 32 : 150 - row, n);
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < 5; j++) {
+                            INDArray col = columns.get(j);
+                            assertEquals(dt, col.dataType());
+                            assertArrayEquals(new long[]{n, 1}, col.shape());
+                            double exp = all.get(row + i).get(j).toDouble();
+                            assertEquals(dt == DataType.FLOAT ? (float) exp : exp, col.getDouble(i, 0), 0.0);
+                        }
+                    }
+                    //List<Writable> view of the batch
+                    assertEquals(all.get(row).get(0).toDouble(),
+                            ((NDArrayWritable) batch.get(0).get(0)).get().getDouble(0), 1e-6);
+                    row += n;
+                }
+                assertEquals(150, row);
+                rr.reset();
+            }
+        }
+    }
+
+    @Test
+    public void testParsing() throws Exception {
+        String[] values = {"0", "-0", "1", "-1.5", "+2.25", "0.001", "123456789.123456789", "1e3", "-2.5E-3", "NaN",
+                "Infinity", "12345678901234567890", "0.1", "3.", ".5", "1.7976931348623157E308", "4.9E-324"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(values[i]);
+        }
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(0, ',', '"', DataType.DOUBLE);
+        rr.initialize(new StringSplit(sb.toString()));
+        List<Writable> l = rr.next();
+        assertEquals(values.length, l.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], Double.doubleToLongBits(Double.parseDouble(values[i])), Double.doubleToLongBits(l.get(i).toDouble()));
+        }
+        assertFalse(rr.hasNext());
+
+        //Quotes, whitespace, CRLF line endings, empty lines and a missing final new line
+        rr = new NumericCSVRecordReader(0, ';', '"', DataType.DOUBLE);
+        rr.initialize(new StringSplit("\"1.5\"; 2 ;3\r\n\r\n4;\"5\";6\n\n7;8;9"));
+        List<List<Writable>> batch = rr.next(10);
+        assertEquals(3, batch.size());
+        assertEquals(4.0, ((NDArrayWritable) batch.get(1).get(0)).get().getDouble(0), 0.0);
+        assertEquals(1.5, ((NDArrayRecordBatch) batch).getArrays().get(0).getDouble(0), 0.0);
+        assertEquals(8.0, ((NDArrayRecordBatch) batch).getArrays().get(1).getDouble(2), 0.0);
+        assertFalse(rr.hasNext());
+    }
+
+    @Test
+    public void testInvalidInput() throws Exception {
+        NumericCSVRecordReader rr = new NumericCSVRecordReader();
+        rr.initialize(new StringSplit("1,2,3\n4,5\n"));
+        rr.next();
+        try {
+            rr.next();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("expected 3 values, got 2"));
+        }
+
+        rr = new NumericCSVRecordReader();
+        rr.initialize(new StringSplit("1,abc,3"));
+        try {
+            rr.next();
+            fail("Expected exception");
+        } catch (NumberFormatException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("abc"));
+        }
+    }
+
+    @Test
+    public void testMultipleFilesSkipLinesAndMetaData() throws Exception {
+        File dir = testDir.newFolder();
+        for (int i = 0; i < 3; i++) {
+            StringBuilder sb = new StringBuilder("a,b\n");
+            for (int j = 0; j < 5; j++) {
+                sb.append(10 * i + j).append(",").append(-(10 * i + j)).append("\n");
+            }
+            FileUtils.writeStringToFile(new File(dir, "file_" + i + ".csv"), sb.toString(), StandardCharsets.UTF_8);
+        }
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(1, ',');
+        rr.initialize(new FileSplit(dir, new String[]{"csv"}));
+        List<Record> records = new ArrayList<>();
+        List<RecordMetaData> meta = new ArrayList<>();
+        double sum = 0;
+        while (rr.hasNext()) {
+            Record r = rr.nextRecord();
+            records.add(r);
+            meta.add(r.getMetaData());
+            sum += r.getRecord().get(0).toDouble() + r.getRecord().get(1).toDouble();
+        }
+        assertEquals(15, records.size());
+        assertEquals(0.0, sum, 0.0);
+
+        List<Record> loaded = rr.loadFromMetaData(meta);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getRecord(), loaded.get(i).getRecord());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.ByteRangeSplit;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.writable.Writable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.common.tests.BaseND4JTest;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelRecordReaderTest extends BaseND4JTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testByteRangeSplits() throws Exception {
+        //Lines of varying length, including empty lines, "\r\n" line endings and no newline at the end of the file
+        List<String> lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        Random r = new Random(12345);
+        for (int i = 0; i < 200; i++) {
+            String line = (i % 37 == 5 ? "" : i + "," + r.nextInt(1 + i * 100));
+            lines.add(line);
+            sb.append(line);
+            if (i < 199) {
+                sb.append(i % 3 == 0 ? "\r\n" : "\n");
+            }
+        }
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+
+        for (long splitBytes : new long[]{1, 2, 3, 5, 7, 13, 64, 100, 1000, f.length(), f.length() + 1}) {
+            List<String> actual = new ArrayList<>();
+            for (ByteRangeSplit split : ByteRangeSplit.splitBySize(f, splitBytes, 0)) {
+                LineRecordReader rr = new LineRecordReader();
+                rr.initialize(split);
+                while (rr.hasNext()) {
+                    actual.add(rr.next().get(0).toString());
+                }
+            }
+            assertEquals("Split size: " + splitBytes, lines, actual);
+        }
+
+        //Header lines should be excluded from all splits
+        for (int numSplits : new int[]{1, 3, 10}) {
+            List<String> actual = new ArrayList<>();
+            for (ByteRangeSplit split : ByteRangeSplit.split(f, numSplits, 2)) {
+                LineRecordReader rr = new LineRecordReader();
+                rr.initialize(split);
+                while (rr.hasNext()) {
+                    actual.add(rr.next().get(0).toString());
+                }
+            }
+            assertEquals(lines.subList(2, lines.size()), actual);
+        }
+    }
+
+    @Test
+    public void testByteRangeSplitsHeaderLongerThanSplit() throws Exception {
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, "header1\nheader2\na\nb\nc", StandardCharsets.UTF_8);
+
+        //1 byte splits: the header spans many splits, none of which should return header lines
+        List<ByteRangeSplit> splits = ByteRangeSplit.splitBySize(f, 1, 2);
+        assertEquals(16, splits.get(0).getStart());
+        List<String> actual = new ArrayList<>();
+        for (ByteRangeSplit split : splits) {
+            LineRecordReader rr = new LineRecordReader();
+            rr.initialize(split);
+            while (rr.hasNext()) {
+                actual.add(rr.next().get(0).toString());
+            }
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), actual);
+
+        //Header only
+        FileUtils.writeStringToFile(f, "header1\nheader2\n", StandardCharsets.UTF_8);
+        for (ByteRangeSplit split : ByteRangeSplit.splitBySize(f, 1, 2)) {
+            LineRecordReader rr = new LineRecordReader();
+            rr.initialize(split);
+            assertFalse(rr.hasNext());
+        }
+    }
+
+    @Test
+    public void testOrdered() throws Exception {
+        File f = writeCsv(testDir.newFile(), 5000, true, 12345);
+
+        List<List<Writable>> expected = readAll(new CSVRecordReader(1), new FileSplit(f));
+        assertEquals(5000, expected.size());
+
+        for (int numThreads : new int[]{1, 2, 4}) {
+            ParallelRecordReader rr = new ParallelRecordReader(CSVRecordReader::new, numThreads, true, 1, 1000, 16);
+            rr.initialize(new FileSplit(f));
+            for (int epoch = 0; epoch < 2; epoch++) {
+                List<List<Writable>> actual = new ArrayList<>();
+                while (rr.hasNext()) {
+                    actual.add(rr.next());
+                }
+                assertEquals(expected, actual);
+                rr.reset();
+            }
+            rr.close();
+        }
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        File dir = testDir.newFolder();
+        List<List<Writable>> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File f = writeCsv(new File(dir, "file_" + i + ".csv"), 1000 + 500 * i, true, i);
+            expected.addAll(readAll(new CSVRecordReader(1), new FileSplit(f)));
+        }
+
+        ParallelRecordReader rr = new ParallelRecordReader(CSVRecordReader::new, 3, false, 1, 500, 16);
+        List<List<Writable>> actual = readAll(rr, new FileSplit(dir));
+        rr.close();
+
+        Comparator<List<Writable>> c = new Comparator<List<Writable>>() {
+            @Override
+            public int compare(List<Writable> o1, List<Writable> o2) {
+                return o1.toString().compareTo(o2.toString());
+            }
+        };
+        Collections.sort(expected, c);
+        Collections.sort(actual, c);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testReaderException() throws Exception {
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, "1,2,3\n4,5,6\nbad\n7,8,9\n", StandardCharsets.UTF_8);
+
+        ParallelRecordReader rr = new ParallelRecordReader(() -> new LineRecordReader() {
+            @Override
+            public List<Writable> next() {
+                List<Writable> l = super.next();
+                if ("bad".equals(l.get(0).toString())) {
+                    throw new IllegalStateException("Invalid line");
+                }
+                return l;
+            }
+        }, 2, true, 0, 4, 16);
+        rr.initialize(new FileSplit(f));
+        try {
+            while (rr.hasNext()) {
+                rr.next();
+            }
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ByteRangeSplit"));
+        }
+        rr.close();
+    }
+
+    private static File writeCsv(File f, int numLines, boolean header, long seed) throws Exception {
+        Random r = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        if (header) {
+            sb.append("a,b,c\n");
+        }
+        for (int i = 0; i < numLines; i++) {
+            sb.append(seed).append(",").append(i).append(",").append(r.nextDouble()).append("\n");
+        }
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+        return f;
+    }
+
+    private static List<List<Writable>> readAll(RecordReader rr, FileSplit split) throws Exception {
+        rr.initialize(split);
+        List<List<Writable>> out = new ArrayList<>();
+        while (rr.hasNext()) {
+            out.add(rr.next());
+        }
+        return out;
+    }
+}
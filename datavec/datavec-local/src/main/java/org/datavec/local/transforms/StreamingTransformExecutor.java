@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.transform.FusedTransformFunction;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.function.Function;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming executor for (non-sequence) TransformProcesses.<br>
+ * Unlike {@link LocalTransformExecutor}, which requires the entire data set in memory and materializes the full
+ * intermediate result of every step, this executor:<br>
+ * - Fuses each run of consecutive record-wise steps (Transforms and Filters, including condition-based ones) into a
+ * single per-record function (see {@link FusedTransformFunction})<br>
+ * - Reads the input (from a {@link RecordReader} or iterator) in chunks, which are processed in parallel on a
+ * {@link ForkJoinPool}, with a bounded number of chunks in flight at any time<br>
+ * - Returns the output (in the same order as the input) as an iterator, or writes it to a {@link RecordWriter}<br>
+ * <br>
+ * Steps that require the full data set (reductions, conversion to/from sequences, sequence operations, and sorted rank
+ * calculation) are barriers: the data up to that point is collected and the steps are executed using
+ * {@link LocalTransformExecutor}, after which streaming continues with the next record-wise steps. Hence memory use is
+ * bounded (approximately {@code chunkSize * 2 * parallelism} records) only for TransformProcesses without any barriers.
+ * <br>
+ * Usage:
+ * <pre>
+ * {@code
+ * StreamingTransformExecutor exec = new StreamingTransformExecutor(transformProcess);
+ * long count = exec.execute(recordReader, recordWriter);
+ * }
+ * </pre>
+ * Note that, as with {@link LocalTransformExecutor#execute(List, TransformProcess)}, input records with the wrong number
+ * of columns are skipped, and TransformProcesses that return sequence data are not supported.
+ */
+@Slf4j
+public class StreamingTransformExecutor {
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final TransformProcess transformProcess;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final List<Stage> stages;
+
+    /**
+     * Create an executor using the default chunk size and the common fork-join pool
+     *
+     * @param transformProcess TransformProcess to execute
+     */
+    public StreamingTransformExecutor(@NonNull TransformProcess transformProcess) {
+        this(transformProcess, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param transformProcess TransformProcess to execute
+     * @param chunkSize        Number of records processed per task
+     * @param pool             Pool used to process the chunks
+     */
+    public StreamingTransformExecutor(@NonNull TransformProcess transformProcess, int chunkSize, @NonNull ForkJoinPool pool) {
+        Preconditions.checkArgument(chunkSize > 0, "Chunk size must be positive, got %s", chunkSize);
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema || transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            throw new IllegalStateException("StreamingTransformExecutor can only be used with TransformProcesses that " +
+                    "take and return non-sequence data");
+        }
+        this.transformProcess = transformProcess;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.stages = plan(transformProcess);
+    }
+
+    /**
+     * Split the actions of the TransformProcess into stages: runs of fusable record-wise actions, and runs of
+     * barrier actions. A barrier stage continues until the data is no longer a sequence and the next action is
+     * fusable, so that every stage starts and ends with non-sequence data
+     */
+    private static List<Stage> plan(TransformProcess tp) {
+        List<DataAction> actions = tp.getActionList();
+        int n = actions.size();
+        //Schema before each action
+        Schema[] schemas = new Schema[n + 1];
+        schemas[0] = tp.getInitialSchema();
+        for (int i = 0; i < n; i++) {
+            schemas[i + 1] = schemaAfter(actions.get(i), schemas[i]);
+        }
+
+        List<Stage> stages = new ArrayList<>();
+        int i = 0;
+        while (i < n) {
+            int j = i + 1;
+            if (FusedTransformFunction.isFusable(actions.get(i))) {
+                while (j < n && FusedTransformFunction.isFusable(actions.get(j)))
+                    j++;
+                stages.add(new Stage(new FusedTransformFunction(actions.subList(i, j)), null));
+            } else {
+                while (j < n && (schemas[j] instanceof SequenceSchema || !FusedTransformFunction.isFusable(actions.get(j))))
+                    j++;
+                stages.add(new Stage(null, new TransformProcess(schemas[i], new ArrayList<>(actions.subList(i, j)))));
+            }
+            i = j;
+        }
+        return stages;
+    }
+
+    private static Schema schemaAfter(DataAction d, Schema schema) {
+        if (d.getTransform() != null)
+            return d.getTransform().transform(schema);
+        if (d.getFilter() != null || d.getSequenceSplit() != null)
+            return schema;
+        if (d.getConvertToSequence() != null)
+            return d.getConvertToSequence().transform(schema);
+        if (d.getConvertFromSequence() != null)
+            return d.getConvertFromSequence().transform((SequenceSchema) schema);
+        if (d.getReducer() != null)
+            return d.getReducer().transform(schema);
+        if (d.getCalculateSortedRank() != null)
+            return d.getCalculateSortedRank().transform(schema);
+        throw new RuntimeException("Unknown action: " + d);
+    }
+
+    /**
+     * Execute the TransformProcess on all records from the record reader, writing the results to the record writer
+     *
+     * @param reader Record reader to read the input data from. Must be initialized
+     * @param writer Record writer to write the output data to. Must be initialized
+     * @return Number of records written
+     */
+    public long execute(@NonNull RecordReader reader, @NonNull RecordWriter writer) throws IOException {
+        Iterator<List<Writable>> iter = execute(reader);
+        long count = 0;
+        while (iter.hasNext()) {
+            writer.write(iter.next());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Execute the TransformProcess on all records from the record reader. Records are read and processed lazily, as
+     * the returned iterator is consumed (other than for barrier steps - see class javadoc)
+     *
+     * @param reader Record reader to read the input data from. Must be initialized
+     * @return Iterator over the processed records
+     */
+    public Iterator<List<Writable>> execute(@NonNull final RecordReader reader) {
+        return execute(new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return reader.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                return reader.next();
+            }
+        });
+    }
+
+    /**
+     * Execute the TransformProcess on all records from the iterator. Records are read and processed lazily, as
+     * the returned iterator is consumed (other than for barrier steps - see class javadoc)
+     *
+     * @param input Input data
+     * @return Iterator over the processed records
+     */
+    public Iterator<List<Writable>> execute(@NonNull Iterator<List<Writable>> input) {
+        Iterator<List<Writable>> current = input;
+        int numColumns = transformProcess.getInitialSchema().numColumns();
+        boolean first = true;
+        for (Stage s : stages) {
+            if (s.function != null) {
+                current = new ChunkedIterator(current, s.function, first ? numColumns : -1);
+            } else {
+                //Barrier: collect the data so far, and execute the barrier steps on the full data set
+                List<List<Writable>> data = new ArrayList<>();
+                while (current.hasNext()) {
+                    data.add(current.next());
+                }
+                current = data.isEmpty() ? Collections.<List<Writable>>emptyIterator() :
+                        LocalTransformExecutor.execute(data, s.transformProcess).iterator();
+            }
+            first = false;
+        }
+        return current;
+    }
+
+    private static class Stage {
+        private final FusedTransformFunction function;
+        private final TransformProcess transformProcess;
+
+        private Stage(FusedTransformFunction function, TransformProcess transformProcess) {
+            this.function = function;
+            this.transformProcess = transformProcess;
+        }
+    }
+
+    /**
+     * Applies a function to chunks of records from the source iterator, in parallel, returning the results in order
+     */
+    private class ChunkedIterator implements Iterator<List<Writable>> {
+        private final Iterator<List<Writable>> source;
+        private final Function<List<Writable>, List<Writable>> function;
+        private final int numColumns;
+        private final int maxInFlight = Math.max(2, 2 * pool.getParallelism());
+        private final ArrayDeque<Future<List<List<Writable>>>> inFlight = new ArrayDeque<>();
+        private final AtomicLong invalid = new AtomicLong();
+        private Iterator<List<Writable>> current = Collections.emptyIterator();
+        private boolean done;
+
+        private ChunkedIterator(Iterator<List<Writable>> source, Function<List<Writable>, List<Writable>> function,
+                                int numColumns) {
+            this.source = source;
+            this.function = function;
+            this.numColumns = numColumns;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                submit();
+                if (inFlight.isEmpty()) {
+                    if (!done && invalid.get() > 0) {
+                        log.warn("Filtered out " + invalid.get() + " records with an invalid number of columns " +
+                                "(expected " + numColumns + ")");
+                    }
+                    done = true;
+                    return false;
+                }
+                try {
+                    current = inFlight.poll().get().iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for results", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw new RuntimeException("Error executing transform process", e.getCause());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException("No next element");
+            return current.next();
+        }
+
+        private void submit() {
+            while (inFlight.size() < maxInFlight && source.hasNext()) {
+                final List<List<Writable>> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && source.hasNext()) {
+                    chunk.add(source.next());
+                }
+                inFlight.add(pool.submit(() -> process(chunk)));
+            }
+        }
+
+        private List<List<Writable>> process(List<List<Writable>> chunk) {
+            List<List<Writable>> out = new ArrayList<>(chunk.size());
+            for (List<Writable> record : chunk) {
+                if (numColumns >= 0 && record.size() != numColumns) {
+                    invalid.incrementAndGet();
+                    continue;
+                }
+                List<Writable> result = function.apply(record);
+                if (result != null)
+                    out.add(result);
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.transform;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.nd4j.common.function.Function;
+
+import java.util.List;
+
+/**
+ * Function for executing a consecutive sequence of record-wise {@link Transform} and {@link Filter} steps (including
+ * condition-based transforms and filters) as a single function on each record, without materializing the intermediate
+ * results of each step.<br>
+ * Returns null if the record is removed by one of the filters (or, in try/catch mode - see
+ * {@link LocalTransformExecutor#isTryCatch()} - if an exception occurs while processing the record)
+ */
+@Slf4j
+public class FusedTransformFunction implements Function<List<Writable>, List<Writable>> {
+
+    private final Transform[] transforms;
+    private final Filter[] filters;
+
+    /**
+     * @param actions Actions to execute. All actions must be record-wise (see {@link #isFusable(DataAction)})
+     */
+    public FusedTransformFunction(@NonNull List<DataAction> actions) {
+        this.transforms = new Transform[actions.size()];
+        this.filters = new Filter[actions.size()];
+        for (int i = 0; i < actions.size(); i++) {
+            DataAction d = actions.get(i);
+            if (!isFusable(d)) {
+                throw new IllegalArgumentException("Only Transform and Filter actions can be fused, got: " + d);
+            }
+            transforms[i] = d.getTransform();
+            filters[i] = d.getFilter();
+        }
+    }
+
+    /**
+     * @return True if the action is a record-wise operation (a Transform or Filter) that can be fused
+     */
+    public static boolean isFusable(DataAction d) {
+        return d.getTransform() != null || d.getFilter() != null;
+    }
+
+    @Override
+    public List<Writable> apply(List<Writable> v1) {
+        if (LocalTransformExecutor.isTryCatch()) {
+            try {
+                return applyAll(v1);
+            } catch (Exception e) {
+                log.warn("Error occurred " + e + " on record " + v1);
+                return null;
+            }
+        }
+        return applyAll(v1);
+    }
+
+    private List<Writable> applyAll(List<Writable> record) {
+        for (int i = 0; i < transforms.length; i++) {
+            if (transforms[i] != null) {
+                record = transforms[i].map(record);
+            } else if (filters[i].removeExample(record)) {
+                return null;
+            }
+        }
+        return record;
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms;
+
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.junit.Test;
+import org.nd4j.common.tests.BaseND4JTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingTransformExecutorTest extends BaseND4JTest {
+
+    private static Schema schema() {
+        return new Schema.Builder()
+                .addColumnString("key")
+                .addColumnInteger("intCol")
+                .addColumnDouble("doubleCol")
+                .build();
+    }
+
+    private static List<List<Writable>> data(int n) {
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new Text("key" + (i % 3)), new IntWritable(i), new DoubleWritable(i / 10.0)));
+        }
+        return out;
+    }
+
+    private static List<List<Writable>> collect(Iterator<List<Writable>> iter) {
+        List<List<Writable>> out = new ArrayList<>();
+        while (iter.hasNext()) {
+            out.add(iter.next());
+        }
+        return out;
+    }
+
+    @Test
+    public void testFusedRecordWise() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .integerMathOp("intCol", MathOp.Multiply, 2)
+                .filter(new ConditionFilter(new DoubleColumnCondition("doubleCol", ConditionOp.LessThan, 10.0)))
+                .doubleMathOp("doubleCol", MathOp.Add, 1.0)
+                .removeColumns("key")
+                .build();
+
+        List<List<Writable>> in = data(1000);
+        List<List<Writable>> exp = new ArrayList<>();
+        for (List<Writable> l : in) {
+            List<Writable> out = tp.execute(l);
+            if (out != null)
+                exp.add(out);
+        }
+        assertEquals(900, exp.size());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : new int[]{1, 7, 1024}) {
+                StreamingTransformExecutor exec = new StreamingTransformExecutor(tp, chunkSize, pool);
+                List<List<Writable>> act = collect(exec.execute(new CollectionRecordReader(in)));
+                assertEquals(exp, act);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidColumnCountSkipped() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .integerMathOp("intCol", MathOp.Add, 1)
+                .build();
+
+        List<List<Writable>> in = data(10);
+        in.add(5, Arrays.<Writable>asList(new Text("key0"), new IntWritable(0)));
+
+        List<List<Writable>> act = collect(new StreamingTransformExecutor(tp).execute(in.iterator()));
+        assertEquals(10, act.size());
+        assertEquals(new IntWritable(1), act.get(0).get(1));
+    }
+
+    @Test
+    public void testBarrier() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("doubleCol", MathOp.Multiply, 2.0)
+                .reduce(new Reducer.Builder(ReduceOp.Sum)
+                        .keyColumns("key")
+                        .build())
+                .integerMathOp("sum(intCol)", MathOp.Add, 1)
+                .build();
+
+        List<List<Writable>> in = data(100);
+        List<List<Writable>> exp = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> act = collect(new StreamingTransformExecutor(tp, 16, ForkJoinPool.commonPool())
+                .execute(new CollectionRecordReader(in)));
+
+        //Output order after a reduction is not defined
+        assertEquals(3, act.size());
+        assertEquals(toSortedStrings(exp), toSortedStrings(act));
+    }
+
+    private static List<String> toSortedStrings(List<List<Writable>> list) {
+        List<String> out = new ArrayList<>();
+        for (List<Writable> l : list) {
+            out.add(l.toString());
+        }
+        Collections.sort(out);
+        return out;
+    }
+}
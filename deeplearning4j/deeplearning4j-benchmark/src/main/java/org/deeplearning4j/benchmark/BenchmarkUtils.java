@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark;
+
+import org.nd4j.common.base.Preconditions;
+
+/**
+ * Utilities shared by the JMH benchmarks in this module
+ */
+public class BenchmarkUtils {
+
+    private BenchmarkUtils() { }
+
+    /**
+     * Parse a shape benchmark parameter such as "128x256" or "32x3x224x224"
+     *
+     * @param shape Shape string, with dimensions separated by 'x'
+     * @return Parsed shape
+     */
+    public static long[] parseShape(String shape) {
+        String[] split = shape.split("x");
+        long[] out = new long[split.length];
+        for (int i = 0; i < split.length; i++) {
+            out[i] = Long.parseLong(split[i].trim());
+            Preconditions.checkArgument(out[i] > 0, "Invalid shape \"%s\": all dimensions must be positive", shape);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.datavec;
+
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for a full pass over a numeric CSV file via {@link CSVRecordReader} + {@link RecordReaderDataSetIterator}.<br>
+ * This measures the parsing and Writable to INDArray conversion cost, which is usually the bottleneck for CSV based
+ * training pipelines. The CSV file is generated once per trial in a temporary directory
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordReaderDataSetIteratorBenchmark {
+
+    @Param({"10000"})
+    public int numRows;
+
+    @Param({"10", "100"})
+    public int numFeatures;
+
+    @Param({"32", "256"})
+    public int batchSize;
+
+    private File csvFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        csvFile = File.createTempFile("dl4j-benchmark", ".csv");
+        csvFile.deleteOnExit();
+        Random r = new Random(12345);
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvFile))) {
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numFeatures; j++) {
+                    bw.write(String.valueOf(r.nextFloat()));
+                    bw.write(',');
+                }
+                bw.write(String.valueOf(r.nextInt(10)));
+                bw.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        csvFile.delete();
+    }
+
+    @Benchmark
+    public void epoch(Blackhole bh) throws Exception {
+        CSVRecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(csvFile));
+        RecordReaderDataSetIterator iter = new RecordReaderDataSetIterator(rr, batchSize, numFeatures, 10);
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            bh.consume(ds);
+        }
+        Nd4j.getExecutioner().commit();
+        rr.close();
+    }
+}
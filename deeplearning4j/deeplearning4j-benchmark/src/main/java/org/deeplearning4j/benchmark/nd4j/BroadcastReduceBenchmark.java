@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.nd4j;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastAddOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Mean;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Max;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Sum;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for broadcast and reduction ops, executed directly through the op executioner
+ * ({@code NativeOpExecutioner} for the CPU backend).<br>
+ * Inputs are [rows, cols] matrices; broadcast ops use a row vector, reductions are performed along each dimension and
+ * over the full array
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadcastReduceBenchmark {
+
+    @Param({"32", "1024"})
+    public int rows;
+
+    @Param({"128", "4096"})
+    public int cols;
+
+    @Param({"FLOAT", "DOUBLE", "HALF"})
+    public DataType dataType;
+
+    private INDArray x;
+    private INDArray rowVector;
+    private INDArray broadcastOut;
+    private INDArray reduceRowsOut;
+    private INDArray reduceColsOut;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        x = Nd4j.rand(dataType, rows, cols);
+        rowVector = Nd4j.rand(dataType, cols);
+        broadcastOut = Nd4j.create(dataType, rows, cols);
+        reduceRowsOut = Nd4j.create(dataType, cols);
+        reduceColsOut = Nd4j.create(dataType, rows);
+    }
+
+    @Benchmark
+    public INDArray broadcastAddRowVector() {
+        INDArray out = Nd4j.getExecutioner().exec(new BroadcastAddOp(x, rowVector, broadcastOut, 1));
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray broadcastMulRowVector() {
+        INDArray out = Nd4j.getExecutioner().exec(new BroadcastMulOp(x, rowVector, broadcastOut, 1));
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray sumAlongDim0() {
+        INDArray out = Nd4j.getExecutioner().exec(new Sum(x, reduceRowsOut, 0));
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray sumAlongDim1() {
+        INDArray out = Nd4j.getExecutioner().exec(new Sum(x, reduceColsOut, 1));
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray meanAlongDim1() {
+        INDArray out = Nd4j.getExecutioner().exec(new Mean(x, reduceColsOut, 1));
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray maxFullArray() {
+        INDArray out = Nd4j.getExecutioner().exec(new Max(x));
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+}
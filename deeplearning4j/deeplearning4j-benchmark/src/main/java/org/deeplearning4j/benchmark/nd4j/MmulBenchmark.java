@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.nd4j;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for matrix multiplication via {@link INDArray#mmul(INDArray)} and {@link INDArray#mmuli(INDArray, INDArray)}.<br>
+ * Shapes are [m, k] x [k, n]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MmulBenchmark {
+
+    @Param({"1", "32", "256"})
+    public int m;
+
+    @Param({"128", "1024"})
+    public int k;
+
+    @Param({"128", "1024"})
+    public int n;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public DataType dataType;
+
+    @Param({"c", "f"})
+    public char order;
+
+    private INDArray a;
+    private INDArray b;
+    private INDArray result;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        a = Nd4j.rand(dataType, order, m, k);
+        b = Nd4j.rand(dataType, order, k, n);
+        result = Nd4j.create(dataType, new long[]{m, n}, 'f');
+    }
+
+    @Benchmark
+    public INDArray mmul() {
+        INDArray out = a.mmul(b);
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray mmuliPreallocated() {
+        INDArray out = a.mmuli(b, result);
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.nd4j;
+
+import org.deeplearning4j.benchmark.BenchmarkUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for array creation and copying: {@link Nd4j#create(DataType, long...)}, {@link INDArray#dup()} and
+ * {@link INDArray#assign(INDArray)}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NDArrayCreationBenchmark {
+
+    @Param({"32x32", "256x256", "1024x1024", "16x3x64x64"})
+    public String shape;
+
+    @Param({"FLOAT", "DOUBLE", "HALF"})
+    public DataType dataType;
+
+    private long[] shapeArr;
+    private INDArray source;
+    private INDArray target;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        shapeArr = BenchmarkUtils.parseShape(shape);
+        source = Nd4j.rand(dataType, shapeArr);
+        target = Nd4j.create(dataType, shapeArr);
+    }
+
+    @Benchmark
+    public INDArray create() {
+        INDArray out = Nd4j.create(dataType, shapeArr);
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray dup() {
+        INDArray out = source.dup();
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray assign() {
+        INDArray out = target.assign(source);
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+
+    @Benchmark
+    public INDArray assignScalar() {
+        INDArray out = target.assign(1.0);
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+}
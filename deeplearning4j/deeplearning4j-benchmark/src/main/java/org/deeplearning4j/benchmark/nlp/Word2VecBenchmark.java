@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.nlp;
+
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.deeplearning4j.text.sentenceiterator.CollectionSentenceIterator;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for Word2Vec training: vocabulary construction plus one epoch of skip-gram training on a synthetic corpus.<br>
+ * The corpus uses a Zipf-like word distribution, so that the vocabulary and subsampling behaviour is closer to natural
+ * text than uniformly random words
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class Word2VecBenchmark {
+
+    @Param({"5000"})
+    public int numSentences;
+
+    @Param({"1000", "20000"})
+    public int vocabSize;
+
+    @Param({"100"})
+    public int layerSize;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private List<String> sentences;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(12345);
+        sentences = new ArrayList<>(numSentences);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numSentences; i++) {
+            sb.setLength(0);
+            int length = 10 + r.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                if (j > 0)
+                    sb.append(' ');
+                //Approximately Zipfian: low word indices are much more frequent
+                int word = (int) Math.floor(Math.pow(vocabSize, r.nextDouble())) - 1;
+                sb.append('w').append(word);
+            }
+            sentences.add(sb.toString());
+        }
+    }
+
+    @Benchmark
+    public Word2Vec fit() {
+        Word2Vec vec = new Word2Vec.Builder()
+                .minWordFrequency(1)
+                .iterations(1)
+                .epochs(1)
+                .layerSize(layerSize)
+                .seed(12345)
+                .windowSize(5)
+                .workers(workers)
+                .iterate(new CollectionSentenceIterator(sentences))
+                .tokenizerFactory(new DefaultTokenizerFactory())
+                .build();
+        vec.fit();
+        return vec;
+    }
+}
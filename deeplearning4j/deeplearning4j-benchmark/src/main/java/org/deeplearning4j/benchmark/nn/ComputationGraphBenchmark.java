@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.nn;
+
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link ComputationGraph#output(INDArray...)} on a graph with several parallel branches that are merged
+ * (concatenated) and combined via a residual (element-wise add) connection
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComputationGraphBenchmark {
+
+    @Param({"1", "32", "128"})
+    public int minibatch;
+
+    @Param({"2", "8"})
+    public int numBranches;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public DataType dataType;
+
+    private ComputationGraph graph;
+    private INDArray input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Nd4j.getRandom().setSeed(12345);
+        int nIn = 256;
+        int branchSize = 128;
+
+        ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                .dataType(dataType)
+                .seed(12345)
+                .updater(new Adam(1e-3))
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("in")
+                .setInputTypes(InputType.feedForward(nIn));
+
+        String[] branchNames = new String[numBranches];
+        for (int i = 0; i < numBranches; i++) {
+            branchNames[i] = "branch" + i;
+            b.addLayer(branchNames[i] + "_0", new DenseLayer.Builder().nOut(branchSize).activation(Activation.RELU).build(), "in");
+            b.addLayer(branchNames[i], new DenseLayer.Builder().nOut(branchSize).activation(Activation.RELU).build(), branchNames[i] + "_0");
+        }
+        b.addVertex("merge", new MergeVertex(), branchNames);
+        b.addLayer("proj", new DenseLayer.Builder().nOut(nIn).activation(Activation.RELU).build(), "merge");
+        b.addVertex("residual", new ElementWiseVertex(ElementWiseVertex.Op.Add), "in", "proj");
+        b.addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(10)
+                .activation(Activation.SOFTMAX).build(), "residual");
+        b.setOutputs("out");
+
+        graph = new ComputationGraph(b.build());
+        graph.init();
+
+        input = Nd4j.rand(dataType, minibatch, nIn);
+    }
+
+    @Benchmark
+    public INDArray output() {
+        INDArray out = graph.outputSingle(input);
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.nn;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link MultiLayerNetwork#fit(org.nd4j.linalg.dataset.api.DataSet)} and
+ * {@link MultiLayerNetwork#output(INDArray)} for both a dense (MLP) and a convolutional (LeNet-style) network
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiLayerNetworkBenchmark {
+
+    public enum NetworkType {MLP, CNN}
+
+    @Param({"MLP", "CNN"})
+    public NetworkType networkType;
+
+    @Param({"1", "32", "128"})
+    public int minibatch;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public DataType dataType;
+
+    private MultiLayerNetwork net;
+    private DataSet dataSet;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Nd4j.getRandom().setSeed(12345);
+        int numClasses = 10;
+        MultiLayerConfiguration conf;
+        INDArray features;
+        if (networkType == NetworkType.MLP) {
+            conf = new NeuralNetConfiguration.Builder()
+                    .dataType(dataType)
+                    .seed(12345)
+                    .updater(new Adam(1e-3))
+                    .weightInit(WeightInit.XAVIER)
+                    .list()
+                    .layer(new DenseLayer.Builder().nIn(784).nOut(512).activation(Activation.RELU).build())
+                    .layer(new DenseLayer.Builder().nOut(256).activation(Activation.RELU).build())
+                    .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(numClasses)
+                            .activation(Activation.SOFTMAX).build())
+                    .setInputType(InputType.feedForward(784))
+                    .build();
+            features = Nd4j.rand(dataType, minibatch, 784);
+        } else {
+            conf = new NeuralNetConfiguration.Builder()
+                    .dataType(dataType)
+                    .seed(12345)
+                    .updater(new Adam(1e-3))
+                    .weightInit(WeightInit.XAVIER)
+                    .list()
+                    .layer(new ConvolutionLayer.Builder().kernelSize(5, 5).nOut(20).activation(Activation.IDENTITY).build())
+                    .layer(new SubsamplingLayer.Builder(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                    .layer(new ConvolutionLayer.Builder().kernelSize(5, 5).nOut(50).activation(Activation.IDENTITY).build())
+                    .layer(new SubsamplingLayer.Builder(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                    .layer(new DenseLayer.Builder().nOut(500).activation(Activation.RELU).build())
+                    .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(numClasses)
+                            .activation(Activation.SOFTMAX).build())
+                    .setInputType(InputType.convolutionalFlat(28, 28, 1))
+                    .build();
+            features = Nd4j.rand(dataType, minibatch, 784);
+        }
+
+        net = new MultiLayerNetwork(conf);
+        net.init();
+
+        INDArray labels = Nd4j.create(dataType, minibatch, numClasses);
+        for (int i = 0; i < minibatch; i++) {
+            labels.putScalar(i, i % numClasses, 1.0);
+        }
+        dataSet = new DataSet(features, labels);
+    }
+
+    @Benchmark
+    public void fit() {
+        net.fit(dataSet);
+        Nd4j.getExecutioner().commit();
+    }
+
+    @Benchmark
+    public INDArray output() {
+        INDArray out = net.output(dataSet.getFeatures());
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmark.samediff;
+
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for SameDiff inference via {@link SameDiff#output(Map, String...)} on a multi-layer perceptron.<br>
+ * This includes the per-call overhead of the InferenceSession (graph traversal, dependency tracking, memory management)
+ * which dominates for small batch sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SameDiffOutputBenchmark {
+
+    @Param({"1", "32", "256"})
+    public int minibatch;
+
+    @Param({"128", "1024"})
+    public int layerSize;
+
+    @Param({"3", "10"})
+    public int numLayers;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public DataType dataType;
+
+    private SameDiff sd;
+    private Map<String, INDArray> placeholders;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Nd4j.getRandom().setSeed(12345);
+        sd = SameDiff.create();
+        SDVariable current = sd.placeHolder("in", dataType, -1, layerSize);
+        for (int i = 0; i < numLayers; i++) {
+            SDVariable w = sd.var("w" + i, Nd4j.rand(dataType, layerSize, layerSize).subi(0.5).muli(0.1));
+            SDVariable b = sd.var("b" + i, Nd4j.rand(dataType, layerSize));
+            current = sd.nn.tanh(current.mmul(w).add(b));
+        }
+        sd.nn.softmax("out", current);
+
+        placeholders = Collections.singletonMap("in", Nd4j.rand(dataType, minibatch, layerSize));
+    }
+
+    @Benchmark
+    public INDArray output() {
+        INDArray out = sd.output(placeholders, "out").get("out");
+        Nd4j.getExecutioner().commit();
+        return out;
+    }
+}
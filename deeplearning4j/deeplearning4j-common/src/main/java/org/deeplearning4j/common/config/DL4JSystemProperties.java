@@ -70,6 +70,15 @@ public class DL4JSystemProperties {
      */
     public static final String CRASH_DUMP_OUTPUT_DIRECTORY_PROPERTY = "org.deeplearning4j.crash.reporting.directory";
 
+    /**
+     * Applicability: deeplearning4j-nn - LSTM, GravesLSTM and GravesBidirectionalLSTM layers (including when used
+     * within a Bidirectional layer)<br>
+     * Description: When no LSTM helper (cuDNN etc.) is used, inference (output, rnnTimeStep) uses a fused forward pass
+     * implementation that reuses preallocated gate buffers across time steps. This is enabled by default; set this
+     * system property to false to use the standard (per time step allocating) forward pass implementation instead.
+     */
+    public static final String LSTM_FUSED_FORWARD_ENABLED_PROPERTY = "org.deeplearning4j.lstm.fused.enabled";
+
     /**
      * Applicability: deeplearning4j-ui<br>
      * Description: The DL4J training UI (StatsListener + UIServer.getInstance().attach(ss)) will subsample the number
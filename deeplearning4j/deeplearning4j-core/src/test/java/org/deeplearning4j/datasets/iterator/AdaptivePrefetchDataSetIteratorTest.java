@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.Test;
+import org.nd4j.linalg.dataset.AdaptivePrefetchDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AdaptivePrefetchDataSetIteratorTest extends BaseDL4JTest {
+
+    private static List<DataSet> partition(int p, int n) {
+        List<DataSet> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(new DataSet(Nd4j.valueArrayOf(new long[]{1, 3}, 1000.0 * p + i), Nd4j.zeros(1, 2)));
+        }
+        return out;
+    }
+
+    @Test
+    public void testOrdered() {
+        List<DataSet> expected = new ArrayList<>();
+        List<DataSetIterator> partitions = new ArrayList<>();
+        for (int p = 0; p < 6; p++) {
+            List<DataSet> l = partition(p, 5 + 3 * p);
+            expected.addAll(l);
+            partitions.add(new ExistingDataSetIterator(l));
+        }
+
+        AdaptivePrefetchDataSetIterator iter = new AdaptivePrefetchDataSetIterator(partitions, 1, 4, 4, true);
+        assertTrue(iter.resetSupported());
+        for (int epoch = 0; epoch < 3; epoch++) {
+            List<DataSet> actual = new ArrayList<>();
+            while (iter.hasNext()) {
+                actual.add(iter.next());
+            }
+            assertEquals(expected, actual);
+            iter.reset();
+        }
+        assertEquals(3 * expected.size(), iter.getBatchesReturned());
+        iter.shutdown();
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testUnorderedWithPreProcessor() {
+        List<DataSet> expected = new ArrayList<>();
+        List<DataSetIterator> partitions = new ArrayList<>();
+        for (int p = 0; p < 5; p++) {
+            List<DataSet> l = partition(p, 10);
+            for (DataSet ds : l) {
+                expected.add(new DataSet(ds.getFeatures().add(1), ds.getLabels()));
+            }
+            partitions.add(new ExistingDataSetIterator(l));
+        }
+
+        AdaptivePrefetchDataSetIterator iter = new AdaptivePrefetchDataSetIterator(partitions, 2, 2, 8, false);
+        iter.setPreProcessor(new DataSetPreProcessor() {
+            @Override
+            public void preProcess(org.nd4j.linalg.dataset.api.DataSet ds) {
+                ds.getFeatures().addi(1);
+            }
+        });
+
+        List<DataSet> actual = new ArrayList<>();
+        while (iter.hasNext()) {
+            actual.add(iter.next());
+        }
+        iter.shutdown();
+
+        Comparator<DataSet> c = new Comparator<DataSet>() {
+            @Override
+            public int compare(DataSet o1, DataSet o2) {
+                return Double.compare(o1.getFeatures().getDouble(0), o2.getFeatures().getDouble(0));
+            }
+        };
+        Collections.sort(actual, c);
+        assertEquals(expected, actual);
+        assertEquals(2, iter.getNumWorkers());
+    }
+
+    @Test
+    public void testAutoTuningAndStallMetrics() {
+        //Slow producers, fast consumer: the consumer should stall, and the number of workers should increase
+        List<DataSetIterator> partitions = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            partitions.add(new ExistingDataSetIterator(partition(p, 40)) {
+                @Override
+                public DataSet next() {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.next();
+                }
+            });
+        }
+
+        AdaptivePrefetchDataSetIterator iter = new AdaptivePrefetchDataSetIterator(partitions, 1, 4, 16, false);
+        assertEquals(1, iter.getNumWorkers());
+        int count = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            count++;
+        }
+        iter.shutdown();
+
+        assertEquals(160, count);
+        assertTrue(iter.getStallTimeMillis() > 0);
+        assertTrue(iter.isInputBound());
+        assertTrue(String.valueOf(iter.getNumWorkers()), iter.getNumWorkers() > 1);
+        assertTrue(String.valueOf(iter.getQueueDepth()), iter.getQueueDepth() > 2);
+    }
+
+    @Test
+    public void testResetDoesNotInterruptWorkers() {
+        //Interrupting a worker while it reads from an interruptible channel (such as a FileChannel) closes the channel
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        List<DataSet> expected = new ArrayList<>();
+        List<DataSetIterator> partitions = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            List<DataSet> l = partition(p, 5);
+            expected.addAll(l);
+            partitions.add(new ExistingDataSetIterator(l) {
+                @Override
+                public DataSet next() {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.next();
+                }
+            });
+        }
+
+        AdaptivePrefetchDataSetIterator iter = new AdaptivePrefetchDataSetIterator(partitions, 2, 2, 2, true);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            //Reset while the workers are loading elements
+            assertEquals(expected.get(0), iter.next());
+            iter.reset();
+        }
+
+        List<DataSet> actual = new ArrayList<>();
+        while (iter.hasNext()) {
+            actual.add(iter.next());
+        }
+        assertEquals(expected, actual);
+        iter.reset();
+        assertEquals(expected.get(0), iter.next());
+        iter.shutdown();
+        assertFalse(interrupted.get());
+    }
+}
@@ -83,6 +83,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional.Mode.CONCAT;
 import static org.junit.Assert.*;
@@ -2220,4 +2222,133 @@ public class TestComputationGraphNetwork extends BaseDL4JTest {
 
         assertEquals(out, out2);
     }
+
+    @Test
+    public void testParallelInference() throws Exception {
+        for (WorkspaceMode wsm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                    .seed(12345)
+                    .inferenceWorkspaceMode(wsm)
+                    .trainingWorkspaceMode(wsm)
+                    .graphBuilder()
+                    .addInputs("in")
+                    .layer("b0", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build(), "in")
+                    .layer("b1", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.RELU).build(), "in")
+                    .layer("b2", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.SIGMOID).build(), "in")
+                    .layer("b2a", new DenseLayer.Builder().nIn(8).nOut(8).activation(Activation.TANH).build(), "b2")
+                    .addVertex("merge", new MergeVertex(), "b0", "b1", "b2a")
+                    .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "b0", "b1")
+                    .layer("out0", new OutputLayer.Builder().nIn(24).nOut(3).activation(Activation.SOFTMAX)
+                            .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                    .layer("out1", new OutputLayer.Builder().nIn(8).nOut(2).activation(Activation.IDENTITY)
+                            .lossFunction(LossFunctions.LossFunction.MSE).build(), "add")
+                    .setOutputs("out0", "out1")
+                    .build();
+
+            ComputationGraph net = new ComputationGraph(conf);
+            net.init();
+
+            INDArray in = Nd4j.rand(DataType.FLOAT, 5, 4);
+            INDArray[] exp = net.output(in);
+
+            net.setParallelInference(true);
+            assertNotNull(net.getParallelInferencePool());
+            for (int i = 0; i < 3; i++) {
+                INDArray[] out = net.output(in);
+                assertEquals(2, out.length);
+                assertEquals(exp[0], out[0]);
+                assertEquals(exp[1], out[1]);
+            }
+
+            //Training and fitting should be unaffected
+            net.fit(new org.nd4j.linalg.dataset.MultiDataSet(new INDArray[]{in},
+                    new INDArray[]{Nd4j.rand(DataType.FLOAT, 5, 3), Nd4j.rand(DataType.FLOAT, 5, 2)}));
+            INDArray[] parallel = net.output(in);
+            net.setParallelInference(false);
+            assertNull(net.getParallelInferencePool());
+            INDArray[] sequential = net.output(in);
+            assertEquals(sequential[0], parallel[0]);
+            assertEquals(sequential[1], parallel[1]);
+
+            //Calling output from a thread of the pool itself should not deadlock, even for a single thread pool
+            final ForkJoinPool pool = new ForkJoinPool(1);
+            try {
+                net.setParallelInferencePool(pool);
+                INDArray[] fromPool = pool.submit(() -> net.output(in)).get(60, TimeUnit.SECONDS);
+                assertEquals(sequential[0], fromPool[0]);
+                assertEquals(sequential[1], fromPool[1]);
+            } finally {
+                net.setParallelInferencePool(null);
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testGradientCheckpointing() {
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            ComputationGraph[] nets = new ComputationGraph[2];
+            for (int i = 0; i < 2; i++) {
+                ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                        .seed(12345)
+                        .trainingWorkspaceMode(wsm)
+                        .updater(new Adam(1e-2))
+                        .activation(Activation.TANH)
+                        .graphBuilder()
+                        .addInputs("in")
+                        .addLayer("0", new DenseLayer.Builder().nIn(4).nOut(6).build(), "in")
+                        .addLayer("1", new DenseLayer.Builder().nIn(6).nOut(6).build(), "0")
+                        .addLayer("2", new BatchNormalization.Builder().nOut(6).build(), "1")
+                        .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "0", "2")
+                        .addLayer("3", new DenseLayer.Builder().nIn(6).nOut(5).build(), "add")
+                        .addLayer("4", new DenseLayer.Builder().nIn(5).nOut(5).build(), "3")
+                        .addLayer("out", new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                                .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "4")
+                        .setOutputs("out");
+                if (i == 1) {
+                    //"1" is not on all paths ("0" -> "add" skips it): activations of "0" should also be kept
+                    b.gradientCheckpoints("1", "add", "4");
+                }
+                ComputationGraphConfiguration conf = b.build();
+                assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+
+                nets[i] = new ComputationGraph(conf);
+                nets[i].init();
+            }
+            assertEquals(Arrays.asList("1", "add", "4"), nets[1].getConfiguration().getGradientCheckpoints());
+
+            INDArray f = Nd4j.rand(DataType.FLOAT, 10, 4);
+            INDArray l = Nd4j.create(DataType.FLOAT, 10, 3);
+            for (int i = 0; i < 10; i++) {
+                l.putScalar(i, i % 3, 1.0);
+            }
+
+            for (ComputationGraph net : nets) {
+                net.setInput(0, f);
+                net.setLabel(0, l);
+                net.computeGradientAndScore();
+            }
+            assertEquals(nets[0].score(), nets[1].score(), 1e-5);
+            assertEquals(nets[0].gradient().gradient(), nets[1].gradient().gradient());
+
+            for (int i = 0; i < 3; i++) {
+                nets[0].fit(new DataSet(f, l));
+                nets[1].fit(new DataSet(f, l));
+            }
+            assertEquals(nets[0].params(), nets[1].params());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGradientCheckpointingInvalidVertex() {
+        new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(4).nOut(6).build(), "in")
+                .addLayer("out", new OutputLayer.Builder().nIn(6).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "0")
+                .setOutputs("out")
+                .gradientCheckpoints("doesNotExist")
+                .build();
+    }
 }
@@ -40,6 +40,9 @@ import org.nd4j.linalg.activations.impl.ActivationIdentity;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
@@ -801,6 +804,74 @@ public class EmbeddingLayerTest extends BaseDL4JTest {
 
     }
 
+    @Test
+    public void testSparseGradients() {
+        int nIn = 20;
+        int nOut = 5;
+        int seqLength = 3;
+        int mb = 4;
+        for (boolean seq : new boolean[]{false, true}) {
+            //Only indices 0 to 4 are present in the data
+            INDArray in = Nd4j.createFromArray(new double[]{0, 1, 2, 4}).reshape(mb, 1);
+            INDArray label = Nd4j.rand(DataType.DOUBLE, mb, 3);
+            if (seq) {
+                in = Nd4j.createFromArray(new double[]{0, 1, 1, 2, 3, 4, 4, 0, 2, 2, 2, 2}).reshape(mb, seqLength);
+                label = Nd4j.rand(DataType.DOUBLE, mb, 3, seqLength);
+            }
+
+            //SGD: sparse and dense gradients should give identical results
+            MultiLayerNetwork dense = sparseGradientNet(seq, false, new Sgd(0.1), nIn, nOut, seqLength);
+            MultiLayerNetwork sparse = sparseGradientNet(seq, true, new Sgd(0.1), nIn, nOut, seqLength);
+            assertEquals(dense.params(), sparse.params());
+            for (int i = 0; i < 3; i++) {
+                dense.fit(in, label);
+                sparse.fit(in, label);
+                assertTrue(dense.params().equalsWithEps(sparse.params(), 1e-10));
+            }
+
+            //Adam: rows that are not present in the minibatch should not be modified
+            MultiLayerNetwork adam = sparseGradientNet(seq, true, new Adam(0.1), nIn, nOut, seqLength);
+            INDArray w = adam.getLayer(0).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            INDArray before = w.dup();
+            for (int i = 0; i < 3; i++) {
+                adam.fit(in, label);
+            }
+            assertEquals(before.get(NDArrayIndex.interval(5, nIn), NDArrayIndex.all()),
+                    w.get(NDArrayIndex.interval(5, nIn), NDArrayIndex.all()));
+            assertNotEquals(before.get(NDArrayIndex.interval(0, 5), NDArrayIndex.all()),
+                    w.get(NDArrayIndex.interval(0, 5), NDArrayIndex.all()));
+
+            //Rows from previous minibatches should not be modified (no momentum applied) once no longer present
+            INDArray before2 = w.dup();
+            adam.fit(in.add(5), label);
+            assertEquals(before2.get(NDArrayIndex.interval(0, 5), NDArrayIndex.all()),
+                    w.get(NDArrayIndex.interval(0, 5), NDArrayIndex.all()));
+            assertEquals(before2.get(NDArrayIndex.interval(10, nIn), NDArrayIndex.all()),
+                    w.get(NDArrayIndex.interval(10, nIn), NDArrayIndex.all()));
+
+            MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(adam.getLayerWiseConfigurations().toJson());
+            assertEquals(adam.getLayerWiseConfigurations(), conf);
+        }
+    }
+
+    private static MultiLayerNetwork sparseGradientNet(boolean seq, boolean sparse, IUpdater updater, int nIn, int nOut, int seqLength) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(updater)
+                .list()
+                .layer(seq ?
+                        new EmbeddingSequenceLayer.Builder().inputLength(seqLength).sparseGradients(sparse).nIn(nIn).nOut(nOut).build() :
+                        new EmbeddingLayer.Builder().sparseGradients(sparse).nIn(nIn).nOut(nOut).build())
+                .layer(seq ?
+                        new RnnOutputLayer.Builder().nIn(nOut).nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build() :
+                        new OutputLayer.Builder().nIn(nOut).nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
     public static double relErr(double d1, double d2){
         if(d1 == 0.0 && d2 == 0.0)
             return 0.0;
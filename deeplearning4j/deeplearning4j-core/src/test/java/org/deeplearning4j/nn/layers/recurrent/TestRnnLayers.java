@@ -21,12 +21,15 @@ import org.deeplearning4j.TestUtils;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.RNNFormat;
+import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.dropout.TestDropout;
+import org.deeplearning4j.nn.conf.layers.GravesBidirectionalLSTM;
 import org.deeplearning4j.nn.conf.layers.GravesLSTM;
 import org.deeplearning4j.nn.conf.layers.LSTM;
 import org.deeplearning4j.nn.conf.layers.Layer;
 import org.deeplearning4j.nn.conf.layers.RnnLossLayer;
 import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.layers.recurrent.Bidirectional;
 import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
@@ -38,6 +41,7 @@ import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.NoOp;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.common.primitives.Pair;
@@ -251,4 +255,77 @@ public class TestRnnLayers extends BaseDL4JTest {
 
 
     }
+
+    @Test
+    public void testFusedLstmForward(){
+        int mb = 3;
+        int nIn = 4;
+        int tsLength = 6;
+
+        Layer[] layers = new Layer[]{
+                new LSTM.Builder().nIn(nIn).nOut(5).dataFormat(rnnDataFormat).build(),
+                new GravesLSTM.Builder().nIn(nIn).nOut(5).dataFormat(rnnDataFormat).build(),
+                new Bidirectional(new LSTM.Builder().nIn(nIn).nOut(5).dataFormat(rnnDataFormat).build()),
+                new GravesBidirectionalLSTM.Builder().nIn(nIn).nOut(5).dataFormat(rnnDataFormat).build()
+        };
+
+        boolean origEnabled = LSTMHelpers.isFusedForwardEnabled();
+        try {
+            for (Layer l : layers) {
+                MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .dataType(DataType.DOUBLE)
+                        .seed(12345)
+                        .list()
+                        .layer(l)
+                        .layer(new RnnOutputLayer.Builder().activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT)
+                                .nOut(3).dataFormat(rnnDataFormat).build())
+                        .setInputType(InputType.recurrent(nIn, rnnDataFormat))
+                        .build();
+
+                MultiLayerNetwork net = new MultiLayerNetwork(conf);
+                net.init();
+
+                long[] inShape = rnnDataFormat == RNNFormat.NCW ? new long[]{mb, nIn, tsLength} : new long[]{mb, tsLength, nIn};
+                INDArray in = Nd4j.rand(DataType.DOUBLE, inShape);
+                INDArray mask = Nd4j.ones(DataType.DOUBLE, mb, tsLength);
+                mask.get(NDArrayIndex.point(1), NDArrayIndex.interval(4, tsLength)).assign(0);
+                mask.get(NDArrayIndex.point(2), NDArrayIndex.interval(2, tsLength)).assign(0);
+
+                LSTMHelpers.fusedForwardEnabled(false);
+                INDArray expOut = net.output(in);
+                INDArray expOutMasked = net.output(in, false, mask, null);
+                net.rnnClearPreviousState();
+                INDArray expStep = null;
+                if (!(l instanceof Bidirectional) && !(l instanceof GravesBidirectionalLSTM)) {
+                    expStep = stepwise(net, in, tsLength);
+                }
+
+                LSTMHelpers.fusedForwardEnabled(true);
+                String msg = l.getClass().getSimpleName();
+                assertEquals(msg, expOut, net.output(in));
+                assertEquals(msg, expOutMasked, net.output(in, false, mask, null));
+                if (expStep != null) {
+                    net.rnnClearPreviousState();
+                    INDArray step = stepwise(net, in, tsLength);
+                    assertEquals(msg, expStep, step);
+                    //Single step with previous state should match the full sequence output
+                    assertEquals(msg, expOut, step);
+                }
+            }
+        } finally {
+            LSTMHelpers.fusedForwardEnabled(origEnabled);
+        }
+    }
+
+    private INDArray stepwise(MultiLayerNetwork net, INDArray in, int tsLength){
+        int timeDim = rnnDataFormat == RNNFormat.NCW ? 2 : 1;
+        INDArray[] out = new INDArray[tsLength];
+        for (int i = 0; i < tsLength; i++) {
+            INDArray step = rnnDataFormat == RNNFormat.NCW ?
+                    in.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(i, i + 1)) :
+                    in.get(NDArrayIndex.all(), NDArrayIndex.interval(i, i + 1), NDArrayIndex.all());
+            out[i] = net.rnnTimeStep(step.dup());
+        }
+        return Nd4j.concat(timeDim, out);
+    }
 }
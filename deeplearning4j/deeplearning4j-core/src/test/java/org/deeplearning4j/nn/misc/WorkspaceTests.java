@@ -48,6 +48,13 @@ import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.common.primitives.Pair;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.nn.workspace.WorkspaceProfiler;
+import org.deeplearning4j.nn.workspace.WorkspaceStats;
+import org.deeplearning4j.util.ModelSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -688,4 +695,68 @@ public class WorkspaceTests extends BaseDL4JTest {
             }
         }
     }
+
+    @Test
+    public void testWorkspaceProfilerAndTunedConfigurations() throws Exception {
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .trainingWorkspaceMode(WorkspaceMode.ENABLED)
+                .inferenceWorkspaceMode(WorkspaceMode.ENABLED)
+                .updater(new Adam(0.01))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(20).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nIn(20).nOut(20).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(20).nOut(5).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        WorkspaceProfiler profiler = new WorkspaceProfiler();
+        net.setWorkspaceProfiler(profiler);
+
+        INDArray f = Nd4j.rand(16, 10);
+        INDArray l = Nd4j.rand(16, 5);
+        for (int i = 0; i < 5; i++) {
+            net.fit(f, l);
+            net.output(f);
+        }
+
+        Map<String, WorkspaceStats> stats = profiler.getStats();
+        assertFalse(stats.isEmpty());
+        assertTrue(stats.containsKey("WS_ALL_LAYERS_ACT"));
+        assertTrue(stats.get("WS_ALL_LAYERS_ACT").getPeakCycleBytes() > 0);
+        assertFalse(profiler.getStats(ArrayType.ACTIVATIONS).isEmpty());
+        assertFalse(profiler.getStats(ArrayType.ACTIVATION_GRAD).isEmpty());
+
+        Map<String, WorkspaceConfiguration> tuned = profiler.getTunedConfigurations();
+        assertFalse(tuned.isEmpty());
+        for (Map.Entry<String, WorkspaceConfiguration> e : tuned.entrySet()) {
+            assertTrue(e.getKey(), e.getValue().getInitialSize() >= stats.get(e.getKey()).getPeakCycleBytes());
+        }
+        net.setTunedWorkspaceConfigurations(tuned);
+
+        //Tuned configurations should be saved and restored with the model
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ModelSerializer.writeModel(net, baos, true);
+        MultiLayerNetwork restored = ModelSerializer.restoreMultiLayerNetwork(new ByteArrayInputStream(baos.toByteArray()), true);
+        assertEquals(tuned, restored.getTunedWorkspaceConfigurations());
+
+        //With the tuned configurations, the workspaces should be allocated up front: no reallocations or spills
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+        WorkspaceProfiler profiler2 = new WorkspaceProfiler();
+        restored.setWorkspaceProfiler(profiler2);
+        for (int i = 0; i < 3; i++) {
+            restored.fit(f, l);
+            restored.output(f);
+        }
+
+        for (WorkspaceStats s : profiler2.getStats().values()) {
+            if (tuned.containsKey(s.getWorkspaceName())) {
+                assertEquals(s.getWorkspaceName(), 0, s.getReallocations());
+                assertEquals(s.getWorkspaceName(), 0, s.getSpilledBytes());
+            }
+        }
+    }
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PostTrainingQuantizerTest extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testQuantizeWeights() {
+        Nd4j.getRandom().setSeed(12345);
+        DenseLayer dense = new DenseLayer.Builder().nIn(5).nOut(4).build();
+        INDArray w = Nd4j.rand(DataType.FLOAT, 5, 4).subi(0.5);
+        w.getColumn(3).assign(0.0);
+
+        INDArray[] q = PostTrainingQuantizer.quantizeWeights(dense, w);
+        assertEquals(DataType.INT8, q[0].dataType());
+        assertArrayEquals(w.shape(), q[0].shape());
+        assertEquals(4, q[1].length());
+        assertEquals(127.0, Transforms.abs(q[0].castTo(DataType.FLOAT), false).maxNumber().doubleValue(), 0.0);
+        assertEquals(1.0, q[1].getDouble(3), 0.0);
+
+        INDArray deq = PostTrainingQuantizer.dequantizeWeights(dense, q[0], q[1], DataType.FLOAT);
+        for (int i = 0; i < 4; i++) {
+            double maxErr = Transforms.abs(deq.getColumn(i).sub(w.getColumn(i)), false).maxNumber().doubleValue();
+            assertTrue(maxErr <= q[1].getDouble(i) / 2 + 1e-6);
+        }
+
+        DepthwiseConvolution2D dw = new DepthwiseConvolution2D.Builder().kernelSize(2, 2).nIn(3).depthMultiplier(2).build();
+        INDArray wDw = Nd4j.rand(DataType.FLOAT, 2, 2, 3, 2).subi(0.5);
+        q = PostTrainingQuantizer.quantizeWeights(dw, wDw);
+        assertEquals(6, q[1].length());
+        for (int i = 0; i < 3; i++) {
+            for (int m = 0; m < 2; m++) {
+                double absMax = Transforms.abs(wDw.get(NDArrayIndex.all(), NDArrayIndex.all(),
+                        NDArrayIndex.point(i), NDArrayIndex.point(m)), true).maxNumber().doubleValue();
+                assertEquals(absMax / 127, q[1].getDouble(i * 2 + m), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizeMultiLayerNetwork() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .convolutionMode(ConvolutionMode.Same)
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).stride(1, 1).nOut(4).activation(Activation.RELU).build())
+                .layer(new DepthwiseConvolution2D.Builder().kernelSize(2, 2).depthMultiplier(2).activation(Activation.TANH).build())
+                .layer(new SubsamplingLayer.Builder().poolingType(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).stride(1, 1).nOut(3).hasBias(false)
+                        .convolutionMode(ConvolutionMode.Truncate).activation(Activation.RELU).build())
+                .layer(new DenseLayer.Builder().nOut(10).activation(Activation.SIGMOID).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.convolutional(8, 8, 2))
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        List<DataSet> list = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            INDArray f = Nd4j.rand(DataType.FLOAT, 8, 2, 8, 8);
+            INDArray l = Nd4j.zeros(DataType.FLOAT, 8, 3);
+            for (int j = 0; j < 8; j++) {
+                l.putScalar(j, (i + j) % 3, 1.0);
+            }
+            list.add(new DataSet(f, l));
+        }
+        DataSetIterator iter = new ExistingDataSetIterator(list);
+        for (int i = 0; i < 3; i++) {
+            net.fit(iter);
+        }
+
+        QuantizationCalibration calibration = PostTrainingQuantizer.calibrate(net, iter);
+        assertEquals(32, calibration.getNumExamples());
+        for (int i : new int[]{0, 1, 3, 4}) {
+            assertTrue(calibration.hasRange(i));
+            assertTrue(calibration.getInputScale(i) > 0);
+        }
+        assertFalse(calibration.hasRange(2));
+        assertFalse(calibration.hasRange(5));
+
+        INDArray origParams = net.params().dup();
+        MultiLayerNetwork quantized = PostTrainingQuantizer.quantize(net, calibration);
+        assertEquals(origParams, net.params());
+
+        for (int i = 0; i < 6; i++) {
+            boolean expQuantized = i == 0 || i == 1 || i == 3 || i == 4;
+            assertEquals(expQuantized, quantized.getLayer(i).conf().getLayer() instanceof QuantizedLayer);
+        }
+        //Quantized layers have the same parameters as the original layers, with the weights on the int8 grid
+        assertEquals(net.numParams(), quantized.numParams());
+        assertFalse(quantized.getLayer(3).paramTable().containsKey("b"));
+        assertEquals(net.getParam("4_b"), quantized.getParam("4_b"));
+        assertEquals(net.getParam("5_W"), quantized.getParam("5_W"));
+        for (int i : new int[]{0, 1, 3, 4}) {
+            Layer l = net.getLayer(i).conf().getLayer();
+            INDArray[] q = PostTrainingQuantizer.quantizeWeights(l, net.getParam(i + "_W"));
+            assertEquals(PostTrainingQuantizer.dequantizeWeights(l, q[0], q[1], DataType.FLOAT), quantized.getParam(i + "_W"));
+            //The int8 weights can be recovered from the quantized network
+            assertEquals(q[0], PostTrainingQuantizer.quantizeWeights(l, quantized.getParam(i + "_W"))[0]);
+        }
+
+        INDArray f = list.get(0).getFeatures();
+        INDArray exp = net.output(f);
+        INDArray out = quantized.output(f);
+        assertArrayEquals(exp.shape(), out.shape());
+        double maxDiff = Transforms.abs(exp.sub(out), false).maxNumber().doubleValue();
+        assertTrue("Max diff: " + maxDiff, maxDiff < 0.05);
+        //Dequantized weights are cached after the first forward pass
+        assertEquals(out, quantized.output(f));
+
+        //Weight-only quantization, without calibration
+        MultiLayerNetwork weightOnly = PostTrainingQuantizer.quantize(net);
+        assertTrue(Transforms.abs(exp.sub(weightOnly.output(f)), false).maxNumber().doubleValue() < 0.05);
+
+        QuantizationReport report = PostTrainingQuantizer.compare(net, quantized, iter);
+        assertEquals(32, report.getNumExamples());
+        assertTrue(report.getTop1Agreement() > 0.8);
+        assertEquals(4, report.getWeightMaxAbsError().size());
+        //Float weights -> int8 weights plus one float scale per output channel
+        assertEquals(report.getOriginalWeightBytes(), 4 * (report.getQuantizedWeightBytes() - 4 * (4 + 8 + 3 + 10)));
+        assertFalse(Double.isNaN(report.getOriginalAccuracy()));
+        assertFalse(Double.isNaN(report.getQuantizedAccuracy()));
+        assertNotNull(report.toString());
+
+        //Save and restore
+        File file = new File(testDir.newFolder(), "quantized.zip");
+        ModelSerializer.writeModel(quantized, file, false);
+        MultiLayerNetwork restored = ModelSerializer.restoreMultiLayerNetwork(file, false);
+        assertEquals(quantized.getLayerWiseConfigurations(), restored.getLayerWiseConfigurations());
+        assertEquals(quantized.params(), restored.params());
+        assertEquals(out, restored.output(f));
+    }
+
+    @Test
+    public void testQuantizedLayerNotTrainable() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        MultiLayerNetwork quantized = PostTrainingQuantizer.quantize(net);
+        INDArray f = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray l = Nd4j.zeros(DataType.FLOAT, 3, 3);
+        l.getColumn(0).assign(1.0);
+        try {
+            quantized.fit(new DataSet(f, l));
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("inference only"));
+        }
+    }
+
+    @Test
+    public void testQuantizedLayerComputationGraph() {
+        DenseLayer dense = new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build();
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("q", new QuantizedLayer(dense, 0.0), "in")
+                .addLayer("out", new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX).build(), "q")
+                .setOutputs("out")
+                .build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        try {
+            cg.init();
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not supported in ComputationGraph"));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.rnn;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.point;
+
+public class RnnStateStoreTest extends BaseDL4JTest {
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(3).nOut(6).activation(Activation.TANH).build())
+                .layer(new SimpleRnn.Builder().nIn(6).nOut(5).activation(Activation.TANH).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(4).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    @Test
+    public void testBatchedStreamsMatchSingleStream() {
+        MultiLayerNetwork net = getNet();
+        int tsLength = 6;
+        INDArray inA = Nd4j.rand(DataType.DOUBLE, 1, 3, tsLength);
+        INDArray inB = Nd4j.rand(DataType.DOUBLE, 1, 3, tsLength);
+
+        //Expected: each stream processed separately, using the state stored in the network
+        INDArray[] expA = new INDArray[tsLength];
+        INDArray[] expB = new INDArray[tsLength];
+        net.rnnClearPreviousState();
+        for (int t = 0; t < tsLength; t++) {
+            expA[t] = net.rnnTimeStep(inA.get(all(), all(), point(t)).reshape(1, 3));
+        }
+        net.rnnClearPreviousState();
+        for (int t = 0; t < tsLength; t++) {
+            //Stream B has no input at time step 2: it should just skip that step
+            if (t == 2)
+                continue;
+            expB[t] = net.rnnTimeStep(inB.get(all(), all(), point(t)).reshape(1, 3));
+        }
+        net.rnnClearPreviousState();
+
+        RnnStateStore store = new RnnStateStore(net, 4);
+        RnnStateHandle a = store.open();
+        RnnStateHandle b = store.open();
+        assertEquals(2, store.numOpen());
+
+        for (int t = 0; t < tsLength; t++) {
+            //Streams in reverse order on odd steps: order in the batch should not matter
+            boolean rev = t % 2 == 1;
+            INDArray rowA = inA.get(all(), all(), point(t)).reshape(1, 3);
+            INDArray rowB = inB.get(all(), all(), point(t)).reshape(1, 3);
+            INDArray in = rev ? Nd4j.vstack(rowB, rowA) : Nd4j.vstack(rowA, rowB);
+            INDArray mask = Nd4j.ones(DataType.DOUBLE, 2);
+            if (t == 2)
+                mask.putScalar(rev ? 0 : 1, 0.0);
+
+            INDArray out = store.timeStep(rev ? Arrays.asList(b, a) : Arrays.asList(a, b), in, mask);
+            assertArrayEquals(new long[]{2, 4}, out.shape());
+
+            INDArray outA = out.getRow(rev ? 1 : 0, true);
+            INDArray outB = out.getRow(rev ? 0 : 1, true);
+            assertEquals(expA[t], outA);
+            if (t == 2) {
+                assertEquals(Nd4j.zeros(DataType.DOUBLE, 1, 4), outB);
+            } else {
+                assertEquals(expB[t], outB);
+            }
+        }
+
+        //Network itself should not hold any state
+        assertTrue(net.rnnGetPreviousState(0).isEmpty());
+
+        //Reset, and single stream processing
+        a.reset();
+        INDArray out = store.timeStep(Collections.singletonList(a), inA.get(all(), all(), point(0)).reshape(1, 3));
+        assertEquals(expA[0], out);
+
+        //Released slots should be reused, with zero state
+        b.close();
+        assertTrue(b.isClosed());
+        assertEquals(1, store.numOpen());
+        RnnStateHandle c = store.open();
+        assertEquals(b.getSlot(), c.getSlot());
+        for (INDArray arr : c.getState().get("0").values()) {
+            assertEquals(0.0, arr.sumNumber().doubleValue(), 0.0);
+        }
+
+        try {
+            store.timeStep(Collections.singletonList(b), inB.get(all(), all(), point(0)).reshape(1, 3));
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("closed"));
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        RnnStateStore store = new RnnStateStore(getNet(), 2);
+        store.open();
+        RnnStateHandle h = store.open();
+        try {
+            store.open();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("slots"));
+        }
+        h.close();
+        assertNotNull(store.open());
+    }
+
+    @Test
+    public void testComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("lstm", new LSTM.Builder().nOut(5).activation(Activation.TANH).build(), "in")
+                .addLayer("out", new RnnOutputLayer.Builder().nOut(4).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "lstm")
+                .setOutputs("out")
+                .setInputTypes(InputType.recurrent(3))
+                .build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 3, 3, 4);
+        cg.rnnClearPreviousState();
+        INDArray[] exp = new INDArray[4];
+        for (int t = 0; t < 4; t++) {
+            exp[t] = cg.rnnTimeStep(in.get(all(), all(), point(t)))[0];
+        }
+        cg.rnnClearPreviousState();
+
+        RnnStateStore store = new RnnStateStore(cg, 8);
+        RnnStateHandle h0 = store.open();
+        RnnStateHandle h1 = store.open();
+        RnnStateHandle h2 = store.open();
+        for (int t = 0; t < 4; t++) {
+            INDArray[] out = store.timeStep(Arrays.asList(h0, h1, h2), new INDArray[]{in.get(all(), all(), point(t))}, null);
+            assertEquals(exp[t], out[0]);
+        }
+        assertTrue(h0.getState().containsKey("lstm"));
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class StructuredPruningTest extends BaseDL4JTest {
+
+    private static MultiLayerNetwork getCnnNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .activation(Activation.TANH)
+                .convolutionMode(ConvolutionMode.Same)
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).stride(1, 1).nOut(4).build())
+                .layer(new BatchNormalization.Builder().build())
+                .layer(new SubsamplingLayer.Builder().poolingType(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).stride(1, 1).nOut(6).build())
+                .layer(new DenseLayer.Builder().nOut(10).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.convolutional(8, 8, 2))
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        //Non-trivial batch norm parameters
+        net.getLayer(1).getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).assign(Nd4j.rand(DataType.DOUBLE, 1, 4));
+        net.getLayer(1).getParam(BatchNormalizationParamInitializer.GLOBAL_LOG_STD).assign(Nd4j.rand(DataType.DOUBLE, 1, 4).subi(0.5));
+        net.getLayer(1).getParam(BatchNormalizationParamInitializer.BETA).assign(Nd4j.rand(DataType.DOUBLE, 1, 4));
+        return net;
+    }
+
+    @Test
+    public void testPruneMultiLayerNetworkThreshold() {
+        MultiLayerNetwork net = getCnnNetwork();
+
+        //Zero out filters 1 and 3 of layer 0 (and their downstream contributions to layer 3)
+        INDArray w0 = net.getLayer(0).getParam("W");
+        INDArray w3 = net.getLayer(3).getParam("W");
+        for (int c : new int[]{1, 3}) {
+            w0.get(NDArrayIndex.point(c), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()).assign(0);
+            w3.get(NDArrayIndex.all(), NDArrayIndex.point(c), NDArrayIndex.all(), NDArrayIndex.all()).assign(0);
+        }
+        //Zero out filters 0, 2, 5 of layer 3 (and their inputs to the dense layer: NCHW flattening, 4x4 spatial)
+        INDArray w4 = net.getLayer(4).getParam("W");
+        for (int c : new int[]{0, 2, 5}) {
+            w3.get(NDArrayIndex.point(c), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()).assign(0);
+            w4.get(NDArrayIndex.interval(c * 16, (c + 1) * 16), NDArrayIndex.all()).assign(0);
+        }
+        //Zero out units 7 and 8 of the dense layer
+        INDArray w5 = net.getLayer(5).getParam("W");
+        for (int u : new int[]{7, 8}) {
+            w4.getColumn(u).assign(0);
+            w5.getRow(u).assign(0);
+        }
+
+        INDArray origParams = net.params().dup();
+        MultiLayerNetwork pruned = new StructuredPruning.Builder(net)
+                .criterion(StructuredPruning.Criterion.L1_NORM)
+                .threshold(1e-6)
+                .build();
+        assertEquals(origParams, net.params());
+
+        assertEquals(2, ((ConvolutionLayer) pruned.getLayer(0).conf().getLayer()).getNOut());
+        assertEquals(2, ((BatchNormalization) pruned.getLayer(1).conf().getLayer()).getNOut());
+        assertEquals(2, ((ConvolutionLayer) pruned.getLayer(3).conf().getLayer()).getNIn());
+        assertEquals(3, ((ConvolutionLayer) pruned.getLayer(3).conf().getLayer()).getNOut());
+        assertEquals(3, ((CnnToFeedForwardPreProcessor) pruned.getLayerWiseConfigurations().getInputPreProcess(4)).getNumChannels());
+        assertEquals(48, ((DenseLayer) pruned.getLayer(4).conf().getLayer()).getNIn());
+        assertEquals(8, ((DenseLayer) pruned.getLayer(4).conf().getLayer()).getNOut());
+        assertEquals(8, ((OutputLayer) pruned.getLayer(5).conf().getLayer()).getNIn());
+        assertArrayEquals(new long[]{1, 2}, pruned.getLayer(1).getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).shape());
+        assertEquals(net.getLayer(1).getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).getDouble(2), pruned.getLayer(1).getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).getDouble(1), 0.0);
+        assertTrue(pruned.numParams() < net.numParams());
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 3, 2, 8, 8);
+        assertTrue(net.output(in).equalsWithEps(pruned.output(in), 1e-8));
+
+        //Pruned network can be trained
+        INDArray labels = Nd4j.zeros(DataType.DOUBLE, 3, 3);
+        labels.getColumn(0).assign(1);
+        pruned.fit(new DataSet(in, labels));
+    }
+
+    @Test
+    public void testPruneFraction() {
+        MultiLayerNetwork net = getCnnNetwork();
+        MultiLayerNetwork pruned = new StructuredPruning.Builder(net)
+                .criterion(StructuredPruning.Criterion.L2_NORM)
+                .pruneFraction(0.5)
+                .pruneLayers(0)
+                .build();
+
+        assertEquals(2, ((ConvolutionLayer) pruned.getLayer(0).conf().getLayer()).getNOut());
+        assertEquals(6, ((ConvolutionLayer) pruned.getLayer(3).conf().getLayer()).getNOut());
+        assertEquals(10, ((DenseLayer) pruned.getLayer(4).conf().getLayer()).getNOut());
+
+        //Surviving filters are those with the largest L2 norm, in their original order
+        INDArray w0 = net.getLayer(0).getParam("W");
+        final double[] norms = w0.norm2(1, 2, 3).toDoubleVector();
+        Integer[] order = {0, 1, 2, 3};
+        Arrays.sort(order, Collections.reverseOrder(new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(norms[o1], norms[o2]);
+            }
+        }));
+        int[] keep = {Math.min(order[0], order[1]), Math.max(order[0], order[1])};
+        INDArray pw0 = pruned.getLayer(0).getParam("W");
+        INDArray pw3 = pruned.getLayer(3).getParam("W");
+        for (int i = 0; i < 2; i++) {
+            assertEquals(w0.get(NDArrayIndex.point(keep[i]), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()),
+                    pw0.get(NDArrayIndex.point(i), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()));
+            assertEquals(net.getLayer(3).getParam("W").get(NDArrayIndex.all(), NDArrayIndex.point(keep[i]), NDArrayIndex.all(), NDArrayIndex.all()),
+                    pw3.get(NDArrayIndex.all(), NDArrayIndex.point(i), NDArrayIndex.all(), NDArrayIndex.all()));
+            assertEquals(net.getLayer(1).getParam(BatchNormalizationParamInitializer.BETA).getDouble(keep[i]), pruned.getLayer(1).getParam(BatchNormalizationParamInitializer.BETA).getDouble(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testPruneMeanActivation() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.RELU).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        //Unit 2 is never active
+        net.getLayer(0).getParam("W").getColumn(2).assign(0);
+        net.getLayer(0).getParam("b").putScalar(2, -1.0);
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 10, 4);
+        INDArray labels = Nd4j.zeros(DataType.DOUBLE, 10, 3);
+        MultiLayerNetwork pruned = new StructuredPruning.Builder(net)
+                .criterion(StructuredPruning.Criterion.MEAN_ACTIVATION)
+                .saliencyData(new ExistingDataSetIterator(Collections.singletonList(new DataSet(in, labels))))
+                .threshold(1e-8)
+                .build();
+
+        assertEquals(4, ((DenseLayer) pruned.getLayer(0).conf().getLayer()).getNOut());
+        assertEquals(4, ((OutputLayer) pruned.getLayer(1).conf().getLayer()).getNIn());
+        assertEquals(net.output(in), pruned.output(in));
+    }
+
+    @Test
+    public void testPruneComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .activation(Activation.TANH)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("d1", new DenseLayer.Builder().nIn(3).nOut(6).build(), "in")
+                .addLayer("d2", new DenseLayer.Builder().nIn(3).nOut(4).build(), "in")
+                .addVertex("merge", new MergeVertex(), "d2", "d1")
+                .addLayer("d3", new DenseLayer.Builder().nIn(10).nOut(5).build(), "merge")
+                .addLayer("d4", new DenseLayer.Builder().nIn(3).nOut(5).build(), "in")
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d3", "d4")
+                .addLayer("out", new OutputLayer.Builder().nIn(5).nOut(2).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "add")
+                .setOutputs("out")
+                .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        //Units 2 and 4 of d1 are unused: these are at positions 6 and 8 of the merge vertex output
+        INDArray w1 = net.getLayer("d1").getParam("W");
+        INDArray w3 = net.getLayer("d3").getParam("W");
+        for (int u : new int[]{2, 4}) {
+            w1.getColumn(u).assign(0);
+            w3.getRow(4 + u).assign(0);
+        }
+
+        ComputationGraph pruned = new StructuredPruning.GraphBuilder(net)
+                .threshold(1e-6)
+                .build();
+
+        assertEquals(4, ((DenseLayer) pruned.getLayer("d1").conf().getLayer()).getNOut());
+        assertEquals(4, ((DenseLayer) pruned.getLayer("d2").conf().getLayer()).getNOut());
+        assertEquals(8, ((DenseLayer) pruned.getLayer("d3").conf().getLayer()).getNIn());
+        //d3 and d4 feed into an element-wise vertex: skipped
+        assertEquals(5, ((DenseLayer) pruned.getLayer("d3").conf().getLayer()).getNOut());
+        assertEquals(5, ((DenseLayer) pruned.getLayer("d4").conf().getLayer()).getNOut());
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 4, 3);
+        assertTrue(net.outputSingle(in).equalsWithEps(pruned.outputSingle(in), 1e-8));
+
+        try {
+            new StructuredPruning.GraphBuilder(net).pruneFraction(0.5).pruneLayers("d4").build();
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ElementWiseVertex"));
+        }
+    }
+}
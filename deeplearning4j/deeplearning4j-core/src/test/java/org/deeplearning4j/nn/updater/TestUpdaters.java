@@ -22,6 +22,7 @@ import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MixedPrecision;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.*;
@@ -39,6 +40,7 @@ import org.junit.Test;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.*;
 import org.nd4j.linalg.learning.config.*;
@@ -1105,4 +1107,95 @@ public class TestUpdaters extends BaseDL4JTest {
         INDArray expView3 = view.get(interval(0,0,true), interval(start3, start3 + length3));
         assertEquals(expView3, l.get(2));
     }
+
+    @Test
+    public void testMixedPrecision() {
+        for (DataType dt : new DataType[]{DataType.HALF, DataType.BFLOAT16}) {
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                    .seed(12345)
+                    .updater(new Adam(1e-2))
+                    .mixedPrecision(new MixedPrecision(dt))
+                    .list()
+                    .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build())
+                    .layer(new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                            .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                    .build();
+            assertEquals(dt, conf.getDataType());
+            assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+
+            INDArray f = Nd4j.rand(DataType.FLOAT, 8, 4);
+            INDArray l = Nd4j.create(DataType.FLOAT, 8, 3);
+            for (int i = 0; i < 8; i++) {
+                l.putScalar(i, i % 3, 1.0);
+            }
+
+            for (int i = 0; i < 5; i++) {
+                net.fit(f, l);
+            }
+
+            BaseMultiLayerUpdater u = (BaseMultiLayerUpdater) net.getUpdater();
+            assertEquals(dt, net.params().dataType());
+            assertEquals(DataType.FLOAT, u.getMasterParams().dataType());
+            assertEquals(DataType.FLOAT, u.getStateViewArray().dataType());
+            assertEquals(u.getMasterParams().castTo(dt), net.params());
+            assertTrue(u.getLossScale() > 0 && u.getLossScale() <= MixedPrecision.DEFAULT_INITIAL_LOSS_SCALE);
+
+            //Parameters set outside of the updater should be picked up by the master copy
+            INDArray newParams = Nd4j.rand(dt, net.params().shape());
+            net.setParams(newParams);
+            assertEquals(newParams.castTo(DataType.FLOAT), u.getMasterParams());
+            net.setParam("0_b", Nd4j.ones(dt, 1, 5));
+            assertEquals(Nd4j.ones(DataType.FLOAT, 1, 5), u.getMasterParams().get(interval(0, 0, true), interval(20, 25)));
+            net.params().muli(2.0);
+            net.setParams(net.params());
+            assertEquals(net.params().castTo(DataType.FLOAT), u.getMasterParams());
+            newParams = net.params().dup();
+            net.fit(f, l);
+            assertEquals(u.getMasterParams().castTo(dt), net.params());
+            assertNotEquals(newParams, net.params());
+        }
+    }
+
+    @Test
+    public void testMixedPrecisionLossScaleOverflow() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .mixedPrecision(new MixedPrecision(DataType.HALF, 1e30, 2.0, 0.5, 2))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build(), "in")
+                .addLayer("1", new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "0")
+                .setOutputs("1")
+                .build();
+        assertEquals(DataType.HALF, conf.getDataType());
+        assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        INDArray f = Nd4j.rand(DataType.FLOAT, 8, 4);
+        INDArray l = Nd4j.create(DataType.FLOAT, 8, 3);
+        for (int i = 0; i < 8; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+
+        //Loss scale of 1e30 always overflows in FP16: update should be skipped, and loss scale reduced
+        INDArray paramsBefore = net.params().dup();
+        net.fit(new DataSet(f, l));
+        ComputationGraphUpdater u = net.getUpdater();
+        assertEquals(paramsBefore, net.params());
+        assertEquals(0.5e30, u.getLossScale(), 1e20);
+
+        //After backing off to a reasonable scale, updates should be applied, and the scale increased every 2 iterations
+        u.setLossScale(1024);
+        net.fit(new DataSet(f, l));
+        net.fit(new DataSet(f, l));
+        assertNotEquals(paramsBefore, net.params());
+        assertEquals(2048, u.getLossScale(), 0.0);
+    }
 }
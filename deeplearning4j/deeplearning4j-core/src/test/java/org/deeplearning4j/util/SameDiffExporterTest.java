@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SameDiffExporterTest extends BaseDL4JTest {
+
+    @Test
+    public void testExportMultiLayerNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .convolutionMode(ConvolutionMode.Same)
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).stride(1, 1).nOut(4).activation(Activation.RELU).build())
+                .layer(new BatchNormalization.Builder().build())
+                .layer(new SubsamplingLayer.Builder().poolingType(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).stride(1, 1).nOut(3).activation(Activation.TANH)
+                        .convolutionMode(ConvolutionMode.Truncate).build())
+                .layer(new SubsamplingLayer.Builder().poolingType(SubsamplingLayer.PoolingType.AVG).kernelSize(2, 2).stride(1, 1).build())
+                .layer(new DenseLayer.Builder().nOut(10).activation(Activation.SIGMOID).build())
+                .layer(new DropoutLayer.Builder(0.5).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.convolutional(8, 8, 2))
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        //Fit to get non-trivial batch norm global mean/variance estimates
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 2, 8, 8);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, 5, 3);
+        for (int i = 0; i < 5; i++) {
+            l.putScalar(i, i % 3, 1.0);
+        }
+        for (int i = 0; i < 3; i++) {
+            net.fit(new DataSet(f, l));
+        }
+
+        SameDiff sd = SameDiffExporter.export(net, InputType.convolutional(8, 8, 2));
+
+        INDArray exp = net.output(f);
+        INDArray out = sd.outputSingle(Collections.singletonMap(SameDiffExporter.INPUT_NAME, f), SameDiffExporter.OUTPUT_NAME);
+        assertEquals(exp, out);
+
+        //Parameters are shared with the network, not copied
+        assertEquals(VariableType.ARRAY, sd.getVariable("5_W").getVariableType());
+        net.params().muli(2.0);
+        exp = net.output(f);
+        out = sd.outputSingle(Collections.singletonMap(SameDiffExporter.INPUT_NAME, f), SameDiffExporter.OUTPUT_NAME);
+        assertEquals(exp, out);
+        assertEquals(net.params(), sd.getArrForVarName(SameDiffExporter.PARAMS_NAME));
+    }
+
+    @Test
+    public void testExportComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .activation(Activation.TANH)
+                .graphBuilder()
+                .addInputs("in1", "in2")
+                .addLayer("d1", new DenseLayer.Builder().nIn(4).nOut(5).build(), "in1")
+                .addLayer("d2", new DenseLayer.Builder().nIn(3).nOut(5).activation(Activation.LEAKYRELU).build(), "in2")
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d1", "d2")
+                .addVertex("avg", new ElementWiseVertex(ElementWiseVertex.Op.Average), "d1", "d2", "add")
+                .addVertex("merge", new MergeVertex(), "add", "avg")
+                .addLayer("bn", new BatchNormalization.Builder().nOut(10).build(), "merge")
+                .addLayer("out", new OutputLayer.Builder().nIn(10).nOut(2).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "bn")
+                .setOutputs("out")
+                .build();
+
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        INDArray in1 = Nd4j.rand(DataType.DOUBLE, 3, 4);
+        INDArray in2 = Nd4j.rand(DataType.DOUBLE, 3, 3);
+        INDArray exp = net.outputSingle(in1, in2);
+
+        SameDiff sd = SameDiffExporter.export(net, InputType.feedForward(4), InputType.feedForward(3));
+        Map<String, INDArray> ph = new HashMap<>();
+        ph.put("in1", in1);
+        ph.put("in2", in2);
+        Map<String, INDArray> out = sd.output(ph, "merge", "out");
+        assertEquals(exp, out.get("out"));
+
+        Map<String, INDArray> ff = net.feedForward(new INDArray[]{in1, in2}, false);
+        assertEquals(ff.get("merge"), out.get("merge"));
+
+        //Parameters are shared with the network, not copied
+        net.params().muli(2.0);
+        assertEquals(net.outputSingle(in1, in2), sd.output(ph, "out").get("out"));
+    }
+
+    @Test
+    public void testUnsupportedLayer() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .list()
+                .layer(new SimpleRnn.Builder().nIn(3).nOut(3).build())
+                .layer(new RnnOutputLayer.Builder().nIn(3).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        try {
+            SameDiffExporter.export(net, InputType.recurrent(3));
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("SimpleRnn"));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.api.layers;
+
+import org.deeplearning4j.nn.api.Layer;
+
+/**
+ * A layer for which the gradient of some parameters is row-sparse: after a backward pass, only a (usually small) subset
+ * of the rows of the parameter's gradient can be non-zero - for example, the weight rows of an embedding layer
+ * for the indices present in the minibatch.<br>
+ * The updater uses this to restrict the updater and regularization to the touched rows only. Implementations keep all
+ * other rows of the gradient view array at zero between iterations, so that the parameter update leaves them unchanged.
+ */
+public interface SparseGradientLayer extends Layer {
+
+    /**
+     * @param paramName Name of the parameter
+     * @return True if the gradient of the specified parameter is row-sparse (for the current configuration)
+     */
+    boolean isSparseGradient(String paramName);
+
+    /**
+     * Get the row indices of the specified parameter's gradient that may be non-zero after the last backward pass.
+     *
+     * @param paramName Name of the parameter
+     * @return Sorted, unique row indices; or null if these are not available (no backward pass has been done, or the
+     * parameter is not row-sparse)
+     */
+    int[] getSparseGradientRows(String paramName);
+
+    /**
+     * Notify the layer that the gradient view array for the specified parameter may have been modified outside of the
+     * rows returned by {@link #getSparseGradientRows(String)} - for example, when a dense updater was applied to it.
+     * The full gradient array will then be zeroed before the next backward pass.
+     *
+     * @param paramName Name of the parameter
+     */
+    void clearSparseGradientRows(String paramName);
+}
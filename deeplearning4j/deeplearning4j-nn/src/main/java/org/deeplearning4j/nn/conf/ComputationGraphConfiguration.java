@@ -88,6 +88,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for 1.0.0-beta3 and earlier nets
 
+    @Getter
+    @Setter
+    protected MixedPrecision mixedPrecision;        //Null: mixed precision training is disabled
+
     protected boolean validateOutputLayerConfig = true;     //Default for 1.0.0-beta3 and earlier nets
 
     /**
@@ -103,6 +107,12 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
 
+    /**
+     * Gradient checkpointing: names of the vertices that segment the graph for activation recomputation.
+     * Null or empty: gradient checkpointing is disabled
+     */
+    protected List<String> gradientCheckpoints;
+
     protected NeuralNetConfiguration defaultConfiguration;
 
     //Counter for the number of parameter updates so far
@@ -336,6 +346,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.backpropType = backpropType;
         conf.tbpttFwdLength = tbpttFwdLength;
         conf.tbpttBackLength = tbpttBackLength;
+        conf.gradientCheckpoints = (gradientCheckpoints == null ? null : new ArrayList<>(gradientCheckpoints));
         conf.defaultConfiguration = defaultConfiguration.clone();
         conf.trainingWorkspaceMode = trainingWorkspaceMode;
         conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
@@ -343,6 +354,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.defaultConfiguration.cacheMode = this.cacheMode;
         conf.validateOutputLayerConfig = this.validateOutputLayerConfig;
         conf.dataType = this.dataType;
+        conf.mixedPrecision = this.mixedPrecision;
 
         return conf;
     }
@@ -716,6 +728,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected BackpropType backpropType = BackpropType.Standard;
         protected int tbpttFwdLength = DEFAULT_TBPTT_LENGTH;
         protected int tbpttBackLength = DEFAULT_TBPTT_LENGTH;
+        protected List<String> gradientCheckpoints = new ArrayList<>();
 
         protected Map<String, InputPreProcessor> inputPreProcessors = new LinkedHashMap<>();
 
@@ -744,6 +757,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            if (clonedConf.getGradientCheckpoints() != null) {
+                this.gradientCheckpoints = clonedConf.getGradientCheckpoints();
+            }
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -938,6 +954,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         public GraphBuilder removeVertex(String vertexName, boolean removeConnections) {
             vertices.remove(vertexName);
             vertexInputs.remove(vertexName);
+            if (removeConnections) {
+                gradientCheckpoints.remove(vertexName);
+            }
             if (networkInputs.contains(vertexName)) {
                 networkInputs.remove(vertexName);
             }
@@ -1135,6 +1154,26 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable gradient checkpointing (activation recomputation) for training, using the specified vertices as
+         * checkpoints.<br>
+         * The checkpoint vertices split the graph (in topological order) into segments. During the forward pass for
+         * training, only the activations that are used across segment boundaries (usually, the activations of the
+         * checkpoint vertices) are kept; the activations within each segment are discarded, and are recomputed one
+         * segment at a time during the backward pass. This trades additional computation (approximately one extra
+         * forward pass) for a reduced activation memory footprint during training.<br>
+         * For best results, checkpoints should be vertices that all paths through the graph pass through - for example,
+         * the output of each residual block in a ResNet. Activations on paths that skip over a checkpoint are also kept.<br>
+         * Gradient checkpointing is only supported for standard backprop (not truncated BPTT). It has no effect on
+         * inference.
+         *
+         * @param vertexNames Names of the checkpoint vertices
+         */
+        public GraphBuilder gradientCheckpoints(String... vertexNames) {
+            this.gradientCheckpoints = new ArrayList<>(Arrays.asList(vertexNames));
+            return this;
+        }
+
         /**
          * For the (perhaps partially constructed) network configuration, return a map of activation sizes for each
          * layer and vertex in the graph.<br>
@@ -1182,6 +1221,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.backpropType = backpropType;
             conf.tbpttBackLength = tbpttBackLength;
             conf.tbpttFwdLength = tbpttFwdLength;
+            conf.gradientCheckpoints = (gradientCheckpoints.isEmpty() ? null : new ArrayList<>(gradientCheckpoints));
 
             conf.networkInputs = networkInputs;
             conf.networkOutputs = networkOutputs;
@@ -1193,6 +1233,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.cacheMode = globalConfiguration.cacheMode;
             conf.validateOutputLayerConfig = validateOutputConfig;
             conf.dataType = globalConfiguration.dataType;
+            conf.mixedPrecision = globalConfiguration.mixedPrecision;
 
             conf.defaultConfiguration = globalConfiguration.build();
 
@@ -1247,6 +1288,19 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
                 }
             }
 
+            if(!gradientCheckpoints.isEmpty()){
+                if(backpropType != BackpropType.Standard){
+                    throw new IllegalStateException("Invalid network configuration: gradient checkpointing can only be" +
+                            " used with standard backprop, got backprop type " + backpropType);
+                }
+                for(String s : gradientCheckpoints){
+                    if(!vertices.containsKey(s)){
+                        throw new IllegalStateException("Invalid network configuration: gradient checkpoint vertex \"" + s
+                                + "\" does not exist in the network");
+                    }
+                }
+            }
+
             if(backpropType == BackpropType.TruncatedBPTT && validateTbpttConfig) {
                 //Check for invalid combination - tbptt plus LastTimeStepLayer or
                 for(Map.Entry<String,GraphVertex> e : vertices.entrySet()){
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf;
+
+import lombok.Data;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+
+/**
+ * Configuration for mixed precision training.<br>
+ * When enabled, the network parameters, activations and gradients use a 16-bit floating point type
+ * ({@link DataType#HALF} or {@link DataType#BFLOAT16}) for the forward and backward passes, while the updater keeps an
+ * FP32 master copy of the parameters, gradients and updater state. Each iteration, the low precision gradients are
+ * converted to FP32, the updater is applied to the master copy, and the result is written back to the network
+ * parameters.<br>
+ * To avoid underflow of small gradient values in 16-bit precision, the loss gradient is multiplied by a (dynamic) loss
+ * scale before backpropagation, and the gradients are divided by the same value in FP32 before the updater is applied.
+ * If the scaled gradients overflow (contain NaN or infinite values), the parameter update is skipped and the loss scale
+ * is reduced by the backoff factor. After every growthInterval consecutive iterations without overflow, the loss scale
+ * is increased by the growth factor.<br>
+ * Note that the gradients returned by the network (for example, from {@code computeGradientAndScore()}) are scaled by
+ * the current loss scale when mixed precision training is enabled.
+ */
+@Data
+public class MixedPrecision implements Serializable {
+
+    //Note that DL4J loss gradients are summed (not averaged) over the minibatch, hence a lower default than is typical
+    public static final double DEFAULT_INITIAL_LOSS_SCALE = 1024.0;
+    public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+    public static final double DEFAULT_BACKOFF_FACTOR = 0.5;
+    public static final int DEFAULT_GROWTH_INTERVAL = 2000;
+
+    private DataType computeDataType;
+    private double initialLossScale;
+    private double growthFactor;
+    private double backoffFactor;
+    private int growthInterval;
+
+    /**
+     * Create a mixed precision configuration with the default (dynamic) loss scaling configuration
+     *
+     * @param computeDataType Data type for the forward and backward passes: HALF or BFLOAT16
+     */
+    public MixedPrecision(@NonNull DataType computeDataType) {
+        this(computeDataType, DEFAULT_INITIAL_LOSS_SCALE, DEFAULT_GROWTH_FACTOR, DEFAULT_BACKOFF_FACTOR, DEFAULT_GROWTH_INTERVAL);
+    }
+
+    /**
+     * @param computeDataType  Data type for the forward and backward passes: HALF or BFLOAT16
+     * @param initialLossScale Initial loss scale. Must be positive
+     * @param growthFactor     Factor to increase the loss scale by after growthInterval iterations without overflow. Use
+     *                         1.0 for a static loss scale
+     * @param backoffFactor    Factor to decrease the loss scale by when an overflow is detected. Must be in range (0,1]
+     * @param growthInterval   Number of consecutive iterations without overflow before the loss scale is increased
+     */
+    public MixedPrecision(@JsonProperty("computeDataType") @NonNull DataType computeDataType,
+                          @JsonProperty("initialLossScale") double initialLossScale,
+                          @JsonProperty("growthFactor") double growthFactor,
+                          @JsonProperty("backoffFactor") double backoffFactor,
+                          @JsonProperty("growthInterval") int growthInterval) {
+        Preconditions.checkArgument(computeDataType == DataType.HALF || computeDataType == DataType.BFLOAT16,
+                "Mixed precision compute data type must be HALF or BFLOAT16, got %s", computeDataType);
+        Preconditions.checkArgument(initialLossScale > 0, "Initial loss scale must be positive, got %s", initialLossScale);
+        Preconditions.checkArgument(growthFactor >= 1.0, "Loss scale growth factor must be >= 1.0, got %s", growthFactor);
+        Preconditions.checkArgument(backoffFactor > 0 && backoffFactor <= 1.0, "Loss scale backoff factor must be in range (0,1], got %s", backoffFactor);
+        Preconditions.checkArgument(growthInterval > 0, "Loss scale growth interval must be positive, got %s", growthInterval);
+        this.computeDataType = computeDataType;
+        this.initialLossScale = initialLossScale;
+        this.growthFactor = growthFactor;
+        this.backoffFactor = backoffFactor;
+        this.growthInterval = growthInterval;
+    }
+
+    /**
+     * @return Data type used for the master copy of the parameters, gradients and updater state
+     */
+    @JsonIgnore
+    public DataType getMasterDataType() {
+        return DataType.FLOAT;
+    }
+}
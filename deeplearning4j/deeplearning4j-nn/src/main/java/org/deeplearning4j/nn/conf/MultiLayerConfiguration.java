@@ -82,6 +82,10 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for deserialization of beta3 and earlier nets
 
+    @Getter
+    @Setter
+    protected MixedPrecision mixedPrecision;        //Null: mixed precision training is disabled
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -393,6 +397,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.mixedPrecision = this.mixedPrecision;
 
             return clone;
 
@@ -479,6 +484,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
         protected DataType dataType;
+        protected MixedPrecision mixedPrecision;
         protected boolean overrideNinUponBuild = true;
 
 
@@ -644,6 +650,15 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Set the mixed precision training configuration. See {@link MixedPrecision} for details.
+         * @param mixedPrecision Mixed precision configuration. May be null (no mixed precision - default)
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision){
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
 
         public MultiLayerConfiguration build() {
             //Validate BackpropType setting
@@ -751,6 +766,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            conf.mixedPrecision = mixedPrecision;
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
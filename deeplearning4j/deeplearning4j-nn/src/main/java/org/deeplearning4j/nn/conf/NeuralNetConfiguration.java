@@ -255,6 +255,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                             .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
                             .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                             .dataType(globalConfig.dataType)
+                            .mixedPrecision(globalConfig.mixedPrecision)
                             .build();
         }
 
@@ -409,6 +410,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         protected boolean setIWM = false;
         protected CacheMode cacheMode = CacheMode.NONE;
         protected DataType dataType = DataType.FLOAT;
+        protected MixedPrecision mixedPrecision;
 
         protected ConvolutionMode convolutionMode = ConvolutionMode.Truncate;
         protected ConvolutionLayer.AlgoMode cudnnAlgoMode = ConvolutionLayer.AlgoMode.PREFER_FASTEST;
@@ -1077,6 +1079,22 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable mixed precision training: the forward and backward passes are done in the compute data type of the
+         * mixed precision configuration (HALF or BFLOAT16), while the updater keeps an FP32 master copy of the
+         * parameters and updater state, and uses dynamic loss scaling. See {@link MixedPrecision} for details.<br>
+         * Note that this sets the network DataType (see {@link #dataType(DataType)}) to the compute data type.
+         *
+         * @param mixedPrecision Mixed precision configuration. May be null (no mixed precision - default)
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision) {
+            this.mixedPrecision = mixedPrecision;
+            if (mixedPrecision != null) {
+                this.dataType = mixedPrecision.getComputeDataType();
+            }
+            return this;
+        }
+
         /**
          * Return a configuration based on this builder
          *
@@ -23,6 +23,7 @@ import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
 import org.deeplearning4j.nn.conf.memory.MemoryReport;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.nd4j.linalg.api.buffer.DataType;
@@ -103,6 +104,11 @@ public class LayerVertex extends GraphVertex {
         //Now, we need to work out if this vertex is an output vertex or not...
         boolean isOutput = graph.getConfiguration().getNetworkOutputs().contains(name);
 
+        if (layerConf.getLayer() instanceof QuantizedLayer) {
+            throw new UnsupportedOperationException("Quantized layers are not supported in ComputationGraph (layer \""
+                    + name + "\"): only MultiLayerNetwork can be quantized using PostTrainingQuantizer");
+        }
+
         org.deeplearning4j.nn.api.Layer layer =
                         layerConf.getLayer().instantiate(layerConf, null, idx, paramsView, initializeParams, networkDatatype);
 
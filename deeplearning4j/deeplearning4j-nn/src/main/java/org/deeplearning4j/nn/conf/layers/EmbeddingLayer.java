@@ -57,10 +57,12 @@ import java.util.Map;
 public class EmbeddingLayer extends FeedForwardLayer {
 
     private boolean hasBias = true; //Default for pre-0.9.2 implementations
+    private boolean sparseGradients = false;
 
     private EmbeddingLayer(Builder builder) {
         super(builder);
         this.hasBias = builder.hasBias;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -116,6 +118,13 @@ public class EmbeddingLayer extends FeedForwardLayer {
          */
         private boolean hasBias = false;
 
+        /**
+         * If true: only the weight rows for indices present in the minibatch are zeroed, accumulated and updated.
+         * False (default): the full weight gradient is used.
+         *
+         */
+        private boolean sparseGradients = false;
+
         public Builder(){
             //Default to Identity activation - i.e., don't inherit.
             //For example, if user sets ReLU as global default, they very likely don't intend to use it for Embedding layer also
@@ -133,6 +142,21 @@ public class EmbeddingLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: use row-sparse weight gradients. Only the rows of the weight matrix for the indices present in each
+         * minibatch are accumulated and passed through the updater, so the cost per iteration scales with the number of
+         * distinct indices in the minibatch rather than the vocabulary size. Updater state (such as Adam moments) for
+         * the rows that are not present is decayed lazily, the next time the row is seen. Regularization is likewise
+         * only applied to the rows present in the minibatch.<br>
+         * False (default): the full (dense) weight gradient is used.
+         *
+         * @param sparseGradients If true: use sparse weight gradients for this layer
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.sparseGradients = sparseGradients;
+            return this;
+        }
+
         @Override
         public Builder weightInit(IWeightInit weightInit) {
             if(weightInit instanceof WeightInitEmbedding){
@@ -60,6 +60,7 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
     private boolean hasBias = false;
     private boolean inferInputLength = false; // use input length as provided by input data
     private RNNFormat outputFormat = RNNFormat.NCW;       //Default value for older deserialized models
+    private boolean sparseGradients = false;
 
     private EmbeddingSequenceLayer(Builder builder) {
         super(builder);
@@ -67,6 +68,7 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
         this.inputLength = builder.inputLength;
         this.inferInputLength = builder.inferInputLength;
         this.outputFormat = builder.outputFormat;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -179,6 +181,12 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
 
         private RNNFormat outputFormat = RNNFormat.NCW;       //Default value for older deserialized models
 
+        /**
+         * If true: only the weight rows for indices present in the minibatch are zeroed, accumulated and updated.
+         *
+         */
+        private boolean sparseGradients = false;
+
         public Builder outputDataFormat(RNNFormat format){
             this.outputFormat = format;
             return this;
@@ -217,6 +225,19 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: use row-sparse weight gradients - only the weight rows for the indices present in the minibatch
+         * are accumulated and updated, with lazy decay of the updater state for the other rows.
+         * See {@link EmbeddingLayer.Builder#sparseGradients(boolean)} for details. False (default): dense gradients.
+         *
+         * @param sparseGradients If true: use sparse weight gradients for this layer
+         * @return Builder
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.setSparseGradients(sparseGradients);
+            return this;
+        }
+
         @Override
         public Builder weightInit(IWeightInit weightInit) {
             this.setWeightInitFn(weightInit);
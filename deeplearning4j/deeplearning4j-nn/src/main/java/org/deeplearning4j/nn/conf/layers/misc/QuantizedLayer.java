@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf.layers.misc;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.ToString;
+import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.params.QuantizedLayerParamInitializer;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.learning.config.NoOp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Inference-only wrapper for a DenseLayer, ConvolutionLayer or DepthwiseConvolution2D layer, that simulates int8
+ * post-training quantization (also known as "fake quantization").<br>
+ * The weight parameters of this layer hold the quantized weights, i.e., values of the form {@code q * weightScale}
+ * with {@code q} an integer in [-127, 127] and one symmetric scale per output channel. They are stored at the network
+ * data type, in the same way and with the same parameter keys as the underlying layer's parameters. The bias (if
+ * present) is kept at full precision.<br>
+ * If {@code inputScale > 0}, the layer input is quantized to int8 with this (calibrated) scale before the
+ * layer is applied, matching the numerics of an int8 inference runtime.<br>
+ * Note that the computation itself is performed at the network data type: a network with quantized layers requires
+ * the same memory, and is no faster, than the original network. It is intended for evaluating the accuracy of int8
+ * quantization, and for exporting the quantized weights (see
+ * {@link org.deeplearning4j.nn.quantization.PostTrainingQuantizer#quantizeWeights(org.deeplearning4j.nn.conf.layers.Layer, INDArray)},
+ * which recovers the int8 weights and scales exactly) to an int8 inference runtime.<br>
+ * Layers of this type are usually created using {@link org.deeplearning4j.nn.quantization.PostTrainingQuantizer}.
+ * They cannot be trained: backpropagation is not supported. They are supported in MultiLayerNetwork only, not in
+ * ComputationGraph.
+ */
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public class QuantizedLayer extends BaseLayer {
+
+    private FeedForwardLayer underlying;
+    private double inputScale;
+
+    //  We have to add an empty constructor for custom layers otherwise we will have errors when loading the model
+    protected QuantizedLayer() {}
+
+    /**
+     * @param underlying Configuration of the original (full precision) layer
+     * @param inputScale Scale for quantizing the layer input. 0 to not quantize the input
+     */
+    public QuantizedLayer(@NonNull FeedForwardLayer underlying, double inputScale) {
+        Preconditions.checkArgument(inputScale >= 0, "Input scale must be >= 0, got %s", inputScale);
+        this.underlying = underlying;
+        this.inputScale = inputScale;
+        this.layerName = underlying.getLayerName();
+        this.activationFn = underlying.getActivationFn();
+        //Inference only: no updater state or regularization for the parameters
+        this.iUpdater = new NoOp();
+        this.regularization = new ArrayList<>();
+        this.regularizationBias = new ArrayList<>();
+    }
+
+    /**
+     * @return True if the underlying layer is a convolution layer (standard or depthwise)
+     */
+    public boolean isConvolution() {
+        return underlying instanceof ConvolutionLayer;
+    }
+
+    @Override
+    public QuantizedLayer clone() {
+        QuantizedLayer clone = (QuantizedLayer) super.clone();
+        clone.underlying = (FeedForwardLayer) underlying.clone();
+        return clone;
+    }
+
+    @Override
+    public org.deeplearning4j.nn.api.Layer instantiate(NeuralNetConfiguration conf, Collection<TrainingListener> trainingListeners,
+                                                       int layerIndex, INDArray layerParamsView, boolean initializeParams,
+                                                       DataType networkDataType) {
+        org.deeplearning4j.nn.layers.QuantizedLayer ret = new org.deeplearning4j.nn.layers.QuantizedLayer(conf, networkDataType);
+        ret.setListeners(trainingListeners);
+        ret.setIndex(layerIndex);
+        ret.setParamsViewArray(layerParamsView);
+        Map<String, INDArray> paramTable = initializer().init(conf, layerParamsView, initializeParams);
+        ret.setParamTable(paramTable);
+        ret.setConf(conf);
+        return ret;
+    }
+
+    @Override
+    public ParamInitializer initializer() {
+        return QuantizedLayerParamInitializer.getInstance();
+    }
+
+    @Override
+    public InputType getOutputType(int layerIndex, InputType inputType) {
+        return underlying.getOutputType(layerIndex, inputType);
+    }
+
+    @Override
+    public void setNIn(InputType inputType, boolean override) {
+        underlying.setNIn(inputType, override);
+    }
+
+    @Override
+    public InputPreProcessor getPreProcessorForInputType(InputType inputType) {
+        return underlying.getPreProcessorForInputType(inputType);
+    }
+
+    @Override
+    public boolean isPretrainParam(String paramName) {
+        return false;
+    }
+
+    @Override
+    public LayerMemoryReport getMemoryReport(InputType inputType) {
+        InputType outputType = getOutputType(-1, inputType);
+        long numParams = initializer().numParams(this);
+
+        //The input is copied for input quantization
+        return new LayerMemoryReport.Builder(layerName, QuantizedLayer.class, inputType, outputType)
+                .standardMemory(numParams, 0)
+                .workingMemory(0, inputScale > 0 ? inputType.arrayElementsPerExample() : 0, 0, 0)
+                .cacheMemory(MemoryReport.CACHE_MODE_ALL_ZEROS, MemoryReport.CACHE_MODE_ALL_ZEROS)
+                .build();
+    }
+}
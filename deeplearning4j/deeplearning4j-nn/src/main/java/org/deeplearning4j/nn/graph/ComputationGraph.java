@@ -53,6 +53,7 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.nn.workspace.WorkspaceProfiler;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
@@ -78,6 +79,7 @@ import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.exception.ND4JArraySizeException;
+import org.nd4j.linalg.executors.ExecutorServiceProvider;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.heartbeat.Heartbeat;
 import org.nd4j.linalg.heartbeat.reports.Environment;
@@ -96,7 +98,12 @@ import org.nd4j.common.util.OneTimeLogger;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A ComputationGraph network is a neural network with arbitrary (directed acyclic graph) connection structure.
@@ -122,8 +129,20 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
 
+    protected transient WorkspaceProfiler workspaceProfiler;
+    protected Map<String, WorkspaceConfiguration> tunedWorkspaceConfigurations;
+
     private transient final AtomicLong occupiedBy = new AtomicLong(-1);
 
+    /**
+     * If non-null: pool used to execute independent vertices in parallel in the output methods.
+     * See {@link #setParallelInference(boolean)}
+     */
+    @Getter
+    protected transient ForkJoinPool parallelInferencePool;
+    //Helper (cuDNN etc) workspace pointers for parallel inference: these can't be shared between concurrently executing layers
+    private static final ThreadLocal<Map<String,Pointer>> PARALLEL_HELPER_WORKSPACES = new ThreadLocal<>();
+
     /**
      * Workspace for working memory for a single layer: forward pass and backward pass
      * Note that this is opened/closed once per op (activate/backpropGradient call)
@@ -144,6 +163,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      */
     protected static final String WS_OUTPUT_MEM = "WS_OUTPUT_MEM";
 
+    /**
+     * Workspace for the activations and activation gradients of a single segment, when gradient checkpointing is used.
+     * Opened and closed once per segment, both for the forward pass and for the recomputation during backprop
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
     protected final WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
     protected static final WorkspaceConfiguration WS_ALL_LAYERS_ACT_CONFIG = WorkspaceConfiguration.builder()
@@ -1363,6 +1388,13 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     .build();
         }
         workspaceMgr.setHelperWorkspacePointers(helperWorkspaces);
+        initTunedWorkspaces(configuration.getTrainingWorkspaceMode());
+
+        if(configuration.getGradientCheckpoints() != null && !configuration.getGradientCheckpoints().isEmpty()){
+            computeGradientAndScoreCheckpointed(workspaceMgr);
+            recordWorkspaces(Collections.singletonList(workspaceMgr));
+            return;
+        }
 
         boolean tbptt = configuration.getBackpropType() == BackpropType.TruncatedBPTT;
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
@@ -1425,9 +1457,340 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         for(GraphVertex gv : vertices){
             gv.clear();
         }
+        recordWorkspaces(Collections.singletonList(workspaceMgr));
+    }
+
+    /**
+     * Set the workspace profiler for this network. When set, workspace statistics are recorded (for the current thread)
+     * after each forward pass, backward pass and output call. Set to null to disable profiling.
+     *
+     * @param workspaceProfiler Workspace profiler to use. May be null
+     * @see WorkspaceProfiler
+     */
+    public void setWorkspaceProfiler(WorkspaceProfiler workspaceProfiler) {
+        this.workspaceProfiler = workspaceProfiler;
+    }
+
+    /**
+     * @return The workspace profiler for this network, if any (may be null)
+     */
+    public WorkspaceProfiler getWorkspaceProfiler() {
+        return workspaceProfiler;
+    }
+
+    /**
+     * Set the tuned workspace configurations, usually obtained from {@link WorkspaceProfiler#getTunedConfigurations()}.
+     * Workspaces that don't exist yet for the thread the network is used from are created using these configurations,
+     * hence are allocated with their final size, instead of learning their size over the first iterations.<br>
+     * Tuned workspace configurations are saved with the model by {@link org.deeplearning4j.util.ModelSerializer}
+     *
+     * @param tunedWorkspaceConfigurations Tuned configurations, keyed by workspace name. May be null
+     */
+    public void setTunedWorkspaceConfigurations(Map<String, WorkspaceConfiguration> tunedWorkspaceConfigurations) {
+        this.tunedWorkspaceConfigurations = tunedWorkspaceConfigurations;
+    }
+
+    /**
+     * @return The tuned workspace configurations for this network, if any (may be null)
+     * @see #setTunedWorkspaceConfigurations(Map)
+     */
+    public Map<String, WorkspaceConfiguration> getTunedWorkspaceConfigurations() {
+        return tunedWorkspaceConfigurations;
+    }
+
+    protected void initTunedWorkspaces(WorkspaceMode workspaceMode) {
+        if (tunedWorkspaceConfigurations != null && workspaceMode != WorkspaceMode.NONE) {
+            WorkspaceProfiler.initializeWorkspaces(tunedWorkspaceConfigurations);
+        }
+    }
+
+    protected void recordWorkspaces(List<LayerWorkspaceMgr> workspaceMgrs) {
+        if (workspaceProfiler != null) {
+            for (LayerWorkspaceMgr m : workspaceMgrs) {
+                workspaceProfiler.record(m);
+            }
+        }
     }
 
 
+    /**
+     * Calculate the gradients and score using gradient checkpointing (activation recomputation) - see
+     * {@link ComputationGraphConfiguration.GraphBuilder#gradientCheckpoints(String...)}.<br>
+     * Forward pass: the segments are executed in turn, each in its own workspace. Only the activations that are used by
+     * later segments are kept (in WS_ALL_LAYERS_ACT).<br>
+     * Backward pass: for each segment in reverse order, the forward pass for the segment is recomputed from the kept
+     * activations, followed by backprop through the segment. Activation gradients for vertices in earlier segments are
+     * likewise kept until the corresponding segment is processed.<br>
+     * The RNG is reseeded at the start of each segment, so that the recomputed forward pass uses the same random
+     * values (dropout masks, etc) as the original forward pass.
+     *
+     * @param workspaceMgr Workspace manager for the kept activations (ArrayType.ACTIVATIONS)
+     */
+    protected void computeGradientAndScoreCheckpointed(LayerWorkspaceMgr workspaceMgr) {
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+        setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+
+        //Assign each vertex to a segment: each checkpoint vertex is the last vertex of its segment
+        Set<String> checkpoints = new HashSet<>(configuration.getGradientCheckpoints());
+        int[] vertexSegment = new int[vertices.length];
+        int numSegments = 1;
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            GraphVertex gv = vertices[topologicalOrder[i]];
+            vertexSegment[gv.getVertexIndex()] = numSegments - 1;
+            if (checkpoints.contains(gv.getVertexName()) && i < topologicalOrder.length - 1) {
+                numSegments++;
+            }
+        }
+
+        //Activations that are used by vertices in later segments need to be kept
+        boolean[] keep = new boolean[vertices.length];
+        for (GraphVertex gv : vertices) {
+            VertexIndices[] outputsTo = gv.getOutputVertices();
+            if (outputsTo != null) {
+                for (VertexIndices v : outputsTo) {
+                    keep[gv.getVertexIndex()] |= vertexSegment[v.getVertexIndex()] != vertexSegment[gv.getVertexIndex()];
+                }
+            }
+        }
+
+        LayerWorkspaceMgr segmentMgr;
+        if (configuration.getTrainingWorkspaceMode() == WorkspaceMode.NONE) {
+            segmentMgr = LayerWorkspaceMgr.noWorkspaces(helperWorkspaces);
+        } else {
+            segmentMgr = LayerWorkspaceMgr.builder()
+                    .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.ACTIVATION_GRAD, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_BP_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .build();
+            if (configuration.getCacheMode() != CacheMode.NONE) {
+                segmentMgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG);
+            }
+            segmentMgr.setHelperWorkspacePointers(helperWorkspaces);
+        }
+
+        long[] segmentSeeds = new long[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segmentSeeds[i] = Nd4j.getRandom().nextLong();
+        }
+
+        int[] outputLayerIdxs = getOutputLayerIndices();
+        INDArray[] kept = new INDArray[vertices.length];
+        INDArray[] keptEpsilons = new INDArray[vertices.length];
+        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        double lossScale = NetworkUtils.getLossScale(this);
+        double r = calcRegularizationScore(true);
+        score = 0.0;
+
+        try (MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+            //Forward pass, keeping only the activations required by later segments
+            for (int s = 0; s < numSegments; s++) {
+                try (MemoryWorkspace wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                    checkpointSegmentForward(s, segmentSeeds[s], vertexSegment, outputLayerIdxs, keep, kept, workspaceMgr, segmentMgr);
+                }
+                clearSegment(s, vertexSegment);
+            }
+
+            if (!trainingListeners.isEmpty()) {
+                try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    Map<String, INDArray> activations = new HashMap<>();
+                    for (int i = 0; i < kept.length; i++) {
+                        if (kept[i] != null) {
+                            activations.put(vertices[i].getVertexName(), kept[i]);
+                        }
+                    }
+                    for (TrainingListener tl : trainingListeners) {
+                        tl.onForwardPass(this, activations);
+                    }
+                }
+            }
+
+            //Backward pass: recompute the forward pass for each segment (in reverse order), then backprop through it
+            boolean[] setVertexEpsilon = new boolean[vertices.length];
+            for (int s = numSegments - 1; s >= 0; s--) {
+                try (MemoryWorkspace wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                    checkpointSegmentForward(s, segmentSeeds[s], vertexSegment, outputLayerIdxs, keep, kept, workspaceMgr, segmentMgr);
+
+                    for (int i = 0; i < vertices.length; i++) {
+                        if (vertexSegment[i] == s && keptEpsilons[i] != null) {
+                            vertices[i].setEpsilon(keptEpsilons[i]);
+                            setVertexEpsilon[i] = true;
+                        }
+                    }
+
+                    for (int i = topologicalOrder.length - 1; i >= 0; i--) {
+                        GraphVertex current = vertices[topologicalOrder[i]];
+                        if (vertexSegment[current.getVertexIndex()] != s || current.isInputVertex()
+                                || (current.hasLayer() && current.getLayer() instanceof FrozenLayer) || current instanceof FrozenVertex) {
+                            continue;
+                        }
+
+                        IOutputLayer outputLayer = null;
+                        int outputNumber = -1;
+                        if (current.isOutputVertex()) {
+                            outputNumber = configuration.getNetworkOutputs().indexOf(current.getVertexName());
+                            Layer currentLayer = current.getLayer();
+                            if (currentLayer instanceof FrozenLayerWithBackprop) {
+                                currentLayer = ((FrozenLayerWithBackprop) currentLayer).getInsideLayer();
+                            }
+                            if (!(currentLayer instanceof IOutputLayer)) {
+                                throw new DL4JException("Layer \"" + current.getVertexName() + "\" is set as network output" +
+                                        " (but isn't an IOutputLayer). Only IOutputLayer layers can be fit via backprop with" +
+                                        " a labels array. ");
+                            }
+                            outputLayer = (IOutputLayer) currentLayer;
+                            outputLayer.setLabels(labels[outputNumber]);
+                        }
+
+                        Pair<Gradient, INDArray[]> pair;
+                        try (MemoryWorkspace wsWorkingMem = segmentMgr.notifyScopeEntered(ArrayType.BP_WORKING_MEM)) {
+                            pair = current.doBackward(false, segmentMgr);
+                        }
+                        INDArray[] epsilons = pair.getSecond();
+
+                        if (outputLayer != null) {
+                            if (lossScale != 1.0) {
+                                NetworkUtils.scaleLossGradients(current, pair.getFirst(), lossScale, epsilons);
+                            }
+                            outputLayer.setMaskArray(labelMaskArrays == null ? null : labelMaskArrays[outputNumber]);
+                            try (MemoryWorkspace ws = segmentMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                                score += outputLayer.computeScore(r, true, segmentMgr);
+                            }
+                            //Only want to add l1/l2 component once...
+                            r = 0.0;
+                        }
+
+                        //Set the epsilons for the vertices that provide inputs to this vertex - or keep them, for
+                        // vertices in earlier segments
+                        VertexIndices[] inputVertices = current.getInputVertices();
+                        if (inputVertices != null) {
+                            for (int j = 0; j < inputVertices.length; j++) {
+                                int from = inputVertices[j].getVertexIndex();
+                                INDArray eps = epsilons[j];
+                                if (vertexSegment[from] != s) {
+                                    if (eps != null && !vertices[from].isInputVertex()) {
+                                        if (keptEpsilons[from] == null) {
+                                            keptEpsilons[from] = workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, eps);
+                                        } else {
+                                            keptEpsilons[from].addi(eps);
+                                        }
+                                    }
+                                } else if (setVertexEpsilon[from] && vertices[from].getEpsilon() != null) {
+                                    if (eps != null) {
+                                        vertices[from].setEpsilon(vertices[from].getEpsilon().addi(eps));
+                                    }
+                                } else {
+                                    vertices[from].setEpsilon(eps);
+                                    setVertexEpsilon[from] = true;
+                                }
+                            }
+                        }
+
+                        if (pair.getFirst() != null) {
+                            Gradient g = pair.getFirst();
+                            LinkedList<Triple<String, INDArray, Character>> tempList = new LinkedList<>();
+                            for (Map.Entry<String, INDArray> entry : g.gradientForVariable().entrySet()) {
+                                String origName = entry.getKey();
+                                tempList.addFirst(new Triple<>(current.getVertexName() + "_" + origName, entry.getValue(),
+                                        g.flatteningOrderForVariable(origName)));
+                            }
+                            for (Triple<String, INDArray, Character> triple : tempList) {
+                                gradients.addFirst(triple);
+                            }
+                        }
+                    }
+                }
+                clearSegment(s, vertexSegment);
+            }
+
+            //Now, add the gradients in the order we need them in for flattening (same as params order)
+            Gradient gradient = new DefaultGradient(flattenedGradients);
+            for (Triple<String, INDArray, Character> tr : gradients) {
+                gradient.setGradientFor(tr.getFirst(), tr.getSecond(), tr.getThird());
+            }
+            this.gradient = gradient;
+
+            if (!trainingListeners.isEmpty()) {
+                try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    for (TrainingListener tl : trainingListeners) {
+                        tl.onBackwardPass(this);
+                    }
+                }
+            }
+        } finally {
+            for (GraphVertex gv : vertices) {
+                gv.clear();
+            }
+        }
+    }
+
+    /**
+     * Forward pass for a single gradient checkpointing segment. Inputs from vertices in earlier segments are taken from
+     * the kept activations; activations required by later segments are added to the kept activations.
+     */
+    private void checkpointSegmentForward(int segment, long seed, int[] vertexSegment, int[] outputLayerIdxs,
+                                          boolean[] keep, INDArray[] kept, LayerWorkspaceMgr keptMgr,
+                                          LayerWorkspaceMgr segmentMgr) {
+        Nd4j.getRandom().setSeed(seed);
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            GraphVertex current = vertices[topologicalOrder[i]];
+            int vIdx = current.getVertexIndex();
+            if (vertexSegment[vIdx] != segment) {
+                continue;
+            }
+
+            VertexIndices[] inputsFrom = current.getInputVertices();
+            if (inputsFrom != null) {
+                for (int j = 0; j < inputsFrom.length; j++) {
+                    int from = inputsFrom[j].getVertexIndex();
+                    if (vertexSegment[from] != segment) {
+                        current.setInput(j, kept[from], segmentMgr);
+                    }
+                }
+            }
+
+            if (ArrayUtils.contains(outputLayerIdxs, vIdx)) {
+                //Output layers: no forward pass required, as for standard backprop
+                continue;
+            }
+
+            INDArray out;
+            if (current.isInputVertex()) {
+                out = inputs[vIdx];
+            } else {
+                try (MemoryWorkspace wsFFWorking = segmentMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                    out = current.doForward(true, segmentMgr);
+                }
+            }
+
+            if (keep[vIdx] && kept[vIdx] == null) {
+                kept[vIdx] = (current.isInputVertex() ? out : keptMgr.leverageTo(ArrayType.ACTIVATIONS, out));
+            }
+
+            VertexIndices[] outputsTo = current.getOutputVertices();
+            if (outputsTo != null) {
+                for (VertexIndices v : outputsTo) {
+                    if (vertexSegment[v.getVertexIndex()] == segment) {
+                        vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out, segmentMgr);
+                    }
+                }
+            }
+        }
+    }
+
+    private void clearSegment(int segment, int[] vertexSegment) {
+        for (int i = 0; i < vertices.length; i++) {
+            if (vertexSegment[i] == segment) {
+                vertices[i].clear();
+            }
+        }
+    }
+
     /**
      * Conduct forward pass using a single input array. Note that this method can only be used with ComputationGraphs
      * with a single input array.
@@ -2222,6 +2585,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         setInputs(features);
         setLayerMaskArrays(fMask, lMasks);
 
+        if (parallelInferencePool != null && fwdPassType == FwdPassType.STANDARD
+                && (outputWorkspace == null || outputWorkspace instanceof DummyWorkspace)) {
+            WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active before call to outputOfLayersDetached");
+            return outputOfLayersDetachedParallel(train, layerIndexes, features, clearLayerInputs);
+        }
+
         MemoryWorkspace outputPrevious = null;
         if(outputWorkspace == null || outputWorkspace instanceof DummyWorkspace) {
             //Verify that no workspace is open externally
@@ -2279,6 +2648,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         LayerWorkspaceMgr allNone = noWS ? LayerWorkspaceMgr.noWorkspaces(helperWorkspaces) : null;
         List<MemoryWorkspace>[] closeAtEndIteraton = (List<MemoryWorkspace>[])new List[topologicalOrder.length];
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
+        initTunedWorkspaces(wsm);
         Throwable t = null;
         try {
             for (int i = 0; i <= stopIndex; i++) {
@@ -2377,90 +2747,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                         out = features[vIdx];
                     } else {
 
-                        if (fwdPassType == FwdPassType.STANDARD) {
-                            //Standard feed-forward case
-
-                            if(i > 0 && current.hasLayer() && prev.hasLayer() &&
-                                    ConvolutionUtils.layerHasConvolutionLayout(prev.getLayer().conf().getLayer())
-                                    && ConvolutionUtils.layerHasConvolutionLayout(current.getLayer().conf().getLayer())) {
-
-                                /**
-                                 * Not QUITE the proper fix, but getting close.
-                                 * Able to detect this happens mid graph and do something about it.
-                                 * Need to play with output sizes a bit to make sure we put the right parameters in there to get
-                                 * correct behavior.
-                                 */
-                                CNN2DFormat preLayerFormat = ConvolutionUtils.getFormatForLayer(prev.getLayer().conf().getLayer());
-                                CNN2DFormat currLayerFormat = ConvolutionUtils.getFormatForLayer(current.getLayer().conf().getLayer());
-                                if(preLayerFormat != currLayerFormat) {
-                                    int inputIdx = -1;
-                                    for(int inputVertex = 0; inputVertex < current.getInputVertices().length; inputVertex++) {
-                                        if(current.getInputVertices()[inputVertex].getVertexIndex() == prev.getVertexIndex()) {
-                                            inputIdx = inputVertex;
-                                        }
-                                    }
-
-                                    //NHWC case
-                                    if(preLayerFormat == CNN2DFormat.NCHW) {
-                                        current.setInput(inputIdx,current.getInputs()[inputIdx].permute(0,3,1,2),workspaceMgr);
-                                    }
-                                    //NCHW case
-                                    else if(preLayerFormat == CNN2DFormat.NHWC) {
-                                        current.setInput(inputIdx,current.getInputs()[inputIdx].permute(0,2,3,1),workspaceMgr);
-
-                                    }
-                                    else
-                                        throw new IllegalStateException("No CNN2DDataFormat type found for previous layer!");
-
-                                    out = current.doForward(train, workspaceMgr);
-                                }
-                                else
-                                    out = current.doForward(train, workspaceMgr);
-                            } else    if(i > 0 && current.hasLayer() && prev.hasLayer() &&
-                                    Convolution1DUtils.hasRnnDataFormat(prev.getLayer().conf().getLayer())
-                                    && Convolution1DUtils.hasRnnDataFormat(current.getLayer().conf().getLayer())) {
-                                RNNFormat preLayerFormat = Convolution1DUtils.getRnnFormatFromLayer(prev.getLayer().conf().getLayer());
-                                RNNFormat currLayerFormat = Convolution1DUtils.getRnnFormatFromLayer(current.getLayer().conf().getLayer());
-                                int inputIdx = -1;
-                                for(int inputVertex = 0; inputVertex < current.getInputVertices().length; inputVertex++) {
-                                    if(current.getInputVertices()[inputVertex].getVertexIndex() == prev.getVertexIndex()) {
-                                        inputIdx = inputVertex;
-                                    }
-                                }
-                                //permute for next layer
-                                if(preLayerFormat != currLayerFormat) {
-                                    current.setInput(inputIdx,current.getInputs()[inputIdx].permute(0,2,1),workspaceMgr);
-                                }
-
-                                out = current.doForward(train, workspaceMgr);
-
-
-                            }  else {
-                                out = current.doForward(train, workspaceMgr);
-                            }
-                        } else if (fwdPassType == FwdPassType.RNN_TIMESTEP) {
-                            if (current.hasLayer()) {
-                                //Layer
-                                INDArray input = current.getInputs()[0];
-                                Layer l = current.getLayer();
-                                if (l instanceof RecurrentLayer) {
-                                    out = ((RecurrentLayer) l).rnnTimeStep(reshapeTimeStepInput(input), workspaceMgr);
-                                } else if (l instanceof org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer && ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying() instanceof RecurrentLayer) {
-                                    RecurrentLayer rl = ((RecurrentLayer) ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying());
-                                    out = rl.rnnTimeStep(reshapeTimeStepInput(input), workspaceMgr);
-                                } else if (l instanceof MultiLayerNetwork) {
-                                    out = ((MultiLayerNetwork) l).rnnTimeStep(reshapeTimeStepInput(input));
-                                } else {
-                                    //non-recurrent layer
-                                    out = current.doForward(train, workspaceMgr);
-                                }
-                            } else {
-                                //GraphNode
-                                out = current.doForward(train, workspaceMgr);
-                            }
-                        } else {
-                            throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
-                        }
+                        out = vertexForward(train, fwdPassType, i, current, prev, workspaceMgr);
                         validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
                     }
 
@@ -2537,9 +2824,342 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
         }
 
+        recordWorkspaces(allWorkspaceManagers);
+        return outputs;
+    }
+
+    /**
+     * Enable or disable parallel execution of independent vertices (branches) in the output methods, such as
+     * {@link #output(INDArray...)}. When enabled, vertices are scheduled onto the ND4J fork-join pool (see
+     * {@link ExecutorServiceProvider#getForkJoinPool()}) as soon as all of their inputs are available.<br>
+     * This can reduce latency for graphs with wide independent branches (Inception-style networks, for example),
+     * especially for small minibatches where single ops can't make use of all CPU cores. For narrow graphs or large
+     * minibatches, sequential execution is usually faster.<br>
+     * Parallel execution applies only to standard (not RNN time step) forward passes, without a user-provided output
+     * workspace. Per-layer working memory is allocated in workspaces of the executing thread; layer activations are
+     * not placed in workspaces when executing in parallel.
+     *
+     * @param enabled If true: enable parallel execution. If false: execute vertices sequentially in topological order
+     */
+    public void setParallelInference(boolean enabled) {
+        setParallelInferencePool(enabled ? ExecutorServiceProvider.getForkJoinPool() : null);
+    }
+
+    /**
+     * As per {@link #setParallelInference(boolean)}, but using the specified pool.
+     *
+     * @param pool Pool to execute vertices on. If null: parallel execution is disabled
+     */
+    public void setParallelInferencePool(ForkJoinPool pool) {
+        this.parallelInferencePool = pool;
+    }
+
+    /**
+     * Parallel version of {@link #outputOfLayersDetached(boolean, FwdPassType, int[], INDArray[], INDArray[], INDArray[], boolean, boolean, MemoryWorkspace)}
+     * for the standard forward pass type with no output workspace. Only the vertices required to calculate the requested
+     * layer outputs are executed; each is executed (on the pool) once all of its inputs have been calculated.
+     */
+    private INDArray[] outputOfLayersDetachedParallel(final boolean train, final int[] layerIndexes, final INDArray[] features,
+                                                      final boolean clearLayerInputs) {
+        //First: determine which vertices are required to calculate the requested outputs
+        final boolean[] required = new boolean[vertices.length];
+        Deque<Integer> toProcess = new ArrayDeque<>();
+        for (int idx : layerIndexes) {
+            toProcess.push(idx);
+        }
+        while (!toProcess.isEmpty()) {
+            int idx = toProcess.pop();
+            if (required[idx])
+                continue;
+            required[idx] = true;
+            VertexIndices[] inputsFrom = vertices[idx].getInputVertices();
+            if (inputsFrom != null) {
+                for (VertexIndices vi : inputsFrom) {
+                    toProcess.push(vi.getVertexIndex());
+                }
+            }
+        }
+
+        //For each vertex: number of inputs not yet calculated, and number of (required) vertices yet to consume its output
+        final AtomicInteger[] pendingInputs = new AtomicInteger[vertices.length];
+        final AtomicInteger[] pendingConsumers = new AtomicInteger[vertices.length];
+        final int[] topoPosition = new int[vertices.length];
+        List<Integer> initial = new ArrayList<>();
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            int idx = topologicalOrder[i];
+            topoPosition[idx] = i;
+            if (!required[idx])
+                continue;
+            VertexIndices[] inputsFrom = vertices[idx].getInputVertices();
+            int numInputs = inputsFrom == null ? 0 : inputsFrom.length;
+            pendingInputs[idx] = new AtomicInteger(numInputs);
+            if (numInputs == 0)
+                initial.add(idx);
+
+            int numConsumers = 0;
+            VertexIndices[] outputsTo = vertices[idx].getOutputVertices();
+            if (outputsTo != null) {
+                for (VertexIndices vi : outputsTo) {
+                    if (required[vi.getVertexIndex()])
+                        numConsumers++;
+                }
+            }
+            pendingConsumers[idx] = new AtomicInteger(numConsumers);
+        }
+
+        final INDArray[] activations = new INDArray[vertices.length];     //Released once fully consumed
+        final INDArray[] outputs = new INDArray[layerIndexes.length];
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicInteger active = new AtomicInteger(initial.size());
+        final CountDownLatch done = new CountDownLatch(1);
+        final Integer deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        final WorkspaceMode wsm = (train ? configuration.getTrainingWorkspaceMode() : configuration.getInferenceWorkspaceMode());
+
+        class VertexTask extends RecursiveAction {
+            private int vIdx;
+
+            private VertexTask(int vIdx) {
+                this.vIdx = vIdx;
+            }
+
+            @Override
+            protected void compute() {
+                Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                //Execute a chain of vertices in this task: the first ready successor of each vertex is executed
+                // directly, and any other ready successors are forked as new tasks
+                int next = vIdx;
+                while (next >= 0) {
+                    int curr = next;
+                    next = -1;
+                    if (error.get() != null)
+                        break;
+                    try {
+                        List<Integer> ready = executeVertex(curr);
+                        for (int i = 0; i < ready.size(); i++) {
+                            if (next < 0) {
+                                next = ready.get(i);
+                            } else {
+                                active.incrementAndGet();
+                                new VertexTask(ready.get(i)).fork();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+
+                if (active.decrementAndGet() == 0)
+                    done.countDown();
+            }
+
+            private List<Integer> executeVertex(int idx) {
+                GraphVertex current = vertices[idx];
+                int pos = topoPosition[idx];
+                GraphVertex prev = pos > 0 ? vertices[topologicalOrder[pos - 1]] : null;
+                LayerWorkspaceMgr workspaceMgr = parallelWorkspaceMgr(wsm);
+
+                INDArray out;
+                if (current.isInputVertex()) {
+                    out = features[idx];
+                } else {
+                    //Set inputs in this thread, so any preprocessing uses this thread's workspace manager
+                    VertexIndices[] inputsFrom = current.getInputVertices();
+                    for (int j = 0; j < inputsFrom.length; j++) {
+                        int inIdx = inputsFrom[j].getVertexIndex();
+                        current.setInput(j, activations[inIdx], workspaceMgr);
+                    }
+                    for (VertexIndices vi : inputsFrom) {
+                        if (pendingConsumers[vi.getVertexIndex()].decrementAndGet() == 0)
+                            activations[vi.getVertexIndex()] = null;
+                    }
+
+                    try (MemoryWorkspace wsAct = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                         MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                        out = vertexForward(train, FwdPassType.STANDARD, pos, current, prev, workspaceMgr);
+                        validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, current.getVertexName(), false, "Feed forward (inference, parallel)");
+                    }
+                }
+
+                if (clearLayerInputs) {
+                    current.clear();
+                }
+
+                for (int j = 0; j < layerIndexes.length; j++) {
+                    if (layerIndexes[j] == idx)
+                        outputs[j] = out;
+                }
+
+                //Publish the output, then determine which consumers now have all of their inputs available
+                List<Integer> ready = new ArrayList<>();
+                if (pendingConsumers[idx].get() > 0) {
+                    activations[idx] = out;
+                    for (VertexIndices vi : current.getOutputVertices()) {
+                        int consumer = vi.getVertexIndex();
+                        if (required[consumer] && pendingInputs[consumer].decrementAndGet() == 0)
+                            ready.add(consumer);
+                    }
+                }
+                return ready;
+            }
+        }
+
+        for (int idx : initial) {
+            parallelInferencePool.execute(new VertexTask(idx));
+        }
+
+        try {
+            //Managed block: if this thread is itself a worker of the pool (for example, output is called from a
+            // parallel stream), the pool can activate a spare thread instead of starving the vertex tasks
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    done.await();
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return done.getCount() == 0;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during parallel forward pass", e);
+        }
+
+        Throwable t = error.get();
+        if (t != null) {
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException("Error during neural network forward pass", t);
+        }
         return outputs;
     }
 
+    /**
+     * Workspace manager for executing a single vertex as part of {@link #outputOfLayersDetachedParallel(boolean, int[], INDArray[], boolean)}.
+     * Working memory workspaces are thread local, so are safe to use on pool threads - but activations may be consumed by
+     * other threads, and hence are not placed in a workspace.
+     */
+    private LayerWorkspaceMgr parallelWorkspaceMgr(WorkspaceMode wsm) {
+        Map<String, Pointer> helperPointers = PARALLEL_HELPER_WORKSPACES.get();
+        if (helperPointers == null) {
+            helperPointers = new HashMap<>();
+            PARALLEL_HELPER_WORKSPACES.set(helperPointers);
+        }
+
+        if (wsm == WorkspaceMode.NONE)
+            return LayerWorkspaceMgr.noWorkspaces(helperPointers);
+
+        LayerWorkspaceMgr workspaceMgr = LayerWorkspaceMgr.builder()
+                .noWorkspaceFor(ArrayType.INPUT)
+                .noWorkspaceFor(ArrayType.ACTIVATIONS)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+        workspaceMgr.setHelperWorkspacePointers(helperPointers);
+        return workspaceMgr;
+    }
+
+    /**
+     * Perform the forward pass for a single vertex, whose inputs have already been set, as part of
+     * {@link #outputOfLayersDetached(boolean, FwdPassType, int[], INDArray[], INDArray[], INDArray[], boolean, boolean, MemoryWorkspace)}
+     *
+     * @param topoIdx Position of the vertex in the topological order
+     * @param prev    Previous vertex in the topological order (null for the first vertex)
+     */
+    private INDArray vertexForward(boolean train, FwdPassType fwdPassType, int topoIdx, GraphVertex current, GraphVertex prev,
+                                   LayerWorkspaceMgr workspaceMgr) {
+        INDArray out;
+        if (fwdPassType == FwdPassType.STANDARD) {
+            //Standard feed-forward case
+
+            if(topoIdx > 0 && current.hasLayer() && prev.hasLayer() &&
+                    ConvolutionUtils.layerHasConvolutionLayout(prev.getLayer().conf().getLayer())
+                    && ConvolutionUtils.layerHasConvolutionLayout(current.getLayer().conf().getLayer())) {
+
+                /**
+                 * Not QUITE the proper fix, but getting close.
+                 * Able to detect this happens mid graph and do something about it.
+                 * Need to play with output sizes a bit to make sure we put the right parameters in there to get
+                 * correct behavior.
+                 */
+                CNN2DFormat preLayerFormat = ConvolutionUtils.getFormatForLayer(prev.getLayer().conf().getLayer());
+                CNN2DFormat currLayerFormat = ConvolutionUtils.getFormatForLayer(current.getLayer().conf().getLayer());
+                if(preLayerFormat != currLayerFormat) {
+                    int inputIdx = -1;
+                    for(int inputVertex = 0; inputVertex < current.getInputVertices().length; inputVertex++) {
+                        if(current.getInputVertices()[inputVertex].getVertexIndex() == prev.getVertexIndex()) {
+                            inputIdx = inputVertex;
+                        }
+                    }
+
+                    //NHWC case
+                    if(preLayerFormat == CNN2DFormat.NCHW) {
+                        current.setInput(inputIdx,current.getInputs()[inputIdx].permute(0,3,1,2),workspaceMgr);
+                    }
+                    //NCHW case
+                    else if(preLayerFormat == CNN2DFormat.NHWC) {
+                        current.setInput(inputIdx,current.getInputs()[inputIdx].permute(0,2,3,1),workspaceMgr);
+
+                    }
+                    else
+                        throw new IllegalStateException("No CNN2DDataFormat type found for previous layer!");
+
+                    out = current.doForward(train, workspaceMgr);
+                }
+                else
+                    out = current.doForward(train, workspaceMgr);
+            } else    if(topoIdx > 0 && current.hasLayer() && prev.hasLayer() &&
+                    Convolution1DUtils.hasRnnDataFormat(prev.getLayer().conf().getLayer())
+                    && Convolution1DUtils.hasRnnDataFormat(current.getLayer().conf().getLayer())) {
+                RNNFormat preLayerFormat = Convolution1DUtils.getRnnFormatFromLayer(prev.getLayer().conf().getLayer());
+                RNNFormat currLayerFormat = Convolution1DUtils.getRnnFormatFromLayer(current.getLayer().conf().getLayer());
+                int inputIdx = -1;
+                for(int inputVertex = 0; inputVertex < current.getInputVertices().length; inputVertex++) {
+                    if(current.getInputVertices()[inputVertex].getVertexIndex() == prev.getVertexIndex()) {
+                        inputIdx = inputVertex;
+                    }
+                }
+                //permute for next layer
+                if(preLayerFormat != currLayerFormat) {
+                    current.setInput(inputIdx,current.getInputs()[inputIdx].permute(0,2,1),workspaceMgr);
+                }
+
+                out = current.doForward(train, workspaceMgr);
+
+
+            }  else {
+                out = current.doForward(train, workspaceMgr);
+            }
+        } else if (fwdPassType == FwdPassType.RNN_TIMESTEP) {
+            if (current.hasLayer()) {
+                //Layer
+                INDArray input = current.getInputs()[0];
+                Layer l = current.getLayer();
+                if (l instanceof RecurrentLayer) {
+                    out = ((RecurrentLayer) l).rnnTimeStep(reshapeTimeStepInput(input), workspaceMgr);
+                } else if (l instanceof org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer && ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying() instanceof RecurrentLayer) {
+                    RecurrentLayer rl = ((RecurrentLayer) ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying());
+                    out = rl.rnnTimeStep(reshapeTimeStepInput(input), workspaceMgr);
+                } else if (l instanceof MultiLayerNetwork) {
+                    out = ((MultiLayerNetwork) l).rnnTimeStep(reshapeTimeStepInput(input));
+                } else {
+                    //non-recurrent layer
+                    out = current.doForward(train, workspaceMgr);
+                }
+            } else {
+                //GraphNode
+                out = current.doForward(train, workspaceMgr);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
+        }
+        return out;
+    }
+
     private INDArray reshapeTimeStepInput(INDArray input) {
         if (input.rank() == 2) { // dynamically reshape to 3D input with one time-step.
             long[] inShape = input.shape();
@@ -2660,10 +3280,14 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         boolean traceLog = log.isTraceEnabled();
 
+        //Mixed precision training: the loss gradients are scaled to avoid underflow of the low precision gradients
+        double lossScale = NetworkUtils.getLossScale(this);
+
         Throwable t = null;
         try {
             for (int i = topologicalOrder.length - 1; i >= 0; i--) {
                 boolean hitFrozen = false;
+                boolean scaleLoss = false;
                 GraphVertex current = vertices[topologicalOrder[i]];
                 int vIdx = current.getVertexIndex();
                 String vertexName = current.getVertexName();
@@ -2734,6 +3358,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
                         INDArray currLabels = labels[thisOutputNumber];
                         outputLayer.setLabels(currLabels);
+                        scaleLoss = lossScale != 1.0;
                     } else {
                         if ((externalEpsilons == null || externalEpsilons.length == 0)
                                 && labels[thisOutputNumber] != null) {
@@ -2773,6 +3398,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     pair = current.doBackward(truncatedBPTT, workspaceMgr);
                     epsilons = pair.getSecond();
 
+                    if (scaleLoss) {
+                        NetworkUtils.scaleLossGradients(current, pair.getFirst(), lossScale, epsilons);
+                    }
+
                     //Validate workspace location for the activation gradients:
                     //validateArrayWorkspaces(LayerWorkspaceMgr mgr, INDArray array, ArrayType arrayType, String vertexName, boolean isInputVertex, String op){
                     for (INDArray epsilon : epsilons) {
@@ -2869,6 +3498,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
 
         this.gradient = gradient;
+        recordWorkspaces(allWorkspaceManagers);
 
         if(truncatedBPTT && clearTbpttState){
             rnnClearPreviousState();
@@ -2903,6 +3533,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 cg.getVertex(layerName).setLayerAsFrozen();
             }
         }
+        if (tunedWorkspaceConfigurations != null) {
+            cg.setTunedWorkspaceConfigurations(new LinkedHashMap<>(tunedWorkspaceConfigurations));
+        }
         return cg;
     }
 
@@ -3325,11 +3958,14 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
     @Override
     public void setParams(INDArray params) {
-        if (params == flattenedParams)
-            return; //No op
+        if (params == flattenedParams) {
+            resyncMasterParams();   //No op, other than picking up any in-place changes for mixed precision training
+            return;
+        }
 
         if (this.flattenedParams != null && this.flattenedParams.length() == params.length()) {
             this.flattenedParams.assign(params);
+            resyncMasterParams();
             return;
         }
 
@@ -3346,6 +3982,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             layer.setParams(get);
             idx += range;
         }
+        resyncMasterParams();
+    }
+
+    /**
+     * Mixed precision training: reset the updater's FP32 master copy of the parameters (if any) after the parameters
+     * have been set
+     */
+    private void resyncMasterParams() {
+        ComputationGraphUpdater u = getUpdater(false);
+        if (u != null) {
+            u.resyncMasterParams();
+        }
     }
 
     @Override
@@ -3472,6 +4120,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             INDArray arrNew = paramTable.get(s);
             arrCurrent.assign(arrNew);
         }
+        resyncMasterParams();
     }
 
     @Override
@@ -3483,6 +4132,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         String layerName = key.substring(0, idx);
         String paramType = key.substring(idx + 1);
         getLayer(layerName).setParam(paramType, val);
+        resyncMasterParams();
     }
 
     @Override
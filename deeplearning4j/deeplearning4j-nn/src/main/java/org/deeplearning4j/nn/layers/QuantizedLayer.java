@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers;
+
+import lombok.val;
+import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DepthwiseConvolution2D;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.util.ConvolutionUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastAddOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.nd4j.common.primitives.Pair;
+
+import java.util.Arrays;
+
+/**
+ * Inference-only layer with (simulated) int8 quantized weights: see
+ * {@link org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer}.<br>
+ * The forward pass is computed at the network data type, using the quantized weights held in the parameters.
+ */
+public class QuantizedLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer> {
+
+    public QuantizedLayer(NeuralNetConfiguration conf, DataType dataType) {
+        super(conf, dataType);
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
+        throw new UnsupportedOperationException("Quantized layers are inference only: backpropagation is not supported " + layerId());
+    }
+
+    @Override
+    public void computeGradientAndScore(LayerWorkspaceMgr workspaceMgr) {
+        throw new UnsupportedOperationException("Quantized layers are inference only: training is not supported " + layerId());
+    }
+
+    @Override
+    public Type type() {
+        return layerConf().isConvolution() ? Type.CONVOLUTIONAL : Type.FEED_FORWARD;
+    }
+
+    @Override
+    public boolean isPretrainLayer() {
+        return false;
+    }
+
+    @Override
+    public boolean hasBias() {
+        return params != null && params.containsKey(DefaultParamInitializer.BIAS_KEY);
+    }
+
+    @Override
+    public INDArray activate(boolean training, LayerWorkspaceMgr workspaceMgr) {
+        INDArray z = preOutput(training, workspaceMgr);
+        INDArray ret = layerConf().getActivationFn().getActivation(z, training);
+        if (maskArray != null && !layerConf().isConvolution()) {
+            applyMask(ret);
+        }
+        return ret;
+    }
+
+    @Override
+    protected INDArray preOutput(boolean training, LayerWorkspaceMgr workspaceMgr) {
+        assertInputSet(false);
+        org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer conf = layerConf();
+
+        INDArray input = this.input.castTo(dataType);   //no-op if correct dtype
+        double inputScale = conf.getInputScale();
+        if (inputScale > 0) {
+            //Simulate int8 input: round(x / scale), clipped to [-127, 127], then rescale
+            input = workspaceMgr.dup(ArrayType.FF_WORKING_MEM, input);
+            input.divi(inputScale);
+            Transforms.round(input, false);
+            Transforms.min(input, 127.0, false);
+            Transforms.max(input, -127.0, false);
+            input.muli(inputScale);
+        }
+
+        INDArray weights = getParam(DefaultParamInitializer.WEIGHT_KEY);
+        INDArray bias = hasBias() ? getParam(DefaultParamInitializer.BIAS_KEY) : null;
+
+        if (!conf.isConvolution()) {
+            if (input.rank() != 2 || input.size(1) != weights.size(0)) {
+                throw new DL4JInvalidInputException("Input size (" + (input.rank() == 2 ? input.size(1) : input.rank() + "d input")
+                        + ") does not match quantized layer nIn (" + weights.size(0) + "), input shape "
+                        + Arrays.toString(input.shape()) + " " + layerId());
+            }
+            INDArray ret = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, dataType, new long[]{input.size(0), weights.size(1)}, 'f');
+            input.mmuli(weights, ret);
+            if (bias != null) {
+                ret.addiRowVector(bias);
+            }
+            return ret;
+        }
+
+        ConvolutionLayer cl = (ConvolutionLayer) conf.getUnderlying();
+        boolean depthwise = cl instanceof DepthwiseConvolution2D;
+        CNN2DFormat format = cl.getCnn2dDataFormat();
+        boolean nchw = format == CNN2DFormat.NCHW;
+        int chDim = nchw ? 1 : 3;
+        long inDepth = depthwise ? weights.size(2) : weights.size(1);
+        if (input.rank() != 4 || input.size(chDim) != inDepth) {
+            throw new DL4JInvalidInputException("Cannot do forward pass in quantized convolution layer: expected rank 4 input with "
+                    + inDepth + " channels (data format = " + format + "), got input with shape "
+                    + Arrays.toString(input.shape()) + " " + layerId());
+        }
+
+        int[] kernel = cl.getKernelSize();
+        int[] strides = cl.getStride();
+        int[] dilation = cl.getDilation();
+        ConvolutionMode convolutionMode = cl.getConvolutionMode();
+        int[] pad;
+        int[] outSize;
+        if (convolutionMode == ConvolutionMode.Same) {
+            outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, null, convolutionMode, dilation, format);
+            pad = ConvolutionUtils.getSameModeTopLeftPadding(outSize,
+                    new int[]{(int) input.size(nchw ? 2 : 1), (int) input.size(nchw ? 3 : 2)}, kernel, strides, dilation);
+        } else {
+            pad = cl.getPadding();
+            outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, pad, convolutionMode, dilation, format);
+        }
+
+        long outDepth = conf.getUnderlying().getNOut();
+        val miniBatch = input.size(0);
+        long[] outShape = nchw ? new long[]{miniBatch, outDepth, outSize[0], outSize[1]}
+                : new long[]{miniBatch, outSize[0], outSize[1], outDepth};
+        INDArray ret = workspaceMgr.create(ArrayType.ACTIVATIONS, dataType, outShape, 'c');
+
+        int sameMode = (convolutionMode == ConvolutionMode.Same) ? 1 : 0;
+        //Depthwise weights: [kH, kW, iC, depthMultiplier]; conv2d weights: [oC, iC, kH, kW] (weight format 1)
+        int[] args = depthwise
+                ? new int[]{kernel[0], kernel[1], strides[0], strides[1], pad[0], pad[1], dilation[0], dilation[1], sameMode, (nchw ? 0 : 1)}
+                : new int[]{kernel[0], kernel[1], strides[0], strides[1], pad[0], pad[1], dilation[0], dilation[1], sameMode, (nchw ? 0 : 1), 1};
+        Nd4j.getExecutioner().exec(DynamicCustomOp.builder(depthwise ? "depthwise_conv2d" : "conv2d")
+                .addInputs(input, weights)
+                .addIntegerArguments(args)
+                .addOutputs(ret)
+                .callInplace(false)
+                .build());
+
+        if (bias != null) {
+            Nd4j.getExecutioner().exec(new BroadcastAddOp(ret, bias.reshape(outDepth), ret, chDim));
+        }
+        return ret;
+    }
+}
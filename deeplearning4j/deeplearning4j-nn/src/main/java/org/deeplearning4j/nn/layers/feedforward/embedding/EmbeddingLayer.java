@@ -22,6 +22,7 @@ import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.exception.ND4JArraySizeException;
 import org.nd4j.common.primitives.Pair;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
@@ -43,9 +44,12 @@ import org.deeplearning4j.nn.workspace.ArrayType;
  * @author Alex Black
  */
 @Slf4j
-public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingLayer> {
+public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingLayer>
+                implements SparseGradientLayer {
     private static final int[] DIM_1 = new int[]{1};
 
+    private final SparseRowGradient sparseWeightGradient = new SparseRowGradient();
+
     public EmbeddingLayer(NeuralNetConfiguration conf, DataType dataType) {
         super(conf, dataType);
     }
@@ -62,15 +66,24 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
         }
 
         INDArray weightGradients = gradientViews.get(DefaultParamInitializer.WEIGHT_KEY);
-        weightGradients.assign(0);
+        boolean sparse = layerConf().isSparseGradients();
+        if (sparse) {
+            //Only zero the rows touched in the previous iteration - all others are already zero
+            sparseWeightGradient.zero(weightGradients);
+        } else {
+            weightGradients.assign(0);
+        }
 
-        long[] indexes = new long[(int) input.length()];
+        int[] indexes = new int[(int) input.length()];
         for (int i = 0; i < indexes.length; i++) {
             indexes[i] = input.getInt(i, 0);
         }
 
         INDArray indices = Nd4j.createFromArray(indexes);
         Nd4j.scatterUpdate(org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate.UpdateOp.ADD, weightGradients, indices, delta, DIM_1);
+        if (sparse) {
+            sparseWeightGradient.setRows(indexes);
+        }
 
 
         Gradient ret = new DefaultGradient();
@@ -149,4 +162,27 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
         throw new UnsupportedOperationException("Dropout not supported with EmbeddingLayer " + layerId());
     }
 
+    @Override
+    public void setBackpropGradientsViewArray(INDArray gradients) {
+        super.setBackpropGradientsViewArray(gradients);
+        sparseWeightGradient.clear();
+    }
+
+    @Override
+    public boolean isSparseGradient(String paramName) {
+        return layerConf().isSparseGradients() && DefaultParamInitializer.WEIGHT_KEY.equals(paramName);
+    }
+
+    @Override
+    public int[] getSparseGradientRows(String paramName) {
+        return isSparseGradient(paramName) ? sparseWeightGradient.getRows() : null;
+    }
+
+    @Override
+    public void clearSparseGradientRows(String paramName) {
+        if (DefaultParamInitializer.WEIGHT_KEY.equals(paramName)) {
+            sparseWeightGradient.clear();
+        }
+    }
+
 }
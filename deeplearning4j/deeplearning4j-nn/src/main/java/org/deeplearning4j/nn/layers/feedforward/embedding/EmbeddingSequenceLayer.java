@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.layers.feedforward.embedding;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.RNNFormat;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
@@ -48,9 +49,12 @@ import static org.nd4j.linalg.api.shape.Shape.hasDefaultStridesForShape;
  * @author Max Pumperla
  */
 @Slf4j
-public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer> {
+public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer>
+                implements SparseGradientLayer {
     private static final int[] WEIGHT_DIM = new int[]{1};
 
+    private final SparseRowGradient sparseWeightGradient = new SparseRowGradient();
+
     public EmbeddingSequenceLayer(NeuralNetConfiguration conf, DataType dataType) {
         super(conf, dataType);
     }
@@ -88,13 +92,22 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
         delta = delta.reshape('c',inputLength * numSamples, nOut);
 
         INDArray weightGradients = gradientViews.get(DefaultParamInitializer.WEIGHT_KEY);
-        weightGradients.assign(0);
+        boolean sparse = layerConf().isSparseGradients();
+        if (sparse) {
+            //Only zero the rows touched in the previous iteration - all others are already zero
+            sparseWeightGradient.zero(weightGradients);
+        } else {
+            weightGradients.assign(0);
+        }
 
         if (!hasDefaultStridesForShape(input))
             input = workspaceMgr.dup(ArrayType.ACTIVATIONS, input, 'f');
 
         INDArray indices = Nd4j.createFromArray(indexes);
         Nd4j.scatterUpdate(org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate.UpdateOp.ADD, weightGradients, indices, delta, WEIGHT_DIM);
+        if (sparse) {
+            sparseWeightGradient.setRows(indexes);
+        }
 
         Gradient ret = new DefaultGradient();
         ret.gradientForVariable().put(DefaultParamInitializer.WEIGHT_KEY, weightGradients);
@@ -221,6 +234,29 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
         return Type.RECURRENT;
     }
 
+    @Override
+    public void setBackpropGradientsViewArray(INDArray gradients) {
+        super.setBackpropGradientsViewArray(gradients);
+        sparseWeightGradient.clear();
+    }
+
+    @Override
+    public boolean isSparseGradient(String paramName) {
+        return layerConf().isSparseGradients() && DefaultParamInitializer.WEIGHT_KEY.equals(paramName);
+    }
+
+    @Override
+    public int[] getSparseGradientRows(String paramName) {
+        return isSparseGradient(paramName) ? sparseWeightGradient.getRows() : null;
+    }
+
+    @Override
+    public void clearSparseGradientRows(String paramName) {
+        if (DefaultParamInitializer.WEIGHT_KEY.equals(paramName)) {
+            sparseWeightGradient.clear();
+        }
+    }
+
     @Override
     public void clear(){
         super.clear();
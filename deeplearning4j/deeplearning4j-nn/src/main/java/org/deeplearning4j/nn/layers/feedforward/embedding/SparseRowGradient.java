@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.feedforward.embedding;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the rows of an embedding layer's weight gradient view that may be non-zero, for use with sparse gradients.
+ * Instead of zeroing the full [vocabSize, nOut] gradient before each backward pass, only the rows touched in the
+ * previous iteration are zeroed.
+ */
+class SparseRowGradient {
+    private static final int[] DIM_1 = new int[]{1};
+
+    private int[] rows;     //Null: unknown, full gradient array needs to be zeroed
+
+    /**
+     * Zero all rows of the gradient array that may be non-zero
+     */
+    void zero(INDArray weightGradients) {
+        if (rows == null) {
+            weightGradients.assign(0);
+        } else if (rows.length > 0) {
+            INDArray zeros = Nd4j.zeros(weightGradients.dataType(), rows.length, weightGradients.size(1));
+            Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, weightGradients, Nd4j.createFromArray(rows), zeros, DIM_1);
+        }
+    }
+
+    /**
+     * Set the rows touched in the current backward pass. Indexes may contain duplicates and need not be sorted.
+     */
+    void setRows(int[] indexes) {
+        int[] sorted = Arrays.copyOf(indexes, indexes.length);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[i] != sorted[n - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        rows = (n == sorted.length ? sorted : Arrays.copyOf(sorted, n));
+    }
+
+    int[] getRows() {
+        return rows;
+    }
+
+    void clear() {
+        rows = null;
+    }
+}
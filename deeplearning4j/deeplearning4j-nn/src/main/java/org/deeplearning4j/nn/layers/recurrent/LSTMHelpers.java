@@ -16,8 +16,10 @@
 
 package org.deeplearning4j.nn.layers.recurrent;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.deeplearning4j.common.config.DL4JSystemProperties;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -33,6 +35,7 @@ import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.activations.IActivation;
 import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
@@ -67,6 +70,12 @@ import static org.nd4j.linalg.indexing.NDArrayIndex.*;
  * When 'hasPeepholeConnections' is true, this is the "vanilla" variant in said paper<br>
  * When 'hasPeepholeConnections' is false, this is the "no peephole" variant<br>
  * <a href="https://arxiv.org/pdf/1503.04069.pdf">https://arxiv.org/pdf/1503.04069.pdf</a>
+ * <p>
+ * The input projection (input activations times input weights, plus biases) is calculated for all time steps in a
+ * single matrix multiplication before the recurrent loop. When no helper is used, inference (i.e., not for backprop)
+ * uses a fused recurrent loop operating in-place on preallocated gate, memory cell and output buffers. This can be
+ * disabled using {@link #fusedForwardEnabled(boolean)} or the {@link DL4JSystemProperties#LSTM_FUSED_FORWARD_ENABLED_PROPERTY}
+ * system property.
  *
  *
  * @author Alex Black (LSTM implementations)
@@ -77,8 +86,26 @@ public class LSTMHelpers {
 
     //    public static final String SIGMOID = "sigmoid";
 
+    @Getter
+    private static boolean fusedForwardEnabled = true;
+
+    static {
+        String s = System.getProperty(DL4JSystemProperties.LSTM_FUSED_FORWARD_ENABLED_PROPERTY);
+        if(s != null && !s.isEmpty()){
+            fusedForwardEnabled = Boolean.parseBoolean(s);
+        }
+    }
+
     private LSTMHelpers() {}
 
+    /**
+     * Enable or disable the fused forward pass implementation used for inference. Enabled by default.
+     * See also {@link DL4JSystemProperties#LSTM_FUSED_FORWARD_ENABLED_PROPERTY}
+     */
+    public static void fusedForwardEnabled(boolean enabled){
+        fusedForwardEnabled = enabled;
+    }
+
     /**
      * Returns FwdPassReturn object with activations/INDArrays. Allows activateHelper to be used for forward pass, backward pass
      * and rnnTimeStep whilst being reasonably efficient for all
@@ -226,6 +253,28 @@ public class LSTMHelpers {
             }
         }
 
+        //Input projection for all time steps at once: [m*T, nIn] x [nIn, 4*hiddenLayerSize], rows for time t are [t*m, (t+1)*m)
+        INDArray inputProjection;
+        if (is2dInput) {
+            inputProjection = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, input.dataType(), new long[] {miniBatchSize, 4 * hiddenLayerSize}, 'f');
+            Nd4j.gemm(Shape.toMmulCompatible(input), inputWeights, inputProjection, false, false, 1.0, 0.0);
+        } else {
+            INDArray input2d = input.permute(0, 2, 1).dup('f').reshape('f', (long) miniBatchSize * timeSeriesLength, input.size(1));
+            inputProjection = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, input.dataType(), new long[] {(long) miniBatchSize * timeSeriesLength, 4 * hiddenLayerSize}, 'f');
+            Nd4j.gemm(input2d, inputWeights, inputProjection, false, false, 1.0, 0.0);
+        }
+        inputProjection.addiRowVector(biases);
+
+        if (!forBackprop && fusedForwardEnabled) {
+            activateFused(layer, gateActivationFn, inputProjection, recurrentWeightsIFOG, wFFTranspose, wOOTranspose,
+                    wGGTranspose, training, prevOutputActivations, prevMemCellState, forwards, maskArray,
+                    hasPeepholeConnections, miniBatchSize, hiddenLayerSize, timeSeriesLength, outputActivations,
+                    toReturn, workspaceMgr);
+            toReturn.prevAct = originalPrevOutputActivations;
+            toReturn.prevMemCell = originalPrevMemCellState;
+            return toReturn;
+        }
+
         for (int iTimeIndex = 0; iTimeIndex < timeSeriesLength; iTimeIndex++) {
             try(MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.RNN_FF_LOOP_WORKING_MEM)) {
                 int time = iTimeIndex;
@@ -235,18 +284,14 @@ public class LSTMHelpers {
                 }
 
 
-                INDArray miniBatchData = (is2dInput ? input : input.tensorAlongDimension(time, 1, 0)); //[Expected shape: [m,nIn]. Also deals with edge case of T=1, with 'time series' data of shape [m,nIn], equiv. to [m,nIn,1]
-                miniBatchData = Shape.toMmulCompatible(miniBatchData);
-
                 // if we're using cache here - let's create ifogActivations within cache workspace, so all views from this array will be valid in cache
                 cacheEnter(training, cacheMode, workspaceMgr);
 
-                //Calculate activations for: network input + forget, output, input modulation gates. Next 3 lines are first part of those
-                INDArray ifogActivations = miniBatchData.mmul(inputWeights); //Shape: [miniBatch,4*layerSize]
+                //Calculate activations for: network input + forget, output, input modulation gates. Input projection (incl. biases) was calculated above
+                INDArray ifogActivations = inputProjection.get(interval((long) time * miniBatchSize, (long) (time + 1) * miniBatchSize), all()).dup('f'); //Shape: [miniBatch,4*layerSize]
                 cacheExit(training, cacheMode, workspaceMgr);
 
                 Nd4j.gemm(prevOutputActivations, recurrentWeightsIFOG, ifogActivations, false, false, 1.0, 1.0);
-                ifogActivations.addiRowVector(biases);
 
                 INDArray inputActivations =
                         ifogActivations.get(all(), interval(0, hiddenLayerSize));
@@ -426,6 +471,82 @@ public class LSTMHelpers {
         return toReturn;
     }
 
+    /**
+     * Fused forward pass for inference: the recurrent loop operates in-place on gate, memory cell and output buffers
+     * that are allocated once, instead of allocating new arrays for each time step.
+     * Semantics (including masking and previous state for rnnTimeStep/TBPTT) are the same as the standard implementation.
+     */
+    private static void activateFused(final BaseRecurrentLayer layer, final IActivation gateActivationFn,
+                                      final INDArray inputProjection, final INDArray recurrentWeightsIFOG,
+                                      final INDArray wFFTranspose, final INDArray wOOTranspose, final INDArray wGGTranspose,
+                                      final boolean training, final INDArray prevOutputActivations,
+                                      final INDArray prevMemCellState, final boolean forwards, final INDArray maskArray,
+                                      final boolean hasPeepholeConnections, final int miniBatchSize,
+                                      final int hiddenLayerSize, final int timeSeriesLength,
+                                      final INDArray outputActivations, final FwdPassReturn toReturn,
+                                      final LayerWorkspaceMgr workspaceMgr) {
+        IActivation afn = layer.layerConf().getActivationFn();
+        DataType dataType = inputProjection.dataType();
+
+        INDArray ifogActivations = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, dataType, new long[] {miniBatchSize, 4 * hiddenLayerSize}, 'f');
+        INDArray inputActivations = ifogActivations.get(all(), interval(0, hiddenLayerSize));
+        INDArray forgetGateActivations = ifogActivations.get(all(), interval(hiddenLayerSize, 2 * hiddenLayerSize));
+        INDArray outputGateActivations = ifogActivations.get(all(), interval(2 * hiddenLayerSize, 3 * hiddenLayerSize));
+        INDArray inputModGateActivations = ifogActivations.get(all(), interval(3 * hiddenLayerSize, 4 * hiddenLayerSize));
+
+        //prevMemCellState is a copy (or newly created) - hence we can update it in-place
+        INDArray memCellState = prevMemCellState;
+        INDArray hiddenUnitActivations = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, dataType, new long[] {miniBatchSize, hiddenLayerSize}, 'f');
+        INDArray peephole = null;
+        if (hasPeepholeConnections) {
+            peephole = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, dataType, new long[] {miniBatchSize, hiddenLayerSize}, 'f');
+        }
+
+        for (int iTimeIndex = 0; iTimeIndex < timeSeriesLength; iTimeIndex++) {
+            int time = forwards ? iTimeIndex : timeSeriesLength - iTimeIndex - 1;
+
+            ifogActivations.assign(inputProjection.get(interval((long) time * miniBatchSize, (long) (time + 1) * miniBatchSize), all()));
+            Nd4j.gemm(iTimeIndex == 0 ? prevOutputActivations : hiddenUnitActivations, recurrentWeightsIFOG,
+                    ifogActivations, false, false, 1.0, 1.0);
+
+            afn.getActivation(inputActivations, training);
+
+            if (hasPeepholeConnections) {
+                forgetGateActivations.addi(peephole.assign(memCellState).muliRowVector(wFFTranspose));
+            }
+            gateActivationFn.getActivation(forgetGateActivations, training);
+
+            if (hasPeepholeConnections) {
+                inputModGateActivations.addi(peephole.assign(memCellState).muliRowVector(wGGTranspose));
+            }
+            gateActivationFn.getActivation(inputModGateActivations, training);
+
+            //Memory cell state: c = f * c_prev + g * i
+            memCellState.muli(forgetGateActivations).addi(inputModGateActivations.muli(inputActivations));
+
+            if (hasPeepholeConnections) {
+                outputGateActivations.addi(peephole.assign(memCellState).muliRowVector(wOOTranspose));
+            }
+            gateActivationFn.getActivation(outputGateActivations, training);
+
+            //LSTM unit outputs: h = o * afn(c)
+            afn.getActivation(hiddenUnitActivations.assign(memCellState), training);
+            hiddenUnitActivations.muli(outputGateActivations);
+
+            if (maskArray != null) {
+                //Zero out activations and memory cell state for masked steps, as these are carried forward
+                INDArray timeStepMaskColumn = maskArray.getColumn(time, true);
+                hiddenUnitActivations.muliColumnVector(timeStepMaskColumn);
+                memCellState.muliColumnVector(timeStepMaskColumn);
+            }
+
+            outputActivations.tensorAlongDimension(time, 1, 0).assign(hiddenUnitActivations);
+        }
+
+        toReturn.lastAct = hiddenUnitActivations;
+        toReturn.lastMemCell = memCellState;
+    }
+
     private static boolean shouldCache(boolean training, CacheMode cacheMode, LayerWorkspaceMgr workspaceMgr){
         return training && cacheMode != CacheMode.NONE && workspaceMgr.hasConfiguration(ArrayType.FF_CACHE) && workspaceMgr.isWorkspaceOpen(ArrayType.FF_CACHE);
     }
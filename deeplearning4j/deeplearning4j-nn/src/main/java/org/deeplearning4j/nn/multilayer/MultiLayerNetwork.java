@@ -46,9 +46,11 @@ import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.LayerHelper;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.nn.workspace.WorkspaceProfiler;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
@@ -140,6 +142,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
 
+    protected transient WorkspaceProfiler workspaceProfiler;
+    protected Map<String, WorkspaceConfiguration> tunedWorkspaceConfigurations;
+
 
     /**
      * Workspace for working memory for a single layer: forward pass and backward pass
@@ -564,6 +569,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             INDArray toSet = paramTable.get(s);
             curr.assign(toSet);
         }
+        resyncMasterParams();
     }
 
     /**
@@ -582,6 +588,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         String newKey = key.substring(idx + 1);
 
         layers[layerIdx].setParam(newKey, val);
+        resyncMasterParams();
     }
 
     /**
@@ -1249,6 +1256,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
         mgrEven.setHelperWorkspacePointers(helperWorkspaces);
         mgrOdd.setHelperWorkspacePointers(helperWorkspaces);
+        initTunedWorkspaces(wsm);
 
         MemoryWorkspace wsActCloseNext = null;
         MemoryWorkspace temp = null;
@@ -1424,6 +1432,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             }
         }
 
+        recordWorkspaces(mgrEven, mgrOdd);
         return input;
     }
 
@@ -1514,6 +1523,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             }
             ret.setLayers(clonedLayers);
         }
+        if (tunedWorkspaceConfigurations != null) {
+            ret.setTunedWorkspaceConfigurations(new LinkedHashMap<>(tunedWorkspaceConfigurations));
+        }
         return ret;
     }
 
@@ -1550,14 +1562,17 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     /**
      * Set the parameters for this model.
      * This expects a linear ndarray which then be unpacked internally relative to the expected ordering of the model.<br>
-     * See also: {@link #setParamTable(Map)} and {@link #setParam(String, INDArray)}
+     * See also: {@link #setParamTable(Map)} and {@link #setParam(String, INDArray)}<br>
+     * For mixed precision training, {@code setParams(params())} can be used after modifying the parameters in place,
+     * so that the changes are picked up by the updater's master copy of the parameters.
      *
      * @param params the parameters for the model
      */
     @Override
     public void setParams(INDArray params) {
         if (flattenedParams == params) {
-            return; //No op
+            resyncMasterParams();   //No op, other than picking up any in-place changes for mixed precision training
+            return;
         }
 
         if (flattenedParams != null && params.length() == flattenedParams.length()) {
@@ -1578,6 +1593,18 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 idx += range;
             }
         }
+        resyncMasterParams();
+    }
+
+    /**
+     * Mixed precision training: reset the updater's FP32 master copy of the parameters (if any) after the parameters
+     * have been set
+     */
+    private void resyncMasterParams() {
+        Updater u = getUpdater(false);
+        if (u instanceof BaseMultiLayerUpdater) {
+            ((BaseMultiLayerUpdater<?>) u).resyncMasterParams();
+        }
     }
 
     @Override
@@ -1865,6 +1892,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
         String multiGradientKey;
         Gradient gradient = new DefaultGradient(flattenedGradients);
+        //Mixed precision training: the loss gradient is scaled to avoid underflow of the low precision gradients
+        double lossScale = (withOutputLayer ? NetworkUtils.getLossScale(this) : 1.0);
 
         LayerWorkspaceMgr mgrEven;
         LayerWorkspaceMgr mgrOdd;
@@ -1993,6 +2022,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
+                    if (lossScale != 1.0 && i == layers.length - 1) {
+                        NetworkUtils.scaleLossGradients(layers[i], currPair.getFirst(), lossScale, currPair.getSecond());
+                    }
+
                     if (currPair.getSecond() != null) {
                         //Edge case: may be null for Embedding layer, for example
                         validateArrayWorkspaces(workspaceMgr, currPair.getSecond(), ArrayType.ACTIVATION_GRAD, i,
@@ -2086,6 +2119,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
         }
 
+        recordWorkspaces(mgrEven, mgrOdd);
         return new Pair<>(gradient, currPair.getSecond());
     }
 
@@ -2772,6 +2806,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 mgr.setWorkspace(ArrayType.FF_CACHE, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG);
             }
         }
+        initTunedWorkspaces(layerWiseConfigurations.getTrainingWorkspaceMode());
 
         boolean tbptt = layerWiseConfigurations.getBackpropType() == BackpropType.TruncatedBPTT;
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
@@ -2818,6 +2853,59 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
         //Clear the post noise/dropconnect parameters on the output layer
         getOutputLayer().clearNoiseWeightParams();
+        recordWorkspaces(mgr);
+    }
+
+    /**
+     * Set the workspace profiler for this network. When set, workspace statistics are recorded (for the current thread)
+     * after each forward pass, backward pass and output call. Set to null to disable profiling.
+     *
+     * @param workspaceProfiler Workspace profiler to use. May be null
+     * @see WorkspaceProfiler
+     */
+    public void setWorkspaceProfiler(WorkspaceProfiler workspaceProfiler) {
+        this.workspaceProfiler = workspaceProfiler;
+    }
+
+    /**
+     * @return The workspace profiler for this network, if any (may be null)
+     */
+    public WorkspaceProfiler getWorkspaceProfiler() {
+        return workspaceProfiler;
+    }
+
+    /**
+     * Set the tuned workspace configurations, usually obtained from {@link WorkspaceProfiler#getTunedConfigurations()}.
+     * Workspaces that don't exist yet for the thread the network is used from are created using these configurations,
+     * hence are allocated with their final size, instead of learning their size over the first iterations.<br>
+     * Tuned workspace configurations are saved with the model by {@link org.deeplearning4j.util.ModelSerializer}
+     *
+     * @param tunedWorkspaceConfigurations Tuned configurations, keyed by workspace name. May be null
+     */
+    public void setTunedWorkspaceConfigurations(Map<String, WorkspaceConfiguration> tunedWorkspaceConfigurations) {
+        this.tunedWorkspaceConfigurations = tunedWorkspaceConfigurations;
+    }
+
+    /**
+     * @return The tuned workspace configurations for this network, if any (may be null)
+     * @see #setTunedWorkspaceConfigurations(Map)
+     */
+    public Map<String, WorkspaceConfiguration> getTunedWorkspaceConfigurations() {
+        return tunedWorkspaceConfigurations;
+    }
+
+    protected void initTunedWorkspaces(WorkspaceMode workspaceMode) {
+        if (tunedWorkspaceConfigurations != null && workspaceMode != WorkspaceMode.NONE) {
+            WorkspaceProfiler.initializeWorkspaces(tunedWorkspaceConfigurations);
+        }
+    }
+
+    protected void recordWorkspaces(LayerWorkspaceMgr... workspaceMgrs) {
+        if (workspaceProfiler != null) {
+            for (LayerWorkspaceMgr m : workspaceMgrs) {
+                workspaceProfiler.record(m);
+            }
+        }
     }
 
     /**
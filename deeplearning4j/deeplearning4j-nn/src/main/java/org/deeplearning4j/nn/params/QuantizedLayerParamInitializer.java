@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.params;
+
+import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameter initializer for {@link QuantizedLayer}. The parameters (keys, shapes and layout in the parameters view
+ * array) are the same as those of the underlying layer, and are initialized by the underlying layer's initializer.
+ */
+public class QuantizedLayerParamInitializer implements ParamInitializer {
+
+    private static final QuantizedLayerParamInitializer INSTANCE = new QuantizedLayerParamInitializer();
+
+    public static QuantizedLayerParamInitializer getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public long numParams(NeuralNetConfiguration conf) {
+        return numParams(conf.getLayer());
+    }
+
+    @Override
+    public long numParams(Layer layer) {
+        Layer u = underlying(layer);
+        return u.initializer().numParams(u);
+    }
+
+    @Override
+    public List<String> paramKeys(Layer layer) {
+        Layer u = underlying(layer);
+        return u.initializer().paramKeys(u);
+    }
+
+    @Override
+    public List<String> weightKeys(Layer layer) {
+        Layer u = underlying(layer);
+        return u.initializer().weightKeys(u);
+    }
+
+    @Override
+    public List<String> biasKeys(Layer layer) {
+        Layer u = underlying(layer);
+        return u.initializer().biasKeys(u);
+    }
+
+    @Override
+    public boolean isWeightParam(Layer layer, String key) {
+        Layer u = underlying(layer);
+        return u.initializer().isWeightParam(u, key);
+    }
+
+    @Override
+    public boolean isBiasParam(Layer layer, String key) {
+        Layer u = underlying(layer);
+        return u.initializer().isBiasParam(u, key);
+    }
+
+    @Override
+    public Map<String, INDArray> init(NeuralNetConfiguration conf, INDArray paramsView, boolean initializeParams) {
+        QuantizedLayer ql = (QuantizedLayer) conf.getLayer();
+        Layer innerLayer = ql.getUnderlying();
+        conf.setLayer(innerLayer);
+        Map<String, INDArray> m = innerLayer.initializer().init(conf, paramsView, initializeParams);
+        conf.setLayer(ql);
+        return m;
+    }
+
+    @Override
+    public Map<String, INDArray> getGradientsFromFlattened(NeuralNetConfiguration conf, INDArray gradientView) {
+        QuantizedLayer ql = (QuantizedLayer) conf.getLayer();
+        Layer innerLayer = ql.getUnderlying();
+        conf.setLayer(innerLayer);
+        Map<String, INDArray> m = innerLayer.initializer().getGradientsFromFlattened(conf, gradientView);
+        conf.setLayer(ql);
+        return m;
+    }
+
+    private static Layer underlying(Layer layer) {
+        return ((QuantizedLayer) layer).getUnderlying();
+    }
+}
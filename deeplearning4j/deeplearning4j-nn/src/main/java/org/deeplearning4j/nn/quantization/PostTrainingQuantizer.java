@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DepthwiseConvolution2D;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastDivOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Post-training int8 quantization for {@link MultiLayerNetwork} inference.<br>
+ * Usage:
+ * <pre>
+ * {@code
+ * QuantizationCalibration calibration = PostTrainingQuantizer.calibrate(net, calibrationIter);
+ * MultiLayerNetwork quantized = PostTrainingQuantizer.quantize(net, calibration);
+ * QuantizationReport report = PostTrainingQuantizer.compare(net, quantized, testIter);
+ * }
+ * </pre>
+ * {@link DenseLayer}, {@link ConvolutionLayer} and {@link DepthwiseConvolution2D} layers are replaced by
+ * {@link QuantizedLayer}s, whose weights are quantized to int8 with symmetric per output channel scales. If calibration
+ * data is provided, the input to each of these layers is also quantized using the calibrated activation range. All
+ * other layers (including output layers and dense layers with layer normalization) are left at full precision.<br>
+ * The returned network is inference only, and can be saved and restored using
+ * {@link org.deeplearning4j.util.ModelSerializer} in the same way as any other network.<br>
+ * Note that quantization is simulated: the quantized weights are stored, and the network is executed, at the network
+ * data type. The quantized network requires the same memory as the original network and is no faster; it is intended
+ * for measuring the accuracy impact of int8 quantization (see {@link #compare(MultiLayerNetwork, MultiLayerNetwork,
+ * DataSetIterator)}), and for obtaining the int8 weights and scales (via {@link #quantizeWeights(Layer, INDArray)})
+ * for use in an int8 inference runtime. ComputationGraph is not supported.
+ */
+@Slf4j
+public class PostTrainingQuantizer {
+
+    public static final int INT8_MAX = 127;
+
+    private PostTrainingQuantizer() {
+    }
+
+    /**
+     * @return True if the specified layer configuration can be quantized
+     */
+    public static boolean isQuantizable(Layer layer) {
+        //Exact classes only: subclasses (output layers, etc) may have a different forward pass
+        return (layer.getClass() == DenseLayer.class && !((DenseLayer) layer).isHasLayerNorm())
+                || layer.getClass() == ConvolutionLayer.class
+                || layer.getClass() == DepthwiseConvolution2D.class;
+    }
+
+    /**
+     * Run the calibration data through the network (in inference mode), recording the range of the input activations
+     * for each quantizable layer.
+     *
+     * @param net      Trained network to calibrate
+     * @param iterator Calibration data. Usually a representative subset of the training data
+     * @return Calibration to pass to {@link #quantize(MultiLayerNetwork, QuantizationCalibration)}
+     */
+    public static QuantizationCalibration calibrate(@NonNull MultiLayerNetwork net, @NonNull DataSetIterator iterator) {
+        QuantizationCalibration calibration = new QuantizationCalibration();
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations();
+        int nLayers = conf.getConfs().size();
+
+        if (iterator.resetSupported()) {
+            iterator.reset();
+        }
+        while (iterator.hasNext()) {
+            DataSet ds = iterator.next();
+            //Index i of the feed forward activations is the input to layer i
+            List<INDArray> activations = net.feedForward(ds.getFeatures(), ds.getFeaturesMaskArray(), ds.getLabelsMaskArray());
+            for (int i = 0; i < nLayers; i++) {
+                if (isQuantizable(conf.getConf(i).getLayer())) {
+                    calibration.record(i, activations.get(i));
+                }
+            }
+            calibration.addExamples(ds.getFeatures().size(0));
+        }
+        return calibration;
+    }
+
+    /**
+     * Quantize the network weights only, without input (activation) quantization.
+     * See {@link #quantize(MultiLayerNetwork, QuantizationCalibration)}
+     */
+    public static MultiLayerNetwork quantize(@NonNull MultiLayerNetwork net) {
+        return quantize(net, null);
+    }
+
+    /**
+     * Create an inference-only copy of the network, with int8 weights for all quantizable layers.
+     * The original network is not modified.
+     *
+     * @param net         Trained network to quantize
+     * @param calibration Activation calibration from {@link #calibrate(MultiLayerNetwork, DataSetIterator)}. May be null,
+     *                    in which case only the weights are quantized
+     * @return Quantized network
+     */
+    public static MultiLayerNetwork quantize(@NonNull MultiLayerNetwork net, QuantizationCalibration calibration) {
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations().clone();
+        int nLayers = conf.getConfs().size();
+        Map<Integer, INDArray> quantizedWeights = new TreeMap<>();
+        for (int i = 0; i < nLayers; i++) {
+            NeuralNetConfiguration layerConf = conf.getConf(i);
+            Layer l = layerConf.getLayer();
+            if (!isQuantizable(l)) {
+                continue;
+            }
+
+            INDArray w = net.getLayer(i).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            INDArray[] qw = quantizeWeights(l, w);
+            quantizedWeights.put(i, dequantizeWeights(l, qw[0], qw[1], w.dataType()));
+            double inputScale = calibration == null ? 0.0 : calibration.getInputScale(i);
+            layerConf.setLayer(new QuantizedLayer((FeedForwardLayer) l, inputScale));
+        }
+        if (quantizedWeights.isEmpty()) {
+            log.warn("No quantizable layers (DenseLayer, ConvolutionLayer, DepthwiseConvolution2D) found in network");
+        }
+
+        MultiLayerNetwork out = new MultiLayerNetwork(conf);
+        out.init();
+        //Quantized layers have the same parameters (and parameter layout) as the original layers
+        out.params().assign(net.params());
+        for (Map.Entry<Integer, INDArray> e : quantizedWeights.entrySet()) {
+            out.getLayer(e.getKey()).getParam(DefaultParamInitializer.WEIGHT_KEY).assign(e.getValue());
+        }
+        return out;
+    }
+
+    /**
+     * Quantize the weights of the specified layer to int8, with one symmetric scale per output channel:
+     * {@code scale = max(|W_c|) / 127}, {@code q = clip(round(W / scale), -127, 127)}.
+     *
+     * @param layer   Layer configuration: DenseLayer, ConvolutionLayer or DepthwiseConvolution2D
+     * @param weights Full precision weights for the layer
+     * @return Length 2 array: the INT8 weights (same shape as the input weights) and the FLOAT scales (length nOut)
+     */
+    public static INDArray[] quantizeWeights(@NonNull Layer layer, @NonNull INDArray weights) {
+        Preconditions.checkArgument(isQuantizable(layer), "Cannot quantize layer of type %s", layer.getClass().getSimpleName());
+        INDArray abs = Transforms.abs(weights, true);
+        INDArray scaled = Nd4j.createUninitialized(weights.dataType(), weights.shape());
+        INDArray scales;
+        if (layer instanceof DepthwiseConvolution2D) {
+            //Weights: [kH, kW, nIn, depthMultiplier]. Output channel for (i, m) is i * depthMultiplier + m
+            INDArray scales2d = abs.max(0, 1).divi(INT8_MAX);
+            BooleanIndexing.replaceWhere(scales2d, 1.0, Conditions.equals(0.0));
+            Nd4j.getExecutioner().exec(new BroadcastDivOp(weights, scales2d, scaled, 2, 3));
+            scales = scales2d.reshape('c', scales2d.length());
+        } else if (layer instanceof ConvolutionLayer) {
+            //Weights: [nOut, nIn, kH, kW]
+            scales = abs.max(1, 2, 3).divi(INT8_MAX);
+            BooleanIndexing.replaceWhere(scales, 1.0, Conditions.equals(0.0));
+            Nd4j.getExecutioner().exec(new BroadcastDivOp(weights, scales, scaled, 0));
+        } else {
+            //Weights: [nIn, nOut]
+            scales = abs.max(0).divi(INT8_MAX);
+            BooleanIndexing.replaceWhere(scales, 1.0, Conditions.equals(0.0));
+            scaled.assign(weights.divRowVector(scales));
+        }
+
+        Transforms.round(scaled, false);
+        Transforms.min(scaled, INT8_MAX, false);
+        Transforms.max(scaled, -INT8_MAX, false);
+        return new INDArray[]{scaled.castTo(DataType.INT8), scales.castTo(DataType.FLOAT)};
+    }
+
+    /**
+     * Dequantize the specified int8 weights: {@code W = weights * scale}
+     *
+     * @param layer        Layer configuration: DenseLayer, ConvolutionLayer or DepthwiseConvolution2D
+     * @param weights      INT8 weights, from {@link #quantizeWeights(Layer, INDArray)}
+     * @param weightScales Per output channel scales, from {@link #quantizeWeights(Layer, INDArray)}
+     * @param dataType     Data type for the returned array
+     * @return Dequantized weights, with the same shape as the original layer weights
+     */
+    public static INDArray dequantizeWeights(@NonNull Layer layer, @NonNull INDArray weights, @NonNull INDArray weightScales,
+                                             @NonNull DataType dataType) {
+        Preconditions.checkArgument(isQuantizable(layer), "Cannot dequantize weights for layer of type %s", layer.getClass().getSimpleName());
+        INDArray w = weights.castTo(dataType);
+        INDArray scales = weightScales.castTo(dataType);
+        if (layer instanceof DepthwiseConvolution2D) {
+            INDArray scales2d = scales.reshape('c', w.size(2), w.size(3));
+            Nd4j.getExecutioner().exec(new BroadcastMulOp(w, scales2d, w, 2, 3));
+        } else if (layer instanceof ConvolutionLayer) {
+            Nd4j.getExecutioner().exec(new BroadcastMulOp(w, scales, w, 0));
+        } else {
+            w.muliRowVector(scales);
+        }
+        return w;
+    }
+
+    /**
+     * Compare the original and quantized networks on the specified data: accuracy (for classification networks),
+     * agreement and difference of the network outputs, and the per-layer weight quantization error.
+     *
+     * @param original  Original (full precision) network
+     * @param quantized Quantized network, from {@link #quantize(MultiLayerNetwork, QuantizationCalibration)}
+     * @param iterator  Evaluation data
+     * @return Report comparing the two networks
+     */
+    public static QuantizationReport compare(@NonNull MultiLayerNetwork original, @NonNull MultiLayerNetwork quantized,
+                                             @NonNull DataSetIterator iterator) {
+        Evaluation evalOriginal = new Evaluation();
+        Evaluation evalQuantized = new Evaluation();
+        boolean classification = true;
+        long numExamples = 0;
+        long agree = 0;
+        long numOutputValues = 0;
+        double sumAbsDiff = 0.0;
+        double maxAbsDiff = 0.0;
+
+        if (iterator.resetSupported()) {
+            iterator.reset();
+        }
+        while (iterator.hasNext()) {
+            DataSet ds = iterator.next();
+            INDArray f = ds.getFeatures();
+            INDArray fMask = ds.getFeaturesMaskArray();
+            INDArray lMask = ds.getLabelsMaskArray();
+            INDArray outOriginal = original.output(f, false, fMask, lMask);
+            INDArray outQuantized = quantized.output(f, false, fMask, lMask);
+
+            INDArray absDiff = Transforms.abs(outOriginal.sub(outQuantized.castTo(outOriginal.dataType())), false);
+            sumAbsDiff += absDiff.sumNumber().doubleValue();
+            maxAbsDiff = Math.max(maxAbsDiff, absDiff.maxNumber().doubleValue());
+            numOutputValues += absDiff.length();
+            numExamples += f.size(0);
+
+            INDArray labels = ds.getLabels();
+            classification &= outOriginal.rank() == 2 && outOriginal.size(1) > 1;
+            if (classification) {
+                agree += outOriginal.argMax(1).eq(outQuantized.argMax(1)).castTo(DataType.INT64).sumNumber().longValue();
+                if (labels != null) {
+                    evalOriginal.eval(labels, outOriginal, lMask);
+                    evalQuantized.eval(labels, outQuantized, lMask);
+                }
+            }
+        }
+
+        Map<Integer, Double> weightErrors = new TreeMap<>();
+        long originalBytes = 0;
+        long quantizedBytes = 0;
+        for (int i = 0; i < quantized.getnLayers(); i++) {
+            Layer l = quantized.getLayer(i).conf().getLayer();
+            if (!(l instanceof QuantizedLayer)) {
+                continue;
+            }
+            QuantizedLayer ql = (QuantizedLayer) l;
+            INDArray w = original.getLayer(i).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            INDArray qw = quantized.getLayer(i).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            weightErrors.put(i, Transforms.abs(qw.castTo(w.dataType()).sub(w), false).maxNumber().doubleValue());
+            originalBytes += w.length() * w.dataType().width();
+            //int8 weights plus one float scale per output channel
+            quantizedBytes += w.length() + ql.getUnderlying().getNOut() * DataType.FLOAT.width();
+        }
+
+        boolean haveAccuracy = classification && evalOriginal.getNumRowCounter() > 0;
+        return new QuantizationReport(numExamples,
+                haveAccuracy ? evalOriginal.accuracy() : Double.NaN,
+                haveAccuracy ? evalQuantized.accuracy() : Double.NaN,
+                classification && numExamples > 0 ? agree / (double) numExamples : Double.NaN,
+                numOutputValues > 0 ? sumAbsDiff / numOutputValues : Double.NaN,
+                maxAbsDiff, weightErrors, originalBytes, quantizedBytes);
+    }
+}
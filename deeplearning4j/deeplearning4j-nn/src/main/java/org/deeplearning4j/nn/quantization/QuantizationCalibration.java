@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.Getter;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Activation ranges recorded by {@link PostTrainingQuantizer#calibrate(org.deeplearning4j.nn.multilayer.MultiLayerNetwork,
+ * org.nd4j.linalg.dataset.api.iterator.DataSetIterator)}: the minimum and maximum value of the input to each layer
+ * of the network, over all calibration examples.
+ */
+public class QuantizationCalibration implements Serializable {
+
+    private final Map<Integer, double[]> inputRanges = new TreeMap<>();
+    @Getter
+    private long numExamples;
+
+    /**
+     * Record the input activations for the specified layer
+     *
+     * @param layerIdx Index of the layer
+     * @param input    Input activations for the layer
+     */
+    public void record(int layerIdx, INDArray input) {
+        double min = input.minNumber().doubleValue();
+        double max = input.maxNumber().doubleValue();
+        double[] range = inputRanges.get(layerIdx);
+        if (range == null) {
+            inputRanges.put(layerIdx, new double[]{min, max});
+        } else {
+            range[0] = Math.min(range[0], min);
+            range[1] = Math.max(range[1], max);
+        }
+    }
+
+    protected void addExamples(long count) {
+        numExamples += count;
+    }
+
+    /**
+     * @return True if input activations were recorded for the specified layer
+     */
+    public boolean hasRange(int layerIdx) {
+        return inputRanges.containsKey(layerIdx);
+    }
+
+    /**
+     * @return Minimum and maximum input values seen for the specified layer, or null if none were recorded
+     */
+    public double[] getInputRange(int layerIdx) {
+        double[] range = inputRanges.get(layerIdx);
+        return range == null ? null : range.clone();
+    }
+
+    /**
+     * @return Map of layer index to [min, max] input range
+     */
+    public Map<Integer, double[]> getInputRanges() {
+        return Collections.unmodifiableMap(inputRanges);
+    }
+
+    /**
+     * Symmetric int8 scale for the input to the specified layer: max(|min|, |max|) / 127.
+     *
+     * @return Input scale, or 0 if no range was recorded (or all inputs were 0) for the layer
+     */
+    public double getInputScale(int layerIdx) {
+        double[] range = inputRanges.get(layerIdx);
+        if (range == null) {
+            return 0.0;
+        }
+        return Math.max(Math.abs(range[0]), Math.abs(range[1])) / PostTrainingQuantizer.INT8_MAX;
+    }
+}
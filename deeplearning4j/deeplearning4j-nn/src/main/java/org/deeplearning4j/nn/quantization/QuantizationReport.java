@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Comparison of a full precision network and its quantized version, as produced by
+ * {@link PostTrainingQuantizer#compare(org.deeplearning4j.nn.multilayer.MultiLayerNetwork,
+ * org.deeplearning4j.nn.multilayer.MultiLayerNetwork, org.nd4j.linalg.dataset.api.iterator.DataSetIterator)}.<br>
+ * Accuracy values are only available (i.e., not NaN) for networks with rank 2 classification outputs.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuantizationReport implements Serializable {
+
+    private long numExamples;
+    private double originalAccuracy;
+    private double quantizedAccuracy;
+    /** Fraction of examples where the argmax of the quantized network's output matches the original network */
+    private double top1Agreement;
+    private double meanAbsOutputDifference;
+    private double maxAbsOutputDifference;
+    /** Maximum absolute weight error, after dequantization, for each quantized layer (by layer index) */
+    private Map<Integer, Double> weightMaxAbsError;
+    /** Size of the weights of the quantized layers, in the original network */
+    private long originalWeightBytes;
+    /** Size of the weights of the quantized layers as int8 weights plus scales, as used by an int8 inference runtime */
+    private long quantizedWeightBytes;
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("========== Quantization Report ==========\n")
+                .append(String.format("Examples:                  %d%n", numExamples))
+                .append(String.format("Accuracy (original):       %.4f%n", originalAccuracy))
+                .append(String.format("Accuracy (quantized):      %.4f%n", quantizedAccuracy))
+                .append(String.format("Top-1 agreement:           %.4f%n", top1Agreement))
+                .append(String.format("Mean abs output diff:      %.6f%n", meanAbsOutputDifference))
+                .append(String.format("Max abs output diff:       %.6f%n", maxAbsOutputDifference))
+                .append(String.format("Weight bytes (int8):       %d -> %d%n", originalWeightBytes, quantizedWeightBytes));
+        if (weightMaxAbsError != null) {
+            for (Map.Entry<Integer, Double> e : weightMaxAbsError.entrySet()) {
+                sb.append(String.format("Layer %-4d max weight err: %.6f%n", e.getKey(), e.getValue()));
+            }
+        }
+        sb.append("=========================================");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.rnn;
+
+import lombok.Getter;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * A handle for the RNN state of a single stream (session), as stored in a {@link RnnStateStore}.<br>
+ * Obtain a handle using {@link RnnStateStore#open()}, and release it (returning its slot to the pool) using
+ * {@link #close()} once the stream has ended.
+ */
+public class RnnStateHandle implements Closeable {
+
+    @Getter
+    private final RnnStateStore store;
+    @Getter
+    private final int slot;
+    private volatile boolean closed;
+
+    protected RnnStateHandle(RnnStateStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    /**
+     * @return True if this handle has been closed (released back to the store)
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    protected void markClosed() {
+        closed = true;
+    }
+
+    /**
+     * Reset the state of this stream, as if no time steps have been processed yet
+     */
+    public void reset() {
+        store.reset(this);
+    }
+
+    /**
+     * @return A copy of the current state of this stream, keyed by layer, then by state key. Null if no time steps
+     * have been processed by the store yet
+     */
+    public Map<String, Map<String, INDArray>> getState() {
+        return store.getState(this);
+    }
+
+    /**
+     * Release this handle, returning its slot to the pool. The handle may not be used after calling this method
+     */
+    @Override
+    public void close() {
+        store.release(this);
+    }
+
+    @Override
+    public String toString() {
+        return "RnnStateHandle(slot=" + slot + (closed ? ", closed)" : ")");
+    }
+}
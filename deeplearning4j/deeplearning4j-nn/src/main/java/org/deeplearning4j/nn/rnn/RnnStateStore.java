@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.rnn;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.layers.RecurrentLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * A pooled store for the RNN state of many concurrent streams (sessions), for streaming inference with
+ * {@link MultiLayerNetwork#rnnTimeStep(INDArray)} and {@link ComputationGraph#rnnTimeStep(INDArray...)}.<br>
+ * Normally, the RNN state for rnnTimeStep is stored in the network itself, hence one network can serve only one stream
+ * at a time. With RnnStateStore, the state of each stream is stored outside of the network, in one row (slot) of a set
+ * of preallocated arrays with shape [capacity, stateSize] - one for each state array of each recurrent layer.<br>
+ * Each stream is identified by a {@link RnnStateHandle}. Multiple streams can be processed in a single rnnTimeStep call
+ * using {@link #timeStep(List, INDArray, INDArray)}: the state rows for the specified streams are gathered into a
+ * minibatch, the time step is executed, and the updated state rows are scattered back into the store.<br>
+ * Streams that have no input at a given time step can be masked out using the stream mask: their state is not
+ * modified, and their output is zero.<br>
+ * Note that the state arrays are allocated on the first time step, as the shapes of the state arrays are known only
+ * once the network has been executed.
+ */
+@Slf4j
+public class RnnStateStore {
+
+    protected final Model network;
+    @Getter
+    protected final int capacity;
+    protected final Deque<Integer> freeSlots = new ArrayDeque<>();
+    protected final RnnStateHandle[] handles;
+    //Preallocated state arrays: layer name (or index for MultiLayerNetwork) -> state key -> [capacity, stateSize]
+    protected Map<String, Map<String, INDArray>> stateArrays;
+
+    /**
+     * @param network  Network to use for streaming inference
+     * @param capacity Maximum number of concurrently open streams (handles)
+     */
+    public RnnStateStore(@NonNull MultiLayerNetwork network, int capacity) {
+        this((Model) network, capacity);
+    }
+
+    /**
+     * @param network  Network to use for streaming inference
+     * @param capacity Maximum number of concurrently open streams (handles)
+     */
+    public RnnStateStore(@NonNull ComputationGraph network, int capacity) {
+        this((Model) network, capacity);
+    }
+
+    protected RnnStateStore(Model network, int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, got %s", capacity);
+        this.network = network;
+        this.capacity = capacity;
+        this.handles = new RnnStateHandle[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots.add(i);
+        }
+    }
+
+    /**
+     * Open a new stream. The state of the new stream is initialized to the same (zero) state used by rnnTimeStep when
+     * no previous state is present
+     *
+     * @return Handle for the new stream
+     * @throws IllegalStateException If all slots are in use
+     */
+    public synchronized RnnStateHandle open() {
+        if (freeSlots.isEmpty()) {
+            throw new IllegalStateException("Cannot open RNN stream: all " + capacity + " slots of the state store are in use." +
+                    " Close unused handles, or use a store with a larger capacity");
+        }
+        int slot = freeSlots.removeFirst();
+        RnnStateHandle h = new RnnStateHandle(this, slot);
+        handles[slot] = h;
+        zeroSlot(slot);
+        return h;
+    }
+
+    /**
+     * Release the specified handle, returning its slot to the pool. Releasing an already released handle is a no-op
+     *
+     * @param handle Handle to release
+     */
+    public synchronized void release(@NonNull RnnStateHandle handle) {
+        if (handle.isClosed())
+            return;
+        validateHandle(handle);
+        handle.markClosed();
+        handles[handle.getSlot()] = null;
+        freeSlots.addLast(handle.getSlot());
+    }
+
+    /**
+     * Reset the state of the specified stream, as if no time steps have been processed yet
+     *
+     * @param handle Handle of the stream to reset
+     */
+    public synchronized void reset(@NonNull RnnStateHandle handle) {
+        validateHandle(handle);
+        zeroSlot(handle.getSlot());
+    }
+
+    /**
+     * @return Number of currently open streams
+     */
+    public synchronized int numOpen() {
+        return capacity - freeSlots.size();
+    }
+
+    /**
+     * Get a copy of the state for the specified stream
+     *
+     * @param handle Handle of the stream
+     * @return State, keyed by layer then by state key, or null if no time steps have been processed yet
+     */
+    public synchronized Map<String, Map<String, INDArray>> getState(@NonNull RnnStateHandle handle) {
+        validateHandle(handle);
+        if (stateArrays == null)
+            return null;
+        return gather(new int[]{handle.getSlot()});
+    }
+
+    /**
+     * Perform one time step for the specified streams, for a MultiLayerNetwork (or a ComputationGraph with one input
+     * and one output). See {@link #timeStep(List, INDArray[], INDArray)}
+     *
+     * @param handles Handles of the streams. Row i of the input corresponds to handles.get(i)
+     * @param input   Input for this time step, with shape [numStreams, nIn] or [numStreams, nIn, 1]
+     * @return Output for this time step
+     */
+    public INDArray timeStep(@NonNull List<RnnStateHandle> handles, @NonNull INDArray input) {
+        return timeStep(handles, input, null);
+    }
+
+    /**
+     * Perform one time step for the specified streams, for a MultiLayerNetwork (or a ComputationGraph with one input
+     * and one output). See {@link #timeStep(List, INDArray[], INDArray)}
+     *
+     * @param handles    Handles of the streams. Row i of the input corresponds to handles.get(i)
+     * @param input      Input for this time step, with shape [numStreams, nIn] or [numStreams, nIn, 1]
+     * @param streamMask Stream mask, with length numStreams: 0 for streams without input at this step. May be null
+     * @return Output for this time step
+     */
+    public INDArray timeStep(@NonNull List<RnnStateHandle> handles, @NonNull INDArray input, INDArray streamMask) {
+        INDArray[] out = timeStep(handles, new INDArray[]{input}, streamMask);
+        Preconditions.checkState(out.length == 1, "Network has %s outputs: use timeStep(List, INDArray[], INDArray) for " +
+                "networks with multiple outputs", out.length);
+        return out[0];
+    }
+
+    /**
+     * Perform one time step for the specified streams, using a single rnnTimeStep call.<br>
+     * The state of each stream is loaded from the store, the time step is executed, and the updated state is saved back
+     * to the store. Streams with a mask value of 0 are not modified: i.e., their state is unchanged and their outputs
+     * are set to 0.
+     *
+     * @param handles    Handles of the streams. Row i of each input corresponds to handles.get(i). Each handle may be
+     *                   present at most once
+     * @param inputs     Inputs for this time step, each with shape [numStreams, nIn] or [numStreams, nIn, 1]
+     * @param streamMask Stream mask, with length numStreams: 0 for streams without input at this step. May be null
+     * @return Outputs for this time step
+     */
+    public synchronized INDArray[] timeStep(@NonNull List<RnnStateHandle> handles, @NonNull INDArray[] inputs, INDArray streamMask) {
+        Preconditions.checkArgument(!handles.isEmpty(), "Cannot perform time step: no stream handles provided");
+        int n = handles.size();
+        int[] slots = new int[n];
+        boolean[] seen = new boolean[capacity];
+        for (int i = 0; i < n; i++) {
+            RnnStateHandle h = handles.get(i);
+            validateHandle(h);
+            Preconditions.checkArgument(!seen[h.getSlot()], "Handle %s is present more than once in the list of handles", h);
+            seen[h.getSlot()] = true;
+            slots[i] = h.getSlot();
+        }
+        for (INDArray in : inputs) {
+            Preconditions.checkArgument(in.size(0) == n, "Input minibatch size (%s) must match the number of stream " +
+                    "handles (%s)", in.size(0), n);
+        }
+        Preconditions.checkArgument(streamMask == null || streamMask.length() == n, "Stream mask length (%s) must match " +
+                "the number of stream handles (%s)", (streamMask == null ? 0 : streamMask.length()), n);
+
+        INDArray[] out;
+        Map<String, Map<String, INDArray>> newState;
+        synchronized (network) {
+            try {
+                clearNetworkState();
+                if (stateArrays != null) {
+                    setNetworkState(gather(slots));
+                }
+                if (network instanceof MultiLayerNetwork) {
+                    Preconditions.checkArgument(inputs.length == 1, "MultiLayerNetwork has 1 input, got %s input arrays", inputs.length);
+                    out = new INDArray[]{((MultiLayerNetwork) network).rnnTimeStep(inputs[0])};
+                } else {
+                    out = ((ComputationGraph) network).rnnTimeStep(inputs);
+                }
+                newState = getNetworkState();
+            } finally {
+                clearNetworkState();
+            }
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            if (stateArrays == null) {
+                allocate(newState);
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (streamMask != null && streamMask.getDouble(i) == 0.0) {
+                    for (INDArray o : out) {
+                        o.slice(i).assign(0);
+                    }
+                    continue;
+                }
+                for (Map.Entry<String, Map<String, INDArray>> layer : newState.entrySet()) {
+                    Map<String, INDArray> arrays = stateArrays.get(layer.getKey());
+                    for (Map.Entry<String, INDArray> e : layer.getValue().entrySet()) {
+                        arrays.get(e.getKey()).putRow(slots[i], e.getValue().getRow(i));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    protected void allocate(Map<String, Map<String, INDArray>> state) {
+        stateArrays = new LinkedHashMap<>();
+        long bytes = 0;
+        for (Map.Entry<String, Map<String, INDArray>> layer : state.entrySet()) {
+            Map<String, INDArray> m = new LinkedHashMap<>();
+            for (Map.Entry<String, INDArray> e : layer.getValue().entrySet()) {
+                INDArray s = e.getValue();
+                Preconditions.checkState(s.rank() == 2, "Only rank 2 RNN state arrays are supported: got state \"%s\" " +
+                        "with shape %ndShape for layer \"%s\"", e.getKey(), s, layer.getKey());
+                INDArray arr = Nd4j.zeros(s.dataType(), capacity, s.size(1));
+                bytes += arr.length() * arr.dataType().width();
+                m.put(e.getKey(), arr);
+            }
+            stateArrays.put(layer.getKey(), m);
+        }
+        log.debug("Allocated RNN state store: {} slots, {} bytes", capacity, bytes);
+    }
+
+    protected Map<String, Map<String, INDArray>> gather(int[] slots) {
+        Map<String, Map<String, INDArray>> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, INDArray>> layer : stateArrays.entrySet()) {
+            Map<String, INDArray> m = new HashMap<>();
+            for (Map.Entry<String, INDArray> e : layer.getValue().entrySet()) {
+                m.put(e.getKey(), e.getValue().getRows(slots));
+            }
+            out.put(layer.getKey(), m);
+        }
+        return out;
+    }
+
+    protected void zeroSlot(int slot) {
+        if (stateArrays == null)
+            return;
+        for (Map<String, INDArray> m : stateArrays.values()) {
+            for (INDArray arr : m.values()) {
+                arr.getRow(slot).assign(0);
+            }
+        }
+    }
+
+    protected void validateHandle(RnnStateHandle handle) {
+        Preconditions.checkArgument(handle.getStore() == this, "Handle %s does not belong to this state store", handle);
+        Preconditions.checkState(!handle.isClosed() && handles[handle.getSlot()] == handle, "Handle %s has been closed", handle);
+    }
+
+    protected void clearNetworkState() {
+        if (network instanceof MultiLayerNetwork) {
+            ((MultiLayerNetwork) network).rnnClearPreviousState();
+        } else {
+            ((ComputationGraph) network).rnnClearPreviousState();
+        }
+    }
+
+    protected Map<String, Map<String, INDArray>> getNetworkState() {
+        if (network instanceof ComputationGraph) {
+            return ((ComputationGraph) network).rnnGetPreviousStates();
+        }
+        MultiLayerNetwork net = (MultiLayerNetwork) network;
+        Map<String, Map<String, INDArray>> out = new LinkedHashMap<>();
+        for (int i = 0; i < net.getnLayers(); i++) {
+            if (isRecurrent(net.getLayer(i))) {
+                out.put(String.valueOf(i), net.rnnGetPreviousState(i));
+            }
+        }
+        return out;
+    }
+
+    protected void setNetworkState(Map<String, Map<String, INDArray>> state) {
+        if (network instanceof ComputationGraph) {
+            ((ComputationGraph) network).rnnSetPreviousStates(state);
+        } else {
+            MultiLayerNetwork net = (MultiLayerNetwork) network;
+            for (Map.Entry<String, Map<String, INDArray>> e : state.entrySet()) {
+                net.rnnSetPreviousState(Integer.parseInt(e.getKey()), e.getValue());
+            }
+        }
+    }
+
+    protected static boolean isRecurrent(Layer l) {
+        if (l instanceof BaseWrapperLayer) {
+            l = ((BaseWrapperLayer) l).getUnderlying();
+        }
+        return l instanceof RecurrentLayer;
+    }
+}
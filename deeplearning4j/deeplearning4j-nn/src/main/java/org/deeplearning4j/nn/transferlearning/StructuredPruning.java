@@ -0,0 +1,736 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.convolutional.Cropping2D;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.conf.preprocessor.FeedForwardToRnnPreProcessor;
+import org.deeplearning4j.nn.conf.preprocessor.RnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.adapter.MultiDataSetIteratorAdapter;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Structured pruning of trained networks: removes entire units (DenseLayer) or filters (ConvolutionLayer) with low
+ * saliency, and re-materializes the network as a physically smaller {@link MultiLayerNetwork} or
+ * {@link ComputationGraph}.<br>
+ * Unlike {@link TransferLearning.Builder#nOutReplace(int, int, org.deeplearning4j.nn.weights.WeightInit)}, the weights
+ * of the surviving units are kept. The removal is propagated to all downstream layers: parameter-free layers
+ * (activation, dropout, pooling, padding, etc), BatchNormalization and DepthwiseConvolution2D layers have their
+ * channels (and parameters) sliced consistently, CnnToFeedForward preprocessors and merge vertices are adjusted, and
+ * the input weights (and nIn) of the next Dense, Output, RnnOutput, Convolution, LSTM or SimpleRnn layer are sliced.<br>
+ * Layers whose outputs reach a network output, or that feed into a vertex that cannot be adjusted (for example an
+ * ElementWiseVertex), cannot be pruned.<br>
+ * Units are ranked per layer by the L1 or L2 norm of their weights, or by their mean absolute activation over a set
+ * of data. The pruned network should usually be fine-tuned afterwards; updater state is not retained.
+ * <pre>
+ * {@code
+ * MultiLayerNetwork pruned = new StructuredPruning.Builder(net)
+ *         .criterion(StructuredPruning.Criterion.L1_NORM)
+ *         .pruneFraction(0.25)
+ *         .build();
+ * }
+ * </pre>
+ */
+@Slf4j
+public class StructuredPruning {
+
+    /**
+     * How the units/channels of a layer are ranked for pruning:<br>
+     * L1_NORM, L2_NORM: norm of the weights for each output unit or filter (excluding the bias)<br>
+     * MEAN_ACTIVATION: mean absolute value of the layer activations for each unit or channel, over the saliency data
+     */
+    public enum Criterion {
+        L1_NORM, L2_NORM, MEAN_ACTIVATION
+    }
+
+    private StructuredPruning() {
+    }
+
+    /**
+     * Builder for pruning a {@link MultiLayerNetwork}
+     */
+    public static class Builder {
+        private final MultiLayerNetwork origModel;
+        private final PruningConfig config = new PruningConfig();
+        private int[] layers;
+
+        /**
+         * @param origModel Trained network to prune. It is not modified
+         */
+        public Builder(@NonNull MultiLayerNetwork origModel) {
+            this.origModel = origModel;
+        }
+
+        /**
+         * Criterion used to rank units for pruning. Default: L1_NORM
+         */
+        public Builder criterion(@NonNull Criterion criterion) {
+            config.criterion = criterion;
+            return this;
+        }
+
+        /**
+         * Fraction of units (or filters) to remove from each pruned layer. At least one unit is always kept.
+         * Cannot be used with {@link #threshold(double)}
+         */
+        public Builder pruneFraction(double fraction) {
+            Preconditions.checkArgument(fraction >= 0 && fraction < 1, "Prune fraction must be in range [0, 1), got %s", fraction);
+            config.fraction = fraction;
+            return this;
+        }
+
+        /**
+         * Remove all units with a saliency (as per the criterion) less than the specified threshold. At least one unit
+         * is always kept. Cannot be used with {@link #pruneFraction(double)}
+         */
+        public Builder threshold(double threshold) {
+            config.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Data used to calculate the saliency when using {@link Criterion#MEAN_ACTIVATION}
+         */
+        public Builder saliencyData(@NonNull DataSetIterator iterator) {
+            config.saliencyData = new MultiDataSetIteratorAdapter(iterator);
+            return this;
+        }
+
+        /**
+         * Layers to prune. If not set, all DenseLayer and ConvolutionLayer layers that can be pruned are pruned.
+         * An exception is thrown if any of the specified layers cannot be pruned.
+         */
+        public Builder pruneLayers(int... layers) {
+            this.layers = layers;
+            return this;
+        }
+
+        /**
+         * @return The pruned network
+         */
+        public MultiLayerNetwork build() {
+            config.validate();
+            MultiLayerConfiguration conf = origModel.getLayerWiseConfigurations().clone();
+            int nLayers = conf.getConfs().size();
+            PruningState state = new PruningState();
+            for (int i = 0; i < nLayers; i++) {
+                String name = String.valueOf(i);
+                state.layers.put(name, conf.getConf(i).getLayer());
+                state.inputs.put(name, Collections.singletonList(i == 0 ? null : String.valueOf(i - 1)));
+                if (conf.getInputPreProcess(i) != null) {
+                    state.preProcessors.put(name, conf.getInputPreProcess(i));
+                }
+                state.params.put(name, copyParams(origModel.getLayer(i).paramTable()));
+            }
+            state.outputs.add(String.valueOf(nLayers - 1));
+
+            List<String> toPrune = new ArrayList<>();
+            if (layers != null) {
+                for (int i : layers) {
+                    Preconditions.checkArgument(i >= 0 && i < nLayers, "Invalid layer index: %s", i);
+                    toPrune.add(String.valueOf(i));
+                }
+            }
+
+            Map<String, INDArray> saliency = null;
+            if (config.criterion == Criterion.MEAN_ACTIVATION) {
+                saliency = meanActivations(origModel, state, config.saliencyData);
+            }
+            state.prune(config, layers == null ? null : toPrune, saliency);
+
+            MultiLayerNetwork out = new MultiLayerNetwork(conf);
+            out.init();
+            for (int i = 0; i < nLayers; i++) {
+                assignParams(String.valueOf(i), out.getLayer(i).paramTable(), state.params.get(String.valueOf(i)));
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Builder for pruning a {@link ComputationGraph}
+     */
+    public static class GraphBuilder {
+        private final ComputationGraph origGraph;
+        private final PruningConfig config = new PruningConfig();
+        private String[] layers;
+
+        /**
+         * @param origGraph Trained network to prune. It is not modified
+         */
+        public GraphBuilder(@NonNull ComputationGraph origGraph) {
+            this.origGraph = origGraph;
+        }
+
+        /**
+         * Criterion used to rank units for pruning. Default: L1_NORM
+         */
+        public GraphBuilder criterion(@NonNull Criterion criterion) {
+            config.criterion = criterion;
+            return this;
+        }
+
+        /**
+         * See {@link Builder#pruneFraction(double)}
+         */
+        public GraphBuilder pruneFraction(double fraction) {
+            Preconditions.checkArgument(fraction >= 0 && fraction < 1, "Prune fraction must be in range [0, 1), got %s", fraction);
+            config.fraction = fraction;
+            return this;
+        }
+
+        /**
+         * See {@link Builder#threshold(double)}
+         */
+        public GraphBuilder threshold(double threshold) {
+            config.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Data used to calculate the saliency when using {@link Criterion#MEAN_ACTIVATION}. Single input graphs only
+         */
+        public GraphBuilder saliencyData(@NonNull DataSetIterator iterator) {
+            return saliencyData(new MultiDataSetIteratorAdapter(iterator));
+        }
+
+        /**
+         * Data used to calculate the saliency when using {@link Criterion#MEAN_ACTIVATION}
+         */
+        public GraphBuilder saliencyData(@NonNull MultiDataSetIterator iterator) {
+            config.saliencyData = iterator;
+            return this;
+        }
+
+        /**
+         * Layers to prune, by name. If not set, all DenseLayer and ConvolutionLayer layers that can be pruned are
+         * pruned. An exception is thrown if any of the specified layers cannot be pruned.
+         */
+        public GraphBuilder pruneLayers(String... layers) {
+            this.layers = layers;
+            return this;
+        }
+
+        /**
+         * @return The pruned network
+         */
+        public ComputationGraph build() {
+            config.validate();
+            ComputationGraphConfiguration conf = origGraph.getConfiguration().clone();
+            PruningState state = new PruningState();
+            for (Map.Entry<String, GraphVertex> e : conf.getVertices().entrySet()) {
+                String name = e.getKey();
+                if (e.getValue() instanceof LayerVertex) {
+                    LayerVertex lv = (LayerVertex) e.getValue();
+                    state.layers.put(name, lv.getLayerConf().getLayer());
+                    if (lv.getPreProcessor() != null) {
+                        state.preProcessors.put(name, lv.getPreProcessor());
+                    }
+                    state.params.put(name, copyParams(origGraph.getLayer(name).paramTable()));
+                } else {
+                    state.vertices.put(name, e.getValue());
+                }
+                state.inputs.put(name, conf.getVertexInputs().get(name));
+            }
+            state.outputs.addAll(conf.getNetworkOutputs());
+
+            if (layers != null) {
+                for (String s : layers) {
+                    Preconditions.checkArgument(state.layers.containsKey(s), "No layer with name \"%s\" exists", s);
+                }
+            }
+
+            Map<String, INDArray> saliency = null;
+            if (config.criterion == Criterion.MEAN_ACTIVATION) {
+                saliency = meanActivations(origGraph, state, config.saliencyData);
+            }
+            state.prune(config, layers == null ? null : Arrays.asList(layers), saliency);
+
+            ComputationGraph out = new ComputationGraph(conf);
+            out.init();
+            for (String name : state.params.keySet()) {
+                assignParams(name, out.getLayer(name).paramTable(), state.params.get(name));
+            }
+            return out;
+        }
+    }
+
+    private static class PruningConfig {
+        private Criterion criterion = Criterion.L1_NORM;
+        private Double fraction;
+        private Double threshold;
+        private MultiDataSetIterator saliencyData;
+
+        private void validate() {
+            Preconditions.checkState(fraction != null ^ threshold != null, "Exactly one of pruneFraction or threshold must be set");
+            Preconditions.checkState(criterion != Criterion.MEAN_ACTIVATION || saliencyData != null,
+                    "Saliency data must be provided when using criterion MEAN_ACTIVATION");
+        }
+    }
+
+    /**
+     * Network structure (as a graph: for MultiLayerNetwork, vertex names are the layer indices) with the cloned layer
+     * configurations and copies of the parameters, which are modified in-place during pruning
+     */
+    private static class PruningState {
+        private final Map<String, Layer> layers = new LinkedHashMap<>();
+        private final Map<String, GraphVertex> vertices = new HashMap<>();
+        private final Map<String, InputPreProcessor> preProcessors = new HashMap<>();
+        private final Map<String, List<String>> inputs = new HashMap<>();
+        private final Set<String> outputs = new HashSet<>();
+        private final Map<String, Map<String, INDArray>> params = new HashMap<>();
+
+        private void prune(PruningConfig config, List<String> toPrune, Map<String, INDArray> saliencyMap) {
+            boolean explicit = toPrune != null;
+            if (!explicit) {
+                toPrune = new ArrayList<>();
+                for (Map.Entry<String, Layer> e : layers.entrySet()) {
+                    if (isPrunable(e.getValue())) {
+                        toPrune.add(e.getKey());
+                    }
+                }
+            }
+
+            for (String name : toPrune) {
+                Layer l = layers.get(name);
+                if (!isPrunable(l)) {
+                    throw new UnsupportedOperationException("Cannot prune layer \"" + name + "\" of type " + l.getClass().getSimpleName()
+                            + ": only DenseLayer and ConvolutionLayer layers can be pruned");
+                }
+                INDArray saliency = saliencyMap != null ? saliencyMap.get(name) : weightSaliency(l, params.get(name), config.criterion);
+                int[] keep = select(saliency, config);
+                long nOut = ((FeedForwardLayer) l).getNOut();
+                if (keep.length == nOut) {
+                    continue;
+                }
+
+                List<Action> plan = new ArrayList<>();
+                try {
+                    plan.add(new Action(ActionType.OUTPUTS, name, keep));
+                    propagate(name, keep, plan, new HashSet<String>());
+                } catch (UnsupportedOperationException e) {
+                    if (explicit) {
+                        throw new UnsupportedOperationException("Cannot prune layer \"" + name + "\": " + e.getMessage(), e);
+                    }
+                    log.info("Skipping layer \"{}\": {}", name, e.getMessage());
+                    continue;
+                }
+
+                for (Action a : plan) {
+                    apply(a);
+                }
+                log.info("Pruned layer \"{}\" ({}): {} -> {} units", name, l.getClass().getSimpleName(), nOut, keep.length);
+            }
+        }
+
+        private void propagate(String from, int[] mask, List<Action> plan, Set<String> visited) {
+            if (outputs.contains(from)) {
+                throw new UnsupportedOperationException("activations of vertex \"" + from + "\" are a network output");
+            }
+            for (Map.Entry<String, List<String>> e : inputs.entrySet()) {
+                if (e.getValue() == null || !e.getValue().contains(from)) {
+                    continue;
+                }
+                String to = e.getKey();
+                if (!visited.add(to)) {
+                    throw new UnsupportedOperationException("activations reach vertex \"" + to + "\" via more than one path");
+                }
+
+                if (layers.containsKey(to)) {
+                    int[] m = mask;
+                    InputPreProcessor pp = preProcessors.get(to);
+                    if (pp != null) {
+                        plan.add(new Action(ActionType.PREPROCESSOR, to, m));
+                        m = preProcessorMask(pp, m);
+                    }
+                    Layer l = layers.get(to);
+                    if (isInputSliceable(l)) {
+                        plan.add(new Action(ActionType.INPUTS, to, m));
+                    } else if (isPassThrough(l)) {
+                        plan.add(new Action(ActionType.PASS_THROUGH, to, m));
+                        if (l instanceof DepthwiseConvolution2D) {
+                            m = expand(m, ((DepthwiseConvolution2D) l).getDepthMultiplier(), 1, true);
+                        }
+                        propagate(to, m, plan, visited);
+                    } else {
+                        throw new UnsupportedOperationException("layer \"" + to + "\" of type " + l.getClass().getSimpleName()
+                                + " cannot be adjusted");
+                    }
+                } else if (vertices.get(to) instanceof MergeVertex) {
+                    List<String> in = inputs.get(to);
+                    if (in.indexOf(from) != in.lastIndexOf(from)) {
+                        throw new UnsupportedOperationException("vertex \"" + from + "\" is used more than once as input to merge vertex \"" + to + "\"");
+                    }
+                    long offset = 0;
+                    long total = 0;
+                    for (String s : in) {
+                        long c = channels(s);
+                        if (s.equals(from)) {
+                            offset = total;
+                        }
+                        total += c;
+                    }
+                    long fromChannels = channels(from);
+                    int[] m = new int[(int) (total - fromChannels + mask.length)];
+                    int j = 0;
+                    for (int i = 0; i < offset; i++) {
+                        m[j++] = i;
+                    }
+                    for (int i : mask) {
+                        m[j++] = (int) (offset + i);
+                    }
+                    for (long i = offset + fromChannels; i < total; i++) {
+                        m[j++] = (int) i;
+                    }
+                    propagate(to, m, plan, visited);
+                } else {
+                    GraphVertex v = vertices.get(to);
+                    throw new UnsupportedOperationException("vertex \"" + to + "\" of type "
+                            + (v == null ? "(unknown)" : v.getClass().getSimpleName()) + " cannot be adjusted");
+                }
+            }
+        }
+
+        /**
+         * Number of output channels (or units) of the specified vertex, before pruning
+         */
+        private long channels(String vertex) {
+            if (layers.containsKey(vertex)) {
+                Layer l = layers.get(vertex);
+                if (l instanceof FeedForwardLayer && ((FeedForwardLayer) l).getNOut() > 0) {
+                    return ((FeedForwardLayer) l).getNOut();
+                }
+                InputPreProcessor pp = preProcessors.get(vertex);
+                if (pp instanceof CnnToFeedForwardPreProcessor) {
+                    CnnToFeedForwardPreProcessor p = (CnnToFeedForwardPreProcessor) pp;
+                    return p.getNumChannels() * p.getInputHeight() * p.getInputWidth();
+                }
+                return channels(inputs.get(vertex).get(0));
+            } else if (vertices.get(vertex) instanceof MergeVertex) {
+                long sum = 0;
+                for (String s : inputs.get(vertex)) {
+                    sum += channels(s);
+                }
+                return sum;
+            }
+            throw new UnsupportedOperationException("number of channels for vertex \"" + vertex + "\" is not known");
+        }
+
+        private void apply(Action a) {
+            Map<String, INDArray> p = params.get(a.vertex);
+            int n = a.mask.length;
+            switch (a.type) {
+                case OUTPUTS: {
+                    Layer l = layers.get(a.vertex);
+                    boolean conv = l instanceof ConvolutionLayer;
+                    for (Map.Entry<String, INDArray> e : p.entrySet()) {
+                        if (e.getKey().equals(DefaultParamInitializer.WEIGHT_KEY)) {
+                            e.setValue(slice(e.getValue(), conv ? 0 : 1, a.mask));
+                        } else {
+                            //Bias, layer norm gain: [1, nOut]
+                            e.setValue(slice(e.getValue(), 1, a.mask));
+                        }
+                    }
+                    ((FeedForwardLayer) l).setNOut(n);
+                    break;
+                }
+                case PASS_THROUGH: {
+                    Layer l = layers.get(a.vertex);
+                    if (l instanceof DepthwiseConvolution2D) {
+                        DepthwiseConvolution2D d = (DepthwiseConvolution2D) l;
+                        p.put(DefaultParamInitializer.WEIGHT_KEY, slice(p.get(DefaultParamInitializer.WEIGHT_KEY), 2, a.mask));
+                        if (p.containsKey(DefaultParamInitializer.BIAS_KEY)) {
+                            p.put(DefaultParamInitializer.BIAS_KEY, slice(p.get(DefaultParamInitializer.BIAS_KEY), 1,
+                                    expand(a.mask, d.getDepthMultiplier(), 1, true)));
+                        }
+                        d.setNIn(n);
+                        d.setNOut(n * d.getDepthMultiplier());
+                    } else {
+                        //BatchNormalization: all parameters (gamma, beta, mean, var/log10stdev) are [1, nOut]
+                        for (Map.Entry<String, INDArray> e : p.entrySet()) {
+                            e.setValue(slice(e.getValue(), 1, a.mask));
+                        }
+                        if (l instanceof FeedForwardLayer && ((FeedForwardLayer) l).getNOut() > 0) {
+                            ((FeedForwardLayer) l).setNIn(n);
+                            ((FeedForwardLayer) l).setNOut(n);
+                        }
+                    }
+                    break;
+                }
+                case PREPROCESSOR: {
+                    InputPreProcessor pp = preProcessors.get(a.vertex);
+                    if (pp instanceof CnnToFeedForwardPreProcessor) {
+                        ((CnnToFeedForwardPreProcessor) pp).setNumChannels(n);
+                    }
+                    break;
+                }
+                case INPUTS: {
+                    Layer l = layers.get(a.vertex);
+                    boolean conv = l instanceof ConvolutionLayer;
+                    p.put(DefaultParamInitializer.WEIGHT_KEY, slice(p.get(DefaultParamInitializer.WEIGHT_KEY), conv ? 1 : 0, a.mask));
+                    ((FeedForwardLayer) l).setNIn(n);
+                    break;
+                }
+            }
+        }
+    }
+
+    private enum ActionType {
+        OUTPUTS, PASS_THROUGH, PREPROCESSOR, INPUTS
+    }
+
+    private static class Action {
+        private final ActionType type;
+        private final String vertex;
+        private final int[] mask;
+
+        private Action(ActionType type, String vertex, int[] mask) {
+            this.type = type;
+            this.vertex = vertex;
+            this.mask = mask;
+        }
+    }
+
+    /**
+     * @return True if the output units/channels of the specified layer can be pruned
+     */
+    public static boolean isPrunable(Layer l) {
+        return l.getClass() == DenseLayer.class || l.getClass() == ConvolutionLayer.class;
+    }
+
+    private static boolean isInputSliceable(Layer l) {
+        Class<?> c = l.getClass();
+        return c == DenseLayer.class || c == OutputLayer.class || c == RnnOutputLayer.class || c == ConvolutionLayer.class
+                || c == LSTM.class || c == GravesLSTM.class || c == SimpleRnn.class;
+    }
+
+    private static boolean isPassThrough(Layer l) {
+        return l instanceof BatchNormalization || l instanceof ActivationLayer || l instanceof DropoutLayer
+                || l instanceof SubsamplingLayer || l instanceof GlobalPoolingLayer || l instanceof LocalResponseNormalization
+                || l instanceof ZeroPaddingLayer || l instanceof Cropping2D || l instanceof Upsampling2D
+                || l.getClass() == DepthwiseConvolution2D.class;
+    }
+
+    /**
+     * Map a mask over channels to the mask over the outputs of the preprocessor
+     */
+    private static int[] preProcessorMask(InputPreProcessor pp, int[] mask) {
+        if (pp instanceof CnnToFeedForwardPreProcessor) {
+            CnnToFeedForwardPreProcessor p = (CnnToFeedForwardPreProcessor) pp;
+            int hw = (int) (p.getInputHeight() * p.getInputWidth());
+            if (p.getFormat() == CNN2DFormat.NHWC) {
+                //Flattened index: (h*W + w) * C + c
+                return expand(mask, (int) p.getNumChannels(), hw, false);
+            }
+            //Flattened index: c * H*W + (h*W + w)
+            return expand(mask, hw, 1, true);
+        } else if (pp instanceof FeedForwardToRnnPreProcessor || pp instanceof RnnToFeedForwardPreProcessor) {
+            return mask;
+        }
+        throw new UnsupportedOperationException("input preprocessor of type " + pp.getClass().getSimpleName() + " cannot be adjusted");
+    }
+
+    /**
+     * Expand a channel mask to a mask over a flattened array.<br>
+     * channelMajor = true: index = c * size + i, for i in [0, size)<br>
+     * channelMajor = false: index = i * size + c, for i in [0, repeats)
+     */
+    private static int[] expand(int[] mask, int size, int repeats, boolean channelMajor) {
+        if (channelMajor) {
+            int[] out = new int[mask.length * size];
+            int j = 0;
+            for (int c : mask) {
+                for (int i = 0; i < size; i++) {
+                    out[j++] = c * size + i;
+                }
+            }
+            return out;
+        }
+        int[] out = new int[mask.length * repeats];
+        int j = 0;
+        for (int i = 0; i < repeats; i++) {
+            for (int c : mask) {
+                out[j++] = i * size + c;
+            }
+        }
+        return out;
+    }
+
+    private static INDArray slice(INDArray arr, int dim, int[] keep) {
+        long[] idx = new long[keep.length];
+        for (int i = 0; i < keep.length; i++) {
+            idx[i] = keep[i];
+        }
+        INDArrayIndex[] indices = new INDArrayIndex[arr.rank()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = NDArrayIndex.all();
+        }
+        indices[dim] = NDArrayIndex.indices(idx);
+        return arr.get(indices).dup();
+    }
+
+    private static INDArray weightSaliency(Layer l, Map<String, INDArray> params, Criterion criterion) {
+        INDArray w = params.get(DefaultParamInitializer.WEIGHT_KEY);
+        //Dense weights: [nIn, nOut]; convolution weights: [nOut, nIn, kH, kW]
+        int[] dims = l instanceof ConvolutionLayer ? new int[]{1, 2, 3} : new int[]{0};
+        if (criterion == Criterion.L2_NORM) {
+            return w.norm2(dims);
+        }
+        return Transforms.abs(w, true).sum(dims);
+    }
+
+    /**
+     * Select the units to keep, in increasing order of index
+     */
+    private static int[] select(INDArray saliency, PruningConfig config) {
+        final double[] s = saliency.toDoubleVector();
+        Integer[] order = new Integer[s.length];
+        for (int i = 0; i < s.length; i++) {
+            order[i] = i;
+        }
+        //Highest saliency first
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(s[o2], s[o1]);
+            }
+        });
+
+        int numKeep;
+        if (config.fraction != null) {
+            numKeep = s.length - (int) Math.floor(config.fraction * s.length);
+        } else {
+            numKeep = 0;
+            for (double d : s) {
+                if (d >= config.threshold) {
+                    numKeep++;
+                }
+            }
+        }
+        numKeep = Math.max(1, numKeep);
+
+        int[] keep = new int[numKeep];
+        for (int i = 0; i < numKeep; i++) {
+            keep[i] = order[i];
+        }
+        Arrays.sort(keep);
+        return keep;
+    }
+
+    private static Map<String, INDArray> copyParams(Map<String, INDArray> paramTable) {
+        Map<String, INDArray> out = new LinkedHashMap<>();
+        for (Map.Entry<String, INDArray> e : paramTable.entrySet()) {
+            out.put(e.getKey(), e.getValue().dup());
+        }
+        return out;
+    }
+
+    private static void assignParams(String layer, Map<String, INDArray> to, Map<String, INDArray> from) {
+        for (Map.Entry<String, INDArray> e : to.entrySet()) {
+            INDArray src = from.get(e.getKey());
+            Preconditions.checkState(src != null && Arrays.equals(src.shape(), e.getValue().shape()),
+                    "Pruned parameter %s for layer \"%s\" has shape %ndShape, expected %ndShape", e.getKey(), layer, src, e.getValue());
+            e.getValue().assign(src);
+        }
+    }
+
+    private static int channelDim(Layer l) {
+        if (l instanceof ConvolutionLayer && ((ConvolutionLayer) l).getCnn2dDataFormat() == CNN2DFormat.NHWC) {
+            return 3;
+        }
+        return 1;
+    }
+
+    private static void accumulateActivation(Map<String, INDArray> sums, String name, Layer l, INDArray activations) {
+        int chDim = channelDim(l);
+        int[] dims = new int[activations.rank() - 1];
+        int j = 0;
+        for (int d = 0; d < activations.rank(); d++) {
+            if (d != chDim) {
+                dims[j++] = d;
+            }
+        }
+        //Mean over the spatial dimensions, sum over the examples
+        INDArray s = Transforms.abs(activations, true).sum(dims).divi(activations.length() / activations.size(0) / activations.size(chDim));
+        if (sums.containsKey(name)) {
+            sums.get(name).addi(s);
+        } else {
+            sums.put(name, s);
+        }
+    }
+
+    private static Map<String, INDArray> meanActivations(MultiLayerNetwork net, PruningState state, MultiDataSetIterator iter) {
+        Map<String, INDArray> sums = new HashMap<>();
+        if (iter.resetSupported()) {
+            iter.reset();
+        }
+        while (iter.hasNext()) {
+            MultiDataSet mds = iter.next();
+            List<INDArray> activations = net.feedForward(mds.getFeatures(0), mds.getFeaturesMaskArray(0), mds.getLabelsMaskArray(0));
+            for (Map.Entry<String, Layer> e : state.layers.entrySet()) {
+                if (isPrunable(e.getValue())) {
+                    accumulateActivation(sums, e.getKey(), e.getValue(), activations.get(Integer.parseInt(e.getKey()) + 1));
+                }
+            }
+        }
+        Preconditions.checkState(!sums.isEmpty(), "No saliency data: iterator has no data");
+        return sums;
+    }
+
+    private static Map<String, INDArray> meanActivations(ComputationGraph graph, PruningState state, MultiDataSetIterator iter) {
+        Map<String, INDArray> sums = new HashMap<>();
+        if (iter.resetSupported()) {
+            iter.reset();
+        }
+        while (iter.hasNext()) {
+            MultiDataSet mds = iter.next();
+            graph.setLayerMaskArrays(mds.getFeaturesMaskArrays(), mds.getLabelsMaskArrays());
+            Map<String, INDArray> activations = graph.feedForward(mds.getFeatures(), false);
+            graph.clearLayerMaskArrays();
+            for (Map.Entry<String, Layer> e : state.layers.entrySet()) {
+                if (isPrunable(e.getValue())) {
+                    accumulateActivation(sums, e.getKey(), e.getValue(), activations.get(e.getKey()));
+                }
+            }
+        }
+        Preconditions.checkState(!sums.isEmpty(), "No saliency data: iterator has no data");
+        return sums;
+    }
+}
@@ -17,13 +17,16 @@
 package org.deeplearning4j.nn.updater;
 
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MixedPrecision;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.CustomOp;
@@ -48,10 +51,17 @@ import java.util.*;
  *     however)<br>
  * are combined into a single {@link org.nd4j.linalg.learning.GradientUpdater} operation, instead of having a set of
  * smaller operations. A smaller number of larger operations improves performance, especially for GPUs.
+ * <p>
+ * For mixed precision training (see {@link MixedPrecision}), the updater blocks operate on an FP32 master copy of the
+ * parameters and gradients, instead of on the (low precision) network view arrays. The updated master parameters are
+ * written back to the network parameters after each iteration. Changes to the network parameters made outside of the
+ * updater must be propagated to the master copy via {@link #resyncMasterParams()} - the network {@code setParams},
+ * {@code setParamTable} and {@code setParam} methods do this automatically.
  *
  * @author Alex Black
  */
 @Getter
+@Slf4j
 public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater {
 
     protected final T network;
@@ -61,6 +71,15 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
     protected boolean initializedMinibatchDivision;
     protected List<INDArray> gradientsForMinibatchDivision;
 
+    //Mixed precision training only
+    protected MixedPrecision mixedPrecision;
+    protected INDArray masterParams;
+    protected INDArray masterGradient;
+    protected Map<Trainable, Gradient> masterLayerGradients;
+    protected Map<Trainable, INDArray> masterLayerGradientViews;
+    protected double lossScale = 1.0;
+    protected int lossScaleGoodSteps;
+
     public BaseMultiLayerUpdater(T network) {
         this(network, null);
     }
@@ -86,10 +105,32 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
 
         INDArray paramsView = network.params();
         INDArray gradientView = getFlattenedGradientsView();
+        mixedPrecision = getMixedPrecisionConfig();
+        if (mixedPrecision != null) {
+            //The updater blocks (and the updater state) use the FP32 master copy, not the network view arrays
+            DataType masterType = mixedPrecision.getMasterDataType();
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                masterParams = paramsView.castTo(masterType);
+                if (masterParams == paramsView) {
+                    masterParams = paramsView.dup();
+                }
+                masterGradient = Nd4j.create(masterType, gradientView.shape(), 'c');
+            }
+            paramsView = masterParams;
+            gradientView = masterGradient;
+            masterLayerGradients = new IdentityHashMap<>();
+            masterLayerGradientViews = new IdentityHashMap<>();
+            lossScale = mixedPrecision.getInitialLossScale();
+        }
         int paramsViewSoFar = 0;
         int currentUpdaterOffset = 0;
         for (int i = 0; i < layers.length; i++) {
             Map<String, INDArray> layerParamTable = layers[i].paramTable(false);
+            if (layerParamTable != null && mixedPrecision != null && layers[i].numParams() > 0) {
+                masterLayerGradients.put(layers[i], new DefaultGradient());
+                masterLayerGradientViews.put(layers[i], gradientView.get(NDArrayIndex.interval(0, 0, true),
+                        NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + layers[i].numParams())));
+            }
             if (layerParamTable != null) {
                 List<String> variables = new ArrayList<>(layerParamTable.keySet()); //Is from a set, but iteration order should be fixed per layer as it's a from a LinkedHashSet
                 for (int j = 0; j < variables.size(); j++) {
@@ -106,11 +147,16 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                                         paramsViewSoFar + paramSizeThisVariable));
                         gradientViewSubset = gradientView.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex
                                         .interval(paramsViewSoFar, paramsViewSoFar + paramSizeThisVariable));
+                        if (mixedPrecision != null) {
+                            masterLayerGradients.get(layers[i]).setGradientFor(var, gradientViewSubset);
+                        }
                     }
 
                     //First: decide whether to add to the existing updater block, or create a new one
+                    //Row-sparse gradients (embedding layers) always get their own block, so they can be updated separately
                     if (currentBlock == null || !UpdaterUtils.updaterConfigurationsEquals(lastLayer, lastVariable,
-                                    layers[i], var)) {
+                                    layers[i], var) || UpdaterBlock.sparseGradientLayer(layers[i], var) != null
+                                    || UpdaterBlock.sparseGradientLayer(lastLayer, lastVariable) != null) {
 
                         if (paramsViewSoFar + paramSizeThisVariable > Integer.MAX_VALUE || paramsViewSoFar + paramSizeThisVariable > Integer.MAX_VALUE)
                             throw new ND4JArraySizeException();
@@ -153,7 +199,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             updaterRequiresInit = false;
         } else if (updaterStateSize > 0) {
             //May be 0 if all SGD or NONE updaters, for example
-            updaterStateViewArray = Nd4j.createUninitialized(network.params().dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
+            updaterStateViewArray = Nd4j.createUninitialized(paramsView.dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
             updaterRequiresInit = true;
         }
 
@@ -208,6 +254,13 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      */
     protected abstract boolean isMiniBatch();
 
+    /**
+     * @return The mixed precision training configuration for the model, or null if mixed precision training is not enabled
+     */
+    protected MixedPrecision getMixedPrecisionConfig() {
+        return null;
+    }
+
     /**
      * Set the view array. Note that this does an assign operation - the provided array is not stored internally.
      *
@@ -270,6 +323,9 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         //In a MultiLayerNetwork, the INDArray returned by .gradient() is always the standard full view array
         // hence should be the same object under normal circumstances
         boolean isExternal = gradient.gradient() != getFlattenedGradientsView();
+        if (mixedPrecision != null && isExternal) {
+            throw new UnsupportedOperationException("External gradients are not supported with mixed precision training");
+        }
 
         //Split up the gradients on a per-layer basis, for pre-apply
         Map<String, Gradient> layerGradients = new HashMap<>();
@@ -297,7 +353,12 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             }
         }
 
-        if(isMiniBatch()){
+        if (mixedPrecision != null) {
+            if (!unscaleMasterGradient(batchSize)) {
+                //Overflow in the low precision gradients: skip this update
+                return;
+            }
+        } else if(isMiniBatch()){
             divideByMinibatch(isExternal, gradient, batchSize);
         }
 
@@ -306,7 +367,11 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             String layerName = entry.getKey();
             Trainable layer = layersByName.get(layerName);
 
-            preApply(layer, layerGradients.get(layerName), iteration);
+            if (mixedPrecision != null) {
+                preApply(layer, masterLayerGradients.get(layer), masterLayerGradientViews.get(layer), iteration);
+            } else {
+                preApply(layer, layerGradients.get(layerName), iteration);
+            }
         }
 
         //Apply the updaters in blocks. This also applies LR and momentum schedules, L1 and L2
@@ -330,23 +395,101 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                 }
             }
         }
+
+        if (mixedPrecision != null) {
+            applyMasterUpdate();
+        }
     }
 
-    protected void divideByMinibatch(boolean isExternal, Gradient gradient, int batchSize){
-        //Challenge here: most gradients are actual gradients, and should be divided by the minibatch to get the average
-        //However, some 'gradients' are actually updates - an example being BatchNorm mean/variance estimates... these
-        // shouldn't be modified
+    /**
+     * Mixed precision training: copy the (scaled, low precision) network gradients to the FP32 master gradient, and
+     * divide by the loss scale (and the minibatch size, if applicable). If the gradients contain NaN or infinite values,
+     * the loss scale is reduced and the update should be skipped; otherwise the loss scale is increased after
+     * {@link MixedPrecision#getGrowthInterval()} consecutive iterations without overflow.
+     *
+     * @param batchSize Minibatch size
+     * @return True if the update should be applied, false if it should be skipped due to overflow
+     */
+    protected boolean unscaleMasterGradient(int batchSize) {
+        INDArray networkGradient = getFlattenedGradientsView();
+        masterGradient.assign(networkGradient);
+        double divisor = (isMiniBatch() ? batchSize * lossScale : lossScale);
+        for (INDArray arr : minibatchDivisionGradients()) {
+            arr.divi(divisor);
+        }
+
+        double sum = masterGradient.sumNumber().doubleValue();
+        if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+            //Zero the network gradients, so that the optimizer step does not modify the parameters
+            networkGradient.assign(0);
+            lossScale *= mixedPrecision.getBackoffFactor();
+            lossScaleGoodSteps = 0;
+            log.debug("Mixed precision training: skipping update due to gradient overflow, reducing loss scale to {}", lossScale);
+            return false;
+        }
+
+        if (++lossScaleGoodSteps >= mixedPrecision.getGrowthInterval()) {
+            lossScale *= mixedPrecision.getGrowthFactor();
+            lossScaleGoodSteps = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Mixed precision training: apply the update (as calculated by the updater blocks in the master gradient array) to
+     * the FP32 master parameters, and write the result back to the network parameters. The network gradient is zeroed,
+     * so that the optimizer step leaves the (already updated) network parameters unchanged.
+     */
+    protected void applyMasterUpdate() {
+        masterParams.subi(masterGradient);
+        getParams().assign(masterParams);
+        getFlattenedGradientsView().assign(0);
+    }
+
+    /**
+     * Mixed precision training: reset the FP32 master copy of the parameters from the current network parameters.
+     * Must be called after the network parameters are modified outside of the updater (for example, by parameter
+     * averaging), otherwise the modification is overwritten by the next update.
+     * Has no effect if mixed precision training is not enabled.
+     */
+    public void resyncMasterParams() {
+        if (mixedPrecision != null) {
+            masterParams.assign(getParams());
+        }
+    }
+
+    /**
+     * Set the current loss scale for mixed precision training - for example, when resuming training from a saved model.
+     * Has no effect if mixed precision training is not enabled.
+     *
+     * @param lossScale Loss scale. Must be positive
+     */
+    public void setLossScale(double lossScale) {
+        Preconditions.checkArgument(lossScale > 0, "Loss scale must be positive, got %s", lossScale);
+        if (mixedPrecision != null) {
+            this.lossScale = lossScale;
+            this.lossScaleGoodSteps = 0;
+        }
+    }
 
+    protected List<INDArray> minibatchDivisionGradients() {
         if(!initializedMinibatchDivision){
-            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(getFlattenedGradientsView());
+            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(mixedPrecision != null ? masterGradient : getFlattenedGradientsView());
             initializedMinibatchDivision = true;
         }
+        return gradientsForMinibatchDivision;
+    }
+
+    protected void divideByMinibatch(boolean isExternal, Gradient gradient, int batchSize){
+        //Challenge here: most gradients are actual gradients, and should be divided by the minibatch to get the average
+        //However, some 'gradients' are actually updates - an example being BatchNorm mean/variance estimates... these
+        // shouldn't be modified
 
         List<INDArray> toDivide;
         if(isExternal){
             toDivide = getMinibatchDivisionSubsets(gradient.gradient());
         } else {
-            toDivide = gradientsForMinibatchDivision;
+            toDivide = minibatchDivisionGradients();
         }
         for(INDArray arr : toDivide){
             arr.divi(batchSize);
@@ -398,6 +541,18 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      * @param iteration The current iteration (i.e., number of parameter updates so far)
      */
     public void preApply(Trainable layer, Gradient gradient, int iteration) {
+        preApply(layer, gradient, layer.getGradientsViewArray(), iteration);
+    }
+
+    /**
+     * Pre-apply: Apply gradient normalization/clipping
+     *
+     * @param layer              Layer to apply gradient normalization/clipping for
+     * @param gradient           Gradient to update
+     * @param layerGradientView  Gradient view array for all parameters of the layer
+     * @param iteration          The current iteration (i.e., number of parameter updates so far)
+     */
+    protected void preApply(Trainable layer, Gradient gradient, INDArray layerGradientView, int iteration) {
 
         if (layer.getConfig() == null || layer.numParams() == 0) {
             //Layer does not have parameters -> no gradient
@@ -409,7 +564,6 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             return; //no op
 
         final double threshold = layer.getConfig().getGradientNormalizationThreshold();
-        INDArray layerGradientView = layer.getGradientsViewArray();
 
         switch (normalization) {
             case RenormalizeL2PerLayer:
@@ -21,17 +21,30 @@ import lombok.Data;
 import lombok.val;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Trainable;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate;
+import org.nd4j.linalg.api.shape.Shape;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.GradientUpdater;
+import org.nd4j.linalg.learning.config.AMSGrad;
+import org.nd4j.linalg.learning.config.AdaDelta;
+import org.nd4j.linalg.learning.config.AdaMax;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.Nadam;
+import org.nd4j.linalg.learning.config.Nesterovs;
+import org.nd4j.linalg.learning.config.RmsProp;
 import org.nd4j.linalg.learning.regularization.Regularization;
 import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -42,6 +55,8 @@ import java.util.List;
  */
 @Data
 public class UpdaterBlock {
+    private static final int[] DIM_1 = new int[]{1};
+
     private int paramOffsetStart;
     private int paramOffsetEnd;
     private int updaterViewOffsetStart;
@@ -54,6 +69,8 @@ public class UpdaterBlock {
 
     private GradientUpdater gradientUpdater;
 
+    //For sparse gradients only: the last iteration each row was updated at (or -1 if unknown), for lazy state decay
+    private int[] lastRowUpdateIteration;
 
     @AllArgsConstructor
     @Data
@@ -156,6 +173,20 @@ public class UpdaterBlock {
             return;
         }
 
+        //Row-sparse gradients (embedding layers): only update the rows that were present in the minibatch
+        SparseGradientLayer sparseLayer = null;
+        if (layersAndVariablesInBlock.size() == 1) {
+            sparseLayer = sparseGradientLayer(l0, layersAndVariablesInBlock.get(0).getParamName());
+        }
+        if (sparseLayer != null && !externalGradient) {
+            ParamState ps = layersAndVariablesInBlock.get(0);
+            int[] rows = sparseLayer.getSparseGradientRows(ps.getParamName());
+            if (rows != null) {
+                updateSparse(ps, rows, iteration, epoch);
+                return;
+            }
+        }
+
         //Pre-updater regularization: l1 and l2
         applyRegularizationAllVariables(Regularization.ApplyStep.BEFORE_UPDATER, iteration, epoch, externalGradient, fullNetworkGradientView, fullNetworkParamsArray);
 
@@ -164,6 +195,146 @@ public class UpdaterBlock {
 
         //Post updater regularization: weight decay
         applyRegularizationAllVariables(Regularization.ApplyStep.POST_UPDATER, iteration, epoch, externalGradient, fullNetworkGradientView, fullNetworkParamsArray);
+
+        if (sparseLayer != null) {
+            //Dense update: all rows of the gradient may now be non-zero, and the state of all rows is up to date
+            sparseLayer.clearSparseGradientRows(layersAndVariablesInBlock.get(0).getParamName());
+            if (lastRowUpdateIteration != null) {
+                Arrays.fill(lastRowUpdateIteration, iteration);
+            }
+        }
+    }
+
+    /**
+     * Apply the updater and regularization to only the specified rows of a row-sparse parameter gradient.
+     * The rows of the gradient and updater state are gathered, updated and then scattered back. The updater state
+     * of each row is first decayed for the iterations that the row was not present in (lazy decay): for example,
+     * Adam's moments are multiplied by beta1^d and beta2^d, where d is the number of skipped iterations. All other
+     * rows of the gradient remain zero, hence the corresponding parameters are not modified.
+     */
+    protected void updateSparse(ParamState ps, int[] rows, int iteration, int epoch) {
+        String paramName = ps.getParamName();
+        //Note: the param and gradient views may be the FP32 master copy (mixed precision training), not the layer's arrays
+        INDArray layerParam = ps.getLayer().paramTable(false).get(paramName);
+        INDArray param = Shape.newShapeNoCopy(ps.getParamView(), layerParam.shape(), layerParam.ordering() == 'f');
+        INDArray grad = Shape.newShapeNoCopy(ps.getGradView(), layerParam.shape(), layerParam.ordering() == 'f');
+        if (layerParam.rank() != 2 || param == null || grad == null) {
+            throw new IllegalStateException("Sparse gradients are only supported for rank 2 parameters with contiguous" +
+                    " gradient views: got parameter \"" + paramName + "\" with shape " + Arrays.toString(layerParam.shape()));
+        }
+
+        int numRows = rows.length;
+        long rowLength = param.size(1);
+        long length = numRows * rowLength;
+        INDArray gradRows = Nd4j.pullRows(grad, 1, rows, 'c');
+        INDArray paramRows = Nd4j.pullRows(param, 1, rows, 'c');
+
+        //Gather the updater state rows. Each state array has the same layout as the parameter
+        long paramLength = param.length();
+        int numStates = (updaterView == null ? 0 : (int) (updaterView.length() / paramLength));
+        INDArray[] stateArrays = new INDArray[numStates];
+        INDArray[] stateRows = new INDArray[numStates];
+        INDArray stateRowsFlat = null;
+        if (numStates > 0) {
+            stateRowsFlat = Nd4j.createUninitialized(updaterView.dataType(), new long[]{1, numStates * length}, 'c');
+            for (int s = 0; s < numStates; s++) {
+                INDArray stateView = updaterView.get(NDArrayIndex.interval(0, 0, true),
+                        NDArrayIndex.interval(s * paramLength, (s + 1) * paramLength));
+                stateArrays[s] = Shape.newShapeNoCopy(stateView, param.shape(), param.ordering() == 'f');
+                stateRows[s] = stateRowsFlat.get(NDArrayIndex.interval(0, 0, true),
+                        NDArrayIndex.interval(s * length, (s + 1) * length)).reshape('c', numRows, rowLength);
+                stateRows[s].assign(Nd4j.pullRows(stateArrays[s], 1, rows, 'c'));
+            }
+
+            applyLazyDecay(rows, stateRows, iteration);
+        }
+
+        boolean hasLR = gradientUpdater.getConfig().hasLearningRate();
+        double lr = (hasLR ? gradientUpdater.getConfig().getLearningRate(iteration, epoch) : 1.0);
+        applyRegularization(Regularization.ApplyStep.BEFORE_UPDATER, ps.getLayer(), paramName, gradRows, paramRows, iteration, epoch, lr);
+
+        GradientUpdater u = gradientUpdater.getConfig().instantiate(stateRowsFlat, false);
+        u.applyUpdater(gradRows.reshape('c', 1, length), iteration, epoch);
+
+        applyRegularization(Regularization.ApplyStep.POST_UPDATER, ps.getLayer(), paramName, gradRows, paramRows, iteration, epoch, lr);
+
+        //Scatter the updated gradient and updater state rows back
+        INDArray indices = Nd4j.createFromArray(rows);
+        Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, grad, indices, gradRows, DIM_1);
+        for (int s = 0; s < numStates; s++) {
+            Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, stateArrays[s], indices, stateRows[s], DIM_1);
+        }
+    }
+
+    private void applyLazyDecay(int[] rows, INDArray[] stateRows, int iteration) {
+        if (lastRowUpdateIteration == null) {
+            long numParamRows = layersAndVariablesInBlock.get(0).getLayer().paramTable(false)
+                    .get(layersAndVariablesInBlock.get(0).getParamName()).size(0);
+            lastRowUpdateIteration = new int[(int) numParamRows];
+            Arrays.fill(lastRowUpdateIteration, -1);
+        }
+
+        double[] decay = lazyDecayFactors(gradientUpdater.getConfig());
+        if (decay != null && decay.length == stateRows.length) {
+            for (int s = 0; s < stateRows.length; s++) {
+                if (decay[s] == 1.0) {
+                    continue;
+                }
+                double[] factors = new double[rows.length];
+                boolean any = false;
+                for (int i = 0; i < rows.length; i++) {
+                    int last = lastRowUpdateIteration[rows[i]];
+                    int skipped = (last < 0 ? 0 : iteration - last - 1);
+                    factors[i] = (skipped > 0 ? Math.pow(decay[s], skipped) : 1.0);
+                    any |= skipped > 0;
+                }
+                if (any) {
+                    INDArray f = Nd4j.createFromArray(factors).castTo(stateRows[s].dataType()).reshape(rows.length, 1);
+                    stateRows[s].muliColumnVector(f);
+                }
+            }
+        }
+
+        for (int r : rows) {
+            lastRowUpdateIteration[r] = iteration;
+        }
+    }
+
+    /**
+     * @return The per-iteration decay factor for each updater state array, when the gradient is zero - or null if
+     * unknown for this updater (in which case no lazy decay is applied)
+     */
+    protected static double[] lazyDecayFactors(IUpdater updater) {
+        if (updater instanceof Adam) {
+            return new double[]{((Adam) updater).getBeta1(), ((Adam) updater).getBeta2()};
+        } else if (updater instanceof Nadam) {
+            return new double[]{((Nadam) updater).getBeta1(), ((Nadam) updater).getBeta2()};
+        } else if (updater instanceof AMSGrad) {
+            return new double[]{((AMSGrad) updater).getBeta1(), ((AMSGrad) updater).getBeta2(), 1.0};
+        } else if (updater instanceof AdaMax) {
+            return new double[]{((AdaMax) updater).getBeta1(), ((AdaMax) updater).getBeta2()};
+        } else if (updater instanceof RmsProp) {
+            return new double[]{((RmsProp) updater).getRmsDecay()};
+        } else if (updater instanceof Nesterovs) {
+            return new double[]{((Nesterovs) updater).getMomentum()};
+        } else if (updater instanceof AdaDelta) {
+            return new double[]{((AdaDelta) updater).getRho(), ((AdaDelta) updater).getRho()};
+        }
+        return null;
+    }
+
+    /**
+     * @return The layer, if the gradient for the specified parameter is row-sparse; null otherwise
+     */
+    public static SparseGradientLayer sparseGradientLayer(Trainable layer, String paramName) {
+        Trainable l = layer;
+        if (l instanceof GraphVertex && ((GraphVertex) l).hasLayer()) {
+            l = ((GraphVertex) l).getLayer();
+        }
+        if (l instanceof SparseGradientLayer && ((SparseGradientLayer) l).isSparseGradient(paramName)) {
+            return (SparseGradientLayer) l;
+        }
+        return null;
     }
 
     protected void applyRegularizationAllVariables(Regularization.ApplyStep applyStep, int iteration, int epoch, boolean externalGradient, INDArray fullNetworkGradientView,
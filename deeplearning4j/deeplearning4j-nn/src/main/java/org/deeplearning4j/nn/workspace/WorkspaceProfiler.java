@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.workspace;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.MemoryWorkspaceManager;
+import org.nd4j.linalg.api.memory.abstracts.Nd4jWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.LocationPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * WorkspaceProfiler records the memory usage of the workspaces used by a network (MultiLayerNetwork or
+ * ComputationGraph): peak allocations per cycle, spills (allocations that did not fit in the workspace) and
+ * reallocations, along with the array types placed in each workspace.<br>
+ * Set the profiler on a network using {@code setWorkspaceProfiler(WorkspaceProfiler)}; statistics are then recorded
+ * after each fit and output call, for all threads the network is used from.<br>
+ * After profiling, {@link #getTunedConfigurations()} can be used to obtain workspace configurations with the initial
+ * size set to the observed peak. These can be set on the network using {@code setTunedWorkspaceConfigurations(Map)},
+ * and are saved alongside the model by {@link org.deeplearning4j.util.ModelSerializer}. Workspaces are then created
+ * with their final size up front, instead of learning their size (and spilling) during the first iterations.
+ */
+@Slf4j
+public class WorkspaceProfiler {
+
+    protected final Map<String, WorkspaceStats> stats = new LinkedHashMap<>();
+    //Last seen lifetime counters (spilled bytes, spilled allocations, reallocations) for each workspace instance
+    protected final Map<MemoryWorkspace, long[]> lastCounters = new WeakHashMap<>();
+
+    /**
+     * Record the current statistics for all (non scoped out) workspaces of the specified workspace manager, for the
+     * current thread
+     *
+     * @param workspaceMgr Workspace manager to record the workspaces of
+     */
+    public synchronized void record(@NonNull LayerWorkspaceMgr workspaceMgr) {
+        MemoryWorkspaceManager wsm = Nd4j.getWorkspaceManager();
+        Set<MemoryWorkspace> sampled = Collections.newSetFromMap(new IdentityHashMap<MemoryWorkspace, Boolean>());
+        for (ArrayType t : ArrayType.values()) {
+            if (workspaceMgr.isScopedOut(t) || !workspaceMgr.hasConfiguration(t))
+                continue;
+            String name = workspaceMgr.getWorkspaceName(t);
+            if (name == null || !wsm.checkIfWorkspaceExists(name))
+                continue;
+
+            WorkspaceStats s = stats.get(name);
+            if (s == null) {
+                s = new WorkspaceStats(name, workspaceMgr.getConfiguration(t));
+                stats.put(name, s);
+            }
+            s.getArrayTypes().add(t);
+
+            MemoryWorkspace ws = wsm.getWorkspaceForCurrentThread(name);
+            if (!sampled.add(ws))
+                continue;
+
+            s.setPeakCycleBytes(Math.max(s.getPeakCycleBytes(), ws.getMaxCycleAllocations()));
+            s.setWorkspaceBytes(Math.max(s.getWorkspaceBytes(), ws.getCurrentSize()));
+            if (ws instanceof Nd4jWorkspace) {
+                Nd4jWorkspace nws = (Nd4jWorkspace) ws;
+                long[] last = lastCounters.get(ws);
+                if (last == null) {
+                    last = new long[3];
+                    lastCounters.put(ws, last);
+                }
+                long spilledBytes = nws.getTotalSpilledSize();
+                long spilledAllocations = nws.getTotalSpilledAllocations();
+                long reallocations = nws.getNumberOfReallocations();
+                s.setSpilledBytes(s.getSpilledBytes() + spilledBytes - last[0]);
+                s.setSpilledAllocations(s.getSpilledAllocations() + spilledAllocations - last[1]);
+                s.setReallocations(s.getReallocations() + reallocations - last[2]);
+                last[0] = spilledBytes;
+                last[1] = spilledAllocations;
+                last[2] = reallocations;
+            }
+        }
+    }
+
+    /**
+     * @return Statistics recorded so far, keyed by workspace name
+     */
+    public synchronized Map<String, WorkspaceStats> getStats() {
+        Map<String, WorkspaceStats> out = new LinkedHashMap<>();
+        for (Map.Entry<String, WorkspaceStats> e : stats.entrySet()) {
+            WorkspaceStats s = e.getValue();
+            WorkspaceStats c = new WorkspaceStats(s.getWorkspaceName(), s.getConfiguration());
+            c.getArrayTypes().addAll(s.getArrayTypes());
+            c.setPeakCycleBytes(s.getPeakCycleBytes());
+            c.setWorkspaceBytes(s.getWorkspaceBytes());
+            c.setSpilledBytes(s.getSpilledBytes());
+            c.setSpilledAllocations(s.getSpilledAllocations());
+            c.setReallocations(s.getReallocations());
+            out.put(e.getKey(), c);
+        }
+        return out;
+    }
+
+    /**
+     * @param arrayType Array type to get the statistics for
+     * @return Statistics for all workspaces that arrays of the specified type have been placed in
+     */
+    public synchronized List<WorkspaceStats> getStats(@NonNull ArrayType arrayType) {
+        List<WorkspaceStats> out = new ArrayList<>();
+        for (WorkspaceStats s : getStats().values()) {
+            if (s.getArrayTypes().contains(arrayType))
+                out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * Get the tuned workspace configurations, using the overallocation limit of each workspace's original configuration.
+     * See {@link #getTunedConfigurations(double)}
+     *
+     * @return Tuned workspace configurations, keyed by workspace name
+     */
+    public Map<String, WorkspaceConfiguration> getTunedConfigurations() {
+        return getTunedConfigurations(-1);
+    }
+
+    /**
+     * Get the tuned workspace configurations: i.e., the original configuration of each workspace, with the initial size
+     * set to the observed peak allocations per cycle, plus the specified overallocation. Spill and learning policies
+     * are not modified, hence workspaces can still grow if larger inputs are used later.<br>
+     * Workspaces without any recorded allocations, circular workspaces and memory mapped workspaces are not included.
+     *
+     * @param overallocation Fraction of the peak size to add to the initial size. If negative: use the overallocation
+     *                       limit of the original configuration of each workspace
+     * @return Tuned workspace configurations, keyed by workspace name
+     */
+    public synchronized Map<String, WorkspaceConfiguration> getTunedConfigurations(double overallocation) {
+        Map<String, WorkspaceConfiguration> out = new LinkedHashMap<>();
+        for (WorkspaceStats s : stats.values()) {
+            WorkspaceConfiguration c = s.getConfiguration();
+            if (c == null || s.getPeakCycleBytes() <= 0 || c.getPolicyReset() == ResetPolicy.ENDOFBUFFER_REACHED
+                    || c.getPolicyLocation() != LocationPolicy.RAM)
+                continue;
+
+            double over = overallocation >= 0 ? overallocation : c.getOverallocationLimit();
+            long size = s.getPeakCycleBytes() + (long) (s.getPeakCycleBytes() * over);
+            if (c.getMaxSize() > 0)
+                size = Math.min(size, c.getMaxSize());
+
+            out.put(s.getWorkspaceName(), WorkspaceConfiguration.builder()
+                    .policyAllocation(c.getPolicyAllocation())
+                    .policySpill(c.getPolicySpill())
+                    .policyMirroring(c.getPolicyMirroring())
+                    .policyLearning(c.getPolicyLearning())
+                    .policyReset(c.getPolicyReset())
+                    .policyLocation(c.getPolicyLocation())
+                    .tempFilePath(c.getTempFilePath())
+                    .initialSize(Math.max(size, c.getInitialSize()))
+                    .minSize(c.getMinSize())
+                    .maxSize(c.getMaxSize())
+                    .cyclesBeforeInitialization(c.getCyclesBeforeInitialization())
+                    .overallocationLimit(c.getOverallocationLimit())
+                    .stepsNumber(c.getStepsNumber())
+                    .build());
+        }
+        return out;
+    }
+
+    /**
+     * Clear all recorded statistics
+     */
+    public synchronized void reset() {
+        stats.clear();
+        lastCounters.clear();
+    }
+
+    /**
+     * Create the specified workspaces for the current thread, if they don't already exist. As the tuned configurations
+     * have an initial size set, the workspace memory is allocated immediately with that size.
+     *
+     * @param configurations Workspace configurations, keyed by workspace name. May be null
+     */
+    public static void initializeWorkspaces(Map<String, WorkspaceConfiguration> configurations) {
+        if (configurations == null || configurations.isEmpty())
+            return;
+        MemoryWorkspaceManager wsm = Nd4j.getWorkspaceManager();
+        for (Map.Entry<String, WorkspaceConfiguration> e : configurations.entrySet()) {
+            if (!wsm.checkIfWorkspaceExists(e.getKey())) {
+                Preconditions.checkState(e.getValue() != null, "Null configuration for workspace \"%s\"", e.getKey());
+                wsm.getWorkspaceForCurrentThread(e.getValue(), e.getKey());
+                log.debug("Initialized workspace {} with tuned initial size of {} bytes", e.getKey(), e.getValue().getInitialSize());
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.workspace;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+
+import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Workspace usage statistics for a single workspace, as recorded by {@link WorkspaceProfiler}.<br>
+ * Note that a single workspace is usually used for multiple array types (for example, {@link ArrayType#FF_WORKING_MEM}
+ * and {@link ArrayType#BP_WORKING_MEM}), hence statistics are collected per workspace name.
+ */
+@Data
+@NoArgsConstructor
+public class WorkspaceStats implements Serializable {
+
+    /**
+     * Name of the workspace
+     */
+    private String workspaceName;
+    /**
+     * Array types that have been placed in this workspace
+     */
+    private Set<ArrayType> arrayTypes = EnumSet.noneOf(ArrayType.class);
+    /**
+     * Configuration of the workspace, as used by the network
+     */
+    private WorkspaceConfiguration configuration;
+    /**
+     * Maximum number of bytes allocated within a single cycle (i.e., between opening and closing the workspace)
+     */
+    private long peakCycleBytes;
+    /**
+     * Maximum size (in bytes) of the memory allocated for the workspace
+     */
+    private long workspaceBytes;
+    /**
+     * Total number of bytes spilled: i.e., allocated outside of the workspace memory as the workspace was too small
+     */
+    private long spilledBytes;
+    /**
+     * Total number of spilled allocations
+     */
+    private long spilledAllocations;
+    /**
+     * Number of times the workspace memory was (re)allocated after creation, due to learning or due to spills
+     */
+    private long reallocations;
+
+    public WorkspaceStats(String workspaceName, WorkspaceConfiguration configuration) {
+        this.workspaceName = workspaceName;
+        this.configuration = configuration;
+    }
+}
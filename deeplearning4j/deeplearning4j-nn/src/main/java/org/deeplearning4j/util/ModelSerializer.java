@@ -28,9 +28,11 @@ import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
@@ -39,11 +41,13 @@ import org.nd4j.linalg.dataset.api.preprocessor.serializer.NormalizerSerializer;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.heartbeat.reports.Task;
 import org.nd4j.common.primitives.Pair;
+import org.nd4j.shade.jackson.core.type.TypeReference;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipEntry;
@@ -65,6 +69,7 @@ public class ModelSerializer {
     public static final String COEFFICIENTS_BIN = "coefficients.bin";
     public static final String NO_PARAMS_MARKER = "noParams.marker";
     public static final String PREPROCESSOR_BIN = "preprocessor.bin";
+    public static final String WORKSPACE_CONFIGURATIONS_JSON = "workspaceConfigurations.json";
 
     private ModelSerializer() {}
 
@@ -186,6 +191,19 @@ public class ModelSerializer {
         }
 
 
+        Map<String, WorkspaceConfiguration> wsConfigs = null;
+        if (model instanceof MultiLayerNetwork) {
+            wsConfigs = ((MultiLayerNetwork) model).getTunedWorkspaceConfigurations();
+        } else if (model instanceof ComputationGraph) {
+            wsConfigs = ((ComputationGraph) model).getTunedWorkspaceConfigurations();
+        }
+
+        if (wsConfigs != null && !wsConfigs.isEmpty()) {
+            ZipEntry wsEntry = new ZipEntry(WORKSPACE_CONFIGURATIONS_JSON);
+            zipfile.putNextEntry(wsEntry);
+            zipfile.write(NeuralNetConfiguration.mapper().writeValueAsBytes(wsConfigs));
+        }
+
         if(dataNormalization != null) {
             // now, add our normalizer as additional entry
             ZipEntry nEntry = new ZipEntry(NORMALIZER_BIN);
@@ -348,6 +366,7 @@ public class ModelSerializer {
             if (gotUpdaterState && updaterState != null) {
                 network.getUpdater().setStateViewArray(network, updaterState, false);
             }
+            network.setTunedWorkspaceConfigurations(restoreWorkspaceConfigurationsFromMap(zipFile));
             return new Pair<>(network, zipFile);
         } else
             throw new IllegalStateException("Model wasnt found within file: gotConfig: [" + gotConfig
@@ -576,6 +595,7 @@ public class ModelSerializer {
             if (gotUpdaterState && updaterState != null) {
                 cg.getUpdater().setStateViewArray(updaterState);
             }
+            cg.setTunedWorkspaceConfigurations(restoreWorkspaceConfigurationsFromMap(files));
             return new Pair<>(cg, files);
         } else
             throw new IllegalStateException("Model wasnt found within file: gotConfig: [" + gotConfig
@@ -768,7 +788,8 @@ public class ModelSerializer {
         Preconditions.checkState(f.exists(), "File must exist: %s", f);
         Preconditions.checkArgument(!(UPDATER_BIN.equalsIgnoreCase(key) || NORMALIZER_BIN.equalsIgnoreCase(key)
                 || CONFIGURATION_JSON.equalsIgnoreCase(key) || COEFFICIENTS_BIN.equalsIgnoreCase(key)
-                || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)),
+                || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)
+                || WORKSPACE_CONFIGURATIONS_JSON.equalsIgnoreCase(key)),
                 "Invalid key: Key is reserved for internal use: \"%s\"", key);
         File tempFile = null;
         try {
@@ -835,7 +856,8 @@ public class ModelSerializer {
         Preconditions.checkState(f.exists(), "File must exist: %s", f);
         Preconditions.checkArgument(!(UPDATER_BIN.equalsIgnoreCase(key) || NORMALIZER_BIN.equalsIgnoreCase(key)
                         || CONFIGURATION_JSON.equalsIgnoreCase(key) || COEFFICIENTS_BIN.equalsIgnoreCase(key)
-                        || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)),
+                        || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)
+                        || WORKSPACE_CONFIGURATIONS_JSON.equalsIgnoreCase(key)),
                 "Invalid key: Key is reserved for internal use: \"%s\"", key);
 
         try (ZipFile zipFile = new ZipFile(f)) {
@@ -918,6 +940,27 @@ public class ModelSerializer {
         return restoreNormalizerFromMap(files);
     }
 
+    /**
+     * Restore the tuned workspace configurations from a model file, if present.
+     * See {@link MultiLayerNetwork#setTunedWorkspaceConfigurations(Map)}
+     *
+     * @param file Model file saved earlier with ModelSerializer
+     * @return Tuned workspace configurations, keyed by workspace name, or null if none are present in the file
+     */
+    public static Map<String, WorkspaceConfiguration> restoreWorkspaceConfigurationsFromFile(@NonNull File file) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            checkInputStream(is);
+            return restoreWorkspaceConfigurationsFromMap(loadZipData(is));
+        }
+    }
+
+    private static Map<String, WorkspaceConfiguration> restoreWorkspaceConfigurationsFromMap(Map<String, byte[]> files) throws IOException {
+        byte[] ws = files.get(WORKSPACE_CONFIGURATIONS_JSON);
+        if (ws == null)
+            return null;
+        return NeuralNetConfiguration.mapper().readValue(ws, new TypeReference<LinkedHashMap<String, WorkspaceConfiguration>>() {});
+    }
+
     private static <T extends Normalizer> T restoreNormalizerFromMap(Map<String, byte[]> files) throws IOException {
         byte[] norm = files.get(NORMALIZER_BIN);
 
@@ -18,16 +18,20 @@ package org.deeplearning4j.util;
 
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MixedPrecision;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.BaseLayer;
 import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.nn.updater.MultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterBlock;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
@@ -339,6 +343,64 @@ public class NetworkUtils {
         return null;
     }
 
+    /**
+     * Get the current loss scale for mixed precision training. If the updater has not yet been created, the initial
+     * loss scale of the mixed precision configuration is returned.
+     *
+     * @param model MultiLayerNetwork or ComputationGraph
+     * @return Current loss scale, or 1.0 if mixed precision training is not enabled for the model
+     */
+    public static double getLossScale(Model model) {
+        MixedPrecision mp;
+        Updater u;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            mp = net.getLayerWiseConfigurations().getMixedPrecision();
+            u = (mp == null ? null : net.getUpdater(false));
+        } else if (model instanceof ComputationGraph) {
+            ComputationGraph net = (ComputationGraph) model;
+            mp = net.getConfiguration().getMixedPrecision();
+            u = (mp == null ? null : net.getUpdater(false));
+        } else {
+            return 1.0;
+        }
+
+        if (mp == null) {
+            return 1.0;
+        }
+        if (u instanceof BaseMultiLayerUpdater && ((BaseMultiLayerUpdater<?>) u).getMixedPrecision() != null) {
+            return ((BaseMultiLayerUpdater<?>) u).getLossScale();
+        }
+        return mp.getInitialLossScale();
+    }
+
+    /**
+     * Multiply the gradients calculated by an output layer (or output vertex) by the specified loss scale, for mixed
+     * precision training. Parameter 'gradients' that are not divided by the minibatch size (i.e., that are actually
+     * updates, like the BatchNormalization mean/variance estimates) are not scaled.
+     *
+     * @param outputLayer Output layer (or vertex) the gradients were calculated for
+     * @param gradient    Parameter gradients of the output layer
+     * @param lossScale   Loss scale
+     * @param epsilons    Activation gradients of the output layer. May contain null values
+     */
+    public static void scaleLossGradients(Trainable outputLayer, Gradient gradient, double lossScale, INDArray... epsilons) {
+        if (gradient != null) {
+            for (Map.Entry<String, INDArray> e : gradient.gradientForVariable().entrySet()) {
+                if (outputLayer.updaterDivideByMinibatch(e.getKey())) {
+                    e.getValue().muli(lossScale);
+                }
+            }
+        }
+        if (epsilons != null) {
+            for (INDArray eps : epsilons) {
+                if (eps != null) {
+                    eps.muli(lossScale);
+                }
+            }
+        }
+    }
+
     /**
      * Currently supports {@link MultiLayerNetwork} and {@link ComputationGraph} models.
      * Pull requests to support additional <code>org.deeplearning4j</code> models are welcome.
@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import lombok.NonNull;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.LossLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.conf.layers.samediff.SameDiffLayerUtils;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.conf.preprocessor.FeedForwardToCnnPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.ConvolutionParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Pooling2DConfig;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a trained {@link MultiLayerNetwork} or {@link ComputationGraph} to an equivalent {@link SameDiff} graph for
+ * inference. The SameDiff graph can then be executed (or saved and served) as a whole graph, instead of layer by layer.<br>
+ * The network's flattened parameter array ({@code net.params()}) is registered once in the SameDiff graph as variable
+ * {@link #PARAMS_NAME}, and each layer parameter is derived from it in the graph by slice and reshape operations. The
+ * SameDiff graph therefore shares the parameter buffer with the network: later changes to the network parameters (for
+ * example, further training) are reflected in the SameDiff graph output, without exporting again.<br>
+ * Naming:<br>
+ * - MultiLayerNetwork: the input placeholder is named {@link #INPUT_NAME}, the network output is named {@link #OUTPUT_NAME},
+ * and the outputs of the other layers are named by layer name (by default, "layer0", "layer1", etc)<br>
+ * - ComputationGraph: the input placeholders and the outputs of all vertices (including the network outputs) are named
+ * by vertex name<br>
+ * - Layer parameters are named the same as the keys of the network's {@code paramTable()}: i.e., "layerIndex_paramKey"
+ * for MultiLayerNetwork, and "vertexName_paramKey" for ComputationGraph<br>
+ * <br>
+ * Only the inference forward pass is exported: dropout and weight noise are not applied, and loss functions and labels
+ * are not included (i.e., output layers return their activations). Masking is not supported.<br>
+ * Supported layers: {@link DenseLayer}, {@link OutputLayer}, {@link LossLayer}, {@link ActivationLayer}, {@link DropoutLayer},
+ * {@link ConvolutionLayer} (2D), {@link SubsamplingLayer} (2D max and average pooling), {@link BatchNormalization} and
+ * {@link GlobalPoolingLayer} (max, average and sum pooling).<br>
+ * Supported preprocessors: {@link CnnToFeedForwardPreProcessor} and {@link FeedForwardToCnnPreProcessor}.<br>
+ * Supported graph vertices: {@link LayerVertex}, {@link MergeVertex} and {@link ElementWiseVertex}.<br>
+ * An {@link UnsupportedOperationException} is thrown for networks with any other layers, preprocessors or vertices.
+ */
+public class SameDiffExporter {
+
+    public static final String INPUT_NAME = "input";
+    public static final String OUTPUT_NAME = "output";
+    public static final String PARAMS_NAME = "params";
+
+    private SameDiffExporter() {}
+
+    /**
+     * Convert the specified MultiLayerNetwork to an equivalent SameDiff inference graph
+     *
+     * @param net       Network to convert
+     * @param inputType Input type for the network. Used to define the placeholder shape and the rank of the activations
+     * @return SameDiff graph with a single placeholder {@link #INPUT_NAME} and output {@link #OUTPUT_NAME}
+     */
+    public static SameDiff export(@NonNull MultiLayerNetwork net, @NonNull InputType inputType) {
+        Preconditions.checkState(net.getLayers() != null && net.getLayers().length > 0, "Network has not been initialized");
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations();
+        DataType dataType = net.params().dataType();
+
+        SameDiff sd = SameDiff.create();
+        SDVariable current = sd.placeHolder(INPUT_NAME, dataType, inputType.getShape(true));
+        SDVariable flatParams = params(sd, net.params(), net.numParams());
+        long paramOffset = 0;
+        Layer[] layers = net.getLayers();
+        for (int i = 0; i < layers.length; i++) {
+            InputPreProcessor preProcessor = conf.getInputPreProcess(i);
+            if (preProcessor != null) {
+                current = preProcess(sd, preProcessor, current, inputType);
+                inputType = preProcessor.getOutputType(inputType);
+            }
+
+            org.deeplearning4j.nn.conf.layers.Layer l = layers[i].conf().getLayer();
+            String name = (i == layers.length - 1 ? OUTPUT_NAME : l.getLayerName());
+            LayerParams params = new LayerParams(flatParams, paramOffset, layers[i], String.valueOf(i));
+            current = layer(sd, layers[i], params, name, current, inputType);
+            inputType = l.getOutputType(i, inputType);
+            paramOffset += layers[i].numParams();
+        }
+        return sd;
+    }
+
+    /**
+     * Convert the specified ComputationGraph to an equivalent SameDiff inference graph
+     *
+     * @param net        Network to convert
+     * @param inputTypes Input types for the network, one for each network input. Used to define the placeholder shapes
+     *                   and the rank of the activations
+     * @return SameDiff graph with placeholders and outputs named by vertex name
+     */
+    public static SameDiff export(@NonNull ComputationGraph net, @NonNull InputType... inputTypes) {
+        Preconditions.checkState(net.getVertices() != null, "Network has not been initialized");
+        ComputationGraphConfiguration conf = net.getConfiguration();
+        List<String> networkInputs = conf.getNetworkInputs();
+        Preconditions.checkArgument(inputTypes.length == networkInputs.size(), "Expected %s input types (one for each " +
+                "network input), got %s", networkInputs.size(), inputTypes.length);
+        DataType dataType = net.params().dataType();
+
+        SameDiff sd = SameDiff.create();
+        SDVariable flatParams = params(sd, net.params(), net.numParams());
+        Map<String, SDVariable> vars = new HashMap<>();
+        Map<String, InputType> types = new HashMap<>();
+        for (int i = 0; i < inputTypes.length; i++) {
+            String name = networkInputs.get(i);
+            vars.put(name, sd.placeHolder(name, dataType, inputTypes[i].getShape(true)));
+            types.put(name, inputTypes[i]);
+        }
+
+        //Parameters of each vertex are stored in the flattened parameter array in topological order
+        org.deeplearning4j.nn.graph.vertex.GraphVertex[] vertices = net.getVertices();
+        int[] order = net.topologicalSortOrder();
+        long paramOffset = 0;
+        for (int idx : order) {
+            String name = vertices[idx].getVertexName();
+            if (vertices[idx].isInputVertex())
+                continue;
+            GraphVertex gv = conf.getVertices().get(name);
+            long vertexParamOffset = paramOffset;
+            paramOffset += gv.numParams(true);
+
+            List<String> inputNames = conf.getVertexInputs().get(name);
+            SDVariable[] in = new SDVariable[inputNames.size()];
+            InputType[] inTypes = new InputType[inputNames.size()];
+            for (int j = 0; j < in.length; j++) {
+                in[j] = vars.get(inputNames.get(j));
+                inTypes[j] = types.get(inputNames.get(j));
+            }
+
+            SDVariable out;
+            if (gv instanceof LayerVertex) {
+                Preconditions.checkState(in.length == 1, "Layer vertex \"%s\" has %s inputs, expected 1", name, in.length);
+                LayerVertex lv = (LayerVertex) gv;
+                SDVariable layerIn = in[0];
+                InputType layerInType = inTypes[0];
+                if (lv.getPreProcessor() != null) {
+                    layerIn = preProcess(sd, lv.getPreProcessor(), layerIn, layerInType);
+                    layerInType = lv.getPreProcessor().getOutputType(layerInType);
+                }
+                LayerParams params = new LayerParams(flatParams, vertexParamOffset, net.getLayer(name), name);
+                out = layer(sd, net.getLayer(name), params, name, layerIn, layerInType);
+            } else if (gv instanceof MergeVertex) {
+                out = in.length == 1 ? sd.identity(name, in[0]) : sd.concat(name, ((MergeVertex) gv).getMergeAxis(), in);
+            } else if (gv instanceof ElementWiseVertex) {
+                out = elementWise(sd, name, ((ElementWiseVertex) gv).getOp(), in);
+            } else {
+                throw new UnsupportedOperationException("Cannot export vertex \"" + name + "\" to SameDiff: vertex type "
+                        + gv.getClass().getSimpleName() + " is not supported");
+            }
+
+            vars.put(name, out);
+            types.put(name, gv.getOutputType(idx, inTypes));
+        }
+        return sd;
+    }
+
+    /**
+     * Register the network's flattened parameter array as a single variable, so that the graph shares its buffer
+     *
+     * @return The parameters variable, or null if the network has no parameters
+     */
+    private static SDVariable params(SameDiff sd, INDArray flatParams, long numParams) {
+        if (numParams == 0)
+            return null;
+        Preconditions.checkState(numParams <= Integer.MAX_VALUE, "Cannot export network to SameDiff: networks with more " +
+                "than Integer.MAX_VALUE parameters are not supported, got %s parameters", numParams);
+        return sd.var(PARAMS_NAME, flatParams);
+    }
+
+    /**
+     * @param params     Parameters of the layer
+     * @param outputName Name for the layer output variable
+     */
+    private static SDVariable layer(SameDiff sd, Layer layer, LayerParams params, String outputName, SDVariable in, InputType inputType) {
+        org.deeplearning4j.nn.conf.layers.Layer l = layer.conf().getLayer();
+        String layerName = params.layerName;
+
+        if (l.getClass() == DenseLayer.class || l.getClass() == OutputLayer.class) {
+            if (l instanceof DenseLayer) {
+                Preconditions.checkState(!((DenseLayer) l).isHasLayerNorm(), "Cannot export layer \"%s\" to SameDiff: " +
+                        "DenseLayer with layer normalization is not supported", layerName);
+            }
+            org.deeplearning4j.nn.conf.layers.FeedForwardLayer ffl = (org.deeplearning4j.nn.conf.layers.FeedForwardLayer) l;
+            SDVariable w = params.get(DefaultParamInitializer.WEIGHT_KEY);
+            SDVariable z = in.mmul(w);
+            if (params.contains(DefaultParamInitializer.BIAS_KEY)) {
+                z = z.add(params.get(DefaultParamInitializer.BIAS_KEY));
+            }
+            return activation(sd, outputName, ffl.getActivationFn(), z, layerName);
+        } else if (l.getClass() == LossLayer.class) {
+            return activation(sd, outputName, ((LossLayer) l).getActivationFn(), in, layerName);
+        } else if (l.getClass() == ActivationLayer.class) {
+            return activation(sd, outputName, ((ActivationLayer) l).getActivationFn(), in, layerName);
+        } else if (l.getClass() == DropoutLayer.class) {
+            //No-op at inference
+            return sd.identity(outputName, in);
+        } else if (l.getClass() == ConvolutionLayer.class) {
+            ConvolutionLayer c = (ConvolutionLayer) l;
+            checkConvolutionMode(layerName, c.getConvolutionMode());
+            int[] k = c.getKernelSize();
+            int[] s = c.getStride();
+            int[] p = c.getPadding();
+            int[] d = c.getDilation();
+            Conv2DConfig cc = Conv2DConfig.builder()
+                    .kH(k[0]).kW(k[1])
+                    .sH(s[0]).sW(s[1])
+                    .pH(p[0]).pW(p[1])
+                    .dH(d[0]).dW(d[1])
+                    .isSameMode(c.getConvolutionMode() == ConvolutionMode.Same)
+                    .dataFormat(c.getCnn2dDataFormat() == CNN2DFormat.NHWC ? Conv2DConfig.NHWC : Conv2DConfig.NCHW)
+                    .weightsFormat(WeightsFormat.OIYX)      //DL4J weights: [nOut, nIn, kH, kW]
+                    .build();
+            SDVariable w = params.get(ConvolutionParamInitializer.WEIGHT_KEY);
+            SDVariable z;
+            if (params.contains(ConvolutionParamInitializer.BIAS_KEY)) {
+                //Bias is stored as [1, nOut] in DL4J; conv2d op requires rank 1 bias
+                SDVariable bias = params.get(ConvolutionParamInitializer.BIAS_KEY, c.getNOut());
+                z = sd.cnn().conv2d(in, w, bias, cc);
+            } else {
+                z = sd.cnn().conv2d(in, w, cc);
+            }
+            return activation(sd, outputName, c.getActivationFn(), z, layerName);
+        } else if (l.getClass() == SubsamplingLayer.class) {
+            SubsamplingLayer sl = (SubsamplingLayer) l;
+            checkConvolutionMode(layerName, sl.getConvolutionMode());
+            int[] k = sl.getKernelSize();
+            int[] s = sl.getStride();
+            int[] p = sl.getPadding();
+            int[] d = sl.getDilation();
+            Pooling2DConfig.Pooling2DConfigBuilder b = Pooling2DConfig.builder()
+                    .kH(k[0]).kW(k[1])
+                    .sH(s[0]).sW(s[1])
+                    .pH(p[0]).pW(p[1])
+                    .dH(d[0]).dW(d[1])
+                    .isSameMode(sl.getConvolutionMode() == ConvolutionMode.Same)
+                    .isNHWC(sl.getCnn2dDataFormat() == CNN2DFormat.NHWC);
+            switch (sl.getPoolingType()) {
+                case MAX:
+                    return sd.cnn().maxPooling2d(outputName, in, b.build());
+                case AVG:
+                    //Same as SubsamplingLayer: extra = 1 to divide by number present (excluding padding), 0 for kH*kW
+                    return sd.cnn().avgPooling2d(outputName, in, b.extra(sl.isAvgPoolIncludePadInDivisor() ? 1 : 0).build());
+                default:
+                    throw new UnsupportedOperationException("Cannot export layer \"" + layerName + "\" to SameDiff: " +
+                            "pooling type " + sl.getPoolingType() + " is not supported");
+            }
+        } else if (l.getClass() == BatchNormalization.class) {
+            return batchNorm(sd, (BatchNormalization) l, params, outputName, in, inputType);
+        } else if (l.getClass() == GlobalPoolingLayer.class) {
+            GlobalPoolingLayer gp = (GlobalPoolingLayer) l;
+            int[] dims = gp.getPoolingDimensions();
+            if (dims == null) {
+                //Same defaults as GlobalPoolingLayer
+                switch (rank(inputType)) {
+                    case 3:
+                        dims = new int[]{2};
+                        break;
+                    case 4:
+                        dims = new int[]{2, 3};
+                        break;
+                    case 5:
+                        dims = new int[]{2, 3, 4};
+                        break;
+                    default:
+                        throw new IllegalStateException("Invalid input type for global pooling layer \"" + layerName + "\": " + inputType);
+                }
+            }
+            boolean keepDims = !gp.isCollapseDimensions();
+            switch (gp.getPoolingType()) {
+                case MAX:
+                    return sd.max(outputName, in, keepDims, dims);
+                case AVG:
+                    return sd.mean(outputName, in, keepDims, dims);
+                case SUM:
+                    return sd.sum(outputName, in, keepDims, dims);
+                default:
+                    throw new UnsupportedOperationException("Cannot export layer \"" + layerName + "\" to SameDiff: " +
+                            "pooling type " + gp.getPoolingType() + " is not supported");
+            }
+        }
+
+        throw new UnsupportedOperationException("Cannot export layer \"" + layerName + "\" to SameDiff: layer type "
+                + l.getClass().getSimpleName() + " is not supported");
+    }
+
+    private static SDVariable batchNorm(SameDiff sd, BatchNormalization bn, LayerParams params, String outputName,
+                                        SDVariable in, InputType inputType) {
+        String layerName = params.layerName;
+        int rank = rank(inputType);
+        Preconditions.checkState(rank == 2 || rank == 4, "Cannot export layer \"%s\" to SameDiff: batch normalization " +
+                "is only supported for rank 2 and rank 4 activations, got input type %s", layerName, inputType);
+
+        //Global mean/variance estimates: var = (10^log10(std))^2 when the log10(std) parameterization is used
+        SDVariable mean = params.get(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        SDVariable var;
+        if (bn.isUseLogStd()) {
+            SDVariable log10Std = params.get(BatchNormalizationParamInitializer.GLOBAL_LOG_STD);
+            SDVariable std = sd.math().pow(sd.constant(layerName + "_ten", log10Std.dataType(), 10.0), log10Std);
+            var = std.mul(std);
+        } else {
+            var = params.get(BatchNormalizationParamInitializer.GLOBAL_VAR);
+        }
+        SDVariable gamma = null;
+        SDVariable beta = null;
+        if (!bn.isLockGammaBeta()) {
+            gamma = params.get(BatchNormalizationParamInitializer.GAMMA);
+            beta = params.get(BatchNormalizationParamInitializer.BETA);
+        }
+
+        //Parameters have shape [1, nOut]: broadcast along the channels dimension
+        long nOut = bn.getNOut();
+        if (rank == 4 && bn.getCnn2DFormat() == CNN2DFormat.NCHW) {
+            mean = mean.reshape(1, nOut, 1, 1);
+            var = var.reshape(1, nOut, 1, 1);
+            if (gamma != null) {
+                gamma = gamma.reshape(1, nOut, 1, 1);
+                beta = beta.reshape(1, nOut, 1, 1);
+            }
+        }
+
+        SDVariable std = sd.math().sqrt(var.add(bn.getEps()));
+        SDVariable out = in.sub(mean).div(std);
+        if (gamma != null) {
+            out = out.mul(gamma).add(beta);
+        } else if (bn.getGamma() != 1.0 || bn.getBeta() != 0.0) {
+            out = out.mul(bn.getGamma()).add(bn.getBeta());
+        }
+        return activation(sd, outputName, bn.getActivationFn(), out, layerName);
+    }
+
+    private static SDVariable preProcess(SameDiff sd, InputPreProcessor preProcessor, SDVariable in, InputType inputType) {
+        if (preProcessor instanceof CnnToFeedForwardPreProcessor) {
+            if (rank(inputType) == 2)
+                return in;
+            //Same as CnnToFeedForwardPreProcessor: c order reshape for both NCHW and NHWC
+            return in.reshape(-1, inputType.arrayElementsPerExample());
+        } else if (preProcessor instanceof FeedForwardToCnnPreProcessor) {
+            if (rank(inputType) == 4)
+                return in;
+            FeedForwardToCnnPreProcessor p = (FeedForwardToCnnPreProcessor) preProcessor;
+            return in.reshape(-1, p.getNumChannels(), p.getInputHeight(), p.getInputWidth());
+        }
+        throw new UnsupportedOperationException("Cannot export preprocessor to SameDiff: preprocessor type "
+                + preProcessor.getClass().getSimpleName() + " is not supported");
+    }
+
+    private static SDVariable elementWise(SameDiff sd, String name, ElementWiseVertex.Op op, SDVariable[] in) {
+        if (in.length == 1)
+            return sd.identity(name, in[0]);
+
+        switch (op) {
+            case Subtract:
+                Preconditions.checkState(in.length == 2, "ElementWiseVertex \"%s\" with op Subtract requires 2 inputs, got %s", name, in.length);
+                return in[0].sub(name, in[1]);
+            case Add:
+            case Average:
+            case Product:
+            case Max:
+                SDVariable out = in[0];
+                for (int i = 1; i < in.length; i++) {
+                    String n = (i == in.length - 1 && op != ElementWiseVertex.Op.Average ? name : null);
+                    if (op == ElementWiseVertex.Op.Product) {
+                        out = out.mul(n, in[i]);
+                    } else if (op == ElementWiseVertex.Op.Max) {
+                        out = sd.math().max(n, out, in[i]);
+                    } else {
+                        out = out.add(n, in[i]);
+                    }
+                }
+                if (op == ElementWiseVertex.Op.Average) {
+                    out = out.div(name, in.length);
+                }
+                return out;
+            default:
+                throw new UnsupportedOperationException("Cannot export ElementWiseVertex \"" + name + "\" to SameDiff: op "
+                        + op + " is not supported");
+        }
+    }
+
+    private static SDVariable activation(SameDiff sd, String name, IActivation activationFn, SDVariable in, String layerName) {
+        Activation a = SameDiffLayerUtils.fromIActivation(activationFn);
+        if (a == null || !a.getActivationFunction().equals(activationFn)) {
+            //Unknown (custom) activation function, or non-default configuration (such as alpha for LeakyReLU)
+            throw new UnsupportedOperationException("Cannot export layer \"" + layerName + "\" to SameDiff: activation " +
+                    "function " + activationFn + " is not supported");
+        }
+        if (a == Activation.IDENTITY)
+            return sd.identity(name, in);
+        return a.asSameDiff(name, sd, in);
+    }
+
+    private static void checkConvolutionMode(String layerName, ConvolutionMode mode) {
+        if (mode != ConvolutionMode.Same && mode != ConvolutionMode.Truncate && mode != ConvolutionMode.Strict) {
+            throw new UnsupportedOperationException("Cannot export layer \"" + layerName + "\" to SameDiff: convolution mode "
+                    + mode + " is not supported");
+        }
+    }
+
+    /**
+     * Parameters of one layer, defined in the graph as slices of the flattened parameters variable
+     */
+    private static class LayerParams {
+        private final SDVariable flatParams;
+        private final long offset;
+        private final String layerName;
+        private final Map<String, INDArray> layout;
+
+        /**
+         * @param flatParams Flattened parameters variable of the network
+         * @param offset     Offset of the layer's parameters in the flattened parameters
+         * @param layerName  Name of the layer: used as the prefix for the parameter names, and in exception messages
+         */
+        private LayerParams(SDVariable flatParams, long offset, Layer layer, String layerName) {
+            this.flatParams = flatParams;
+            this.offset = offset;
+            this.layerName = layerName;
+            long numParams = layer.numParams();
+            if (numParams == 0) {
+                layout = Collections.emptyMap();
+            } else {
+                //Views of an array holding each element's index, to get the position and shape of each parameter
+                INDArray indices = Nd4j.linspace(DataType.DOUBLE, 0, 1, numParams).reshape(1, numParams);
+                layout = layer.conf().getLayer().initializer().getGradientsFromFlattened(layer.conf(), indices);
+            }
+        }
+
+        private boolean contains(String key) {
+            return layout.containsKey(key);
+        }
+
+        private SDVariable get(String key) {
+            INDArray indices = layout.get(key);
+            Preconditions.checkState(indices != null, "No parameter \"%s\" found for layer \"%s\"", key, layerName);
+            return get(key, indices.shape());
+        }
+
+        /**
+         * Get the parameter, reshaped to the specified shape (in the parameter's own ordering)
+         */
+        private SDVariable get(String key, long... shape) {
+            INDArray indices = layout.get(key);
+            Preconditions.checkState(indices != null, "No parameter \"%s\" found for layer \"%s\"", key, layerName);
+            long start = indices.minNumber().longValue();
+            long length = indices.length();
+            char order = indices.ordering();
+            INDArray diff = Nd4j.linspace(DataType.DOUBLE, start, 1, length).reshape(order, indices.shape()).subi(indices);
+            Preconditions.checkState(diff.amaxNumber().doubleValue() == 0.0, "Cannot export layer \"%s\" to SameDiff: " +
+                    "parameter \"%s\" is not a contiguous block of the layer parameters", layerName, key);
+
+            SameDiff sd = flatParams.getSameDiff();
+            String name = layerName + "_" + key;
+            SDVariable slice = sd.slice(flatParams, new int[]{0, (int) (offset + start)}, 1, (int) length);
+            if (order == 'c')
+                return sd.reshape(name, slice, shape);
+
+            //'f' order: 'c' order reshape to the reversed shape, then reverse the dimensions
+            long[] reversed = new long[shape.length];
+            int[] permute = new int[shape.length];
+            for (int i = 0; i < shape.length; i++) {
+                reversed[i] = shape[shape.length - 1 - i];
+                permute[i] = shape.length - 1 - i;
+            }
+            return sd.permute(name, sd.reshape(slice, reversed), permute);
+        }
+    }
+
+    private static int rank(InputType inputType) {
+        switch (inputType.getType()) {
+            case FF:
+            case CNNFlat:
+                return 2;
+            case RNN:
+                return 3;
+            case CNN:
+                return 4;
+            case CNN3D:
+                return 5;
+            default:
+                throw new IllegalStateException("Unknown input type: " + inputType);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
@@ -97,6 +98,21 @@ public class InplaceParallelInference extends ParallelInference {
         return selector.output(input, inputMasks);
     }
 
+    /**
+     * As there are no worker threads in INPLACE mode, inference is performed in the calling thread and the returned
+     * future is already completed
+     */
+    @Override
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+        try {
+            future.complete(output(input, inputMasks));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -25,12 +25,16 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.ContinuousBatcher;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.ContinuousBatchObservable;
+import org.deeplearning4j.parallelism.inference.observers.ContinuousInferenceRequest;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -41,7 +45,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -60,6 +67,7 @@ public class ParallelInference {
     protected int batchLimit;
     protected InferenceMode inferenceMode;
     protected int queueLimit;
+    protected long maxWaitMicros;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
     // this queue holds data for inference
@@ -70,12 +78,18 @@ public class ParallelInference {
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
 
+    // CONTINUOUS mode only: one request queue per worker, plus a bound on the total number of pending requests
+    private ContinuousBatcher[] batchers;
+    private Semaphore continuousPermits;
+    private final AtomicLong roundRobin = new AtomicLong(0);
+
 
 
     public final static int DEFAULT_NUM_WORKERS = Nd4j.getAffinityManager().getNumberOfDevices();
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_WAIT_MICROS = 0;
 
 
 
@@ -124,13 +138,20 @@ public class ParallelInference {
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
         AtomicBoolean assignedRoot = new AtomicBoolean(false);
 
+        if (inferenceMode == InferenceMode.CONTINUOUS) {
+            batchers = new ContinuousBatcher[workers];
+            for (int i = 0; i < workers; i++)
+                batchers[i] = new ContinuousBatcher(batchLimit, maxWaitMicros);
+            continuousPermits = new Semaphore(queueLimit);
+        }
+
         zoo = new InferenceWorker[workers];
         for (int i = 0; i < workers; i++) {
             int cDevice = i % numDevices;
             boolean cRoot = !assignedRoot.get() && cDevice == currentDevice;
             assignedRoot.compareAndSet(false, cRoot);
 
-            zoo[i] = new InferenceWorker(i, model, observables, cRoot, cDevice);
+            zoo[i] = new InferenceWorker(i, model, observables, batchers == null ? null : batchers[i], cRoot, cDevice);
 
             zoo[i].setDaemon(true);
             zoo[i].start();
@@ -160,10 +181,21 @@ public class ParallelInference {
 
             zoo[e].interrupt();
             zoo[e].shutdown();
+            try {
+                // batchers may only be shut down once their consumer (worker) thread has stopped
+                zoo[e].join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
             zoo[e] = null;
         }
         zoo = null;
 
+        if (batchers != null) {
+            for (ContinuousBatcher b : batchers)
+                b.shutdown();
+        }
+
         System.gc();
     }
 
@@ -230,6 +262,9 @@ public class ParallelInference {
     public INDArray[] output(INDArray[] input, INDArray[] inputMasks){
         Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
 
+        if (inferenceMode == InferenceMode.CONTINUOUS)
+            return outputContinuous(input, inputMasks);
+
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
         BasicInferenceObserver observer = new BasicInferenceObserver();
         InferenceObservable observable;
@@ -260,6 +295,120 @@ public class ParallelInference {
         return observable.getOutput();
     }
 
+    protected INDArray[] outputContinuous(INDArray[] input, INDArray[] inputMasks) {
+        try {
+            continuousPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        try {
+            ContinuousInferenceRequest request = new ContinuousInferenceRequest(input, inputMasks);
+            selectBatcher().submit(request);
+            return request.getOutput();
+        } finally {
+            continuousPermits.release();
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #output(INDArray)}.
+     * See {@link #outputAsync(INDArray[], INDArray[])} for details
+     */
+    public CompletableFuture<INDArray> outputAsync(INDArray input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Asynchronous version of {@link #output(INDArray, INDArray)}.
+     * See {@link #outputAsync(INDArray[], INDArray[])} for details
+     */
+    public CompletableFuture<INDArray> outputAsync(INDArray input, INDArray inputMask) {
+        return outputAsync(new INDArray[]{input}, (inputMask == null ? null : new INDArray[]{inputMask}))
+                .thenApply(out -> {
+                    if (out.length != 1) {
+                        throw new IllegalArgumentException("Network has multiple (" + out.length + ") output arrays, but only a" +
+                                " single output can be returned using this method. Use for outputAsync(INDArray[] input, INDArray[] " +
+                                "inputMasks) for multi-output nets");
+                    }
+                    return out[0];
+                });
+    }
+
+    /**
+     * Asynchronous version of {@link #output(INDArray...)}.
+     * See {@link #outputAsync(INDArray[], INDArray[])} for details
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Generate predictions/outputs from the network asynchronously, optionally using input masks.<br>
+     * This method does not block the calling thread while waiting for a worker: the returned future is completed
+     * (on the inference worker thread) once the output is available, so callbacks that do significant work should use
+     * the *Async variants of the CompletableFuture methods.<br>
+     * Backpressure: if the queue is full (more than queueLimit pending requests for CONTINUOUS mode, or queueLimit
+     * pending batches otherwise) the returned future is immediately completed exceptionally with a
+     * {@link RejectedExecutionException}, instead of blocking the caller.<br>
+     * PLEASE NOTE: In INPLACE mode, inference is always performed in the calling thread, before this method returns.
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future for the output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+
+        CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+        try {
+            switch (inferenceMode) {
+                case CONTINUOUS:
+                    if (!continuousPermits.tryAcquire())
+                        throw new RejectedExecutionException("Unable to submit request: " + queueLimit + " requests are already pending");
+                    future.whenComplete((out, t) -> continuousPermits.release());
+                    try {
+                        selectBatcher().submit(new ContinuousInferenceRequest(input, inputMasks, future));
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                    break;
+                case SEQUENTIAL: {
+                    InferenceObservable observable = new BasicInferenceObservable(input, inputMasks);
+                    observable.addObserver(new FutureInferenceObserver(future));
+                    if (!observables.offer(observable))
+                        throw new RejectedExecutionException("Unable to submit request: inference queue is full (queueLimit=" + queueLimit + ")");
+                    break;
+                }
+                default:
+                    //BATCHED: only rejected if a new batch is required, but the queue is full
+                    if (!provider.trySetInput(new FutureInferenceObserver(future), input, inputMasks))
+                        throw new RejectedExecutionException("Unable to submit request: inference queue is full (queueLimit=" + queueLimit + ")");
+                    break;
+            }
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    protected ContinuousBatcher selectBatcher() {
+        if (batchers.length == 1)
+            return batchers[0];
+
+        if (loadBalanceMode == LoadBalanceMode.ROUND_ROBIN)
+            return batchers[(int) (roundRobin.getAndIncrement() % batchers.length)];
+
+        // FIFO: the worker with the fewest pending requests
+        ContinuousBatcher best = batchers[0];
+        for (int i = 1; i < batchers.length; i++) {
+            if (batchers[i].numPending() < best.numPending())
+                best = batchers[i];
+        }
+        return best;
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -291,6 +440,7 @@ public class ParallelInference {
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long maxWaitMicros = DEFAULT_MAX_WAIT_MICROS;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
         public Builder(@NonNull Model model) {
@@ -304,6 +454,8 @@ public class ParallelInference {
          * SEQUENTIAL: Input will be sent to last-used worker unmodified.
          * BATCHED: Multiple inputs will be packed into single batch, and
          * sent to last-used device.
+         * CONTINUOUS: Each worker continuously drains its own lock-free request queue,
+         * batching up to batchLimit examples into pre-allocated buffers. See {@link #maxWaitMicros(long)}
          *
          * @param inferenceMode
          * @return
@@ -377,6 +529,25 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines the maximum amount of time (in microseconds) that the oldest pending
+         * request can wait for more requests to arrive before its batch is executed.
+         * With the default value of 0, requests are only batched if they arrived while the worker
+         * was busy executing the previous batch.
+         *
+         * PLEASE NOTE: This value only has effect in CONTINUOUS inference mode
+         *
+         * @param maxWaitMicros
+         * @return
+         */
+        public Builder maxWaitMicros(long maxWaitMicros) {
+            if (maxWaitMicros < 0)
+                throw new IllegalStateException("Max wait time should be non-negative value");
+
+            this.maxWaitMicros = maxWaitMicros;
+            return this;
+        }
+
         /**
          * This method builds new ParallelInference instance
          *
@@ -397,6 +568,7 @@ public class ParallelInference {
                 ParallelInference inference = new ParallelInference();
                 inference.batchLimit = this.batchLimit;
                 inference.queueLimit = this.queueLimit;
+                inference.maxWaitMicros = this.maxWaitMicros;
                 inference.inferenceMode = this.inferenceMode;
                 inference.model = this.model;
                 inference.workers = this.workers;
@@ -416,6 +588,7 @@ public class ParallelInference {
      */
     private class InferenceWorker extends Thread implements Runnable {
         private BlockingQueue<InferenceObservable> inputQueue;
+        private ContinuousBatcher batcher;
         private AtomicBoolean shouldWork = new AtomicBoolean(true);
         private AtomicBoolean isStopped = new AtomicBoolean(false);
         private Model protoModel;
@@ -426,8 +599,10 @@ public class ParallelInference {
 
         private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
 
-        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice, int deviceId) {
+        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, ContinuousBatcher batcher,
+                                boolean rootDevice, int deviceId) {
             this.inputQueue = inputQueue;
+            this.batcher = batcher;
             this.protoModel = model;
             this.rootDevice = rootDevice;
             this.deviceId = deviceId;
@@ -499,56 +674,26 @@ public class ParallelInference {
                 boolean isMLN = replicatedModel instanceof  MultiLayerNetwork;
 
                 while (shouldWork.get()) {
+                    if (batcher != null) {
+                        ContinuousBatchObservable batch = batcher.nextBatch();
+                        counter.incrementAndGet();
+                        try {
+                            batch.setOutputBatches(output(batch.getInputBatches(), isCG, isMLN));
+                        } catch (Exception e) {
+                            batch.setOutputException(e);
+                        }
+                        continue;
+                    }
+
                     InferenceObservable request = inputQueue.take();
 
                     if (request != null) {
                         counter.incrementAndGet();
-
-                        // FIXME: get rid of instanceof here, model won't change during runtime anyway
-                        if (isCG) {
-                            List<Pair<INDArray[],INDArray[]>> batches = request.getInputBatches();
-                            List<INDArray[]> out = new ArrayList<>(batches.size());
-                            try {
-                                for (Pair<INDArray[],INDArray[]> inBatch : batches) {
-                                    try {
-                                        modelLock.readLock().lock();
-
-                                        INDArray[] output = ((ComputationGraph) replicatedModel).output(false, inBatch.getFirst(), inBatch.getSecond());
-                                        out.add(output);
-                                    } finally {
-                                        Nd4j.getExecutioner().commit();
-                                        modelLock.readLock().unlock();
-                                    }
-
-                                }
-                                request.setOutputBatches(out);
-                            } catch (Exception e){
-                                request.setOutputException(e);
-                            }
-                        } else if (isMLN) {
-                            List<Pair<INDArray[],INDArray[]>> batches = request.getInputBatches();
-                            List<INDArray[]> out = new ArrayList<>(batches.size());
-                            try {
-                                for (Pair<INDArray[],INDArray[]> inBatch : batches) {
-                                    INDArray f = inBatch.getFirst()[0];
-                                    INDArray fm = (inBatch.getSecond() == null ? null : inBatch.getSecond()[0]);
-                                    try {
-                                        modelLock.readLock().lock();
-
-                                        INDArray output = ((MultiLayerNetwork) replicatedModel).output(f, false, fm, null);
-                                        out.add(new INDArray[]{output});
-                                    } finally {
-                                        Nd4j.getExecutioner().commit();
-                                        modelLock.readLock().unlock();
-                                    }
-                                }
-                                request.setOutputBatches(out);
-                            } catch (Exception e){
-                                request.setOutputException(e);
-                            }
+                        try {
+                            request.setOutputBatches(output(request.getInputBatches(), isCG, isMLN));
+                        } catch (Exception e){
+                            request.setOutputException(e);
                         }
-
-
                     } else {
                         // just do nothing, i guess and hope for next round?
                     }
@@ -563,6 +708,32 @@ public class ParallelInference {
             }
         }
 
+        private List<INDArray[]> output(List<Pair<INDArray[],INDArray[]>> batches, boolean isCG, boolean isMLN) {
+            List<INDArray[]> out = new ArrayList<>(batches.size());
+            for (Pair<INDArray[],INDArray[]> inBatch : batches) {
+                try {
+                    modelLock.readLock().lock();
+
+                    // FIXME: get rid of instanceof here, model won't change during runtime anyway
+                    if (isCG) {
+                        INDArray[] output = ((ComputationGraph) replicatedModel).output(false, inBatch.getFirst(), inBatch.getSecond());
+                        out.add(output);
+                    } else if (isMLN) {
+                        INDArray f = inBatch.getFirst()[0];
+                        INDArray fm = (inBatch.getSecond() == null ? null : inBatch.getSecond()[0]);
+                        INDArray output = ((MultiLayerNetwork) replicatedModel).output(f, false, fm, null);
+                        out.add(new INDArray[]{output});
+                    } else {
+                        throw new UnsupportedOperationException("Unsupported model type: " + replicatedModel.getClass());
+                    }
+                } finally {
+                    Nd4j.getExecutioner().commit();
+                    modelLock.readLock().unlock();
+                }
+            }
+            return out;
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -595,27 +766,66 @@ public class ParallelInference {
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            BatchedInferenceObservable observable;
+            boolean isNew = false;
             synchronized (locker) {
-                boolean isNew = false;
-                if (currentObservable == null || currentObservable.getCounter() >= batchLimit
-                                || currentObservable.isLocked()) {
+                if (isFull(currentObservable)) {
                     isNew = true;
                     currentObservable = new BatchedInferenceObservable();
                 }
+                observable = currentObservable;
+                addInput(observable, observer, input, inputMask);
+            }
 
-                currentObservable.addInput(input, inputMask);
-                currentObservable.addObserver(observer);
-
-                try {
-                    if (isNew)
-                        targetQueue.put(currentObservable);
-                } catch (InterruptedException e) {
+            //Block outside of the lock, so trySetInput can still add to non-full batches while the queue is full
+            if (isNew) {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        targetQueue.put(observable);
+                        break;
+                    } catch (InterruptedException e) {
+                        //Other requests may already have been added to this batch: it must be queued regardless
+                        interrupted = true;
+                    }
+                }
+                if (interrupted)
                     Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
+            }
+            return observable;
+        }
+
+        /**
+         * Non-blocking version of {@link #setInput(Observer, INDArray[], INDArray[])}: if a new batch is required
+         * but the queue is full, the input is not added.
+         *
+         * @return True if the input was added to a batch, false if the queue is full
+         */
+        protected boolean trySetInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            synchronized (locker) {
+                if (!isFull(currentObservable)) {
+                    addInput(currentObservable, observer, input, inputMask);
+                    return true;
                 }
 
-                return currentObservable;
+                BatchedInferenceObservable observable = new BatchedInferenceObservable();
+                addInput(observable, observer, input, inputMask);
+                if (!targetQueue.offer(observable))
+                    return false;
+                currentObservable = observable;
+                return true;
             }
         }
+
+        private boolean isFull(BatchedInferenceObservable observable) {
+            return observable == null || observable.getCounter() >= batchLimit || observable.isLocked();
+        }
+
+        private void addInput(BatchedInferenceObservable observable, Observer observer, INDArray[] input, INDArray[] inputMask) {
+            observable.addInput(input, inputMask);
+            if (observer instanceof FutureInferenceObserver)
+                ((FutureInferenceObserver) observer).setPosition(observable.getPosition());
+            observable.addObserver(observer);
+        }
     }
 }
@@ -42,6 +42,7 @@ import org.deeplearning4j.optimize.solvers.accumulation.Registerable;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.parallelism.factory.DefaultTrainerContext;
+import org.deeplearning4j.parallelism.factory.ElasticAveragingTrainerContext;
 import org.deeplearning4j.parallelism.factory.SymmetricTrainerContext;
 import org.deeplearning4j.parallelism.factory.TrainerContext;
 import org.deeplearning4j.parallelism.trainer.Trainer;
@@ -89,6 +90,13 @@ public class ParallelWrapper implements AutoCloseable {
          * This option assumes use of GradientsAccumulator with any MessageHandler
          */
         CUSTOM,
+
+        /**
+         * Asynchronous elastic averaging (EASGD): workers pull minibatches from a shared queue without waiting for each
+         * other, and every X iterations exchange parameters with a shared center model without any barrier.
+         * The center model is the final model
+         */
+        ELASTIC_AVERAGING,
     }
 
     protected Supplier<INDArray> modelParamsSupplier;
@@ -115,6 +123,7 @@ public class ParallelWrapper implements AutoCloseable {
     protected WorkspaceMode workspaceMode;
     protected Object[] trainerContextArgs;
     protected boolean debug = false;
+    protected TrainingMode trainingMode = TrainingMode.AVERAGING;
 
     protected ThreadPoolExecutor executorService;
 
@@ -285,9 +294,14 @@ public class ParallelWrapper implements AutoCloseable {
 
             /*
              * if all workers are dispatched now, join till all are finished
+             * (not required for asynchronous training: workers pick up new data as soon as they are done)
              */
-            for (int pos = 0; pos < dataSets.length; pos++) {
-                zoo[pos].waitTillRunning();
+            if (!isAsyncTraining()) {
+                for (int pos = 0; pos < dataSets.length; pos++) {
+                    zoo[pos].waitTillRunning();
+                }
+            } else {
+                checkWorkerExceptions();
             }
 
             //Nd4j.getMemoryManager().invokeGcOccasionally();
@@ -312,6 +326,9 @@ public class ParallelWrapper implements AutoCloseable {
         if (debug)
             log.info("Stopping everyone...");
 
+        if (isAsyncTraining())
+            finalizeAsyncTraining();
+
         if (debug)
             log.info("Shutting down iterator...");
 
@@ -336,7 +353,7 @@ public class ParallelWrapper implements AutoCloseable {
         }
 
         // sanity checks, or the dataset may never average
-        if (!wasAveraged)
+        if (!wasAveraged && !isAsyncTraining())
             log.warn("Parameters were never averaged on current fit(). Ratios of batch size, num workers, and averaging frequency may be responsible.");
         //            throw new IllegalStateException("Parameters were never averaged. Please check batch size ratios, number of workers, and your averaging frequency.");
 
@@ -344,6 +361,33 @@ public class ParallelWrapper implements AutoCloseable {
         //        iterationsCounter.set(0);
     }
 
+    protected boolean isAsyncTraining() {
+        return trainingMode == TrainingMode.ELASTIC_AVERAGING;
+    }
+
+    /**
+     * Rethrow the exception of any failed worker. Used for asynchronous training, where the workers are not waited on
+     * after each round
+     */
+    protected void checkWorkerExceptions() {
+        for (Trainer t : zoo) {
+            // rethrows the exception of the worker, if any
+            t.isRunning();
+        }
+    }
+
+    /**
+     * Wait for all workers to finish the queued work, and transfer the final parameters to the original model
+     */
+    protected void finalizeAsyncTraining() {
+        Model[] models = new Model[zoo.length];
+        for (int cnt = 0; cnt < zoo.length; cnt++) {
+            zoo[cnt].waitTillRunning();
+            models[cnt] = zoo[cnt].getModel();
+        }
+        trainerContext.finalizeTraining(model, models);
+    }
+
     private double getScore(AtomicInteger locker) {
         wasAveraged = true;
         double score = 0.0;
@@ -355,7 +399,11 @@ public class ParallelWrapper implements AutoCloseable {
         }
 
         Nd4j.averageAndPropagate(null, params);
-
+        //Averaging modifies the parameters in place: notify the models (resyncs mixed precision master parameters)
+        for (int cnt = 0; cnt < workers && cnt < locker.get(); cnt++) {
+            Model m = zoo[cnt].getModel();
+            m.setParams(m.params());
+        }
 
         score /= Math.min(workers, locker.get());
 
@@ -587,13 +635,17 @@ public class ParallelWrapper implements AutoCloseable {
             iterationsCounter.incrementAndGet();
 
 
-            // waiting till all threads are done
-            for (int pos = 0; pos < dataSets.length; pos++) {
-                try {
-                    zoo[pos].waitTillRunning();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            // waiting till all threads are done (not required for asynchronous training)
+            if (!isAsyncTraining()) {
+                for (int pos = 0; pos < dataSets.length; pos++) {
+                    try {
+                        zoo[pos].waitTillRunning();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
                 }
+            } else {
+                checkWorkerExceptions();
             }
 
 
@@ -628,6 +680,9 @@ public class ParallelWrapper implements AutoCloseable {
             }
         }
 
+        if (isAsyncTraining())
+            finalizeAsyncTraining();
+
         if (debug)
             log.info("Shutting down iterator...");
 
@@ -691,6 +746,8 @@ public class ParallelWrapper implements AutoCloseable {
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
         protected Long encoderMemory = -1L;
+        protected Double elasticAveragingAlpha;
+        protected int maxStaleness = 10;
 
         protected GradientsAccumulator accumulator;
 
@@ -831,6 +888,7 @@ public class ParallelWrapper implements AutoCloseable {
          *  1) AVERAGING - stands for parameters averaging. Each X epochs weights and updaters state will be averaged across all models<br>
          *  2) SHARED_GRADIENTS - stands for gradients sharing - more details available here: <a href="https://deeplearning4j.konduit.ai/distributed-deep-learning/intro">https://deeplearning4j.konduit.ai/distributed-deep-learning/intro</a><br>
          *  3) CUSTOM - this method allows you to specify custom gradients accumulator, this giving you better control of configuration params for training.<br>
+         *  4) ELASTIC_AVERAGING - asynchronous elastic averaging (EASGD). Workers don't wait for each other: each X iterations every worker exchanges parameters with a shared center model. See {@link #elasticAveragingAlpha(double)} and {@link #maxStaleness(int)}<br>
          *
          * @param mode
          * @return
@@ -854,6 +912,34 @@ public class ParallelWrapper implements AutoCloseable {
         }
 
 
+        /**
+         * Moving rate for {@link TrainingMode#ELASTIC_AVERAGING} training: at each exchange, each worker and the center
+         * model are moved towards each other by alpha * (worker - center).
+         *
+         * Default value: 0.9 / workers
+         *
+         * @param alpha Moving rate, in range (0, 1]
+         * @return
+         */
+        public Builder elasticAveragingAlpha(double alpha) {
+            this.elasticAveragingAlpha = alpha;
+            return this;
+        }
+
+        /**
+         * Staleness bound for {@link TrainingMode#ELASTIC_AVERAGING} training: maximum number of iterations that any
+         * worker may be ahead of the slowest worker. Use a negative value for no bound.
+         *
+         * Default value: 10
+         *
+         * @param maxStaleness Maximum number of iterations
+         * @return
+         */
+        public Builder maxStaleness(int maxStaleness) {
+            this.maxStaleness = maxStaleness;
+            return this;
+        }
+
         /**
          * This method enables/disables averaged model score reporting
          *
@@ -913,6 +999,7 @@ public class ParallelWrapper implements AutoCloseable {
             wrapper.workspaceMode = this.workspaceMode;
             wrapper.modelParamsSupplier = this.modelParamsSupplier;
             wrapper.updaterParamsSupplier = this.updaterParamsSupplier;
+            wrapper.trainingMode = this.trainingMode;
 
 
             switch (trainingMode) {
@@ -950,6 +1037,13 @@ public class ParallelWrapper implements AutoCloseable {
                                         "Please specify GradientsAccumulator fo encoded gradients mode");
                 }
                     break;
+                case ELASTIC_AVERAGING: {
+                    double alpha = elasticAveragingAlpha == null ? 0.9 / workers : elasticAveragingAlpha;
+                    this.trainerContext = new ElasticAveragingTrainerContext(alpha, maxStaleness, workers);
+                    this.accumulator = null;
+                    log.info("Creating new ElasticAveragingTraining instance: alpha={}, maxStaleness={}", alpha, maxStaleness);
+                }
+                    break;
                 default:
                     throw new UnsupportedOperationException("Unknown trainingMode: [" + trainingMode + "]");
             }
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.factory;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.deeplearning4j.parallelism.trainer.ElasticAveragingCenter;
+import org.deeplearning4j.parallelism.trainer.ElasticAveragingTrainer;
+import org.deeplearning4j.parallelism.trainer.Trainer;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates {@link ElasticAveragingTrainer} instances for use with {@link ParallelWrapper}, along with the shared center
+ * model and work queue used by all of them
+ */
+@Slf4j
+public class ElasticAveragingTrainerContext implements TrainerContext {
+    protected final double alpha;
+    protected final int maxStaleness;
+    protected final int queueSize;
+
+    @Getter
+    protected ElasticAveragingCenter center;
+    protected LinkedBlockingQueue<DataSet> sharedQueue;
+    protected LinkedBlockingQueue<MultiDataSet> sharedQueueMDS;
+    protected AtomicInteger sharedRunning;
+
+    /**
+     * @param alpha        Elastic averaging moving rate, in range (0, 1]
+     * @param maxStaleness Maximum number of iterations any worker may be ahead of the slowest worker (negative: no bound)
+     * @param queueSize    Size of the work queue shared by all workers
+     */
+    public ElasticAveragingTrainerContext(double alpha, int maxStaleness, int queueSize) {
+        this.alpha = alpha;
+        this.maxStaleness = maxStaleness;
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * Initialize the context: the center model is initialized from the parameters of the specified model
+     *
+     * @param model
+     * @param args the arguments to initialize with (maybe null)
+     */
+    @Override
+    public void init(Model model, Object... args) {
+        center = new ElasticAveragingCenter(model.params().dup(), alpha, maxStaleness);
+        sharedQueue = new LinkedBlockingQueue<>(queueSize);
+        sharedQueueMDS = new LinkedBlockingQueue<>(queueSize);
+        sharedRunning = new AtomicInteger(0);
+    }
+
+    @Override
+    public Trainer create(String uuid, int threadId, Model model, int rootDevice, boolean useMDS, ParallelWrapper wrapper,
+                    WorkspaceMode mode, int averagingFrequency) {
+
+        ElasticAveragingTrainer trainer = new ElasticAveragingTrainer(model, uuid, threadId, mode, wrapper, useMDS,
+                        averagingFrequency, center, sharedQueue, sharedQueueMDS, sharedRunning);
+
+        trainer.setName("ElasticAveragingTrainer thread " + threadId);
+        trainer.setDaemon(true);
+
+        return trainer;
+    }
+
+    @Override
+    public void finalizeRound(Model originalModel, Model... models) {
+        // no-op: workers exchange parameters with the center asynchronously
+    }
+
+    @Override
+    public void finalizeTraining(Model originalModel, Model... models) {
+        // the center is the final model
+        originalModel.setParams(center.getParams());
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.observers.ContinuousBatchObservable;
+import org.deeplearning4j.parallelism.inference.observers.ContinuousInferenceRequest;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Request queue and batch builder for a single worker in {@link InferenceMode#CONTINUOUS} mode.<br>
+ * Any number of threads may {@link #submit(ContinuousInferenceRequest)} requests; exactly one worker thread calls
+ * {@link #nextBatch()}. Batching is deadline-aware: once the oldest pending request has been waiting for
+ * {@code maxWaitMicros}, the batch is dispatched even if it holds fewer than {@code batchLimit} examples. With a
+ * maximum wait of 0, requests are only batched if they arrived while the worker was busy with the previous batch.<br>
+ * <br>
+ * Input buffers are allocated once per batch size bucket (powers of 2 up to {@code batchLimit}) and reused: a batch of
+ * N examples is copied into the smallest bucket with at least N rows, so the model always sees one of a small, fixed
+ * set of batch shapes. The buffers are owned by the worker thread and are not thread safe.
+ */
+@Slf4j
+public class ContinuousBatcher {
+    @Getter
+    private final int batchLimit;
+    @Getter
+    private final long maxWaitMicros;
+    private final long maxWaitNanos;
+
+    private final MpscLinkedQueue<ContinuousInferenceRequest> queue = new MpscLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile Thread consumer;           //Non-null only while the consumer is about to park / parked
+    private volatile boolean shutdown;
+
+    //Consumer thread only
+    private ContinuousInferenceRequest carryOver;
+    private final int[] bucketSizes;
+    private final INDArray[][] inputBuffers;
+    private final INDArray[][] maskBuffers;
+
+    public ContinuousBatcher(int batchLimit, long maxWaitMicros) {
+        Preconditions.checkArgument(batchLimit > 0, "Batch limit must be positive, got %s", batchLimit);
+        Preconditions.checkArgument(maxWaitMicros >= 0, "Maximum wait time must be non-negative, got %s", maxWaitMicros);
+        this.batchLimit = batchLimit;
+        this.maxWaitMicros = maxWaitMicros;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+
+        List<Integer> sizes = new ArrayList<>();
+        for (int s = 1; s < batchLimit; s *= 2) {
+            sizes.add(s);
+        }
+        sizes.add(batchLimit);
+        bucketSizes = new int[sizes.size()];
+        for (int i = 0; i < bucketSizes.length; i++) {
+            bucketSizes[i] = sizes.get(i);
+        }
+        inputBuffers = new INDArray[bucketSizes.length][0];
+        maskBuffers = new INDArray[bucketSizes.length][0];
+    }
+
+    /**
+     * Submit a request for inference. Safe to call from any thread; never blocks (other than to fail requests that
+     * race with {@link #shutdown()}).
+     */
+    public void submit(@NonNull ContinuousInferenceRequest request) {
+        if (shutdown)
+            throw new IllegalStateException("Cannot submit request: ParallelInference has been shut down");
+        pending.incrementAndGet();
+        queue.offer(request);
+        if (shutdown) {
+            //shutdown() may have drained the queue before this request was added: fail it (and any others) here
+            drain();
+            return;
+        }
+        Thread t = consumer;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    /**
+     * @return Number of requests submitted to this batcher that have not yet been dispatched to the model
+     */
+    public int numPending() {
+        return pending.get();
+    }
+
+    /**
+     * Get the next batch of requests, blocking until at least one request is available. Consumer thread only.
+     *
+     * @return Next batch
+     * @throws InterruptedException If the consumer thread is interrupted while waiting
+     */
+    public ContinuousBatchObservable nextBatch() throws InterruptedException {
+        ContinuousInferenceRequest first = carryOver;
+        carryOver = null;
+        if (first == null)
+            first = take(-1);
+
+        List<ContinuousInferenceRequest> batch = new ArrayList<>();
+        batch.add(first);
+        long numExamples = first.numExamples();
+        long deadline = first.getEnqueuedNanos() + maxWaitNanos;
+        while (numExamples < batchLimit) {
+            ContinuousInferenceRequest next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                next = take(remaining);
+                if (next == null)
+                    break;
+            }
+
+            if (numExamples + next.numExamples() > batchLimit || !canBatch(first, next)) {
+                //Can't be added to this batch: it'll be the first request in the next one
+                carryOver = next;
+                break;
+            }
+            batch.add(next);
+            numExamples += next.numExamples();
+        }
+
+        pending.addAndGet(-batch.size());
+        return new ContinuousBatchObservable(this, batch, numExamples);
+    }
+
+    /**
+     * Wait for the next request
+     *
+     * @param timeoutNanos Maximum time to wait, or a negative value to wait indefinitely
+     * @return Next request, or null if the timeout elapsed
+     */
+    private ContinuousInferenceRequest take(long timeoutNanos) throws InterruptedException {
+        ContinuousInferenceRequest r = queue.poll();
+        if (r != null)
+            return r;
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        try {
+            while (true) {
+                //Publish intent to park before the final check, so a concurrent submit either becomes visible to
+                // poll() or sees the consumer and unparks it
+                consumer = Thread.currentThread();
+                r = queue.poll();
+                if (r != null)
+                    return r;
+
+                if (timeoutNanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return null;
+                    LockSupport.parkNanos(this, remaining);
+                }
+
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            consumer = null;
+        }
+    }
+
+    /**
+     * Fail all pending requests and reject new ones. Should only be called once the consumer thread has stopped.
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (carryOver != null) {
+            carryOver.setOutputException(shutdownException());
+            carryOver = null;
+            pending.decrementAndGet();
+        }
+        drain();
+    }
+
+    /**
+     * Fail all queued requests. Only called after shutdown, once the consumer thread has stopped. The queue only
+     * supports a single consumer, so concurrent drains (from shutdown() and racing submit calls) are serialized
+     */
+    private void drain() {
+        synchronized (queue) {
+            ContinuousInferenceRequest r;
+            while ((r = queue.poll()) != null) {
+                r.setOutputException(shutdownException());
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    private static Exception shutdownException() {
+        return new IllegalStateException("ParallelInference was shut down before the request was processed");
+    }
+
+    /**
+     * @return Smallest batch size bucket that can hold the specified number of examples
+     */
+    public int bucketSize(long numExamples) {
+        for (int s : bucketSizes) {
+            if (s >= numExamples)
+                return s;
+        }
+        throw new IllegalStateException("Number of examples (" + numExamples + ") exceeds batch limit (" + batchLimit + ")");
+    }
+
+    /**
+     * Get the (reused) input or mask buffer for the given bucket and input index, allocating it if required.
+     * Consumer thread only.
+     *
+     * @param bucketSize Batch size bucket, as returned by {@link #bucketSize(long)}
+     * @param inputIdx   Index of the network input
+     * @param mask       If true: get the mask buffer instead of the input buffer
+     * @param like       Array to get the data type and non-batch dimensions from
+     * @return Buffer with shape [bucketSize, like.shape()[1:]]
+     */
+    public INDArray buffer(int bucketSize, int inputIdx, boolean mask, @NonNull INDArray like) {
+        int b = Arrays.binarySearch(bucketSizes, bucketSize);
+        Preconditions.checkState(b >= 0, "Invalid bucket size: %s", bucketSize);
+        INDArray[][] buffers = mask ? maskBuffers : inputBuffers;
+        if (buffers[b].length <= inputIdx)
+            buffers[b] = Arrays.copyOf(buffers[b], inputIdx + 1);
+
+        long[] shape = like.shape().clone();
+        shape[0] = bucketSize;
+        INDArray buf = buffers[b][inputIdx];
+        if (buf == null || buf.dataType() != like.dataType() || !Arrays.equals(buf.shape(), shape)) {
+            log.trace("Allocating continuous batching buffer: bucket={}, input={}, mask={}, shape={}", bucketSize, inputIdx, mask, shape);
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                buf = Nd4j.create(like.dataType(), shape, 'c');
+            }
+            buffers[b][inputIdx] = buf;
+        }
+        return buf;
+    }
+
+    private static boolean canBatch(ContinuousInferenceRequest first, ContinuousInferenceRequest candidate) {
+        //As per BatchedInferenceObservable: inputs (and masks, if present) must match in all but the batch dimension
+        INDArray[] f = first.getInput();
+        INDArray[] c = candidate.getInput();
+        if (f.length != c.length)
+            return false;
+        for (int i = 0; i < f.length; i++) {
+            if (!sameExceptBatch(f[i], c[i]) || !sameExceptBatch(first.getInputMask(i), candidate.getInputMask(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean sameExceptBatch(INDArray a, INDArray b) {
+        if (a == null || b == null)
+            return a == b;
+        if (a.rank() != b.rank() || a.dataType() != b.dataType())
+            return false;
+        for (int d = 1; d < a.rank(); d++) {
+            if (a.size(d) != b.size(d))
+                return false;
+        }
+        return true;
+    }
+}
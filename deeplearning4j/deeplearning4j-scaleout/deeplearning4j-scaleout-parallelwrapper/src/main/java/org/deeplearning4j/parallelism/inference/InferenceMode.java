@@ -36,4 +36,11 @@ public enum InferenceMode {
      * Inference will applied in the calling thread instead of workers. Worker models will be using shared parameters on per-device basis.
      */
     INPLACE,
+
+    /**
+     * Inputs are placed on a lock-free per-worker queue. Each worker continuously drains up to batchLimit examples
+     * from its queue - waiting at most maxWaitMicros after the oldest pending request arrived - copies them into
+     * pre-allocated input buffers and returns the outputs to the callers as views of the batched output
+     */
+    CONTINUOUS,
 }
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded, lock-free multi-producer single-consumer queue, implemented as an intrusive linked list with a stub node.<br>
+ * {@link #offer(Object)} may be called from any number of threads and is wait-free (one atomic swap plus one volatile
+ * store). {@link #poll()} and {@link #isEmpty()} must only ever be called from a single consumer thread.<br>
+ * Note that an element whose producer has swapped the tail but not yet linked the node may briefly be invisible to
+ * the consumer: {@link #poll()} can return null even though {@link #offer(Object)} has started. Callers that block
+ * when the queue is empty must therefore publish their intent to block before the final emptiness check, and
+ * producers must wake the consumer after {@link #offer(Object)} returns.
+ *
+ * @param <T> Type of element in the queue
+ */
+public class MpscLinkedQueue<T> {
+
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;       //Consumer only: head is always the (already consumed) stub node
+
+    public MpscLinkedQueue() {
+        Node<T> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Add an element to the queue. Safe to call from any thread.
+     *
+     * @param value Element to add. Must not be null
+     */
+    public void offer(@NonNull T value) {
+        Node<T> node = new Node<>(value);
+        Node<T> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    /**
+     * Remove and return the head of the queue. Consumer thread only.
+     *
+     * @return Next element, or null if the queue is (currently) empty
+     */
+    public T poll() {
+        Node<T> next = head.next;
+        if (next == null)
+            return null;
+        T value = next.value;
+        next.value = null;          //next becomes the new stub node
+        head = next;
+        return value;
+    }
+
+    /**
+     * @return True if no element is currently visible to the consumer. Consumer thread only.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    private static class Node<T> {
+        private T value;
+        private volatile Node<T> next;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -216,6 +216,13 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         position.set(pos);
     }
 
+    /**
+     * @return Position of the input most recently added by the current thread
+     */
+    public int getPosition() {
+        return position.get();
+    }
+
     public int getCounter() {
         return counter.get();
     }
@@ -237,7 +244,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     @Override
     public INDArray[] getOutput() {
         // basically we should take care of splits here: each client should get its own part of output, wrt order number
+        return getOutput(position.get());
+    }
+
+    /**
+     * Get the output for the input at the specified position, as returned by {@link #getPosition()}. Unlike
+     * {@link #getOutput()}, this may be called from any thread.
+     */
+    public INDArray[] getOutput(int position) {
         checkOutputException();
-        return outputs.get(position.get());
+        return outputs.get(position);
     }
 }
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.parallelism.inference.ContinuousBatcher;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of {@link ContinuousInferenceRequest}s built by a {@link ContinuousBatcher}, for CONTINUOUS inference mode.<br>
+ * The batch is created, executed and completed by a single worker thread, so (unlike {@link BatchedInferenceObservable})
+ * no locking is required. Inputs of multiple requests are copied into the batcher's pre-allocated bucket buffers
+ * (rather than being concatenated into a new array), and each request receives views of the batched output arrays.
+ * A batch with a single request is passed to the model as is, without any copies.<br>
+ * Unlike the other observables, this class does not implement {@link org.deeplearning4j.parallelism.inference.InferenceObservable}:
+ * requests are only added via {@link ContinuousBatcher#submit(ContinuousInferenceRequest)}, and each request is notified
+ * of its output directly.
+ */
+public class ContinuousBatchObservable {
+    private final ContinuousBatcher batcher;
+    @Getter
+    private final List<ContinuousInferenceRequest> requests;
+    @Getter
+    private final long numExamples;
+
+    public ContinuousBatchObservable(@NonNull ContinuousBatcher batcher, @NonNull List<ContinuousInferenceRequest> requests,
+                                     long numExamples) {
+        this.batcher = batcher;
+        this.requests = requests;
+        this.numExamples = numExamples;
+    }
+
+    /**
+     * @return Input batch (and input masks, if any) for this batch of requests. Always of size 1
+     */
+    public List<Pair<INDArray[], INDArray[]>> getInputBatches() {
+        ContinuousInferenceRequest first = requests.get(0);
+        if (requests.size() == 1)
+            return Collections.singletonList(new Pair<>(first.getInput(), first.getInputMasks()));
+
+        int bucket = batcher.bucketSize(numExamples);
+        int numInputs = first.getInput().length;
+        INDArray[] in = new INDArray[numInputs];
+        INDArray[] masks = null;
+        for (int i = 0; i < numInputs; i++) {
+            in[i] = batcher.buffer(bucket, i, false, first.getInput()[i]);
+            copyInto(in[i], i, false);
+            INDArray m = first.getInputMask(i);
+            if (m != null) {
+                if (masks == null)
+                    masks = new INDArray[numInputs];
+                masks[i] = batcher.buffer(bucket, i, true, m);
+                copyInto(masks[i], i, true);
+            }
+        }
+        //Any rows past numExamples hold stale (but finite) data from earlier batches; their outputs are never returned
+        return Collections.singletonList(new Pair<>(in, masks));
+    }
+
+    private void copyInto(INDArray buffer, int inputIdx, boolean mask) {
+        INDArrayIndex[] idx = allIndices(buffer.rank());
+        long pos = 0;
+        for (ContinuousInferenceRequest r : requests) {
+            INDArray src = mask ? r.getInputMask(inputIdx) : r.getInput()[inputIdx];
+            long n = r.numExamples();
+            idx[0] = NDArrayIndex.interval(pos, pos + n);
+            buffer.get(idx).assign(src);
+            pos += n;
+        }
+    }
+
+    /**
+     * Set the output for this batch: each request receives its own rows of the output
+     */
+    public void setOutputBatches(@NonNull List<INDArray[]> output) {
+        Preconditions.checkArgument(output.size() == 1, "Expected size 1 output: got size %s", output.size());
+        INDArray[] out = output.get(0);
+        if (requests.size() == 1) {
+            requests.get(0).setOutput(out);
+            return;
+        }
+
+        long pos = 0;
+        for (ContinuousInferenceRequest r : requests) {
+            long n = r.numExamples();
+            INDArray[] split = new INDArray[out.length];
+            for (int i = 0; i < out.length; i++) {
+                INDArrayIndex[] idx = allIndices(out[i].rank());
+                idx[0] = NDArrayIndex.interval(pos, pos + n);
+                split[i] = out[i].get(idx);
+            }
+            r.setOutput(split);
+            pos += n;
+        }
+    }
+
+    /**
+     * Fail all requests in this batch with the specified exception
+     */
+    public void setOutputException(Exception e) {
+        for (ContinuousInferenceRequest r : requests) {
+            r.setOutputException(e);
+        }
+    }
+
+    private static INDArrayIndex[] allIndices(int rank) {
+        INDArrayIndex[] idx = new INDArrayIndex[rank];
+        for (int i = 1; i < rank; i++) {
+            idx[i] = NDArrayIndex.all();
+        }
+        return idx;
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single caller's input for CONTINUOUS inference mode.<br>
+ * Unlike {@link BasicInferenceObservable}, this class does not extend {@link java.util.Observable} (whose methods are
+ * synchronized): completion is signalled via a volatile flag, and the waiting thread (if any) is unparked directly.
+ * Optionally, a {@link CompletableFuture} can be provided that is completed (on the worker thread) at the same time.
+ */
+public class ContinuousInferenceRequest {
+    @Getter
+    private final INDArray[] input;
+    @Getter
+    private final INDArray[] inputMasks;
+    @Getter
+    private final long enqueuedNanos;
+
+    private volatile boolean done;
+    private volatile Thread waiter;
+    private INDArray[] output;          //Published via the volatile write to done
+    private Exception exception;
+    private final CompletableFuture<INDArray[]> future;
+
+    public ContinuousInferenceRequest(@NonNull INDArray[] input, INDArray[] inputMasks) {
+        this(input, inputMasks, null);
+    }
+
+    /**
+     * @param future If non-null: completed with the output (or exception) once this request has been processed
+     */
+    public ContinuousInferenceRequest(@NonNull INDArray[] input, INDArray[] inputMasks, CompletableFuture<INDArray[]> future) {
+        this.input = input;
+        this.inputMasks = inputMasks;
+        this.future = future;
+        this.enqueuedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Number of examples in this request (size of dimension 0 of the first input)
+     */
+    public long numExamples() {
+        return input[0].size(0);
+    }
+
+    /**
+     * @return Input mask array for the specified input, or null if no mask is present
+     */
+    public INDArray getInputMask(int idx) {
+        return inputMasks == null ? null : inputMasks[idx];
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setOutput(INDArray[] output) {
+        this.output = output;
+        signal();
+        if (future != null)
+            future.complete(output);
+    }
+
+    public void setOutputException(Exception exception) {
+        this.exception = exception;
+        signal();
+        if (future != null)
+            future.completeExceptionally(exception);
+    }
+
+    private void signal() {
+        done = true;
+        Thread t = waiter;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    /**
+     * Block until the output for this request is available
+     *
+     * @return Output arrays
+     */
+    public INDArray[] getOutput() {
+        if (!done) {
+            waiter = Thread.currentThread();
+            while (!done) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for inference output");
+                }
+            }
+            waiter = null;
+        }
+
+        if (exception != null) {
+            if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            } else {
+                throw new RuntimeException("Exception encountered while getting output: " + exception.getMessage(), exception);
+            }
+        }
+        return output;
+    }
+}
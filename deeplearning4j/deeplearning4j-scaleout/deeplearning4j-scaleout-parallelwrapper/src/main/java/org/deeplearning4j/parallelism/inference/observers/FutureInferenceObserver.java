@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Observer implementation for asynchronous inference: instead of blocking a thread until the output is available
+ * (as per {@link BasicInferenceObserver}), the output - or exception - is used to complete a {@link CompletableFuture}.
+ * Note that the future is completed on the inference worker thread.
+ */
+public class FutureInferenceObserver implements Observer {
+    @Getter
+    private final CompletableFuture<INDArray[]> future;
+    /**
+     * Position of the input within a {@link BatchedInferenceObservable}. Must be set before the observer is registered.
+     * Not used for other observable types.
+     */
+    @Getter @Setter
+    private volatile int position = -1;
+
+    public FutureInferenceObserver(@NonNull CompletableFuture<INDArray[]> future) {
+        this.future = future;
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        try {
+            INDArray[] out;
+            if (o instanceof BatchedInferenceObservable) {
+                out = ((BatchedInferenceObservable) o).getOutput(position);
+            } else {
+                out = ((InferenceObservable) o).getOutput();
+            }
+            future.complete(out);
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+}
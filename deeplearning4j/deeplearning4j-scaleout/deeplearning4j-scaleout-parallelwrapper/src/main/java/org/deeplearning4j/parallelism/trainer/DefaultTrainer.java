@@ -72,7 +72,7 @@ public class DefaultTrainer extends Thread implements Trainer {
     protected AtomicBoolean shouldUpdate = new AtomicBoolean(false);
     @Builder.Default
     protected AtomicBoolean shouldStop = new AtomicBoolean(false);
-    protected Exception thrownException;
+    protected volatile Exception thrownException;
     @Builder.Default
     protected volatile boolean useMDS = false;
     @Getter protected String uuid;
@@ -381,36 +381,37 @@ public class DefaultTrainer extends Thread implements Trainer {
                         dataSet = nullDataSet;
                     }
                     if (dataSet != null) {
+                        try {
+                            fit(dataSet);
+
+                            // if we don't support cross-device stuff (like multi-gpu on windows) - sync back to host
+                            if (!Nd4j.getAffinityManager().isCrossDeviceAccessSupported() && (averagingFrequency == 0
+                                            || iterationsCounter.incrementAndGet() % averagingFrequency == 0)
+                                            && averagingRequired()) {
+                                // we ensure all operations are finished in this training round
+                                Nd4j.getExecutioner().commit();
+
+                                // we ensure memory is updated on host side
+                                Nd4j.getAffinityManager().ensureLocation(replicatedModel.params(),
+                                                AffinityManager.Location.HOST);
 
-                        fit(dataSet);
-
-                        // if we don't support cross-device stuff (like multi-gpu on windows) - sync back to host
-                        if (!Nd4j.getAffinityManager().isCrossDeviceAccessSupported() && (averagingFrequency == 0
-                                        || iterationsCounter.incrementAndGet() % averagingFrequency == 0)
-                                        && averagingRequired()) {
-                            // we ensure all operations are finished in this training round
-                            Nd4j.getExecutioner().commit();
-
-                            // we ensure memory is updated on host side
-                            Nd4j.getAffinityManager().ensureLocation(replicatedModel.params(),
-                                            AffinityManager.Location.HOST);
-
-                            if (replicatedModel instanceof MultiLayerNetwork) {
-                                Updater updaterReplica = ((MultiLayerNetwork) replicatedModel).getUpdater();
-                                if (updaterReplica.getStateViewArray() != null)
-                                    Nd4j.getAffinityManager().ensureLocation(updaterReplica.getStateViewArray(),
-                                                    AffinityManager.Location.HOST);
-                            } else {
-                                ComputationGraphUpdater updaterReplica =
-                                                ((ComputationGraph) replicatedModel).getUpdater();
-
-                                if (updaterReplica.getStateViewArray() != null)
-                                    Nd4j.getAffinityManager().ensureLocation(updaterReplica.getStateViewArray(),
-                                                    AffinityManager.Location.HOST);
+                                if (replicatedModel instanceof MultiLayerNetwork) {
+                                    Updater updaterReplica = ((MultiLayerNetwork) replicatedModel).getUpdater();
+                                    if (updaterReplica.getStateViewArray() != null)
+                                        Nd4j.getAffinityManager().ensureLocation(updaterReplica.getStateViewArray(),
+                                                        AffinityManager.Location.HOST);
+                                } else {
+                                    ComputationGraphUpdater updaterReplica =
+                                                    ((ComputationGraph) replicatedModel).getUpdater();
+
+                                    if (updaterReplica.getStateViewArray() != null)
+                                        Nd4j.getAffinityManager().ensureLocation(updaterReplica.getStateViewArray(),
+                                                        AffinityManager.Location.HOST);
+                                }
                             }
+                        } finally {
+                            running.decrementAndGet();
                         }
-
-                        running.decrementAndGet();
                     }
                 }
             } else {
@@ -418,29 +419,30 @@ public class DefaultTrainer extends Thread implements Trainer {
                 while (!shouldStop.get()) {
                     MultiDataSet dataSet = queueMDS.poll(10, TimeUnit.MILLISECONDS);
                     if (dataSet != null) {
+                        try {
+                            // just fitting
+                            fit(dataSet);
+
+                            // if we don't support cross-device stuff (like multi-gpu on windows) - sync back to host
+                            if (!Nd4j.getAffinityManager().isCrossDeviceAccessSupported() && (averagingFrequency == 0
+                                            || iterationsCounter.incrementAndGet() % averagingFrequency == 0)
+                                            && averagingRequired()) {
+                                // we ensure all operations are finished in this training round
+                                Nd4j.getExecutioner().commit();
+
+                                // we ensure memory is updated on host side
+                                Nd4j.getAffinityManager().ensureLocation(replicatedModel.params(),
+                                                AffinityManager.Location.HOST);
 
-                        // just fitting
-                        fit(dataSet);
-
-                        // if we don't support cross-device stuff (like multi-gpu on windows) - sync back to host
-                        if (!Nd4j.getAffinityManager().isCrossDeviceAccessSupported() && (averagingFrequency == 0
-                                        || iterationsCounter.incrementAndGet() % averagingFrequency == 0)
-                                        && averagingRequired()) {
-                            // we ensure all operations are finished in this training round
-                            Nd4j.getExecutioner().commit();
-
-                            // we ensure memory is updated on host side
-                            Nd4j.getAffinityManager().ensureLocation(replicatedModel.params(),
-                                            AffinityManager.Location.HOST);
-
-                            ComputationGraphUpdater updaterReplica = ((ComputationGraph) replicatedModel).getUpdater();
+                                ComputationGraphUpdater updaterReplica = ((ComputationGraph) replicatedModel).getUpdater();
 
-                            if (updaterReplica.getStateViewArray() != null)
-                                Nd4j.getAffinityManager().ensureLocation(updaterReplica.getStateViewArray(),
-                                                AffinityManager.Location.HOST);
+                                if (updaterReplica.getStateViewArray() != null)
+                                    Nd4j.getAffinityManager().ensureLocation(updaterReplica.getStateViewArray(),
+                                                    AffinityManager.Location.HOST);
+                            }
+                        } finally {
+                            running.decrementAndGet();
                         }
-
-                        running.decrementAndGet();
                     }
                 }
             }
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.trainer;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared center model for asynchronous elastic averaging (EASGD) training, as used by {@link ElasticAveragingTrainer}.<br>
+ * Each worker periodically applies the elastic update: {@code diff = alpha * (local - center); local -= diff; center += diff}.
+ * Updates to the center are applied without any locks or barriers (Hogwild-style), so workers never wait for each other
+ * to exchange parameters.<br>
+ * To bound the divergence between workers, a worker may not get more than {@code maxStaleness} iterations ahead of the
+ * slowest active worker. When no more work is queued (i.e., at the end of an epoch), the bound is not enforced.<br>
+ * If any worker fails (see {@link #fail(Throwable)}), all workers waiting on the staleness bound are released, and the
+ * failure is rethrown to them (and to any later callers of {@link #checkFailure()}).
+ */
+public class ElasticAveragingCenter {
+
+    @Getter
+    protected final INDArray params;
+    @Getter
+    protected final double alpha;
+    @Getter
+    protected final int maxStaleness;
+
+    protected final Map<Integer, AtomicLong> clocks = new ConcurrentHashMap<>();
+    protected final AtomicBoolean stopped = new AtomicBoolean(false);
+    protected volatile Throwable failure;
+
+    /**
+     * @param params       Initial parameters of the center model. Used directly (not copied)
+     * @param alpha        Elastic averaging moving rate, in range (0, 1]. Typically 0.9 / numWorkers
+     * @param maxStaleness Maximum number of iterations any worker may be ahead of the slowest worker. Negative values:
+     *                     no bound
+     */
+    public ElasticAveragingCenter(@NonNull INDArray params, double alpha, int maxStaleness) {
+        Preconditions.checkArgument(alpha > 0 && alpha <= 1.0, "Elastic averaging alpha must be in range (0,1], got %s", alpha);
+        this.params = params;
+        this.alpha = alpha;
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Register a worker, so that it is taken into account for the staleness bound
+     */
+    public void register(int workerId) {
+        clocks.put(workerId, new AtomicLong(0));
+    }
+
+    /**
+     * Increment the iteration count of the specified worker
+     */
+    public void tick(int workerId) {
+        AtomicLong c = clocks.get(workerId);
+        if (c != null)
+            c.incrementAndGet();
+    }
+
+    /**
+     * Block while the specified worker is more than maxStaleness iterations ahead of the slowest worker, and there is
+     * still pending work (that the slower workers will pick up)
+     *
+     * @param workerId Worker to check
+     * @param pending  Queue of pending work shared by all workers
+     */
+    public void awaitStaleness(int workerId, @NonNull Collection<?> pending) {
+        if (maxStaleness < 0)
+            return;
+        AtomicLong c = clocks.get(workerId);
+        if (c == null)
+            return;
+
+        while (!stopped.get() && failure == null && !pending.isEmpty() && c.get() - minClock() > maxStaleness) {
+            LockSupport.parkNanos(10000L);
+        }
+        checkFailure();
+    }
+
+    protected long minClock() {
+        long min = Long.MAX_VALUE;
+        for (AtomicLong l : clocks.values()) {
+            min = Math.min(min, l.get());
+        }
+        return min;
+    }
+
+    /**
+     * Apply the elastic averaging update between the specified worker parameters and the center.
+     * Both the worker parameters and the center are modified in-place
+     *
+     * @param local Parameters of the worker model
+     */
+    public void elasticUpdate(@NonNull INDArray local) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            //Note that the center is read and updated concurrently by other workers, as in asynchronous EASGD
+            INDArray diff = local.sub(params).muli(alpha);
+            local.subi(diff);
+            params.addi(diff);
+            Nd4j.getExecutioner().commit();
+        }
+    }
+
+    /**
+     * Release any workers waiting due to the staleness bound
+     */
+    public void stop() {
+        stopped.set(true);
+    }
+
+    /**
+     * Record the failure of a worker. Workers waiting due to the staleness bound (which may otherwise wait forever on
+     * the failed worker) are released, and the failure is rethrown to them. Only the first failure is recorded
+     *
+     * @param t Exception thrown by the worker
+     */
+    public void fail(@NonNull Throwable t) {
+        if (failure == null)
+            failure = t;
+    }
+
+    /**
+     * @return True if any worker has failed
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Rethrow the failure of a worker, if any worker has failed
+     */
+    public void checkFailure() {
+        Throwable t = failure;
+        if (t != null)
+            throw new RuntimeException("Elastic averaging worker failed", t);
+    }
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.trainer;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This trainer implementation does asynchronous elastic averaging (EASGD) training.<br>
+ * All trainers pull from a single shared queue, so a worker starts on the next minibatch as soon as it is done with the
+ * previous one, regardless of the progress of the other workers. Every averagingFrequency iterations, the worker
+ * exchanges parameters with the shared {@link ElasticAveragingCenter} - again without waiting for the other workers.
+ * Updater state is local to each worker and is not averaged.<br>
+ * As the queue is shared, a failed worker would otherwise leave queued work (and the other workers) waiting forever: if
+ * any worker fails, the failure is recorded in the center and rethrown when feeding or waiting on any of the workers.
+ */
+@Slf4j
+public class ElasticAveragingTrainer extends DefaultTrainer {
+    protected ElasticAveragingCenter center;
+    protected long localIterations;
+
+    public ElasticAveragingTrainer(@NonNull Model originalModel, String uuid, int threadIdx, @NonNull WorkspaceMode mode,
+                    @NonNull ParallelWrapper wrapper, boolean useMDS, int averagingFrequency,
+                    @NonNull ElasticAveragingCenter center, @NonNull LinkedBlockingQueue<DataSet> sharedQueue,
+                    @NonNull LinkedBlockingQueue<MultiDataSet> sharedQueueMDS, @NonNull AtomicInteger sharedRunning) {
+        super();
+        this.uuid = uuid + "_thread_" + threadIdx;
+        this.useMDS = useMDS;
+        this.originalModel = originalModel;
+        this.threadId = threadIdx;
+        this.workspaceMode = mode;
+        this.parallelWrapper = wrapper;
+        this.averagingFrequency = Math.max(1, averagingFrequency);
+        this.center = center;
+        this.queue = sharedQueue;
+        this.queueMDS = sharedQueueMDS;
+        this.running = sharedRunning;
+
+        center.register(threadIdx);
+    }
+
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } catch (RuntimeException | Error e) {
+            center.fail(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void feedDataSet(DataSet dataSet, long etlTime) {
+        if (dataSet == null) {
+            super.feedDataSet(null, etlTime);
+            return;
+        }
+        setupIfNeccessary();
+        offer(queue, dataSet);
+        lastEtlTime.set(etlTime);
+    }
+
+    @Override
+    public void feedMultiDataSet(@NonNull MultiDataSet dataSet, long etlTime) {
+        setupIfNeccessary();
+        offer(queueMDS, dataSet);
+        lastEtlTime.set(etlTime);
+    }
+
+    /**
+     * Add work to the shared queue, failing (instead of blocking forever) if any worker has failed
+     */
+    protected <T> void offer(BlockingQueue<T> q, T element) {
+        try {
+            while (!q.offer(element, 10, TimeUnit.MILLISECONDS)) {
+                center.checkFailure();
+            }
+            running.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        center.checkFailure();
+        return super.isRunning();
+    }
+
+    @Override
+    public void waitTillRunning() {
+        while (running.get() != 0) {
+            // if any trainer (not just this one) got exception during training - rethrow it here
+            if (thrownException != null)
+                throw new RuntimeException(thrownException);
+            center.checkFailure();
+
+            LockSupport.parkNanos(1000L);
+        }
+    }
+
+    @Override
+    protected void fit(DataSet dataSet) {
+        center.awaitStaleness(threadId, queue);
+        super.fit(dataSet);
+        afterIteration();
+    }
+
+    @Override
+    protected void fit(MultiDataSet dataSet) {
+        center.awaitStaleness(threadId, queueMDS);
+        super.fit(dataSet);
+        afterIteration();
+    }
+
+    protected void afterIteration() {
+        if (++localIterations % averagingFrequency == 0) {
+            try {
+                modelLock.writeLock().lock();
+                center.elasticUpdate(replicatedModel.params());
+            } finally {
+                modelLock.writeLock().unlock();
+            }
+        }
+        center.tick(threadId);
+    }
+
+    @Override
+    public boolean averagingRequired() {
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        center.stop();
+        super.shutdown();
+    }
+}
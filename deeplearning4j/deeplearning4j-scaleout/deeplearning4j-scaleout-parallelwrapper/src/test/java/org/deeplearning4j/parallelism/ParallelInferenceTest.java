@@ -50,7 +50,9 @@ import org.nd4j.common.resources.Resources;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -217,6 +219,75 @@ public class ParallelInferenceTest extends BaseDL4JTest {
     }
 
 
+    @Test(timeout = 60000L)
+    public void testInferenceContinuous() throws Exception {
+        for (long maxWait : new long[]{0, 500}) {
+            ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.CONTINUOUS)
+                    .batchLimit(8).maxWaitMicros(maxWait).workers(2).build();
+            try {
+                iterator = new MnistDataSetIterator(1, false, 12345);
+                INDArray f = iterator.next().getFeatures();
+                INDArray exp = model.output(f);
+                INDArray out = inf.output(f);
+                assertFalse(out.isAttached());
+                assertEquals(exp, out);
+
+                iterator.reset();
+                evalClassifcationMultipleThreads(inf, iterator, 10);
+
+                assertTrue(inf.getWorkerCounter(0) + inf.getWorkerCounter(1) > 0L);
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
+
+    @Test(timeout = 120000L)
+    public void testOutputAsync() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        int nIn = 10;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(nIn).nOut(5).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        for (InferenceMode m : InferenceMode.values()) {
+            ParallelInference inf = new ParallelInference.Builder(net).inferenceMode(m).batchLimit(8)
+                    .queueLimit(256).workers(2).build();
+            try {
+                List<INDArray> in = new ArrayList<>();
+                List<CompletableFuture<INDArray>> futures = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                    INDArray arr = Nd4j.rand(1 + i % 3, nIn);
+                    in.add(arr);
+                    futures.add(inf.outputAsync(arr));
+                }
+                for (int i = 0; i < in.size(); i++) {
+                    assertEquals(m.toString(), net.output(in.get(i)), futures.get(i).get());
+                }
+
+                //Errors should be propagated via the future
+                try {
+                    inf.outputAsync(Nd4j.ones(1, 5)).get();
+                    fail("Expected exception");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof DL4JInvalidInputException);
+                }
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
+
     @Test
     public void testProvider1() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
@@ -292,6 +363,31 @@ public class ParallelInferenceTest extends BaseDL4JTest {
         assertEquals(3.0f, input[0].tensorAlongDimension(0, 1).meanNumber().floatValue(), 0.001);
     }
 
+    @Test
+    public void testProviderTrySetInput() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>(1);
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(10000000L, 2, queue);
+
+        //First batch: queued, and not full
+        assertTrue(provider.trySetInput(observer, new INDArray[]{Nd4j.create(1,100).assign(1.0)}, null));
+        assertTrue(provider.trySetInput(observer, new INDArray[]{Nd4j.create(1,100).assign(2.0)}, null));
+        assertEquals(1, queue.size());
+
+        //Batch is full, and the queue is full: rejected, without blocking
+        assertFalse(provider.trySetInput(observer, new INDArray[]{Nd4j.create(1,100).assign(3.0)}, null));
+        assertEquals(1, queue.size());
+
+        InferenceObservable observable1 = queue.take();
+        assertEquals(2, observable1.getInputBatches().get(0).getFirst()[0].size(0));
+
+        assertTrue(provider.trySetInput(observer, new INDArray[]{Nd4j.create(1,100).assign(3.0)}, null));
+        assertEquals(1, queue.size());
+        INDArray[] input = queue.take().getInputBatches().get(0).getFirst();
+        assertEquals(1, input[0].size(0));
+        assertEquals(3.0f, input[0].meanNumber().floatValue(), 0.001);
+    }
+
     @Test
     public void testProvider4() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
@@ -19,6 +19,8 @@ package org.deeplearning4j.parallelism;
 import lombok.val;
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.datasets.iterator.EarlyTerminationDataSetIterator;
+import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
@@ -36,12 +38,19 @@ import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.learning.config.Nesterovs;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -140,4 +149,83 @@ public class ParallelWrapperTest extends BaseDL4JTest {
 
         wrapper.shutdown();
     }
+
+    @Test
+    public void testElasticAveraging() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .seed(12345)
+                        .updater(new Adam(0.01))
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(10).activation(Activation.TANH).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(10).nOut(3)
+                                        .activation(Activation.SOFTMAX).build())
+                        .build();
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+
+        DataSet all = new IrisDataSetIterator(150, 150).next();
+        INDArray paramsBefore = model.params().dup();
+        double scoreBefore = model.score(all);
+
+        ParallelWrapper wrapper = new ParallelWrapper.Builder(model)
+                        .workers(4)
+                        .prefetchBuffer(4)
+                        .trainingMode(ParallelWrapper.TrainingMode.ELASTIC_AVERAGING)
+                        .averagingFrequency(2)
+                        .maxStaleness(4)
+                        .build();
+
+        DataSetIterator iter = new IrisDataSetIterator(10, 150);
+        for (int i = 0; i < 20; i++) {
+            wrapper.fit(iter);
+        }
+        wrapper.shutdown();
+
+        assertNotEquals(paramsBefore, model.params());
+        double scoreAfter = model.score(all);
+        assertTrue(scoreBefore + " vs. " + scoreAfter, scoreAfter < scoreBefore);
+    }
+
+    @Test(timeout = 60000L)
+    public void testElasticAveragingWorkerFailure() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .seed(12345)
+                        .updater(new Adam(0.01))
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(10).activation(Activation.TANH).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(10).nOut(3)
+                                        .activation(Activation.SOFTMAX).build())
+                        .build();
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+
+        //One minibatch has the wrong number of features: whichever worker picks it up fails
+        List<DataSet> list = new IrisDataSetIterator(150, 150).next().asList();
+        List<DataSet> batches = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            DataSet ds = DataSet.merge(list.subList(10 * i, 10 * (i + 1)));
+            if (i == 3)
+                ds = new DataSet(Nd4j.rand(10, 3), ds.getLabels());
+            batches.add(ds);
+        }
+
+        ParallelWrapper wrapper = new ParallelWrapper.Builder(model)
+                        .workers(4)
+                        .prefetchBuffer(4)
+                        .trainingMode(ParallelWrapper.TrainingMode.ELASTIC_AVERAGING)
+                        .averagingFrequency(2)
+                        .maxStaleness(2)
+                        .build();
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                wrapper.fit(new ListDataSetIterator<>(batches, 1));
+            }
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            //Expected: training should fail instead of hanging
+        } finally {
+            wrapper.shutdown();
+        }
+    }
 }
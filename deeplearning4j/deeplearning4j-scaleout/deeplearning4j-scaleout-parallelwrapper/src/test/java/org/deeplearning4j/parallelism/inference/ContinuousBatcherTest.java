@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.parallelism.inference.observers.ContinuousBatchObservable;
+import org.deeplearning4j.parallelism.inference.observers.ContinuousInferenceRequest;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class ContinuousBatcherTest extends BaseDL4JTest {
+
+    @Test
+    public void testMpscQueue() throws Exception {
+        final MpscLinkedQueue<Integer> q = new MpscLinkedQueue<>();
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+
+        int numThreads = 4;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int offset = t * perThread;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int i = 0; i < perThread; i++)
+                    q.offer(offset + i);
+            });
+            threads[t].start();
+        }
+        start.countDown();
+
+        Set<Integer> seen = new HashSet<>();
+        int[] lastPerThread = new int[numThreads];
+        Arrays.fill(lastPerThread, -1);
+        while (seen.size() < numThreads * perThread) {
+            Integer v = q.poll();
+            if (v == null)
+                continue;
+            assertTrue(seen.add(v));
+            //Elements from any single producer must be seen in order
+            int t = v / perThread;
+            assertTrue(v > lastPerThread[t]);
+            lastPerThread[t] = v;
+        }
+        for (Thread t : threads)
+            t.join();
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testBatchingAndSplitting() throws Exception {
+        ContinuousBatcher b = new ContinuousBatcher(8, 0);
+        assertEquals(1, b.bucketSize(1));
+        assertEquals(4, b.bucketSize(3));
+        assertEquals(8, b.bucketSize(5));
+
+        ContinuousInferenceRequest r1 = new ContinuousInferenceRequest(new INDArray[]{Nd4j.valueArrayOf(new long[]{1, 5}, 1.0f)}, null);
+        ContinuousInferenceRequest r2 = new ContinuousInferenceRequest(new INDArray[]{Nd4j.valueArrayOf(new long[]{2, 5}, 2.0f)}, null);
+        //Different shape: can't be batched with r1/r2 and should be carried over to the next batch
+        ContinuousInferenceRequest r3 = new ContinuousInferenceRequest(new INDArray[]{Nd4j.valueArrayOf(new long[]{1, 3}, 3.0f)}, null);
+        b.submit(r1);
+        b.submit(r2);
+        b.submit(r3);
+        assertEquals(3, b.numPending());
+
+        ContinuousBatchObservable batch = b.nextBatch();
+        assertEquals(2, batch.getRequests().size());
+        assertEquals(3, batch.getNumExamples());
+        assertEquals(1, b.numPending());
+
+        INDArray in = batch.getInputBatches().get(0).getFirst()[0];
+        assertArrayEquals(new long[]{4, 5}, in.shape());         //Bucket size 4
+        assertEquals(Nd4j.valueArrayOf(new long[]{1, 5}, 1.0f), in.getRow(0, true));
+        assertEquals(Nd4j.valueArrayOf(new long[]{2, 5}, 2.0f), in.get(NDArrayIndex.interval(1, 3), NDArrayIndex.all()));
+
+        INDArray out = Nd4j.linspace(DataType.FLOAT, 0, 8, 1).reshape(4, 2);
+        batch.setOutputBatches(Collections.singletonList(new INDArray[]{out}));
+        assertTrue(r1.isDone());
+        assertTrue(r2.isDone());
+        assertEquals(out.getRow(0, true), r1.getOutput()[0]);
+        assertArrayEquals(new long[]{2, 2}, r2.getOutput()[0].shape());
+        assertTrue(r2.getOutput()[0].isView());
+
+        ContinuousBatchObservable batch2 = b.nextBatch();
+        assertEquals(1, batch2.getRequests().size());
+        assertSame(r3.getInput(), batch2.getInputBatches().get(0).getFirst());     //Single request: no copy
+        assertEquals(0, b.numPending());
+
+        //Buffers should be reused for the same bucket
+        b.submit(new ContinuousInferenceRequest(new INDArray[]{Nd4j.rand(DataType.FLOAT, 2, 5)}, null));
+        b.submit(new ContinuousInferenceRequest(new INDArray[]{Nd4j.rand(DataType.FLOAT, 2, 5)}, null));
+        INDArray in2 = b.nextBatch().getInputBatches().get(0).getFirst()[0];
+        assertSame(in, in2);
+    }
+
+    @Test(timeout = 20000L)
+    public void testMaxWaitAndShutdown() throws Exception {
+        final ContinuousBatcher b = new ContinuousBatcher(4, 200000);     //200ms
+        ContinuousInferenceRequest r1 = new ContinuousInferenceRequest(new INDArray[]{Nd4j.create(DataType.FLOAT, 1, 3)}, null);
+        final ContinuousInferenceRequest r2 = new ContinuousInferenceRequest(new INDArray[]{Nd4j.create(DataType.FLOAT, 1, 3)}, null);
+        b.submit(r1);
+
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            b.submit(r2);
+        });
+        t.start();
+
+        //Second request arrives within the maximum wait time, and should be included in the batch
+        ContinuousBatchObservable batch = b.nextBatch();
+        t.join();
+        assertEquals(2, batch.getRequests().size());
+
+        //Pending requests should be failed on shutdown
+        ContinuousInferenceRequest r3 = new ContinuousInferenceRequest(new INDArray[]{Nd4j.create(DataType.FLOAT, 1, 3)}, null);
+        b.submit(r3);
+        b.shutdown();
+        assertTrue(r3.isDone());
+        try {
+            r3.getOutput();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testSubmitRacingShutdown() throws Exception {
+        final INDArray[] in = new INDArray[]{Nd4j.create(DataType.FLOAT, 1, 3)};
+        for (int rep = 0; rep < 20; rep++) {
+            final ContinuousBatcher b = new ContinuousBatcher(4, 0);
+            final List<ContinuousInferenceRequest> submitted = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    while (true) {
+                        ContinuousInferenceRequest r = new ContinuousInferenceRequest(in, null);
+                        try {
+                            b.submit(r);
+                        } catch (IllegalStateException e) {
+                            return;     //Rejected after shutdown
+                        }
+                        submitted.add(r);
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            Thread.sleep(5);
+            b.shutdown();
+            for (Thread t : threads)
+                t.join();
+
+            //No request may be lost: every accepted request must have been failed by the shutdown
+            for (ContinuousInferenceRequest r : submitted) {
+                assertTrue(r.isDone());
+            }
+            assertEquals(0, b.numPending());
+        }
+    }
+}
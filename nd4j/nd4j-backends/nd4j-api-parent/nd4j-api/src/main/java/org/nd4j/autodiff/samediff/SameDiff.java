@@ -36,6 +36,8 @@ import org.nd4j.autodiff.samediff.config.EvaluationConfig;
 import org.nd4j.autodiff.samediff.config.FitConfig;
 import org.nd4j.autodiff.samediff.config.OutputConfig;
 import org.nd4j.autodiff.samediff.internal.*;
+import org.nd4j.autodiff.samediff.internal.memory.StaticPlanMemoryMgr;
+import org.nd4j.autodiff.samediff.transform.FusionOptimizer;
 import org.nd4j.autodiff.samediff.ops.*;
 import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
 import org.nd4j.common.base.Preconditions;
@@ -88,7 +90,16 @@ import org.tensorflow.framework.GraphDef;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -107,6 +118,7 @@ import static org.nd4j.autodiff.util.SameDiffUtils.stackOutputs;
 @Slf4j
 public class SameDiff extends SDBaseOps {
     protected static final String GRAD_FN_KEY = "grad";
+    public static final int DEFAULT_ASYNC_QUEUE_LIMIT = 64;
 
     //Fields for graph structure and execution
     @Getter
@@ -115,6 +127,17 @@ public class SameDiff extends SDBaseOps {
     private final Map<String, SameDiffOp> ops = new LinkedHashMap<>();
     @Getter
     private final Map<Long, InferenceSession> sessions = new ConcurrentHashMap<>();      //Key: thread ID
+    @Getter
+    private volatile InferenceSessionPool sessionPool;                                   //Null unless enabled, or createSession() is used
+    private volatile ThreadPoolExecutor asyncExecutor;                                   //Null unless enabled, or outputAsync is used
+    @Getter
+    private volatile ExecutorService opExecutor;                                         //Null unless parallel op execution is enabled
+    private boolean ownsOpExecutor;
+    @Getter
+    private volatile boolean staticMemoryPlanning;                                       //If true: new inference sessions use StaticPlanMemoryMgr
+    @Getter
+    private volatile boolean opFusion;                                                   //If true: FusionOptimizer is applied before the next execution
+    private volatile boolean opsFused;
 
     private ArrayHolder constantArrays = new ThreadSafeArrayHolder(true);
     private ArrayHolder variablesArrays = new ThreadSafeArrayHolder(true);
@@ -792,7 +815,7 @@ public class SameDiff extends SDBaseOps {
                 variable.name(), variable.dataType(), arr.dataType());
 
         if (sessions.get(Thread.currentThread().getId()) == null) {
-            sessions.put(Thread.currentThread().getId(), new InferenceSession(this));
+            sessions.put(Thread.currentThread().getId(), newInferenceSession());
         }
 
         if (arr.isAttached()) {
@@ -2523,6 +2546,15 @@ public class SameDiff extends SDBaseOps {
     }
 
     protected Map<String, INDArray> batchOutputHelper(Map<String, INDArray> placeholders, List<Listener> listeners, Operation operation, String... outputs) {
+        return batchOutputHelper(null, placeholders, listeners, operation, outputs);
+    }
+
+    /**
+     * As per {@link #batchOutputHelper(Map, List, Operation, String...)} but executing using the specified
+     * InferenceSession. If the session is null, the session is selected as per {@link #directExecHelper(Map, At, MultiDataSet, Collection, List, String...)}
+     */
+    protected Map<String, INDArray> batchOutputHelper(InferenceSession session, Map<String, INDArray> placeholders, List<Listener> listeners,
+                                                      Operation operation, String... outputs) {
         List<Listener> activeListeners = new ArrayList<>();
 
         if(operation == null)
@@ -2544,7 +2576,7 @@ public class SameDiff extends SDBaseOps {
 
         validateListenerActivations(activeListeners, operation);
 
-        Map<String, INDArray> ret = directExecHelper(placeholders, At.defaultAt(operation), null, Collections.<String>emptyList(), activeListeners, outputs);
+        Map<String, INDArray> ret = directExecHelper(session, placeholders, At.defaultAt(operation), null, Collections.<String>emptyList(), activeListeners, outputs);
 
         for (Listener l : activeListeners) {
             l.operationEnd(this, operation);
@@ -2553,31 +2585,370 @@ public class SameDiff extends SDBaseOps {
     }
 
     /**
-     * Do inference for the given variables for a single batch, with training information
+     * Do inference for the given variables for a single batch, with training information.<br>
+     * The InferenceSession used is selected as follows:<br>
+     * (a) If an InferenceSession has already been created for the current thread, that session is used<br>
+     * (b) Otherwise, if session pooling is enabled (see {@link #enableSessionPool(int, long)}) a session is borrowed
+     * from the pool for the duration of this call<br>
+     * (c) Otherwise, a new InferenceSession is created for (and stored against) the current thread
      */
     protected Map<String, INDArray> directExecHelper(Map<String, INDArray> placeholders, At at, MultiDataSet batch,
                                                      Collection<String> requiredActivations, List<Listener> activeListeners, String... outputs) {
+        return directExecHelper(null, placeholders, at, batch, requiredActivations, activeListeners, outputs);
+    }
+
+    /**
+     * As per {@link #directExecHelper(Map, At, MultiDataSet, Collection, List, String...)} but executing using the
+     * specified InferenceSession, if it is non-null
+     */
+    protected Map<String, INDArray> directExecHelper(InferenceSession session, Map<String, INDArray> placeholders, At at, MultiDataSet batch,
+                                                     Collection<String> requiredActivations, List<Listener> activeListeners, String... outputs) {
         if (at == null)
             at = At.defaultAt();
 
         Preconditions.checkState(outputs != null && outputs.length > 0, "No outputs were specified");
         long threadId = Thread.currentThread().getId();
-        if (!sessions.containsKey(threadId)) {
-            log.info("Creating new InferenceSession for thread {}", threadId);
-            sessions.put(threadId, new InferenceSession(this));
-        }
+
+        if (opFusion && !opsFused)
+            fuseOps(outputs);
 
         List<String> phNames = inputs();
         if (placeholders == null && phNames != null) {
             //Maybe user set placeholders before calling exec method?
-            placeholders = placeholdersPerThread.get(Thread.currentThread().getId());
+            placeholders = placeholdersPerThread.get(threadId);
         }
 
         //Placeholder validation is performed in InferenceSession
 
-        InferenceSession is = sessions.get(threadId);
-        return is.output(outputs == null ? Collections.<String>emptyList() : Arrays.asList(outputs),
-                placeholders, batch, requiredActivations, activeListeners, at);
+        InferenceSessionPool pool = sessionPool;
+        boolean borrowed = false;
+        InferenceSession is = session;
+        if (is == null) {
+            is = sessions.get(threadId);
+            if (is == null) {
+                if (pool != null) {
+                    is = pool.borrow();
+                    borrowed = true;
+                } else {
+                    log.info("Creating new InferenceSession for thread {}", threadId);
+                    is = newInferenceSession();
+                    sessions.put(threadId, is);
+                }
+            }
+        }
+
+        try {
+            return is.output(outputs == null ? Collections.<String>emptyList() : Arrays.asList(outputs),
+                    placeholders, batch, requiredActivations, activeListeners, at);
+        } finally {
+            if (borrowed) {
+                pool.release(is);
+            }
+        }
+    }
+
+    /**
+     * Enable pooling of {@link InferenceSession}s for this SameDiff instance.<br>
+     * By default, one InferenceSession (and its cached arrays) is created and kept for every thread that performs
+     * inference. With pooling enabled, threads that don't already have their own session instead borrow one from a
+     * bounded pool for the duration of each call, so that many short-lived threads can share a small number of sessions.
+     * See {@link InferenceSessionPool} for details.<br>
+     * Any existing pool is closed and replaced.
+     *
+     * @param maxSessions Maximum number of sessions that may be in use at once. Callers will block when this many
+     *                    sessions are in use.
+     * @param maxIdleMs   Maximum amount of time (in milliseconds) that a session may be idle before being evicted.
+     *                    Use a value &lt;= 0 to disable eviction of idle sessions
+     */
+    public void enableSessionPool(int maxSessions, long maxIdleMs) {
+        enableSessionPool(maxSessions, maxIdleMs, null);
+    }
+
+    /**
+     * As per {@link #enableSessionPool(int, long)}, but all pooled sessions use the specified memory manager instead of
+     * each session having its own. This allows concurrent sessions to share a single array cache instead of each
+     * holding its own - see {@link org.nd4j.autodiff.samediff.internal.memory.ConcurrentArrayCacheMemoryMgr}.
+     *
+     * @param maxSessions  Maximum number of sessions that may be in use at once.
+     * @param maxIdleMs    Maximum amount of time (in milliseconds) that a session may be idle before being evicted.
+     * @param sharedMemMgr Memory manager shared by all pooled sessions. Must be thread safe. May be null.
+     */
+    public void enableSessionPool(int maxSessions, long maxIdleMs, SessionMemMgr sharedMemMgr) {
+        InferenceSessionPool old;
+        synchronized (sessions) {
+            old = sessionPool;
+            sessionPool = new InferenceSessionPool(this, maxSessions, maxIdleMs, sharedMemMgr);
+        }
+        if (old != null)
+            old.close();
+    }
+
+    /**
+     * Disable session pooling, if it has been enabled via {@link #enableSessionPool(int, long)} or {@link #createSession()}.
+     * Sessions that are currently in use by other threads are closed once they are no longer in use.
+     */
+    public void disableSessionPool() {
+        InferenceSessionPool old;
+        synchronized (sessions) {
+            old = sessionPool;
+            sessionPool = null;
+        }
+        if (old != null)
+            old.close();
+    }
+
+    /**
+     * Create a new {@link SameDiffSession} for performing inference. The returned session holds an InferenceSession from
+     * this instance's session pool until it is closed, and is not bound to the calling thread. Sessions should be closed
+     * after use - usually via try-with-resources.<br>
+     * If session pooling has not yet been enabled via {@link #enableSessionPool(int, long)}, a pool is created with a
+     * maximum of {@link Runtime#availableProcessors()} sessions and an idle time of {@link InferenceSessionPool#DEFAULT_MAX_IDLE_MS}.
+     *
+     * @return A new SameDiffSession
+     */
+    public SameDiffSession createSession() {
+        InferenceSessionPool pool = sessionPool;
+        if (pool == null) {
+            synchronized (sessions) {
+                if (sessionPool == null) {
+                    sessionPool = new InferenceSessionPool(this, Runtime.getRuntime().availableProcessors(), InferenceSessionPool.DEFAULT_MAX_IDLE_MS);
+                }
+                pool = sessionPool;
+            }
+        }
+        return new SameDiffSession(this, pool);
+    }
+
+    /**
+     * Do inference for the given variables for a single batch, asynchronously.<br>
+     * The calling thread is not blocked: inference is performed on one of this instance's async output threads
+     * (see {@link #enableAsyncOutput(int, int)}) using a pooled {@link SameDiffSession}, and the returned future is
+     * completed on that thread. If async output has not been enabled, it is enabled with {@link Runtime#availableProcessors()}
+     * threads and a queue limit of {@link #DEFAULT_ASYNC_QUEUE_LIMIT}.<br>
+     * Backpressure: if the queue limit has been reached, the returned future is completed exceptionally with a
+     * {@link RejectedExecutionException} instead of blocking the caller.
+     *
+     * @param placeholders The values to use for placeholders.
+     * @param outputs      The variables to output and return.
+     * @return Future for the output arrays
+     */
+    public CompletableFuture<Map<String, INDArray>> outputAsync(Map<String, INDArray> placeholders, @NonNull String... outputs) {
+        ThreadPoolExecutor exec = asyncExecutor;
+        if (exec == null) {
+            synchronized (sessions) {
+                if (asyncExecutor == null)
+                    asyncExecutor = newAsyncExecutor(Runtime.getRuntime().availableProcessors(), DEFAULT_ASYNC_QUEUE_LIMIT);
+                exec = asyncExecutor;
+            }
+        }
+        return outputAsync(placeholders, exec, outputs);
+    }
+
+    /**
+     * As per {@link #outputAsync(Map, String...)}, but performing inference using the specified executor. If the executor
+     * rejects the task, the returned future is completed exceptionally with the {@link RejectedExecutionException}
+     *
+     * @param placeholders The values to use for placeholders.
+     * @param executor     Executor to perform inference on
+     * @param outputs      The variables to output and return.
+     * @return Future for the output arrays
+     */
+    public CompletableFuture<Map<String, INDArray>> outputAsync(final Map<String, INDArray> placeholders, @NonNull Executor executor,
+                                                                @NonNull final String... outputs) {
+        Nd4j.getExecutioner().commit();     //Commit before passing placeholders to another thread
+        final CompletableFuture<Map<String, INDArray>> future = new CompletableFuture<>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone())        //Cancelled before execution
+                        return;
+                    try (SameDiffSession s = createSession()) {
+                        future.complete(s.output(placeholders, outputs));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Enable (or reconfigure) the threads used for {@link #outputAsync(Map, String...)}. Any existing async threads
+     * finish their queued work and then terminate.
+     *
+     * @param numThreads Number of threads to perform inference on. Usually no more than the maximum number of pooled
+     *                   sessions (see {@link #enableSessionPool(int, long)}), as threads will otherwise block waiting
+     *                   for a session
+     * @param queueLimit Maximum number of requests waiting for a thread. Further requests are rejected
+     */
+    public void enableAsyncOutput(int numThreads, int queueLimit) {
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        Preconditions.checkArgument(queueLimit > 0, "Queue limit must be positive, got %s", queueLimit);
+        ThreadPoolExecutor old;
+        synchronized (sessions) {
+            old = asyncExecutor;
+            asyncExecutor = newAsyncExecutor(numThreads, queueLimit);
+        }
+        if (old != null)
+            old.shutdown();
+    }
+
+    /**
+     * Shut down the threads used for {@link #outputAsync(Map, String...)}, if any, once their queued work is complete.
+     */
+    public void disableAsyncOutput() {
+        ThreadPoolExecutor old;
+        synchronized (sessions) {
+            old = asyncExecutor;
+            asyncExecutor = null;
+        }
+        if (old != null)
+            old.shutdown();
+    }
+
+    private static ThreadPoolExecutor newAsyncExecutor(int numThreads, int queueLimit) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueLimit), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "SameDiff-async-" + threadCount.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+        exec.allowCoreThreadTimeOut(true);
+        return exec;
+    }
+
+    /**
+     * Enable parallel execution of independent ops during inference, using a new pool with the specified number of threads.<br>
+     * By default, ops are executed one at a time on the thread performing inference. With parallel op execution enabled,
+     * all ops whose inputs are available are dispatched to the op executor and executed concurrently, which can
+     * significantly reduce latency for graphs with many independent (parallel) branches - such as many imported
+     * TensorFlow and ONNX graphs. Control flow ops, op parameterization and memory management still happen on the thread
+     * performing inference.<br>
+     * Note that ops are executed sequentially (as normal) when listeners are present, and for training.
+     *
+     * @param numThreads Number of threads to execute ops on
+     */
+    public void enableParallelOpExecution(int numThreads) {
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService exec = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "SameDiff-op-" + threadCount.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        setOpExecutor(exec, true);
+    }
+
+    /**
+     * As per {@link #enableParallelOpExecution(int)}, but executing ops on the specified executor. The executor is not
+     * shut down when parallel op execution is disabled.<br>
+     * Note that the executor should not be one that is also used to call SameDiff inference with a bounded number of
+     * threads, as threads waiting for op execution could then block the ops they are waiting for.
+     *
+     * @param executor Executor to execute ops on
+     */
+    public void enableParallelOpExecution(@NonNull ExecutorService executor) {
+        setOpExecutor(executor, false);
+    }
+
+    /**
+     * Disable parallel op execution, if it was enabled via {@link #enableParallelOpExecution(int)}
+     */
+    public void disableParallelOpExecution() {
+        setOpExecutor(null, false);
+    }
+
+    private void setOpExecutor(ExecutorService executor, boolean owned) {
+        ExecutorService old;
+        boolean ownedOld;
+        synchronized (sessions) {
+            old = opExecutor;
+            ownedOld = ownsOpExecutor;
+            opExecutor = executor;
+            ownsOpExecutor = owned;
+        }
+        if (old != null && ownedOld)
+            old.shutdown();
+    }
+
+    /**
+     * Enable or disable static memory planning for inference. When enabled, inference sessions use a
+     * {@link StaticPlanMemoryMgr}: the memory for all intermediate arrays is planned ahead of time (from the first
+     * execution) and allocated as a single arena per datatype, that is reused for every subsequent execution. This
+     * removes per-op array allocation and deallocation during inference, and gives a fixed memory footprint for the model.
+     * It is best suited to graphs where the placeholder shapes are the same for every execution: when shapes change, the
+     * memory plan is rebuilt.<br>
+     * Existing sessions are discarded, so that the setting applies to all subsequent executions. Note that this setting
+     * does not apply to a session pool created with a shared memory manager (see {@link #enableSessionPool(int, long, SessionMemMgr)}).
+     *
+     * @param enabled Whether static memory planning should be used
+     */
+    public void setStaticMemoryPlanning(boolean enabled) {
+        synchronized (sessions) {
+            staticMemoryPlanning = enabled;
+            clearSessions();
+        }
+    }
+
+    /**
+     * Enable or disable operator fusion. When enabled, chains of operations such as matrix multiply + bias add (+ relu),
+     * convolution + batch norm and x * sigmoid(x) are replaced by single fused operations, once, before the next execution.
+     * This is mainly intended for imported graphs, which often contain such chains as separate ops.
+     * See {@link FusionOptimizer} for details.<br>
+     * Note that fusion modifies this SameDiff instance: intermediate variables within fused chains are removed from the
+     * graph (and hence can no longer be requested as outputs) - except for variables requested as outputs in the first
+     * execution after fusion was enabled, the graph outputs (see {@link #setOutputs(List)}) and the loss variables.
+     * Disabling fusion does not restore the original graph. Fusion should be enabled before any concurrent execution
+     * of the graph.
+     *
+     * @param enabled Whether operator fusion should be applied before the next execution
+     */
+    public void setOpFusion(boolean enabled) {
+        synchronized (sessions) {
+            opFusion = enabled;
+            opsFused = false;
+        }
+    }
+
+    private void fuseOps(String... outputs) {
+        synchronized (sessions) {
+            if (!opFusion || opsFused)
+                return;
+            int n = FusionOptimizer.optimizeInPlace(this, Arrays.asList(outputs));
+            log.info("Operator fusion: fused {} op chains", n);
+            opsFused = true;
+            if (n > 0)
+                clearSessions();
+        }
+    }
+
+    private InferenceSession newInferenceSession() {
+        InferenceSession is = new InferenceSession(this);
+        if (staticMemoryPlanning)
+            is.setMmgr(new StaticPlanMemoryMgr());
+        return is;
+    }
+
+    /**
+     * Remove all InferenceSessions (per-thread and pooled) - for example, when they may hold cached arrays or state that
+     * is no longer valid after a change to the graph
+     */
+    protected void clearSessions() {
+        sessions.clear();
+        InferenceSessionPool pool = sessionPool;
+        if (pool != null)
+            pool.invalidate();
     }
 
     /**
@@ -3054,7 +3425,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3152,7 +3523,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3264,7 +3635,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         if (anyChanged) {
-            sessions.clear();
+            clearSessions();
 
             //Recalculate datatypes of outputs, and dynamically update them
             Set<String> allSeenOps = new HashSet<>();
@@ -3460,6 +3831,30 @@ public class SameDiff extends SDBaseOps {
     }
 
 
+    /**
+     * Remove the specified variable from the graph, along with its stored array (for constants, variables and placeholders).
+     * The variable must not be the output of an op, nor an input to any op.
+     *
+     * @param varName Name of the variable to remove
+     */
+    public void removeVariable(@NonNull String varName) {
+        Variable v = variables.get(varName);
+        Preconditions.checkState(v != null, "No variable with name \"%s\" exists", varName);
+        Preconditions.checkState(v.getOutputOfOp() == null || !ops.containsKey(v.getOutputOfOp()),
+                "Cannot remove variable \"%s\": variable is an output of op \"%s\"", varName, v.getOutputOfOp());
+        Preconditions.checkState(v.getInputsForOp() == null || v.getInputsForOp().isEmpty(),
+                "Cannot remove variable \"%s\": variable is an input to ops %s", varName, v.getInputsForOp());
+
+        variables.remove(varName);
+        constantArrays.removeArray(varName);
+        variablesArrays.removeArray(varName);
+        for (Map<String, INDArray> m : placeholdersPerThread.values()) {
+            m.remove(varName);
+        }
+        lossVariables.remove(varName);
+        clearSessions();
+    }
+
     /**
      * Remove an argument for a function. Note that if this function does not contain the argument, it will just be a no op.
      *
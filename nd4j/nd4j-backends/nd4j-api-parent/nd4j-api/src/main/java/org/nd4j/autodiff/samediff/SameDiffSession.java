@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.autodiff.listeners.Listener;
+import org.nd4j.autodiff.listeners.Operation;
+import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.InferenceSessionPool;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SameDiffSession: an explicit, thread-agnostic handle for performing inference on a {@link SameDiff} instance.<br>
+ * A SameDiffSession holds an {@link InferenceSession} borrowed from the SameDiff instance's {@link InferenceSessionPool}
+ * until {@link #close()} is called, at which point the InferenceSession is returned to the pool for reuse by other
+ * callers. Unlike {@link SameDiff#output(Map, String...)}, the session is not tied to the calling thread: it may be
+ * created on one thread and used on another, but must not be used by more than one thread at the same time.<br>
+ * Obtain instances via {@link SameDiff#createSession()}. Usage:
+ * <pre>
+ * {@code
+ * try(SameDiffSession s = sd.createSession()){
+ *     Map<String,INDArray> out = s.output(placeholders, "out");
+ * }
+ * }
+ * </pre>
+ */
+public class SameDiffSession implements Closeable {
+
+    @Getter
+    private final SameDiff sameDiff;
+    private final InferenceSessionPool pool;
+    private InferenceSession session;
+
+    protected SameDiffSession(@NonNull SameDiff sameDiff, @NonNull InferenceSessionPool pool) {
+        this.sameDiff = sameDiff;
+        this.pool = pool;
+        this.session = pool.borrow();
+    }
+
+    /**
+     * Do inference for the given variables for a single batch.
+     *
+     * @param placeholders The values to use for placeholders.
+     * @param outputs      The variables to output and return.
+     */
+    public Map<String, INDArray> output(Map<String, INDArray> placeholders, @NonNull String... outputs) {
+        return output(placeholders, Collections.<Listener>emptyList(), outputs);
+    }
+
+    /**
+     * Do inference for the given variables for a single batch.
+     *
+     * @param placeholders The values to use for placeholders.
+     * @param outputs      The variables to output and return.
+     */
+    public Map<String, INDArray> output(Map<String, INDArray> placeholders, @NonNull List<String> outputs) {
+        return output(placeholders, outputs.toArray(new String[0]));
+    }
+
+    /**
+     * Do inference for the given variables for a single batch.
+     *
+     * @param placeholders The values to use for placeholders.
+     * @param listeners    Additional listeners to use during this operation.
+     * @param outputs      The variables to output and return.
+     */
+    public Map<String, INDArray> output(Map<String, INDArray> placeholders, List<Listener> listeners, @NonNull String... outputs) {
+        Preconditions.checkState(session != null, "Cannot perform inference: SameDiffSession has already been closed");
+        return sameDiff.batchOutputHelper(session, placeholders, listeners, Operation.INFERENCE, outputs);
+    }
+
+    /**
+     * Do inference for a single variable for a single batch.
+     *
+     * @param placeholders The values to use for placeholders.
+     * @param output       The variable to output and return.
+     */
+    public INDArray outputSingle(Map<String, INDArray> placeholders, @NonNull String output) {
+        return output(placeholders, output).get(output);
+    }
+
+    /**
+     * @return True if this session has been closed
+     */
+    public boolean isClosed() {
+        return session == null;
+    }
+
+    /**
+     * Return the underlying InferenceSession to the pool. The SameDiffSession can no longer be used after this method
+     * has been called. Arrays returned by the output methods remain valid after the session is closed.
+     */
+    @Override
+    public void close() {
+        if (session != null) {
+            InferenceSession s = session;
+            session = null;
+            pool.release(s);
+        }
+    }
+}
@@ -30,6 +30,10 @@ import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.common.function.Predicate;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * AbstractSession is a SameDiff graph execution class that inference and training it built upon
@@ -141,8 +145,6 @@ public abstract class AbstractSession<T, O> {
             Preconditions.checkState(sameDiff.variableMap().containsKey(s), "Requested output variable %s does not exist in SameDiff instance", s);
         }
 
-        Set<String> reqOutputVariablesSet = new HashSet<>(variables);
-
         placeholderValues = preprocessPlaceholders(placeholderValues, at);
 
         //Clear state from past iterations, if any
@@ -249,6 +251,13 @@ public abstract class AbstractSession<T, O> {
 
         Map<String, T> out = new HashMap<>();       //Outputs, returned to the user
         Set<String> allExecuted = new HashSet<>();
+        ExecutorService opExecutor = sameDiff.getOpExecutor();
+        if (opExecutor != null && initParallelExecution(listeners)) {
+            outputParallel(opExecutor, placeholderValues, userRequestedUnique, out, allRequired, allExecuted, listeners, at, batch);
+            out = postProcessOutput(out);   //Hook-in for subclass sessions, if needed
+            return out;
+        }
+
         int step = 0;                               //Number of execution steps
         //Next 3: current execution frame
         String currentFrame = OUTER_FRAME;
@@ -281,217 +290,417 @@ public abstract class AbstractSession<T, O> {
 
             log.trace("Beginning execution step {}: {}", step, es);
 
-            FrameIter outFrameIter;
-            boolean skipDepUpdate = false;      //Only used for Switch ops, which have slighly different handling...
-            boolean skipMarkSatisfied = false;  //Only for enter ops, because of different frame/iter
-            if (es.getType() == ExecType.CONSTANT || es.getType() == ExecType.VARIABLE) {
-                VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
-                T arr = getConstantOrVariable(es.getName());
-                Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", vid);
-                nodeOutputs.put(vid, arr);
-                outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
-                if (userRequestedUnique.contains(es.getName())) {
-                    //User requested const/variable as one of the outputs
-                    out.put(es.getName(), arr);
-                }
-                if(allRequired.contains(es.getName())){
-                    allExecuted.add(es.getName());
-                }
-            } else if (es.getType() == ExecType.PLACEHOLDER) {
-                VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
-                T phVal = placeholderValues == null ? null : placeholderValues.get(es.getName());
-
-                nodeOutputs.put(vid, phVal);
-                outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
-                if (allRequired.contains(es.getName())) {
-                    Preconditions.checkState(placeholderValues != null && placeholderValues.containsKey(es.getName()),
-                            "No array was provided for the placeholder variable \"%s\" that is required for execution", es.getName());
-                    //User requested placeholder value as one of the outputs
-                    out.put(es.getName(), placeholderValues.get(es.getName()));
-                }
-                if(allRequired.contains(es.getName())){
-                    allExecuted.add(es.getName());
-                }
-            } else if (es.getType() == ExecType.OP) {
-                String opName = es.getName();
-                SameDiffOp op = sameDiff.getOps().get(opName);
-                DifferentialFunction o = op.getOp();
-
-                if (o instanceof Enter) {
-                    //Enter op: output is variable in a new (specified) frame, iteration 0.
-                    //Parent is current (input) frame
-                    String outFrame = ((Enter) o).getFrameName();
-                    outFrameIter = new FrameIter(outFrame, 0, es.getFrameIter());
-                } else if (o instanceof Exit) {
-                    //Exit node forwards input to parent frame
-                    String outFrame = es.getFrameIter().getParentFrame().getFrame();
-                    int outIter = es.getFrameIter().getParentFrame().getIteration();
-                    FrameIter outParentFrame = es.getFrameIter().getParentFrame().getParentFrame();
-                    outFrameIter = new FrameIter(outFrame, outIter, outParentFrame);
-                } else if (o instanceof NextIteration) {
-                    //NextIteration op: forwards its single input to its output varible in the current frame, but increments the iteration number
-                    outFrameIter = es.getFrameIter().clone();
-                    outFrameIter.setIteration(outFrameIter.getIteration());
-                } else {
-                    //Standard ops - output variable has same frame and iteration number as the input(s)
-                    //Also loopCond, merge, while, etc
-                    outFrameIter = es.getFrameIter();
-                }
+            if (es.getType() == ExecType.OP) {
+                PreparedOp p = prepareOp(es, placeholderValues, userRequestedUnique);
+                T[] opOutputValues = getOutputs(p.getParameterizedOp(), p.getOutFrameIter(), p.getInputs(), p.getAllIterInputs(),
+                        p.getConstAndPhInputs(), listeners, at, batch, userRequestedUnique);
+                completeOp(p, opOutputValues, userRequestedUnique, out, allRequired, allExecuted);
+            } else {
+                executeVarStep(es, placeholderValues, userRequestedUnique, out, allRequired, allExecuted);
+            }
 
+            step++;
+        }
 
-                //Resolve the inputs to this execution step (op) to actual arrays
-                Set<VarId> inputs = null;
-                Set<VarId> allIterInputs = null;
-                Set<String> constAndPhInputs = null;
-                DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
-
-                List<String> inputNames = op.getInputsToOp();
-                if (inputNames != null && !inputNames.isEmpty()) {
-                    inputs = new HashSet<>();
-                    allIterInputs = new HashSet<>();
-                    constAndPhInputs = new HashSet<>();
-                    List<ExecStep> deps = dl.getDependencies();
-                    if (deps != null && !deps.isEmpty()) {
-                        for (ExecStep dep : deps) {
-                            switch (dep.getType()) {
-                                case OP:
-                                case SWITCH_L:
-                                case SWITCH_R:
-                                    //The current execution step depends on one output of the op "dep"
-                                    SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
-                                    List<String> inputsToExecOp = toExecOp.getInputsToOp();
-                                    SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
-                                    List<String> inputOpOutNames = inputOp.getOutputsOfOp();
-                                    for (String s : inputsToExecOp) {
-                                        if (inputOpOutNames.contains(s)) {
-                                            VarId vid = new VarId(s, dep.getFrameIter().getFrame(), dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame());
-                                            inputs.add(vid);
-                                        }
-                                    }
-                                    break;
-                                case VARIABLE:
-                                    inputs.add(new VarId(dep.getName(), OUTER_FRAME, 0, null));
-                                    break;
-                                case CONSTANT:
-                                case PLACEHOLDER:
-                                    constAndPhInputs.add(dep.getName());
-                                    break;
-                                default:
-                                    throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
-                            }
-                        }
-                    }
-                }
+        //TODO we should clear the node outputs map to get rid of the invalid (closed, out of workspace, etc) arrays
 
+        out = postProcessOutput(out);   //Hook-in for subclass sessions, if needed
+        return out;
+    }
 
-                // Do execution of the op, in 2 steps
-                // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate outputs, etc ready for execution
-                // (b) actually execute the operation
-                O parameterizedOp = getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs, placeholderValues, reqOutputVariablesSet);
-                T[] opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs, constAndPhInputs, listeners, at, batch, reqOutputVariablesSet);
-                List<String> opOutVarNames = op.getOutputsOfOp();
+    /**
+     * Execute a CONSTANT, VARIABLE or PLACEHOLDER execution step: i.e., look up the value and mark it as available
+     */
+    protected void executeVarStep(ExecStep es, Map<String, T> placeholderValues, Set<String> userRequestedUnique, Map<String, T> out,
+                                  Set<String> allRequired, Set<String> allExecuted) {
+        FrameIter outFrameIter = new FrameIter(OUTER_FRAME, 0, null);
+        if (es.getType() == ExecType.CONSTANT || es.getType() == ExecType.VARIABLE) {
+            VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
+            T arr = getConstantOrVariable(es.getName());
+            Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", vid);
+            nodeOutputs.put(vid, arr);
+            if (userRequestedUnique.contains(es.getName())) {
+                //User requested const/variable as one of the outputs
+                out.put(es.getName(), arr);
+            }
+            if(allRequired.contains(es.getName())){
+                allExecuted.add(es.getName());
+            }
+        } else if (es.getType() == ExecType.PLACEHOLDER) {
+            VarId vid = new VarId(es.getName(), OUTER_FRAME, 0, null);
+            T phVal = placeholderValues == null ? null : placeholderValues.get(es.getName());
+
+            nodeOutputs.put(vid, phVal);
+            if (allRequired.contains(es.getName())) {
+                Preconditions.checkState(placeholderValues != null && placeholderValues.containsKey(es.getName()),
+                        "No array was provided for the placeholder variable \"%s\" that is required for execution", es.getName());
+                //User requested placeholder value as one of the outputs
+                out.put(es.getName(), placeholderValues.get(es.getName()));
+            }
+            if(allRequired.contains(es.getName())){
+                allExecuted.add(es.getName());
+            }
+        } else {
+            //Should never happen
+            throw new RuntimeException("Unknown ExecStep: " + es);
+        }
 
-                Preconditions.checkState(opOutputValues.length == opOutVarNames.size(), "Unexpected number of outputs from executed op %s:" +
-                                " got %s outputs when %s outputs were expected (%s)", parameterizedOp.getClass().getSimpleName(), opOutputValues.length,
-                        opOutVarNames.size(), opOutVarNames);
+        updateDescendantDeps(es, outFrameIter);
+        dt.markSatisfied(es, true);
+    }
 
-                //Store the op outputs
-                for (int i = 0; i < opOutputValues.length; i++) {
-                    if (opOutputValues[i] == null && op.getOp() instanceof Switch) {
-                        //Switch op only forwards the input to one of the outputs
-                        continue;
-                    }
+    /**
+     * Prepare an OP execution step for execution: determine the output frame/iteration, resolve the inputs to the
+     * execution step, and parameterize the op (see {@link #getAndParameterizeOp(String, FrameIter, Set, Set, Set, Map, Set)})
+     */
+    protected PreparedOp prepareOp(ExecStep es, Map<String, T> placeholderValues, Set<String> reqOutputVariablesSet) {
+        String opName = es.getName();
+        SameDiffOp op = sameDiff.getOps().get(opName);
+        DifferentialFunction o = op.getOp();
+
+        FrameIter outFrameIter;
+        if (o instanceof Enter) {
+            //Enter op: output is variable in a new (specified) frame, iteration 0.
+            //Parent is current (input) frame
+            String outFrame = ((Enter) o).getFrameName();
+            outFrameIter = new FrameIter(outFrame, 0, es.getFrameIter());
+        } else if (o instanceof Exit) {
+            //Exit node forwards input to parent frame
+            String outFrame = es.getFrameIter().getParentFrame().getFrame();
+            int outIter = es.getFrameIter().getParentFrame().getIteration();
+            FrameIter outParentFrame = es.getFrameIter().getParentFrame().getParentFrame();
+            outFrameIter = new FrameIter(outFrame, outIter, outParentFrame);
+        } else if (o instanceof NextIteration) {
+            //NextIteration op: forwards its single input to its output varible in the current frame, but increments the iteration number
+            outFrameIter = es.getFrameIter().clone();
+            outFrameIter.setIteration(outFrameIter.getIteration());
+        } else {
+            //Standard ops - output variable has same frame and iteration number as the input(s)
+            //Also loopCond, merge, while, etc
+            outFrameIter = es.getFrameIter();
+        }
 
-                    String n = opOutVarNames.get(i);
-                    VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(), outFrameIter.getParentFrame());
-                    nodeOutputs.put(vid, opOutputValues[i]);
 
-                    if (userRequestedUnique.contains(n)) {
-                        out.put(n, opOutputValues[i]);
-                    }
-                    if(allRequired.contains(n)){
-                        allExecuted.add(n);
+        //Resolve the inputs to this execution step (op) to actual arrays
+        Set<VarId> inputs = null;
+        Set<VarId> allIterInputs = null;
+        Set<String> constAndPhInputs = null;
+        DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
+
+        List<String> inputNames = op.getInputsToOp();
+        if (inputNames != null && !inputNames.isEmpty()) {
+            inputs = new HashSet<>();
+            allIterInputs = new HashSet<>();
+            constAndPhInputs = new HashSet<>();
+            List<ExecStep> deps = dl.getDependencies();
+            if (deps != null && !deps.isEmpty()) {
+                for (ExecStep dep : deps) {
+                    switch (dep.getType()) {
+                        case OP:
+                        case SWITCH_L:
+                        case SWITCH_R:
+                            //The current execution step depends on one output of the op "dep"
+                            SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
+                            List<String> inputsToExecOp = toExecOp.getInputsToOp();
+                            SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
+                            List<String> inputOpOutNames = inputOp.getOutputsOfOp();
+                            for (String s : inputsToExecOp) {
+                                if (inputOpOutNames.contains(s)) {
+                                    VarId vid = new VarId(s, dep.getFrameIter().getFrame(), dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame());
+                                    inputs.add(vid);
+                                }
+                            }
+                            break;
+                        case VARIABLE:
+                            inputs.add(new VarId(dep.getName(), OUTER_FRAME, 0, null));
+                            break;
+                        case CONSTANT:
+                        case PLACEHOLDER:
+                            constAndPhInputs.add(dep.getName());
+                            break;
+                        default:
+                            throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
                     }
                 }
+            }
+        }
 
-                //Post execution: update dependency tracker so we know what is available to execute next, given we now
-                // have these new values
-                if (o instanceof Switch) {
-                    /*
-                    Switch is a special case: only one output/branch is considered to exist post execution.
-                    Unlike every other type of op, only 1 of 2 output arrays is actually executed.
-                    For dependency tracking purposes, this is why we have SWITCH_L and _R execution types.
-                    If we just depended on the op, the dependency tracker would incorrectly conclude that ops relying on
-                    both branches (i.e., including the unavailable one) can now be executed
-                     */
-                    skipDepUpdate = true;
-                    skipMarkSatisfied = true;
-                    int nullCount = (opOutputValues[0] == null ? 1 : 0) + (opOutputValues[1] == null ? 1 : 0);
-                    Preconditions.checkState(nullCount == 1, "Expected exactly one output to be present for switch ops, got %s", nullCount);
-                    boolean left = opOutputValues[0] != null;
-                    ExecStep branch;
-                    if (left) {
-                        branch = new ExecStep(ExecType.SWITCH_L, es.getName(), es.getFrameIter());
-                    } else {
-                        branch = new ExecStep(ExecType.SWITCH_R, es.getName(), es.getFrameIter());
-                    }
-                    updateDescendantDeps(branch, outFrameIter);
-                    dt.markSatisfied(branch, true);
-                } else if (o instanceof Enter) {
-                    //Enter op: we want to say that the inner frame is executed...
-                    skipDepUpdate = true;
-                    skipMarkSatisfied = true;
-                    Enter e = (Enter) o;
-                    FrameIter fi = new FrameIter(e.getFrameName(), 0, es.getFrameIter());
-                    ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
-                    updateDescendantDeps(exec, fi);
-                    dt.markSatisfied(exec, true);
-                } else if (o instanceof Exit) {
-                    //Exit op: we want to say that the parent frame is executed...
-                    skipDepUpdate = true;
-                    skipMarkSatisfied = true;
-                    FrameIter fi = es.getFrameIter().getParentFrame();
-                    ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
-                    updateDescendantDeps(exec, fi);
-                    dt.markSatisfied(exec, true);
-                }
 
-                /*
-                Edge case for TensorFlow import control dependencies: for some reason, TF allows op control dependencies
-                like /while/x -> SomeConstant - i.e., a constant depending on something inside a scope.
-                This should be handled with an enter op, but TF doesn't always use this :/
-                Note that this is equivalent to marking the control dependency as satisfied on the first iteration
-                TODO double check that this is exactly the same behaviour as TF - otherwise this approach might fail in
-                     some rare cases that rely on the constant/variable not being available
-                 */
-                List<String> cdFor = op.getControlDepFor();
-                if (cdFor != null) {
-                    ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, opName, null);
-                    if (!dt.isSatisfied(cdEs)) {
-                        dt.markSatisfied(cdEs, true);
-                    }
-                }
+        // Do execution of the op, in 2 steps
+        // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate outputs, etc ready for execution
+        // (b) actually execute the operation - see getOutputs
+        O parameterizedOp = getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs, placeholderValues, reqOutputVariablesSet);
+        return new PreparedOp(es, op, outFrameIter, inputs, allIterInputs, constAndPhInputs, parameterizedOp);
+    }
 
-            } else {
-                //Should never happen
-                throw new RuntimeException("Unknown ExecStep: " + es);
+    /**
+     * Store the outputs of an executed op, and update the dependency tracker so we know what is available to execute
+     * next, given we now have these new values
+     */
+    protected void completeOp(PreparedOp p, T[] opOutputValues, Set<String> userRequestedUnique, Map<String, T> out,
+                              Set<String> allRequired, Set<String> allExecuted) {
+        ExecStep es = p.getExecStep();
+        SameDiffOp op = p.getOp();
+        DifferentialFunction o = op.getOp();
+        FrameIter outFrameIter = p.getOutFrameIter();
+        List<String> opOutVarNames = op.getOutputsOfOp();
+
+        Preconditions.checkState(opOutputValues.length == opOutVarNames.size(), "Unexpected number of outputs from executed op %s:" +
+                        " got %s outputs when %s outputs were expected (%s)", p.getParameterizedOp().getClass().getSimpleName(), opOutputValues.length,
+                opOutVarNames.size(), opOutVarNames);
+
+        //Store the op outputs
+        for (int i = 0; i < opOutputValues.length; i++) {
+            if (opOutputValues[i] == null && op.getOp() instanceof Switch) {
+                //Switch op only forwards the input to one of the outputs
+                continue;
+            }
+
+            String n = opOutVarNames.get(i);
+            VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(), outFrameIter.getParentFrame());
+            nodeOutputs.put(vid, opOutputValues[i]);
+
+            if (userRequestedUnique.contains(n)) {
+                out.put(n, opOutputValues[i]);
             }
+            if(allRequired.contains(n)){
+                allExecuted.add(n);
+            }
+        }
 
+        //Post execution: update dependency tracker so we know what is available to execute next, given we now
+        // have these new values
+        if (o instanceof Switch) {
+            /*
+            Switch is a special case: only one output/branch is considered to exist post execution.
+            Unlike every other type of op, only 1 of 2 output arrays is actually executed.
+            For dependency tracking purposes, this is why we have SWITCH_L and _R execution types.
+            If we just depended on the op, the dependency tracker would incorrectly conclude that ops relying on
+            both branches (i.e., including the unavailable one) can now be executed
+             */
+            int nullCount = (opOutputValues[0] == null ? 1 : 0) + (opOutputValues[1] == null ? 1 : 0);
+            Preconditions.checkState(nullCount == 1, "Expected exactly one output to be present for switch ops, got %s", nullCount);
+            boolean left = opOutputValues[0] != null;
+            ExecStep branch;
+            if (left) {
+                branch = new ExecStep(ExecType.SWITCH_L, es.getName(), es.getFrameIter());
+            } else {
+                branch = new ExecStep(ExecType.SWITCH_R, es.getName(), es.getFrameIter());
+            }
+            updateDescendantDeps(branch, outFrameIter);
+            dt.markSatisfied(branch, true);
+        } else if (o instanceof Enter) {
+            //Enter op: we want to say that the inner frame is executed...
+            Enter e = (Enter) o;
+            FrameIter fi = new FrameIter(e.getFrameName(), 0, es.getFrameIter());
+            ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
+            updateDescendantDeps(exec, fi);
+            dt.markSatisfied(exec, true);
+        } else if (o instanceof Exit) {
+            //Exit op: we want to say that the parent frame is executed...
+            FrameIter fi = es.getFrameIter().getParentFrame();
+            ExecStep exec = new ExecStep(ExecType.OP, es.getName(), fi);
+            updateDescendantDeps(exec, fi);
+            dt.markSatisfied(exec, true);
+        } else {
             //Standard ops
-            if (!skipDepUpdate) {
-                updateDescendantDeps(es, outFrameIter);
+            updateDescendantDeps(es, outFrameIter);
+            dt.markSatisfied(es, true);
+        }
+
+        /*
+        Edge case for TensorFlow import control dependencies: for some reason, TF allows op control dependencies
+        like /while/x -> SomeConstant - i.e., a constant depending on something inside a scope.
+        This should be handled with an enter op, but TF doesn't always use this :/
+        Note that this is equivalent to marking the control dependency as satisfied on the first iteration
+        TODO double check that this is exactly the same behaviour as TF - otherwise this approach might fail in
+             some rare cases that rely on the constant/variable not being available
+         */
+        List<String> cdFor = op.getControlDepFor();
+        if (cdFor != null) {
+            ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, es.getName(), null);
+            if (!dt.isSatisfied(cdEs)) {
+                dt.markSatisfied(cdEs, true);
+            }
+        }
+    }
+
+    /**
+     * Parallel version of the main execution loop in {@link #output(List, Map, MultiDataSet, Collection, List, At)}.<br>
+     * All bookkeeping - dependency tracking, op parameterization (and hence output allocation), storing outputs and
+     * releasing arrays - happens on the calling thread, exactly as for sequential execution. However, instead of executing
+     * one op at a time, every op whose dependencies are satisfied is dispatched to the executor (if
+     * {@link #canExecuteInParallel(Object)} returns true for it) or executed directly (control flow ops etc), without
+     * waiting for ops already dispatched to complete. Ops in different frames and iterations may be executed concurrently,
+     * but at most one execution of any given op is in progress at any time, as parameterized ops (and their contexts)
+     * are reused between executions.
+     */
+    protected void outputParallel(@NonNull ExecutorService executor, Map<String, T> placeholderValues, Set<String> userRequestedUnique,
+                                  Map<String, T> out, Set<String> allRequired, Set<String> allExecuted, List<Listener> listeners,
+                                  At at, MultiDataSet batch) {
+        final BlockingQueue<PreparedOp> completed = new LinkedBlockingQueue<>();
+        Set<String> inFlight = new HashSet<>();             //Names of the ops currently being executed by the executor
+        List<ExecStep> deferred = new ArrayList<>();        //Ops that are ready, but a previous execution is still in flight
+        Throwable error = null;
+        int step = 0;
+        while (allExecuted.size() < allRequired.size() && error == null) {
+            //Dispatch or execute everything that is available
+            Iterator<ExecStep> iter = deferred.iterator();
+            while (iter.hasNext()) {
+                ExecStep es = iter.next();
+                if (!inFlight.contains(es.getName())) {
+                    iter.remove();
+                    dispatch(executor, completed, inFlight, es, placeholderValues, userRequestedUnique, out, allRequired,
+                            allExecuted, listeners, at, batch);
+                    step++;
+                }
             }
-            if (!skipMarkSatisfied) {
-                dt.markSatisfied(es, true);
+            while (dt.hasNewAllSatisfied() && allExecuted.size() < allRequired.size()) {
+                ExecStep es = dt.getNewAllSatisfied();
+                log.trace("Beginning execution step {}: {}", step, es);
+                if (es.getType() != ExecType.OP) {
+                    executeVarStep(es, placeholderValues, userRequestedUnique, out, allRequired, allExecuted);
+                } else if (inFlight.contains(es.getName())) {
+                    deferred.add(es);
+                    continue;
+                } else {
+                    dispatch(executor, completed, inFlight, es, placeholderValues, userRequestedUnique, out, allRequired,
+                            allExecuted, listeners, at, batch);
+                }
+                step++;
             }
 
-            step++;
+            if (allExecuted.size() >= allRequired.size())
+                break;
+
+            if (inFlight.isEmpty()) {
+                //Haven't got all of the outputs the user requested, but there's nothing left that we can execute. Should not happen.
+                execFailed(userRequestedUnique, out, allRequired, allExecuted, step);
+            }
+
+            //Wait for at least one op to complete, then process all completed ops
+            error = processCompleted(completed, inFlight, true, userRequestedUnique, out, allRequired, allExecuted, listeners, at, batch);
         }
 
-        //TODO we should clear the node outputs map to get rid of the invalid (closed, out of workspace, etc) arrays
+        //Ops dispatched (but not yet complete) when the last required output became available: wait for them before
+        // returning, as their output arrays are still in use
+        while (!inFlight.isEmpty()) {
+            Throwable t = processCompleted(completed, inFlight, error == null, userRequestedUnique, out, allRequired, allExecuted, listeners, at, batch);
+            if (error == null)
+                error = t;
+        }
 
-        out = postProcessOutput(out);   //Hook-in for subclass sessions, if needed
-        return out;
+        if (error != null) {
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            if (error instanceof Error)
+                throw (Error) error;
+            throw new RuntimeException("Error during parallel execution of SameDiff graph", error);
+        }
+    }
+
+    private void dispatch(ExecutorService executor, final BlockingQueue<PreparedOp> completed, Set<String> inFlight, ExecStep es,
+                          Map<String, T> placeholderValues, Set<String> userRequestedUnique, Map<String, T> out,
+                          Set<String> allRequired, Set<String> allExecuted, List<Listener> listeners, At at, MultiDataSet batch) {
+        final PreparedOp p = prepareOp(es, placeholderValues, userRequestedUnique);
+        if (canExecuteInParallel(p.getParameterizedOp())) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            p.setOutputs(execOpParallel(p.getParameterizedOp(), p.getOutFrameIter()));
+                        } catch (Throwable t) {
+                            p.setError(t);
+                        }
+                        completed.add(p);
+                    }
+                });
+                inFlight.add(es.getName());
+                return;
+            } catch (RejectedExecutionException e) {
+                log.debug("Parallel op execution rejected by executor, executing op {} on calling thread", es.getName());
+            }
+        }
+
+        T[] opOutputValues = getOutputs(p.getParameterizedOp(), p.getOutFrameIter(), p.getInputs(), p.getAllIterInputs(),
+                p.getConstAndPhInputs(), listeners, at, batch, userRequestedUnique);
+        completeOp(p, opOutputValues, userRequestedUnique, out, allRequired, allExecuted);
+    }
+
+    /**
+     * Process completed parallel op executions
+     *
+     * @param block    If true: wait for at least one op to complete
+     * @param complete If false: ops are removed from the in flight set, but their outputs are not processed
+     * @return The first exception encountered during execution of the completed ops, if any
+     */
+    private Throwable processCompleted(BlockingQueue<PreparedOp> completed, Set<String> inFlight, boolean complete,
+                                       Set<String> userRequestedUnique, Map<String, T> out, Set<String> allRequired,
+                                       Set<String> allExecuted, List<Listener> listeners, At at, MultiDataSet batch) {
+        PreparedOp p;
+        try {
+            p = completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for parallel op execution to complete", e);
+        }
+
+        Throwable error = null;
+        do {
+            inFlight.remove(p.getExecStep().getName());
+            if (p.getError() != null) {
+                if (error == null)
+                    error = p.getError();
+            } else if (complete && error == null) {
+                T[] opOutputValues = completeOpParallel(p.getParameterizedOp(), p.getOutputs(), p.getOutFrameIter(), p.getInputs(),
+                        p.getAllIterInputs(), p.getConstAndPhInputs(), listeners, at, batch, userRequestedUnique);
+                completeOp(p, opOutputValues, userRequestedUnique, out, allRequired, allExecuted);
+            }
+        } while ((p = completed.poll()) != null);
+        return error;
+    }
+
+    /**
+     * Called at the start of execution if an op executor has been set (see {@link SameDiff#enableParallelOpExecution(int)}),
+     * to determine whether ops may be executed in parallel for this execution. Implementations may also record any state
+     * (for the calling thread) that {@link #execOpParallel(Object, FrameIter)} requires.
+     *
+     * @param listeners Listeners for this execution
+     * @return True if ops may be executed in parallel
+     */
+    protected boolean initParallelExecution(List<Listener> listeners) {
+        return false;
+    }
+
+    /**
+     * @param op Parameterized op, as returned by {@link #getAndParameterizeOp(String, FrameIter, Set, Set, Set, Map, Set)}
+     * @return True if the op should be executed via {@link #execOpParallel(Object, FrameIter)} on another thread; false
+     * if it should be executed on the calling thread via {@link #getOutputs(Object, FrameIter, Set, Set, Set, List, At, MultiDataSet, Set)}
+     */
+    protected boolean canExecuteInParallel(O op) {
+        return false;
+    }
+
+    /**
+     * Execute the parameterized op only - without any other processing of the outputs. Called from a worker thread,
+     * hence must not modify the session's state.
+     */
+    protected T[] execOpParallel(O op, FrameIter outputFrameIter) {
+        throw new UnsupportedOperationException("Parallel execution is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Complete the execution of an op that was executed via {@link #execOpParallel(Object, FrameIter)}. Called on the
+     * calling thread. This is equivalent to {@link #getOutputs(Object, FrameIter, Set, Set, Set, List, At, MultiDataSet, Set)},
+     * other than the op having already been executed.
+     *
+     * @param outputs Op outputs, as returned by execOpParallel
+     */
+    protected T[] completeOpParallel(O op, T[] outputs, FrameIter outputFrameIter, Set<VarId> inputs, Set<VarId> allIterInputs,
+                                     Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch,
+                                     Set<String> allReqVariables) {
+        throw new UnsupportedOperationException("Parallel execution is not supported by " + getClass().getSimpleName());
     }
 
     /**
@@ -979,6 +1188,35 @@ public abstract class AbstractSession<T, O> {
         }
     }
 
+    /**
+     * An OP execution step that has been parameterized, and is ready to execute
+     */
+    @Getter
+    protected class PreparedOp {
+        private final ExecStep execStep;
+        private final SameDiffOp op;
+        private final FrameIter outFrameIter;
+        private final Set<VarId> inputs;
+        private final Set<VarId> allIterInputs;
+        private final Set<String> constAndPhInputs;
+        private final O parameterizedOp;
+        @Setter
+        private T[] outputs;            //Parallel execution only - published to the calling thread via the completion queue
+        @Setter
+        private Throwable error;
+
+        protected PreparedOp(ExecStep execStep, SameDiffOp op, FrameIter outFrameIter, Set<VarId> inputs, Set<VarId> allIterInputs,
+                             Set<String> constAndPhInputs, O parameterizedOp) {
+            this.execStep = execStep;
+            this.op = op;
+            this.outFrameIter = outFrameIter;
+            this.inputs = inputs;
+            this.allIterInputs = allIterInputs;
+            this.constAndPhInputs = constAndPhInputs;
+            this.parameterizedOp = parameterizedOp;
+        }
+    }
+
     /**
      * Used in getting the next ExecStep that matches the specified (current) frame/iteration
      */
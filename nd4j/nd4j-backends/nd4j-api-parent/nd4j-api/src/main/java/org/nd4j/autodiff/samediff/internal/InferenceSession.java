@@ -25,6 +25,7 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticPlanMemoryMgr;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
@@ -85,6 +86,7 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
 
     private Map<String,OpContext> opContexts = new HashMap<>();
+    private Integer parallelDeviceId;       //Device of the thread performing (parallel) execution
 
     public InferenceSession(@NonNull SameDiff sameDiff) {
         super(sameDiff);
@@ -94,6 +96,8 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
     @Override
     protected Map<String, INDArray> preprocessPlaceholders(Map<String, INDArray> placeholders, At at) {
         arrayUseTracker.clear();
+        if (mmgr instanceof StaticPlanMemoryMgr)
+            ((StaticPlanMemoryMgr) mmgr).beginExecution();
 
         //We'll also use this method as a "pre execution" hook-in, to mark variables as something we should never deallocate
         //This occurs by never marking these "ConstantDep" and "VariableDep" instances as satisfied, so there's always
@@ -203,6 +207,9 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
             }
         }
 
+        if (mmgr instanceof StaticPlanMemoryMgr)
+            ((StaticPlanMemoryMgr) mmgr).endExecution();
+
         return output;
     }
 
@@ -220,7 +227,51 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         }
 
         INDArray[] out = doExec(op.getOp(), opPair.getRight(), outputFrameIter, opInputs, allIterInputs, constAndPhInputs);
+        return processOutputs(opPair, out, outputFrameIter, listeners, at, batch, allReqVariables);
+    }
+
+    @Override
+    protected boolean initParallelExecution(List<Listener> listeners) {
+        if (listeners != null && !listeners.isEmpty())
+            return false;       //Listeners expect ops to be executed sequentially
+        parallelDeviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        return true;
+    }
 
+    @Override
+    protected boolean canExecuteInParallel(Pair<SameDiffOp, OpContext> opPair) {
+        //Only "real" ops are executed in parallel: control flow, tensor array ops etc are executed on the calling thread
+        // as they are cheap, and interact with the session's state
+        DifferentialFunction df = opPair.getFirst().getOp();
+        if (opPair.getSecond() == null || df instanceof Identity || df instanceof Assert ||
+                df instanceof GradientBackwardsMarker || df instanceof ExternalErrorsFunction)
+            return false;
+        return df instanceof CustomOp || df instanceof Op;
+    }
+
+    @Override
+    protected INDArray[] execOpParallel(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter) {
+        Nd4j.getAffinityManager().unsafeSetDevice(parallelDeviceId);
+        INDArray[] out = doExec(opPair.getFirst().getOp(), opPair.getSecond(), outputFrameIter, null, null, null);
+        Nd4j.getExecutioner().commit();     //Outputs may be consumed by ops on other threads
+        return out;
+    }
+
+    @Override
+    protected INDArray[] completeOpParallel(Pair<SameDiffOp, OpContext> opPair, INDArray[] outputs, FrameIter outputFrameIter,
+                                            Set<VarId> inputs, Set<VarId> allIterInputs, Set<String> constAndPhInputs,
+                                            List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
+        at.setFrameIter(outputFrameIter);
+        return processOutputs(opPair, outputs, outputFrameIter, listeners, at, batch, allReqVariables);
+    }
+
+    /**
+     * Post-process the outputs of an executed op: call listeners, and record array uses (or release arrays that are no
+     * longer required) for memory management
+     */
+    protected INDArray[] processOutputs(Pair<SameDiffOp,OpContext> opPair, INDArray[] out, FrameIter outputFrameIter,
+                                        List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
+        SameDiffOp op = opPair.getFirst();
         if (log.isTraceEnabled()) {
             StringBuilder sb = new StringBuilder();
             sb.append(op.getName()).append(" - ").append(outputFrameIter).append(" outputs: ");
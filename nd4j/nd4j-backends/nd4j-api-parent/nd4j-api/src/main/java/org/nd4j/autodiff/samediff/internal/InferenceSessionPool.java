@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.memory.ConcurrentArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticPlanMemoryMgr;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InferenceSessionPool: a bounded pool of {@link InferenceSession} instances for a single {@link SameDiff} instance.<br>
+ * By default, SameDiff creates (and keeps) one InferenceSession per thread. For servers that use a task-per-request
+ * executor (or a very large number of short-lived threads) this means one session - and its cached arrays - per thread
+ * that ever called output. With a pool, sessions are instead borrowed for the duration of a single execution and then
+ * returned, so a small number of "warm" sessions (with populated memory manager caches) are shared by all threads.<br>
+ * <br>
+ * Properties of the pool:
+ * <ul>
+ *     <li>At most {@code maxSessions} sessions are borrowed at any time; {@link #borrow()} blocks until one is returned</li>
+ *     <li>Idle sessions are reused most-recently-returned first, to maximize reuse of cached arrays</li>
+ *     <li>Sessions that have been idle for more than {@code maxIdleMs} are evicted and their memory manager is closed</li>
+ *     <li>{@link #invalidate()} discards all sessions - for example, after the graph structure or datatypes change</li>
+ *     <li>Optionally, all sessions can share a single thread-safe {@link SessionMemMgr} - such as
+ *     {@link ConcurrentArrayCacheMemoryMgr} - instead of each session having its own array cache</li>
+ * </ul>
+ * Usually this is not used directly, but via {@link SameDiff#createSession()} or {@link SameDiff#enableSessionPool(int, long)}
+ */
+@Slf4j
+public class InferenceSessionPool implements Closeable {
+    public static final long DEFAULT_MAX_IDLE_MS = 60000L;
+
+    private final SameDiff sameDiff;
+    @Getter
+    private final int maxSessions;
+    @Getter
+    private final long maxIdleMs;
+    @Getter
+    private final SessionMemMgr sharedMemMgr;
+
+    private final Semaphore permits;
+    private final Deque<IdleSession> idle = new ConcurrentLinkedDeque<>();          //Head: most recently returned
+    private final Map<InferenceSession, Integer> borrowed = Collections.synchronizedMap(new IdentityHashMap<InferenceSession, Integer>());  //Value: generation when borrowed
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Create a session pool with {@link #DEFAULT_MAX_IDLE_MS} idle time before eviction
+     *
+     * @param sameDiff    SameDiff instance to create sessions for
+     * @param maxSessions Maximum number of sessions that can be borrowed at once
+     */
+    public InferenceSessionPool(@NonNull SameDiff sameDiff, int maxSessions) {
+        this(sameDiff, maxSessions, DEFAULT_MAX_IDLE_MS);
+    }
+
+    /**
+     * @param sameDiff    SameDiff instance to create sessions for
+     * @param maxSessions Maximum number of sessions that can be borrowed at once
+     * @param maxIdleMs   Maximum amount of time (milliseconds) that a session can be idle in the pool before it is
+     *                    evicted and closed. Use a value &lt;= 0 to disable time-based eviction
+     */
+    public InferenceSessionPool(@NonNull SameDiff sameDiff, int maxSessions, long maxIdleMs) {
+        this(sameDiff, maxSessions, maxIdleMs, null);
+    }
+
+    /**
+     * @param sameDiff     SameDiff instance to create sessions for
+     * @param maxSessions  Maximum number of sessions that can be borrowed at once
+     * @param maxIdleMs    Maximum amount of time (milliseconds) that a session can be idle in the pool before it is
+     *                     evicted and closed. Use a value &lt;= 0 to disable time-based eviction
+     * @param sharedMemMgr If non-null: the memory manager to use for all sessions created by this pool. Must be thread
+     *                     safe, such as {@link ConcurrentArrayCacheMemoryMgr}. It is closed when the pool is closed, not
+     *                     when individual sessions are evicted. If null, each session uses its own memory manager.
+     */
+    public InferenceSessionPool(@NonNull SameDiff sameDiff, int maxSessions, long maxIdleMs, SessionMemMgr sharedMemMgr) {
+        Preconditions.checkArgument(maxSessions > 0, "Maximum number of sessions must be positive, got %s", maxSessions);
+        this.sameDiff = sameDiff;
+        this.maxSessions = maxSessions;
+        this.maxIdleMs = maxIdleMs;
+        this.sharedMemMgr = sharedMemMgr;
+        this.permits = new Semaphore(maxSessions, true);
+    }
+
+    /**
+     * Borrow a session from the pool, blocking until one is available. The session must be returned via
+     * {@link #release(InferenceSession)} once the caller is done with it, and must not be used by more than one thread
+     * at a time.
+     *
+     * @return The borrowed session
+     */
+    public InferenceSession borrow() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ND4JIllegalStateException("Interrupted while waiting for an InferenceSession", e);
+        }
+        return borrowAfterAcquire();
+    }
+
+    /**
+     * As per {@link #borrow()} but waiting at most the specified amount of time for a session to become available
+     *
+     * @return The borrowed session, or null if no session became available before the timeout elapsed
+     */
+    public InferenceSession borrow(long timeout, @NonNull TimeUnit unit) {
+        try {
+            if (!permits.tryAcquire(timeout, unit))
+                return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ND4JIllegalStateException("Interrupted while waiting for an InferenceSession", e);
+        }
+        return borrowAfterAcquire();
+    }
+
+    private InferenceSession borrowAfterAcquire() {
+        if (closed) {
+            permits.release();
+            throw new ND4JIllegalStateException("Cannot borrow InferenceSession: session pool has been closed");
+        }
+
+        evictIdle();
+        IdleSession is = idle.pollFirst();
+        InferenceSession s;
+        if (is != null) {
+            s = is.getSession();
+        } else {
+            log.debug("Creating new pooled InferenceSession");
+            s = new InferenceSession(sameDiff);
+            if (sharedMemMgr != null)
+                s.setMmgr(sharedMemMgr);
+            else if (sameDiff.isStaticMemoryPlanning())
+                s.setMmgr(new StaticPlanMemoryMgr());
+        }
+        borrowed.put(s, generation.get());
+        return s;
+    }
+
+    /**
+     * Return a session previously obtained via {@link #borrow()} to the pool.
+     *
+     * @param session Session to return
+     */
+    public void release(@NonNull InferenceSession session) {
+        Integer gen = borrowed.remove(session);
+        Preconditions.checkState(gen != null, "Cannot release InferenceSession: session was not borrowed from this pool (or was already released)");
+        try {
+            if (closed || gen != generation.get()) {
+                //Pool was closed or invalidated while the session was in use
+                closeSession(session);
+            } else {
+                idle.addFirst(new IdleSession(session, System.currentTimeMillis()));
+            }
+        } finally {
+            permits.release();
+        }
+        evictIdle();
+    }
+
+    /**
+     * Evict (and close) all sessions that have been idle for longer than the maximum idle time
+     */
+    public void evictIdle() {
+        if (maxIdleMs <= 0)
+            return;
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        //Least recently returned sessions are at the tail
+        IdleSession last;
+        while ((last = idle.peekLast()) != null && last.getLastUsed() < cutoff) {
+            if (idle.removeLastOccurrence(last)) {
+                closeSession(last.getSession());
+            }
+        }
+    }
+
+    /**
+     * Discard all sessions in the pool. Sessions that are currently borrowed are closed when they are returned.
+     * Should be called whenever cached session state is no longer valid - for example, when the graph structure or
+     * variable datatypes change.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        IdleSession is;
+        while ((is = idle.pollFirst()) != null) {
+            closeSession(is.getSession());
+        }
+    }
+
+    /**
+     * @return Number of idle (not currently borrowed) sessions in the pool
+     */
+    public int numIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return Number of sessions that are currently borrowed
+     */
+    public int numBorrowed() {
+        return borrowed.size();
+    }
+
+    /**
+     * Close the pool and all idle sessions. Sessions that are currently borrowed are closed when they are returned.
+     * The shared memory manager (if any) is closed only if no sessions are currently borrowed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        invalidate();
+        if (sharedMemMgr != null && borrowed.isEmpty())
+            sharedMemMgr.close();
+    }
+
+    protected void closeSession(InferenceSession session) {
+        SessionMemMgr mmgr = session.getMmgr();
+        if (mmgr != null && mmgr != sharedMemMgr) {
+            mmgr.close();
+        }
+    }
+
+    @Getter
+    private static class IdleSession {
+        private final InferenceSession session;
+        private final long lastUsed;
+
+        private IdleSession(InferenceSession session, long lastUsed) {
+            this.session = session;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -142,6 +142,12 @@ public class TrainingSession extends InferenceSession {
         return loss;
     }
 
+    @Override
+    protected boolean initParallelExecution(List<Listener> listeners) {
+        //Gradients are applied to parameters as soon as they are calculated, which requires sequential execution
+        return false;
+    }
+
     @Override
     public INDArray[] getOutputs(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                                  Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
@@ -0,0 +1,467 @@
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConcurrentArrayCacheMemoryMgr is a thread-safe alternative to {@link ArrayCacheMemoryMgr}, intended to be shared by
+ * multiple SameDiff sessions (inference and training) that execute concurrently.<br>
+ * Like ArrayCacheMemoryMgr, arrays are reused to reduce the number of memory allocations and deallocations, and are
+ * reused only for the same datatype. The cache is organized as follows:
+ * <ul>
+ *     <li>Arrays are bucketed by datatype and power-of-two size class: an array with a buffer of length L is cached in
+ *     size class floor(log2(L)), and a request for N elements is served from size class ceil(log2(N)). Hence any cached
+ *     array in the selected size class is large enough for the request, and is at most 4x larger than requested.</li>
+ *     <li>Each bucket is a lock-free (Treiber) stack, shared by all threads</li>
+ *     <li>Each thread additionally has a small "magazine" of cached arrays per bucket, that is accessed without any
+ *     synchronization. Released arrays go to the releasing thread's magazine first, and spill over to the shared bucket
+ *     once the magazine is full.</li>
+ *     <li>If caching a released array would exceed the maximum cache size, the magazines of threads that have
+ *     terminated are reclaimed, and arrays are evicted from the shared buckets (largest size classes first), then
+ *     from the releasing thread's own magazine. If that isn't sufficient, the released array is deallocated instead
+ *     of cached. Magazines of other (live) threads are never evicted from, but hold at most {@code magazineSize}
+ *     arrays per bucket.</li>
+ * </ul>
+ * Detached allocations (that may be returned to the user, and hence may never be released) are not served from the
+ * cache.<br>
+ * Cache hits, misses and evictions are counted, and are available via {@link #getHits()}, {@link #getMisses()} and
+ * {@link #getEvictions()}.<br>
+ * Unlike ArrayCacheMemoryMgr, releasing the same array multiple times is not detected.<br>
+ * Note that {@link #close()} should only be called once no other threads are using this memory manager.
+ * <br><br>
+ * By default, the maximum cache size is 0.25 x max memory (as per ArrayCacheMemoryMgr), with a magazine size of 4
+ * arrays per thread per bucket.
+ */
+public class ConcurrentArrayCacheMemoryMgr extends AbstractMemoryMgr {
+
+    private static final int NUM_SIZE_CLASSES = 64;
+
+    @Getter
+    private final double maxMemFrac;
+    @Getter
+    private final int magazineSize;
+    @Getter
+    private final long maxCacheBytes;
+    @Getter
+    private final long totalMemBytes;
+
+    private final Bucket[][] buckets;                                   //Indexed by [datatype ordinal][size class]
+    private final AtomicLong currentCacheBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final Queue<Magazine> allMagazines = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Magazine> magazines = new ThreadLocal<Magazine>() {
+        @Override
+        protected Magazine initialValue() {
+            Magazine m = new Magazine(Thread.currentThread());
+            allMagazines.add(m);
+            return m;
+        }
+    };
+
+    /**
+     * Create a ConcurrentArrayCacheMemoryMgr with default settings as per {@link ConcurrentArrayCacheMemoryMgr}
+     */
+    public ConcurrentArrayCacheMemoryMgr() {
+        this(0.25, 4);
+    }
+
+    /**
+     * @param maxMemFrac   Maximum memory fraction to use as cache
+     * @param magazineSize Maximum number of arrays to hold in each thread-local magazine, for each datatype and size
+     *                     class. May be 0, in which case all cached arrays are held in the shared buckets only.
+     */
+    public ConcurrentArrayCacheMemoryMgr(double maxMemFrac, int magazineSize) {
+        Preconditions.checkArgument(maxMemFrac > 0 && maxMemFrac < 1, "Maximum memory fraction for cache must be between 0.0 and 1.0, got %s", maxMemFrac);
+        Preconditions.checkArgument(magazineSize >= 0, "Magazine size must be >= 0, got %s", magazineSize);
+        this.maxMemFrac = maxMemFrac;
+        this.magazineSize = magazineSize;
+
+        if (isCpu()) {
+            totalMemBytes = Pointer.maxBytes();
+        } else {
+            Properties p = Nd4j.getExecutioner().getEnvironmentInformation();
+            List devList = (List) p.get("cuda.devicesInformation");
+            Map m = (Map) devList.get(0);
+            totalMemBytes = (Long) m.get("cuda.totalMemory");
+        }
+        maxCacheBytes = (long) (maxMemFrac * totalMemBytes);
+
+        DataType[] types = DataType.values();
+        buckets = new Bucket[types.length][NUM_SIZE_CLASSES];
+        for (int i = 0; i < types.length; i++) {
+            for (int j = 0; j < NUM_SIZE_CLASSES; j++) {
+                buckets[i][j] = new Bucket();
+            }
+        }
+    }
+
+    private boolean isCpu() {
+        String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+        return !"CUDA".equalsIgnoreCase(backend);
+    }
+
+    /**
+     * Size class to allocate from for a request of the specified length: ceil(log2(length))
+     */
+    protected static int allocSizeClass(long length) {
+        if (length <= 1)
+            return 0;
+        return 64 - Long.numberOfLeadingZeros(length - 1);
+    }
+
+    /**
+     * Size class to cache an array with the specified buffer length in: floor(log2(length))
+     */
+    protected static int releaseSizeClass(long length) {
+        if (length <= 1)
+            return 0;
+        return 63 - Long.numberOfLeadingZeros(length);
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        if (detached) {
+            //May be returned to the user and never released: don't hand out a (possibly larger) cached buffer
+            return Nd4j.createUninitializedDetached(dataType, shape);
+        }
+
+        if (dataType != DataType.UTF8) {
+            long length = shape.length == 0 ? 1 : ArrayUtil.prod(shape);
+            int sizeClass = allocSizeClass(length);
+            if (length > 0 && sizeClass < NUM_SIZE_CLASSES) {
+                int dt = dataType.ordinal();
+                INDArray arr = magazines.get().pop(dt, sizeClass);
+                if (arr == null)
+                    arr = buckets[dt][sizeClass].pop();
+
+                if (arr != null) {
+                    currentCacheBytes.addAndGet(-bytes(arr));
+                    hits.incrementAndGet();
+                    //Create a new array with the cached buffer - see ArrayCacheMemoryMgr for the reasons
+                    return Nd4j.create(arr.data(), shape);
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+        return Nd4j.createUninitializedDetached(dataType, shape);
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        return allocate(detached, descriptor.dataType(), descriptor.getShape());
+    }
+
+    @Override
+    public void release(@NonNull INDArray array) {
+        if (array.dataType() == DataType.UTF8) {
+            //Don't cache string arrays due to variable length buffers
+            if (array.closeable())
+                array.close();
+            return;
+        }
+
+        long thisBytes = bytes(array);
+        if (thisBytes > maxCacheBytes) {
+            //Can't store even if we clear everything - too large
+            deallocate(array);
+            return;
+        }
+
+        //Reserve space in the cache, evicting from the shared buckets if required
+        if (currentCacheBytes.addAndGet(thisBytes) > maxCacheBytes) {
+            evict(currentCacheBytes.get() - maxCacheBytes);
+            if (currentCacheBytes.get() > maxCacheBytes) {
+                currentCacheBytes.addAndGet(-thisBytes);
+                deallocate(array);
+                return;
+            }
+        }
+
+        int dt = array.dataType().ordinal();
+        int sizeClass = releaseSizeClass(array.data().length());
+        Magazine m = magazines.get();
+        if (!m.push(dt, sizeClass, array)) {
+            //Magazine is full: move half of the magazine's arrays to the shared bucket, then retry
+            Bucket b = buckets[dt][sizeClass];
+            m.spill(dt, sizeClass, b);
+            if (!m.push(dt, sizeClass, array))
+                b.push(array);
+        }
+    }
+
+    /**
+     * Evict arrays until at least the specified number of bytes has been freed, or no more arrays can be evicted.
+     * The magazines of terminated threads are first moved to the shared buckets; arrays are then evicted from the
+     * shared buckets (largest size classes first), and finally from the calling thread's own magazine
+     */
+    protected void evict(long bytesToFree) {
+        reclaimDeadMagazines();
+
+        long freed = 0;
+        for (int sc = NUM_SIZE_CLASSES - 1; sc >= 0 && freed < bytesToFree; sc--) {
+            for (int dt = 0; dt < buckets.length && freed < bytesToFree; dt++) {
+                Bucket b = buckets[dt][sc];
+                INDArray arr;
+                while (freed < bytesToFree && (arr = b.pop()) != null) {
+                    freed += evict(arr);
+                }
+            }
+        }
+
+        if (freed < bytesToFree) {
+            Magazine m = magazines.get();
+            for (int sc = NUM_SIZE_CLASSES - 1; sc >= 0 && freed < bytesToFree; sc--) {
+                for (int dt = 0; dt < buckets.length && freed < bytesToFree; dt++) {
+                    INDArray arr;
+                    while (freed < bytesToFree && (arr = m.pop(dt, sc)) != null) {
+                        freed += evict(arr);
+                    }
+                }
+            }
+        }
+    }
+
+    private long evict(INDArray arr) {
+        long n = bytes(arr);
+        currentCacheBytes.addAndGet(-n);
+        evictions.incrementAndGet();
+        deallocate(arr);
+        return n;
+    }
+
+    /**
+     * Move all arrays held in the magazines of terminated threads to the shared buckets (where they can be reused by
+     * other threads, or evicted), and stop tracking those magazines
+     */
+    protected void reclaimDeadMagazines() {
+        for (Magazine m : allMagazines) {
+            //Only one thread may reclaim any given magazine: remove(Object) succeeds for exactly one caller
+            if (m.isOwnerAlive() || !allMagazines.remove(m))
+                continue;
+            for (int dt = 0; dt < buckets.length; dt++) {
+                for (int sc = 0; sc < NUM_SIZE_CLASSES; sc++) {
+                    INDArray arr;
+                    while ((arr = m.pop(dt, sc)) != null) {
+                        buckets[dt][sc].push(arr);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of thread-local magazines currently tracked (i.e., not yet reclaimed after their thread terminated)
+     */
+    protected int numMagazines() {
+        return allMagazines.size();
+    }
+
+    private static long bytes(INDArray arr) {
+        return arr.data().length() * arr.dataType().width();
+    }
+
+    private static void deallocate(INDArray arr) {
+        if (arr.closeable())
+            arr.close();
+    }
+
+    /**
+     * @return Number of allocations that were served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of allocations that could not be served from the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of cached arrays that were deallocated to keep the cache below its maximum size
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Current size of all cached arrays (thread-local magazines and shared buckets), in bytes
+     */
+    public long getCurrentCacheBytes() {
+        return currentCacheBytes.get();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counters to 0
+     */
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public void close() {
+        for (Magazine m : allMagazines) {
+            m.close();
+        }
+        for (Bucket[] arr : buckets) {
+            for (Bucket b : arr) {
+                INDArray a;
+                while ((a = b.pop()) != null) {
+                    deallocate(a);
+                }
+            }
+        }
+        currentCacheBytes.set(0);
+    }
+
+
+    /**
+     * Lock-free stack of cached arrays, for a single datatype and size class
+     */
+    protected static class Bucket {
+        private final AtomicReference<Node> head = new AtomicReference<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        protected void push(INDArray arr) {
+            Node n = new Node(arr);
+            Node h;
+            do {
+                h = head.get();
+                n.next = h;
+            } while (!head.compareAndSet(h, n));
+            size.incrementAndGet();
+        }
+
+        protected INDArray pop() {
+            Node h;
+            do {
+                h = head.get();
+                if (h == null)
+                    return null;
+            } while (!head.compareAndSet(h, h.next));
+            size.decrementAndGet();
+            return h.array;
+        }
+
+        protected int size() {
+            return size.get();
+        }
+    }
+
+    private static class Node {
+        private final INDArray array;
+        private Node next;
+
+        private Node(INDArray array) {
+            this.array = array;
+        }
+    }
+
+    /**
+     * Thread-local cache of arrays. Only ever accessed by the owning thread, except in {@link #close()} and once the
+     * owning thread has terminated
+     */
+    protected class Magazine {
+        private final INDArray[][][] arrays = new INDArray[buckets.length][][];     //[datatype][size class][position]
+        private final int[][] counts = new int[buckets.length][];
+        private final WeakReference<Thread> owner;
+
+        protected Magazine(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        protected boolean isOwnerAlive() {
+            Thread t = owner.get();
+            return t != null && t.isAlive();
+        }
+
+        protected boolean push(int dt, int sizeClass, INDArray arr) {
+            if (magazineSize == 0)
+                return false;
+            if (arrays[dt] == null) {
+                arrays[dt] = new INDArray[NUM_SIZE_CLASSES][];
+                counts[dt] = new int[NUM_SIZE_CLASSES];
+            }
+            if (arrays[dt][sizeClass] == null) {
+                arrays[dt][sizeClass] = new INDArray[magazineSize];
+            }
+            int c = counts[dt][sizeClass];
+            if (c == magazineSize)
+                return false;
+            arrays[dt][sizeClass][c] = arr;
+            counts[dt][sizeClass] = c + 1;
+            return true;
+        }
+
+        protected INDArray pop(int dt, int sizeClass) {
+            if (arrays[dt] == null || counts[dt][sizeClass] == 0)
+                return null;
+            int c = counts[dt][sizeClass] - 1;
+            INDArray out = arrays[dt][sizeClass][c];
+            arrays[dt][sizeClass][c] = null;
+            counts[dt][sizeClass] = c;
+            return out;
+        }
+
+        /**
+         * Move the older half (at least one) of the arrays for the specified datatype and size class to the shared bucket
+         */
+        protected void spill(int dt, int sizeClass, Bucket b) {
+            if (arrays[dt] == null)
+                return;
+            int c = counts[dt][sizeClass];
+            int toMove = Math.max(1, c / 2);
+            INDArray[] a = arrays[dt][sizeClass];
+            for (int i = 0; i < toMove; i++) {
+                b.push(a[i]);
+            }
+            System.arraycopy(a, toMove, a, 0, c - toMove);
+            for (int i = c - toMove; i < c; i++) {
+                a[i] = null;
+            }
+            counts[dt][sizeClass] = c - toMove;
+        }
+
+        protected void close() {
+            for (int dt = 0; dt < arrays.length; dt++) {
+                if (arrays[dt] == null)
+                    continue;
+                for (int sc = 0; sc < NUM_SIZE_CLASSES; sc++) {
+                    INDArray[] a = arrays[dt][sc];
+                    if (a == null)
+                        continue;
+                    for (int i = 0; i < counts[dt][sc]; i++) {
+                        deallocate(a[i]);
+                        a[i] = null;
+                    }
+                    counts[dt][sc] = 0;
+                }
+            }
+        }
+    }
+}
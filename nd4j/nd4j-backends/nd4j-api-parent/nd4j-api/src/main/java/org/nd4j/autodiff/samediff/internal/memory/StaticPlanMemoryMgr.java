@@ -0,0 +1,340 @@
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * StaticPlanMemoryMgr is a {@link org.nd4j.autodiff.samediff.internal.SessionMemMgr} that assigns each intermediate
+ * array a fixed offset in a pre-allocated arena, instead of allocating and releasing arrays as execution proceeds.
+ * It is intended for inference with graphs whose placeholder shapes don't change between executions.<br>
+ * <br>
+ * How it works:
+ * <ul>
+ *     <li>The sequence of allocations and releases during one execution is recorded. This sequence already reflects the
+ *     liveness of every array, as determined by the session's array use tracking - including zero-copy ops (identity,
+ *     enter, exit, etc) and control flow</li>
+ *     <li>At the end of the execution, a plan is built from the recorded sequence: each array that is released during
+ *     the execution is assigned an offset such that no two arrays that are live at the same time overlap ("greedy by size"
+ *     - the largest arrays are placed first, each at the lowest offset that doesn't overlap any already placed array
+ *     with an overlapping lifetime). There is one arena per datatype.</li>
+ *     <li>On subsequent executions, allocations are served as views of the arena at the planned offsets, and releases
+ *     are no-ops. Allocation and release requests are checked against the plan as execution proceeds: as soon as a
+ *     request deviates from the plan (for example, different placeholder shapes), arrays are allocated dynamically for
+ *     the rest of that execution, and a new plan is built at the end of it.</li>
+ * </ul>
+ * Arrays that may be returned to the user (detached allocations), arrays that are not released during the execution
+ * and String arrays are never placed in the arena.<br>
+ * The peak memory use of the current plan is available via {@link #getArenaBytes()}.<br>
+ * <br>
+ * Note that {@link #beginExecution()} and {@link #endExecution()} must be called before and after each execution - this
+ * is done by InferenceSession. Instances are not thread safe, and should not be shared between sessions.
+ */
+@Slf4j
+public class StaticPlanMemoryMgr extends AbstractMemoryMgr {
+    public static final int DEFAULT_ALIGNMENT_BYTES = 64;
+
+    @Getter
+    private final int alignmentBytes;
+
+    //Current plan: the events recorded during the execution the plan was built from, and the arena offset (in elements)
+    // for each allocation, or -1 for allocations that are not in the arena
+    private List<Event> plan;
+    private long[] planOffsets;
+    private final Map<DataType, INDArray> arenas = new HashMap<>();
+    @Getter
+    private long arenaBytes;
+    @Getter
+    private int numPlans;
+    @Getter
+    private long numPlannedExecutions;
+
+    //State for the current execution
+    private boolean executing;
+    private final List<Event> trace = new ArrayList<>();
+    private int nextEvent;
+    private int numAllocs;
+    private boolean deviated;
+    private final Map<INDArray, Integer> allocIndices = new IdentityHashMap<>();
+    private final Map<INDArray, Boolean> liveArenaArrays = new IdentityHashMap<>();
+
+    public StaticPlanMemoryMgr() {
+        this(DEFAULT_ALIGNMENT_BYTES);
+    }
+
+    /**
+     * @param alignmentBytes Alignment (in bytes) of the arena offsets of arrays
+     */
+    public StaticPlanMemoryMgr(int alignmentBytes) {
+        Preconditions.checkArgument(alignmentBytes > 0, "Alignment must be positive, got %s", alignmentBytes);
+        this.alignmentBytes = alignmentBytes;
+    }
+
+    /**
+     * Mark the start of an execution
+     */
+    public void beginExecution() {
+        if (executing)
+            log.debug("Previous execution did not complete - discarding recorded allocations");
+        executing = true;
+        trace.clear();
+        nextEvent = 0;
+        numAllocs = 0;
+        deviated = false;
+        allocIndices.clear();
+        liveArenaArrays.clear();
+    }
+
+    /**
+     * Mark the end of an execution. If the execution deviated from the current plan (or there is no plan yet), a new plan
+     * is built from the allocations and releases recorded during this execution
+     */
+    public void endExecution() {
+        Preconditions.checkState(executing, "endExecution called without beginExecution");
+        executing = false;
+        boolean followedPlan = plan != null && !deviated && nextEvent == plan.size();
+        if (!liveArenaArrays.isEmpty()) {
+            //Some arena arrays were not released (i.e., execution deviated from the plan): these may still be referenced,
+            // so the current arenas can't be reused
+            log.debug("{} arena arrays were not released during execution - discarding arenas", liveArenaArrays.size());
+            arenas.clear();
+            followedPlan = false;
+        }
+
+        if (followedPlan) {
+            numPlannedExecutions++;
+        } else {
+            buildPlan();
+        }
+        allocIndices.clear();
+        liveArenaArrays.clear();
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        long length = ArrayUtil.prodLong(shape);
+        if (!executing || detached || dataType == DataType.UTF8 || length == 0) {
+            return Nd4j.createUninitializedDetached(dataType, shape);
+        }
+
+        int allocIdx = numAllocs++;
+        Event e = Event.alloc(allocIdx, dataType, shape, length);
+        trace.add(e);
+
+        INDArray out = null;
+        if (plan != null && !deviated) {
+            if (nextEvent < plan.size() && plan.get(nextEvent).matches(e)) {
+                nextEvent++;
+                long offset = planOffsets[allocIdx];
+                INDArray arena = arenas.get(dataType);
+                if (offset >= 0 && arena != null) {
+                    out = Nd4j.create(arena.data(), shape, Nd4j.getStrides(shape, 'c'), offset, 'c', dataType);
+                    liveArenaArrays.put(out, true);
+                }
+            } else {
+                log.debug("Allocation {} deviates from memory plan - allocating dynamically for remainder of execution", allocIdx);
+                deviated = true;
+            }
+        }
+
+        if (out == null)
+            out = Nd4j.createUninitializedDetached(dataType, shape);
+        allocIndices.put(out, allocIdx);
+        return out;
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        return allocate(detached, descriptor.dataType(), descriptor.getShape());
+    }
+
+    @Override
+    public void release(@NonNull INDArray array) {
+        Integer allocIdx = allocIndices.remove(array);
+        if (allocIdx == null) {
+            //Not allocated (or not tracked) during this execution
+            if (array.closeable())
+                array.close();
+            return;
+        }
+
+        Event e = Event.release(allocIdx);
+        trace.add(e);
+        if (plan != null && !deviated) {
+            if (nextEvent < plan.size() && plan.get(nextEvent).matches(e)) {
+                nextEvent++;
+            } else {
+                log.debug("Release of allocation {} deviates from memory plan - allocating dynamically for remainder of execution", allocIdx);
+                deviated = true;
+            }
+        }
+
+        if (liveArenaArrays.remove(array) == null && array.closeable()) {
+            //Dynamically allocated
+            array.close();
+        }
+    }
+
+    /**
+     * Build the plan (and allocate the arenas) from the events recorded during the last execution
+     */
+    protected void buildPlan() {
+        //Lifetime of each allocation: [allocation event, release event]. -1 release: not released during execution
+        Event[] allocs = new Event[numAllocs];
+        int[] start = new int[numAllocs];
+        int[] end = new int[numAllocs];
+        Arrays.fill(end, -1);
+        for (int i = 0; i < trace.size(); i++) {
+            Event e = trace.get(i);
+            if (e.alloc) {
+                allocs[e.allocIdx] = e;
+                start[e.allocIdx] = i;
+            } else {
+                end[e.allocIdx] = i;
+            }
+        }
+
+        long[] offsets = new long[numAllocs];
+        Arrays.fill(offsets, -1);
+        Map<DataType, List<Integer>> byType = new HashMap<>();
+        for (int i = 0; i < numAllocs; i++) {
+            if (end[i] < 0)
+                continue;       //Not released: may be returned to the user, or used after execution
+            List<Integer> l = byType.get(allocs[i].dataType);
+            if (l == null) {
+                l = new ArrayList<>();
+                byType.put(allocs[i].dataType, l);
+            }
+            l.add(i);
+        }
+
+        long totalBytes = 0;
+        Map<DataType, Long> arenaLengths = new HashMap<>();
+        for (Map.Entry<DataType, List<Integer>> entry : byType.entrySet()) {
+            DataType dt = entry.getKey();
+            long align = Math.max(1, alignmentBytes / dt.width());
+            long arenaLength = placeGreedyBySize(entry.getValue(), allocs, start, end, offsets, align);
+            arenaLengths.put(dt, arenaLength);
+            totalBytes += arenaLength * dt.width();
+        }
+
+        //Allocate arenas, reusing existing ones where possible
+        Map<DataType, INDArray> newArenas = new HashMap<>();
+        for (Map.Entry<DataType, Long> entry : arenaLengths.entrySet()) {
+            INDArray existing = arenas.get(entry.getKey());
+            if (existing != null && existing.length() >= entry.getValue()) {
+                newArenas.put(entry.getKey(), existing);
+            } else {
+                newArenas.put(entry.getKey(), Nd4j.createUninitializedDetached(entry.getKey(), entry.getValue()));
+            }
+        }
+        arenas.clear();
+        arenas.putAll(newArenas);
+
+        plan = new ArrayList<>(trace);
+        planOffsets = offsets;
+        arenaBytes = totalBytes;
+        numPlans++;
+        log.debug("Built memory plan: {} allocations, arena size {} bytes", numAllocs, totalBytes);
+    }
+
+    private static long placeGreedyBySize(List<Integer> indices, final Event[] allocs, int[] start, int[] end, long[] offsets, long align) {
+        List<Integer> sorted = new ArrayList<>(indices);
+        Collections.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = Long.compare(allocs[b].length, allocs[a].length);
+                return c != 0 ? c : Integer.compare(a, b);
+            }
+        });
+
+        List<Integer> placed = new ArrayList<>();
+        long arenaLength = 0;
+        for (Integer i : sorted) {
+            //Collect already placed arrays that are live at the same time as this one, ordered by offset
+            List<long[]> conflicts = new ArrayList<>();
+            for (Integer j : placed) {
+                if (start[i] < end[j] && start[j] < end[i]) {
+                    conflicts.add(new long[]{offsets[j], offsets[j] + allocs[j].length});
+                }
+            }
+            Collections.sort(conflicts, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return Long.compare(a[0], b[0]);
+                }
+            });
+
+            //Find the lowest (aligned) offset where this array fits
+            long offset = 0;
+            for (long[] c : conflicts) {
+                if (offset + allocs[i].length <= c[0])
+                    break;
+                offset = Math.max(offset, roundUp(c[1], align));
+            }
+            offsets[i] = offset;
+            arenaLength = Math.max(arenaLength, offset + allocs[i].length);
+            placed.add(i);
+        }
+        return arenaLength;
+    }
+
+    private static long roundUp(long value, long multiple) {
+        return ((value + multiple - 1) / multiple) * multiple;
+    }
+
+    /**
+     * Discard the current plan, so that a new plan is built from the next execution
+     */
+    public void invalidatePlan() {
+        plan = null;
+        planOffsets = null;
+    }
+
+    @Override
+    public void close() {
+        invalidatePlan();
+        for (INDArray arr : arenas.values()) {
+            if (arr.closeable())
+                arr.close();
+        }
+        arenas.clear();
+        arenaBytes = 0;
+    }
+
+    private static class Event {
+        private final boolean alloc;
+        private final int allocIdx;
+        private final DataType dataType;
+        private final long[] shape;
+        private final long length;
+
+        private Event(boolean alloc, int allocIdx, DataType dataType, long[] shape, long length) {
+            this.alloc = alloc;
+            this.allocIdx = allocIdx;
+            this.dataType = dataType;
+            this.shape = shape;
+            this.length = length;
+        }
+
+        private static Event alloc(int allocIdx, DataType dataType, long[] shape, long length) {
+            return new Event(true, allocIdx, dataType, shape.clone(), length);
+        }
+
+        private static Event release(int allocIdx) {
+            return new Event(false, allocIdx, null, null, 0);
+        }
+
+        private boolean matches(Event e) {
+            return alloc == e.alloc && allocIdx == e.allocIdx && dataType == e.dataType && Arrays.equals(shape, e.shape);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Sigmoid;
+import org.nd4j.linalg.factory.Broadcast;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * FusionOptimizer is a graph optimization pass that replaces chains of operations with a single equivalent (fused)
+ * operation, where one is available. This reduces the number of operations executed, and the number of intermediate
+ * arrays that need to be allocated, written and read during inference.<br>
+ * The following fusions are applied:
+ * <ul>
+ *     <li>mmul(x, W) + b (via biasAdd, or add with a rank 1 constant/variable bias) to xw_plus_b</li>
+ *     <li>relu(mmul(x, W) + b) to relu_layer</li>
+ *     <li>batchNorm(conv2d(x, W, b)) with constant weights and batch norm parameters (i.e., inference) to a single conv2d
+ *     op: the batch norm is folded into new constant weights and bias for the convolution</li>
+ *     <li>x * sigmoid(x) to swish</li>
+ *     <li>Chains of scalar multiplication and scalar addition ops (for example, (x * a) * b) to a single scalar op</li>
+ * </ul>
+ * Fusion is only applied when the intermediate results are not used anywhere else in the graph, and are not graph
+ * outputs or loss variables. The output variable of each fused chain keeps its original name; intermediate variables
+ * within a fused chain are removed from the graph, so can no longer be requested as outputs. Constants that are no longer
+ * used by any op after fusion (such as the original convolution weights and batch norm parameters, after batch norm
+ * folding) are also removed, unless they are preserved.<br>
+ * Fusion is typically applied to imported graphs once, before they are first executed - see
+ * {@link SameDiff#setOpFusion(boolean)}.
+ */
+@Slf4j
+public class FusionOptimizer {
+
+    private FusionOptimizer() {
+    }
+
+    /**
+     * Apply operator fusion to a copy of the specified SameDiff instance. The original instance is not modified.
+     *
+     * @param sd SameDiff instance to optimize
+     * @return The optimized copy
+     */
+    public static SameDiff optimize(@NonNull SameDiff sd) {
+        SameDiff copy = sd.dup();
+        optimizeInPlace(copy, null);
+        return copy;
+    }
+
+    /**
+     * Apply operator fusion to the specified SameDiff instance, modifying it in place.
+     *
+     * @param sd       SameDiff instance to optimize
+     * @param preserve Names of variables that must not be removed by fusion (i.e., because they are requested as outputs),
+     *                 in addition to the graph outputs and loss variables. May be null
+     * @return The number of fused operations
+     */
+    public static int optimizeInPlace(@NonNull SameDiff sd, Collection<String> preserve) {
+        Set<String> keep = new HashSet<>();
+        if (preserve != null)
+            keep.addAll(preserve);
+        if (sd.outputs() != null)
+            keep.addAll(sd.outputs());
+        keep.addAll(sd.getLossVariables());
+
+        int count = 0;
+        for (Fusion f : fusions(keep)) {
+            int n = apply(sd, f, keep);
+            if (n > 0)
+                log.debug("Applied fusion \"{}\" {} times", f.name, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Apply a single fusion until no further matches are found. Matches within one round may overlap (for example,
+     * chains of 3 or more scalar ops), so only non-overlapping matches are replaced in each round
+     */
+    private static int apply(SameDiff sd, Fusion f, Set<String> keep) {
+        int count = 0;
+        while (true) {
+            List<SubGraph> matches = GraphTransformUtil.getSubgraphsMatching(sd, f.predicate);
+            if (matches.isEmpty())
+                return count;
+
+            Set<DifferentialFunction> claimed = Collections.newSetFromMap(new IdentityHashMap<DifferentialFunction, Boolean>());
+            List<SubGraph> toReplace = new ArrayList<>();
+            for (SubGraph sg : matches) {
+                List<DifferentialFunction> fns = sg.allFunctionsInSubgraph();
+                boolean overlaps = false;
+                for (DifferentialFunction df : fns) {
+                    if (claimed.contains(df)) {
+                        overlaps = true;
+                        break;
+                    }
+                }
+                if (!overlaps) {
+                    claimed.addAll(fns);
+                    toReplace.add(sg);
+                }
+            }
+
+            //Constants consumed by the replaced subgraphs: removed after replacement if no longer used
+            Set<String> consumed = new LinkedHashSet<>();
+            for (SubGraph sg : toReplace) {
+                for (SDVariable v : sg.inputs()) {
+                    if (v.getVariableType() == VariableType.CONSTANT)
+                        consumed.add(v.name());
+                }
+            }
+
+            //Record the names of the replaced outputs, so the new outputs can be renamed to match
+            final List<String> oldNames = new ArrayList<>();
+            final List<SDVariable> newVars = new ArrayList<>();
+            final SubGraphProcessor processor = f.processor;
+            GraphTransformUtil.replaceSubgraphs(sd, toReplace, new SubGraphProcessor() {
+                @Override
+                public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                    List<SDVariable> out = processor.processSubgraph(sd, subGraph);
+                    oldNames.add(subGraph.getRootNode().outputVariable().name());
+                    newVars.add(out.get(0));
+                    return out;
+                }
+            });
+
+            for (int i = 0; i < oldNames.size(); i++) {
+                sd.renameVariable(newVars.get(i).name(), oldNames.get(i));
+            }
+            for (String name : consumed) {
+                Variable v = sd.getVariables().get(name);
+                if (v != null && !keep.contains(name) && isEmpty(v.getInputsForOp()) && isEmpty(v.getControlDepsForOp())
+                        && isEmpty(v.getControlDepsForVar())) {
+                    sd.removeVariable(name);
+                }
+            }
+            count += toReplace.size();
+        }
+    }
+
+    private static List<Fusion> fusions(final Set<String> keep) {
+        List<Fusion> l = new ArrayList<>();
+
+        //relu(mmul(x,W) + b) -> relu_layer. Must be applied before xw_plus_b fusion
+        for (OpPredicate bias : Arrays.asList(biasAdd(), addRank1Bias())) {
+            l.add(new Fusion("relu_layer",
+                    SubGraphPredicate.withRoot(reluNoCutoff())
+                            .withInputSubgraph(0, SubGraphPredicate.withRoot(intermediate(bias, keep))
+                                    .withInputSubgraph(0, intermediate(mmulNoTranspose(), keep))),
+                    new SubGraphProcessor() {
+                        @Override
+                        public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                            DifferentialFunction biasFn = subGraph.getChildNodes().get(0);
+                            DifferentialFunction mmul = subGraph.getChildNodes().get(1);
+                            return Collections.singletonList(sd.nn().reluLayer(mmul.arg(0), mmul.arg(1), biasFn.arg(1)));
+                        }
+                    }));
+        }
+
+        //mmul(x,W) + b -> xw_plus_b
+        for (OpPredicate bias : Arrays.asList(biasAdd(), addRank1Bias())) {
+            l.add(new Fusion("xw_plus_b",
+                    SubGraphPredicate.withRoot(bias)
+                            .withInputSubgraph(0, intermediate(mmulNoTranspose(), keep)),
+                    new SubGraphProcessor() {
+                        @Override
+                        public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                            DifferentialFunction mmul = subGraph.getChildNodes().get(0);
+                            return Collections.singletonList(sd.nn().linear(mmul.arg(0), mmul.arg(1), subGraph.getRootNode().arg(1)));
+                        }
+                    }));
+        }
+
+        //batchnorm(conv2d(x,W,b)) -> conv2d(x,W',b')
+        l.add(new Fusion("conv2d_batchnorm",
+                SubGraphPredicate.withRoot(inferenceBatchNorm())
+                        .withInputSubgraph(0, intermediate(constantConv2d(), keep)),
+                new SubGraphProcessor() {
+                    @Override
+                    public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                        return Collections.singletonList(foldBatchNorm(sd, subGraph.getChildNodes().get(0), subGraph.getRootNode()));
+                    }
+                }));
+
+        //x * sigmoid(x) -> swish
+        for (final int sigmoidIdx : new int[]{0, 1}) {
+            l.add(new Fusion("swish",
+                    SubGraphPredicate.withRoot(swishMul(sigmoidIdx))
+                            .withInputSubgraph(sigmoidIdx, intermediate(OpPredicate.classEquals(Sigmoid.class), keep)),
+                    new SubGraphProcessor() {
+                        @Override
+                        public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                            return Collections.singletonList(sd.nn().swish(subGraph.getRootNode().arg(1 - sigmoidIdx)));
+                        }
+                    }));
+        }
+
+        //(x * a) * b -> x * (a*b), (x + a) + b -> x + (a+b)
+        //Only applied to floating point inputs, with the fused scalar computed in the input data type
+        for (final boolean mul : new boolean[]{true, false}) {
+            Class<?> c = mul ? ScalarMultiplication.class : ScalarAdd.class;
+            l.add(new Fusion(mul ? "scalar_mul_chain" : "scalar_add_chain",
+                    SubGraphPredicate.withRoot(floatingPointScalarOp(c))
+                            .withInputSubgraph(0, intermediate(floatingPointScalarOp(c), keep)),
+                    new SubGraphProcessor() {
+                        @Override
+                        public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                            DifferentialFunction inner = subGraph.getChildNodes().get(0);
+                            SDVariable in = inner.arg(0);
+                            //Compute the fused scalar in the input data type, as the chain does
+                            DataType dt = in.dataType();
+                            INDArray a = ((BaseScalarOp) inner).scalar().castTo(dt);
+                            INDArray b = ((BaseScalarOp) subGraph.getRootNode()).scalar().castTo(dt);
+                            double fused = (mul ? a.mul(b) : a.add(b)).getDouble(0);
+                            return Collections.singletonList(mul ? in.mul(fused) : in.add(fused));
+                        }
+                    }));
+        }
+
+        return l;
+    }
+
+    /**
+     * Matches ops that match the specified predicate, have a single output, and whose output is used only by one op
+     * (and is not a graph output, loss variable or otherwise preserved variable) - i.e., whose output can be removed
+     * when it is fused into the op that uses it
+     */
+    private static OpPredicate intermediate(final OpPredicate p, final Set<String> keep) {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (!p.matches(sameDiff, function))
+                    return false;
+                SDVariable[] outputs = function.outputVariables();
+                if (outputs == null || outputs.length != 1 || keep.contains(outputs[0].name()))
+                    return false;
+                Variable v = sameDiff.getVariables().get(outputs[0].name());
+                return v.getInputsForOp() != null && v.getInputsForOp().size() == 1 && isEmpty(v.getControlDeps())
+                        && isEmpty(v.getControlDepsForOp()) && isEmpty(v.getControlDepsForVar());
+            }
+        };
+    }
+
+    private static OpPredicate mmulNoTranspose() {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != Mmul.class)
+                    return false;
+                Mmul m = (Mmul) function;
+                for (long l : m.iArgs()) {
+                    if (l != 0)
+                        return false;   //Transpose A, B or result
+                }
+                double[] t = m.tArgs();
+                if (t.length >= 2 && (t[0] != 1.0 || t[1] != 0.0))
+                    return false;       //alpha != 1 or beta != 0
+                //xw_plus_b requires rank 2 input and weights
+                long[] wShape = shapeOf(sameDiff, m.arg(1));
+                long[] inShape = shapeOf(sameDiff, m.arg(0));
+                return wShape != null && wShape.length == 2 && (inShape == null || inShape.length == 2);
+            }
+        };
+    }
+
+    private static OpPredicate biasAdd() {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                return function.getClass() == BiasAdd.class && function.args().length == 2;
+            }
+        };
+    }
+
+    private static OpPredicate addRank1Bias() {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != AddOp.class || function.args().length != 2)
+                    return false;
+                long[] bShape = shapeOf(sameDiff, function.arg(1));
+                return bShape != null && bShape.length == 1;
+            }
+        };
+    }
+
+    private static OpPredicate floatingPointScalarOp(final Class<?> c) {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                return function.getClass() == c && function.args().length == 1 && function.arg(0).dataType() != null
+                        && function.arg(0).dataType().isFPType();
+            }
+        };
+    }
+
+    private static OpPredicate reluNoCutoff() {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != RectifiedLinear.class)
+                    return false;
+                INDArray cutoff = ((RectifiedLinear) function).scalar();
+                return cutoff == null || cutoff.getDouble(0) == 0.0;
+            }
+        };
+    }
+
+    private static OpPredicate constantConv2d() {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != Conv2D.class)
+                    return false;
+                SDVariable[] args = function.args();
+                if (args.length < 2 || args.length > 3 || ((Conv2D) function).iArgs().length < 10)
+                    return false;
+                for (int i = 1; i < args.length; i++) {
+                    if (!isConstant(sameDiff, args[i]))
+                        return false;
+                }
+                return true;
+            }
+        };
+    }
+
+    private static OpPredicate inferenceBatchNorm() {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != BatchNorm.class)
+                    return false;
+                BatchNorm bn = (BatchNorm) function;
+                long[] iArgs = bn.iArgs();
+                SDVariable[] args = bn.args();
+                if (iArgs.length != 3 || bn.tArgs().length != 1 || args.length != 3 + iArgs[0] + iArgs[1])
+                    return false;
+                for (int i = 1; i < args.length; i++) {
+                    if (!isConstant(sameDiff, args[i]))
+                        return false;
+                }
+                //Batch norm must be over the channels dimension of the convolution output
+                DifferentialFunction conv = sameDiff.getVariableOutputOp(args[0].name());
+                if (!(conv instanceof Conv2D))
+                    return false;
+                boolean nhwc = ((Conv2D) conv).iArgs()[9] != 0;
+                long axis = iArgs[2];
+                return nhwc ? (axis == 3 || axis == -1) : axis == 1;
+            }
+        };
+    }
+
+    private static OpPredicate swishMul(final int sigmoidIdx) {
+        return new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                if (function.getClass() != MulOp.class || function.args().length != 2)
+                    return false;
+                DifferentialFunction sigmoid = sameDiff.getVariableOutputOp(function.arg(sigmoidIdx).name());
+                return sigmoid instanceof Sigmoid && sigmoid.arg(0).name().equals(function.arg(1 - sigmoidIdx).name());
+            }
+        };
+    }
+
+    /**
+     * Fold the batch norm into the convolution weights and bias:<br>
+     * scale = gamma / sqrt(variance + epsilon)<br>
+     * W' = W * scale (along the output channels dimension)<br>
+     * b' = (b - mean) * scale + beta
+     */
+    private static SDVariable foldBatchNorm(SameDiff sd, DifferentialFunction conv, DifferentialFunction bn) {
+        long[] convArgs = ((Conv2D) conv).iArgs();
+        WeightsFormat wf = convArgs.length > 10 ? WeightsFormat.values()[(int) convArgs[10]] : WeightsFormat.YXIO;
+        Conv2DConfig config = Conv2DConfig.builder()
+                .kH(convArgs[0]).kW(convArgs[1])
+                .sH(convArgs[2]).sW(convArgs[3])
+                .pH(convArgs[4]).pW(convArgs[5])
+                .dH(convArgs[6]).dW(convArgs[7])
+                .isSameMode(convArgs[8] != 0)
+                .dataFormat(convArgs[9] == 0 ? Conv2DConfig.NCHW : Conv2DConfig.NHWC)
+                .weightsFormat(wf)
+                .build();
+
+        INDArray w = conv.arg(1).getArr();
+        DataType dt = w.dataType();
+        int outChannelsDim = wf == WeightsFormat.YXIO ? 3 : 0;
+        long nOut = w.size(outChannelsDim);
+
+        long[] bnArgs = ((BatchNorm) bn).iArgs();
+        double eps = ((BatchNorm) bn).tArgs()[0];
+        SDVariable[] args = bn.args();
+        INDArray mean = args[1].getArr().castTo(dt).reshape(nOut);
+        INDArray var = args[2].getArr().castTo(dt).reshape(nOut);
+        int idx = 3;
+        INDArray gamma = bnArgs[0] != 0 ? args[idx++].getArr().castTo(dt).reshape(nOut) : null;
+        INDArray beta = bnArgs[1] != 0 ? args[idx].getArr().castTo(dt).reshape(nOut) : null;
+
+        INDArray scale = Transforms.sqrt(var.add(eps), false).rdivi(1.0);
+        if (gamma != null)
+            scale.muli(gamma);
+
+        INDArray newW = Broadcast.mul(w, scale, Nd4j.createUninitialized(dt, w.shape()), outChannelsDim);
+        SDVariable[] convIn = conv.args();
+        INDArray b = convIn.length == 3 ? convIn[2].getArr().castTo(dt).reshape(nOut) : Nd4j.zeros(dt, nOut);
+        INDArray newB = b.sub(mean).muli(scale);
+        if (beta != null)
+            newB.addi(beta);
+
+        String name = bn.getOwnName();
+        SDVariable wVar = sd.constant(sd.generateNewVarName(name + "/fused_weights", 0), newW);
+        SDVariable bVar = sd.constant(sd.generateNewVarName(name + "/fused_bias", 0), newB);
+        return sd.cnn().conv2d(conv.arg(0), wVar, bVar, config);
+    }
+
+    private static long[] shapeOf(SameDiff sd, SDVariable v) {
+        if (v.getVariableType() == VariableType.ARRAY)
+            return null;
+        if (v.getVariableType() == VariableType.PLACEHOLDER)
+            return v.placeholderShape();
+        INDArray arr = sd.getArrForVarName(v.name());
+        return arr == null ? null : arr.shape();
+    }
+
+    private static boolean isConstant(SameDiff sd, SDVariable v) {
+        return v.getVariableType() == VariableType.CONSTANT && sd.getArrForVarName(v.name()) != null;
+    }
+
+    private static boolean isEmpty(List<String> l) {
+        return l == null || l.isEmpty();
+    }
+
+    private static class Fusion {
+        private final String name;
+        private final SubGraphPredicate predicate;
+        private final SubGraphProcessor processor;
+
+        private Fusion(String name, SubGraphPredicate predicate, SubGraphProcessor processor) {
+            this.name = name;
+            this.predicate = predicate;
+            this.processor = processor;
+        }
+    }
+}
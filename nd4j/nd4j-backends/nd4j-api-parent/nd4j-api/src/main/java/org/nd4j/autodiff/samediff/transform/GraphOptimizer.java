@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.listeners.At;
+import org.nd4j.autodiff.listeners.Listener;
+import org.nd4j.autodiff.listeners.Operation;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.RandomOp;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.BaseCompatOp;
+import org.nd4j.linalg.api.ops.impl.layers.ExternalErrorsFunction;
+import org.nd4j.linalg.api.ops.impl.transforms.Assert;
+
+import java.util.*;
+
+/**
+ * GraphOptimizer provides optimization passes that simplify a SameDiff graph for inference, without changing the values
+ * of the requested outputs. These are mainly useful for imported graphs, which often contain subgraphs that only depend
+ * on constants (shape calculations, weight reshaping/transposes, etc), branches that are not needed for the outputs of
+ * interest (training-only or summary ops, for example) and duplicated constants.<br>
+ * The passes are:
+ * <ul>
+ *     <li>{@link #removeUnusedOps(SameDiff, Collection)}: removes ops (and their output variables) that are not
+ *     required to calculate the specified outputs, and constants that are not used by any remaining op</li>
+ *     <li>{@link #foldConstants(SameDiff)}: pre-computes ops whose inputs are all constants, replacing their outputs
+ *     with constants</li>
+ *     <li>{@link #deduplicateConstants(SameDiff, Collection)}: merges constants with identical datatype, shape and values</li>
+ * </ul>
+ * All passes modify the SameDiff instance in place. {@link #optimize(SameDiff, String...)} applies all of them to a copy
+ * of the graph. The result is an ordinary SameDiff instance, so it can be saved with {@link SameDiff#asFlatBuffers(boolean)}
+ * (or {@link SameDiff#save(java.io.File, boolean)}), so that the cost of optimization is paid once rather than each time the
+ * model is loaded. See also {@link FusionOptimizer}.
+ */
+@Slf4j
+public class GraphOptimizer {
+
+    private GraphOptimizer() {
+    }
+
+    /**
+     * Optimize a copy of the specified SameDiff instance for inference, using all passes: unused op removal, constant
+     * folding and constant deduplication. The original instance is not modified.<br>
+     * Note that after optimization, only the specified outputs (and graph outputs/loss variables) can be calculated.
+     *
+     * @param sd      SameDiff instance to optimize
+     * @param outputs Outputs to preserve. If none are specified, the graph outputs ({@link SameDiff#outputs()}) are used
+     * @return The optimized copy
+     */
+    public static SameDiff optimize(@NonNull SameDiff sd, String... outputs) {
+        SameDiff copy = sd.dup();
+        optimizeInPlace(copy, outputs == null || outputs.length == 0 ? null : Arrays.asList(outputs));
+        return copy;
+    }
+
+    /**
+     * As per {@link #optimize(SameDiff, String...)}, but modifying the SameDiff instance in place
+     *
+     * @param sd      SameDiff instance to optimize
+     * @param outputs Outputs to preserve. If null or empty, the graph outputs ({@link SameDiff#outputs()}) are used
+     */
+    public static void optimizeInPlace(@NonNull SameDiff sd, Collection<String> outputs) {
+        Set<String> keep = preserved(sd, outputs);
+        Preconditions.checkState(!keep.isEmpty(), "No outputs were specified and no graph outputs or loss variables " +
+                "are set: at least one output to preserve is required");
+
+        int opsBefore = sd.getOps().size();
+        int varsBefore = sd.getVariables().size();
+        removeUnusedOps(sd, keep);
+        int folded = foldConstants(sd);
+        int deduped = deduplicateConstants(sd, keep);
+        //Folding leaves the constant inputs of folded ops unused
+        removeUnusedOps(sd, keep);
+        log.info("Optimized graph: {} ops ({} before), {} variables ({} before); {} ops folded, {} constants deduplicated",
+                sd.getOps().size(), opsBefore, sd.getVariables().size(), varsBefore, folded, deduped);
+    }
+
+    /**
+     * Remove all ops that are not required to calculate the specified outputs, along with their output variables.
+     * Constants that are not used by any of the remaining ops are also removed. Placeholders and (trainable) variables
+     * are never removed.
+     *
+     * @param sd      SameDiff instance to modify
+     * @param outputs Outputs to preserve. If null or empty, the graph outputs ({@link SameDiff#outputs()}) are used.
+     *                Loss variables are always preserved.
+     * @return Number of removed ops
+     */
+    public static int removeUnusedOps(@NonNull SameDiff sd, Collection<String> outputs) {
+        Set<String> keep = preserved(sd, outputs);
+        Preconditions.checkState(!keep.isEmpty(), "No outputs were specified and no graph outputs or loss variables " +
+                "are set: at least one output to preserve is required");
+        Map<String, Variable> vars = sd.getVariables();
+        Map<String, SameDiffOp> ops = sd.getOps();
+
+        //Work backwards from the outputs, marking all variables and ops they depend on (inputs and control dependencies)
+        Set<String> reqVars = new HashSet<>();
+        Set<String> reqOps = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        for (String s : keep) {
+            Preconditions.checkState(vars.containsKey(s), "No variable with name \"%s\" exists", s);
+            queue.add(s);
+        }
+        while (!queue.isEmpty()) {
+            String v = queue.remove();
+            if (!reqVars.add(v))
+                continue;
+            Variable var = vars.get(v);
+            addAll(queue, var.getControlDeps());
+            String opName = var.getOutputOfOp();
+            if (opName != null && reqOps.add(opName)) {
+                SameDiffOp op = ops.get(opName);
+                addAll(queue, op.getInputsToOp());
+                addAll(queue, op.getControlDeps());
+                addAll(queue, op.getVarControlDeps());
+                //All outputs of a required op are calculated, so must be kept
+                addAll(queue, op.getOutputsOfOp());
+            }
+        }
+
+        List<String> removeOps = new ArrayList<>();
+        for (String s : ops.keySet()) {
+            if (!reqOps.contains(s))
+                removeOps.add(s);
+        }
+        List<String> removeVars = new ArrayList<>();
+        for (Variable v : vars.values()) {
+            VariableType t = v.getVariable().getVariableType();
+            if (!reqVars.contains(v.getName()) && (t == VariableType.ARRAY || t == VariableType.CONSTANT))
+                removeVars.add(v.getName());
+        }
+        if (removeOps.isEmpty() && removeVars.isEmpty())
+            return 0;
+
+        for (String s : removeOps) {
+            ops.remove(s);
+        }
+        Set<String> removedOps = new HashSet<>(removeOps);
+        Set<String> removedVars = new HashSet<>(removeVars);
+        //Remove references to removed ops and variables from the remaining graph
+        for (Variable v : vars.values()) {
+            v.setInputsForOp(filter(v.getInputsForOp(), removedOps));
+            v.setControlDepsForOp(filter(v.getControlDepsForOp(), removedOps));
+            v.setControlDepsForVar(filter(v.getControlDepsForVar(), removedVars));
+        }
+        for (SameDiffOp op : ops.values()) {
+            op.setControlDepFor(filter(op.getControlDepFor(), removedVars));
+        }
+        for (String s : removeVars) {
+            sd.removeVariable(s);
+        }
+
+        log.debug("Removed {} unused ops and {} unused variables", removeOps.size(), removeVars.size());
+        return removeOps.size();
+    }
+
+    /**
+     * Pre-compute all ops whose inputs are all constants (either constants in the original graph, or the outputs of
+     * other folded ops). The output variables of these ops are converted to constants, and the ops are removed.<br>
+     * Ops that are random, part of control flow, or have control dependencies are not folded. The (constant) inputs of
+     * folded ops are not removed by this method, even if they are no longer used - use {@link #removeUnusedOps(SameDiff, Collection)}
+     * for this.
+     *
+     * @param sd SameDiff instance to modify
+     * @return Number of folded ops
+     */
+    public static int foldConstants(@NonNull SameDiff sd) {
+        Map<String, Variable> vars = sd.getVariables();
+        Map<String, SameDiffOp> ops = sd.getOps();
+
+        //Find the foldable ops, in dependency order
+        Set<String> constVars = new HashSet<>();
+        for (Variable v : vars.values()) {
+            if (v.getVariable().getVariableType() == VariableType.CONSTANT)
+                constVars.add(v.getName());
+        }
+        List<SameDiffOp> toFold = new ArrayList<>();
+        Set<String> folded = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SameDiffOp op : ops.values()) {
+                if (folded.contains(op.getName()) || !canFold(op, vars) || !constVars.containsAll(op.getInputsToOp()))
+                    continue;
+                folded.add(op.getName());
+                toFold.add(op);
+                constVars.addAll(op.getOutputsOfOp());
+                changed = true;
+            }
+        }
+        if (toFold.isEmpty())
+            return 0;
+
+        //Calculate all of the values in one pass
+        List<String> outputs = new ArrayList<>();
+        for (SameDiffOp op : toFold) {
+            outputs.addAll(op.getOutputsOfOp());
+        }
+        InferenceSession is = new InferenceSession(sd);
+        Map<String, INDArray> values = is.output(outputs, Collections.<String, INDArray>emptyMap(), null,
+                Collections.<String>emptyList(), Collections.<Listener>emptyList(), At.defaultAt(Operation.INFERENCE));
+
+        for (SameDiffOp op : toFold) {
+            ops.remove(op.getName());
+            for (String in : op.getInputsToOp()) {
+                List<String> l = vars.get(in).getInputsForOp();
+                if (l != null)
+                    l.remove(op.getName());
+            }
+            for (String out : op.getOutputsOfOp()) {
+                Variable v = vars.get(out);
+                v.setOutputOfOp(null);
+                SDVariable sdv = v.getVariable();
+                sdv.setVariableType(VariableType.CONSTANT);
+                sd.setArrayForVariable(out, values.get(out));
+            }
+        }
+        log.debug("Folded {} constant ops", toFold.size());
+        return toFold.size();
+    }
+
+    private static boolean canFold(SameDiffOp op, Map<String, Variable> vars) {
+        DifferentialFunction df = op.getOp();
+        if (op.getInputsToOp() == null || op.getInputsToOp().isEmpty() || op.getOutputsOfOp() == null || op.getOutputsOfOp().isEmpty())
+            return false;
+        if (!isEmpty(op.getControlDeps()) || !isEmpty(op.getVarControlDeps()) || !isEmpty(op.getControlDepFor()))
+            return false;
+        for (String out : op.getOutputsOfOp()) {
+            Variable v = vars.get(out);
+            if (!isEmpty(v.getControlDeps()) || !isEmpty(v.getControlDepsForOp()) || !isEmpty(v.getControlDepsForVar()))
+                return false;
+        }
+        return !(df instanceof RandomOp || df instanceof BaseCompatOp || df instanceof Assert || df instanceof ExternalErrorsFunction
+                || df.getClass().getName().startsWith("org.nd4j.linalg.api.ops.random."));
+    }
+
+    /**
+     * Merge constants that have the same datatype, shape and values: all uses of the duplicates are replaced by a single
+     * constant, and the duplicates are removed. String constants, and constants with control dependencies, are not merged.
+     *
+     * @param sd       SameDiff instance to modify
+     * @param preserve Names of constants that must not be removed (i.e., requested outputs). May be null
+     * @return Number of removed (duplicate) constants
+     */
+    public static int deduplicateConstants(@NonNull SameDiff sd, Collection<String> preserve) {
+        Set<String> keep = preserved(sd, preserve);
+        Map<String, Variable> vars = sd.getVariables();
+
+        //Group candidates by datatype, shape and content hash; check for exact equality within each group
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (Variable v : vars.values()) {
+            SDVariable sdv = v.getVariable();
+            if (sdv.getVariableType() != VariableType.CONSTANT || !isEmpty(v.getControlDeps()) || !isEmpty(v.getControlDepsForOp())
+                    || !isEmpty(v.getControlDepsForVar()))
+                continue;
+            INDArray arr = sd.getArrForVarName(v.getName());
+            if (arr == null || arr.dataType() == DataType.UTF8 || arr.isEmpty())
+                continue;
+            String key = arr.dataType() + "_" + Arrays.toString(arr.shape()) + "_" + arr.hashCode();
+            List<String> l = groups.get(key);
+            if (l == null) {
+                l = new ArrayList<>();
+                groups.put(key, l);
+            }
+            l.add(v.getName());
+        }
+
+        int count = 0;
+        for (List<String> group : groups.values()) {
+            if (group.size() < 2)
+                continue;
+            //Prefer preserved constants as the canonical ones, so they are not removed
+            List<String> canonical = new ArrayList<>();
+            for (String s : group) {
+                if (keep.contains(s))
+                    canonical.add(s);
+            }
+            for (String s : group) {
+                if (keep.contains(s))
+                    continue;
+                INDArray arr = sd.getArrForVarName(s);
+                String target = null;
+                for (String c : canonical) {
+                    if (!arr.neq(sd.getArrForVarName(c)).any()) {
+                        target = c;
+                        break;
+                    }
+                }
+                if (target == null) {
+                    canonical.add(s);
+                } else {
+                    replaceInputs(sd, s, target);
+                    sd.removeVariable(s);
+                    count++;
+                }
+            }
+        }
+        if (count > 0)
+            log.debug("Removed {} duplicate constants", count);
+        return count;
+    }
+
+    /**
+     * Replace all uses of variable "from" as an op input with variable "to"
+     */
+    private static void replaceInputs(SameDiff sd, String from, String to) {
+        Variable vFrom = sd.getVariables().get(from);
+        Variable vTo = sd.getVariables().get(to);
+        if (isEmpty(vFrom.getInputsForOp()))
+            return;
+        List<String> toInputsFor = vTo.getInputsForOp() == null ? new ArrayList<String>() : new ArrayList<>(vTo.getInputsForOp());
+        for (String opName : vFrom.getInputsForOp()) {
+            SameDiffOp op = sd.getOps().get(opName);
+            List<String> inputs = new ArrayList<>(op.getInputsToOp());
+            int idx;
+            while ((idx = inputs.indexOf(from)) >= 0) {
+                inputs.set(idx, to);
+            }
+            op.setInputsToOp(inputs);
+            toInputsFor.add(opName);
+        }
+        vTo.setInputsForOp(toInputsFor);
+        vFrom.setInputsForOp(new ArrayList<String>());
+    }
+
+    private static Set<String> preserved(SameDiff sd, Collection<String> outputs) {
+        Set<String> keep = new HashSet<>();
+        if (outputs != null && !outputs.isEmpty()) {
+            keep.addAll(outputs);
+        } else if (sd.outputs() != null) {
+            keep.addAll(sd.outputs());
+        }
+        keep.addAll(sd.getLossVariables());
+        return keep;
+    }
+
+    private static List<String> filter(List<String> l, Set<String> remove) {
+        if (l == null || l.isEmpty())
+            return l;
+        List<String> out = new ArrayList<>(l.size());
+        for (String s : l) {
+            if (!remove.contains(s))
+                out.add(s);
+        }
+        return out;
+    }
+
+    private static void addAll(Deque<String> queue, List<String> l) {
+        if (l != null)
+            queue.addAll(l);
+    }
+
+    private static boolean isEmpty(List<String> l) {
+        return l == null || l.isEmpty();
+    }
+}
@@ -57,7 +57,21 @@ public class GraphTransformUtil {
         sd = sd.dup();
 
         List<SubGraph> subgraphs = getSubgraphsMatching(sd, p);
+        replaceSubgraphs(sd, subgraphs, processor);
+        return sd;
+    }
 
+    /**
+     * Replace the specified subgraphs using the specified SubGraphProcessor.<br>
+     * Unlike {@link #replaceSubgraphsMatching(SameDiff, SubGraphPredicate, SubGraphProcessor)}, the SameDiff instance
+     * is modified in place. The subgraphs must belong to the specified SameDiff instance, and must not overlap (i.e., no
+     * function may be part of more than one subgraph)
+     *
+     * @param sd        SameDiff instance to modify
+     * @param subgraphs Subgraphs to replace
+     * @param processor SubGraphProcessor used to define how the subgraphs should be modified/replaced
+     */
+    public static void replaceSubgraphs(@NonNull SameDiff sd, @NonNull List<SubGraph> subgraphs, @NonNull SubGraphProcessor processor) {
         for (SubGraph sg : subgraphs) {
             List<SDVariable> newOutputs = processor.processSubgraph(sd, sg);
             List<SDVariable> oldOutputs = sg.outputs();
@@ -165,8 +179,6 @@ public class GraphTransformUtil {
                 }
             }
         }
-
-        return sd;
     }
 
     /**
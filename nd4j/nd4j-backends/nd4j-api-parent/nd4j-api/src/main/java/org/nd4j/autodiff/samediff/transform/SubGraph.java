@@ -64,7 +64,8 @@ public class SubGraph {
         for(SDVariable v : allOutputs){
             Variable var = sameDiff.getVariables().get(v.name());
             List<String> inputsFor = var.getInputsForOp();
-            boolean allInSubgraph = true;
+            //Variables not consumed by any op (i.e., graph outputs) are also outputs of the subgraph
+            boolean allInSubgraph = inputsFor != null && !inputsFor.isEmpty();
             if(inputsFor != null){
                 for(String opOwnName : inputsFor) {
                     if (!inSubgraph(sameDiff.getOpById(opOwnName))){
@@ -87,6 +87,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
     protected AtomicLong cycleAllocations = new AtomicLong(0);
     protected AtomicLong spilledAllocationsSize = new AtomicLong(0);
     protected AtomicLong pinnedAllocationsSize = new AtomicLong(0);
+    protected AtomicLong spilledAllocationsTotal = new AtomicLong(0);
+    protected AtomicLong spilledAllocationsCount = new AtomicLong(0);
+    protected AtomicLong reallocationsCount = new AtomicLong(0);
     protected AtomicLong maxCycle = new AtomicLong(0);
     protected AtomicBoolean resetPlanned = new AtomicBoolean(false);
     protected AtomicBoolean isOpen = new AtomicBoolean(false);
@@ -248,6 +251,32 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
         return pinnedAllocationsSize.get();
     }
 
+    /**
+     * This method returns total number of bytes spilled over the lifetime of this workspace.
+     * Unlike {@link #getSpilledSize()}, this value is not reset when spilled allocations are purged
+     * @return
+     */
+    public long getTotalSpilledSize() {
+        return spilledAllocationsTotal.get();
+    }
+
+    /**
+     * This method returns total number of spilled allocations over the lifetime of this workspace.
+     * @return
+     */
+    public long getTotalSpilledAllocations() {
+        return spilledAllocationsCount.get();
+    }
+
+    /**
+     * This method returns number of times the memory of this workspace was (re)allocated after creation,
+     * i.e. due to learning or due to reallocation after spills
+     * @return
+     */
+    public long getNumberOfReallocations() {
+        return reallocationsCount.get();
+    }
+
     /**
      * This method returns number of bytes for first block of circular workspace.
      * @return
@@ -404,9 +433,11 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
             }
 
             // updating respective counters
-            if (!trimmer)
+            if (!trimmer) {
                 spilledAllocationsSize.addAndGet(requiredMemory);
-            else
+                spilledAllocationsTotal.addAndGet(requiredMemory);
+                spilledAllocationsCount.incrementAndGet();
+            } else
                 pinnedAllocationsSize.addAndGet(requiredMemory);
 
             if (isDebug.get())
@@ -507,6 +538,9 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
                     resetPlanned.set(false);
                 }
 
+                if (currentSize.get() > 0)
+                    reallocationsCount.incrementAndGet();
+
                 // calling for implementation-specific workspace initialization. basically allocation happens there
                 init();
             }
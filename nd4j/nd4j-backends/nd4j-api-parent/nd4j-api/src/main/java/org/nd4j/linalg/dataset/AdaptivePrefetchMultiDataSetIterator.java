@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Multi-threaded prefetching MultiDataSetIterator, with automatic tuning of the number of worker threads and the
+ * prefetch queue depth. Unlike {@link AsyncMultiDataSetIterator} (a single prefetch thread), this iterator reads
+ * multiple partitions of the source data in parallel - for example, one RecordReaderMultiDataSetIterator per subset of
+ * the input files - and applies the preprocessor (for example, a normalizer) on the worker threads.<br>
+ * Stall metrics ({@link #getStallFraction()}, {@link #isInputBound()} etc) can be used to determine whether training
+ * is limited by the speed of the input pipeline.<br>
+ * See {@link BaseAdaptivePrefetchIterator} for details.
+ */
+public class AdaptivePrefetchMultiDataSetIterator extends BaseAdaptivePrefetchIterator<MultiDataSet>
+        implements MultiDataSetIterator {
+
+    private volatile MultiDataSetPreProcessor preProcessor;
+
+    /**
+     * Create an ordered iterator, using between 1 and {@code numPartitions} (up to the number of processors) worker
+     * threads
+     *
+     * @param partitions Partitions of the source data
+     */
+    public AdaptivePrefetchMultiDataSetIterator(@NonNull List<? extends MultiDataSetIterator> partitions) {
+        this(partitions, 1, Math.min(partitions.size(), Runtime.getRuntime().availableProcessors()), 32, true);
+    }
+
+    /**
+     * @param partitions    Partitions of the source data
+     * @param minWorkers    Minimum (and initial) number of active worker threads
+     * @param maxWorkers    Maximum number of active worker threads. If equal to minWorkers, the number of workers is fixed
+     * @param maxQueueDepth Maximum number of prefetched minibatches
+     * @param ordered       If true: return minibatches in the order of the partitions. If false: return minibatches as
+     *                      soon as they are available
+     */
+    public AdaptivePrefetchMultiDataSetIterator(@NonNull List<? extends MultiDataSetIterator> partitions, int minWorkers,
+                                                int maxWorkers, int maxQueueDepth, boolean ordered) {
+        this(partitions, minWorkers, maxWorkers, maxQueueDepth, ordered, Nd4j.getAffinityManager().getDeviceForCurrentThread());
+    }
+
+    /**
+     * @param partitions    Partitions of the source data
+     * @param minWorkers    Minimum (and initial) number of active worker threads
+     * @param maxWorkers    Maximum number of active worker threads. If equal to minWorkers, the number of workers is fixed
+     * @param maxQueueDepth Maximum number of prefetched minibatches
+     * @param ordered       If true: return minibatches in the order of the partitions. If false: return minibatches as
+     *                      soon as they are available
+     * @param deviceId      Device to use for the worker threads. May be null
+     */
+    public AdaptivePrefetchMultiDataSetIterator(@NonNull List<? extends MultiDataSetIterator> partitions, int minWorkers,
+                                                int maxWorkers, int maxQueueDepth, boolean ordered, Integer deviceId) {
+        super(partitions, minWorkers, maxWorkers, maxQueueDepth, ordered, deviceId);
+    }
+
+    @Override
+    protected void preProcess(MultiDataSet element) {
+        if (preProcessor != null)
+            preProcessor.preProcess(element);
+    }
+
+    @Override
+    protected void resetPartition(Iterator<MultiDataSet> partition) {
+        ((MultiDataSetIterator) partition).reset();
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (Iterator<?> p : partitions) {
+            if (!((MultiDataSetIterator) p).resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    /**
+     * Set the preprocessor, which is applied on the worker threads. Must be set before iteration starts (or before
+     * reset), as minibatches already prefetched when this method is called will not be preprocessed.
+     */
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+}
@@ -0,0 +1,530 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Base class for multi-threaded prefetching iterators, such as {@link AdaptivePrefetchDataSetIterator}.<br>
+ * The source data is provided as a list of partitions (iterators), for example one RecordReaderDataSetIterator per
+ * subset of the input files. Each partition is read by one worker thread at a time, with up to {@code maxWorkers}
+ * partitions being read in parallel, and the preprocessor (if any) is applied on the worker threads.<br>
+ * <br>
+ * Two modes are supported:<br>
+ * - Ordered: elements are returned in the same order as iterating over each partition in turn. Later partitions are
+ * read ahead only as far as the queue depth allows, hence using many small partitions gives the best throughput<br>
+ * - Unordered: elements are returned as soon as they are available, in an arbitrary order<br>
+ * <br>
+ * Auto-tuning: The number of active workers starts at {@code minWorkers}, and the prefetch queue depth at
+ * {@code 2 * minWorkers}. After every {@link #TUNING_WINDOW} elements, the time the consumer spent waiting for
+ * elements (stalls) is compared to the total time: if the consumer stalled for more than {@link #STALL_THRESHOLD} of
+ * the time, one more worker is activated (up to {@code maxWorkers}) and the queue depth is increased (up to
+ * {@code maxQueueDepth}). Conversely, if the consumer (almost) never stalled and the workers spent most of their time
+ * blocked on a full queue, one worker is deactivated (down to {@code minWorkers}).<br>
+ * Stall metrics are available via {@link #getStallTimeMillis()}, {@link #getStallFraction()} and
+ * {@link #isInputBound()}, for determining whether training is limited by the speed of the input pipeline.<br>
+ * {@link #reset()} and {@link #shutdown()} wait for each worker thread to finish loading its current element, rather
+ * than interrupting it, so that partitions reading from interruptible channels remain usable.
+ *
+ * @param <T> Type of element - DataSet or MultiDataSet
+ */
+@Slf4j
+public abstract class BaseAdaptivePrefetchIterator<T> implements Iterator<T> {
+    public static final int TUNING_WINDOW = 16;
+    public static final double STALL_THRESHOLD = 0.05;
+    /** Maximum time to wait for the worker threads to stop in {@link #reset()} and {@link #shutdown()} before interrupting them */
+    public static final long STOP_TIMEOUT_MS = 60000;
+
+    protected final List<? extends Iterator<T>> partitions;
+    protected final boolean ordered;
+    protected final int minWorkers;
+    protected final int maxWorkers;
+    protected final int maxQueueDepth;
+    protected final Integer deviceId;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition workerAvailable = lock.newCondition();
+
+    //All of the following state is guarded by the lock
+    private List<ArrayDeque<T>> queues;
+    private boolean[] finished;
+    private int numFinished;
+    private int head;               //Ordered mode: partition currently being returned
+    private int nextPartition;      //Next partition to be claimed by a worker thread
+    private int buffered;
+    private int queueDepth;
+    private int numWorkers;
+    private int computing;
+    private boolean running;
+    private boolean started;
+    private RuntimeException error;
+    private transient List<Thread> threads = new ArrayList<>();
+
+    //Metrics
+    private final long startNanos = System.nanoTime();
+    private long stallNanos;
+    private long producerBlockedNanos;
+    private long batchesReturned;
+    private long windowStartNanos;
+    private long windowStallNanos;
+    private long windowProducerBlockedNanos;
+    private int windowCount;
+
+    private T nextElement;
+    private boolean isShutdown;
+
+    /**
+     * @param partitions    Partitions of the source data
+     * @param minWorkers    Minimum (and initial) number of active worker threads
+     * @param maxWorkers    Maximum number of active worker threads. If equal to minWorkers, the number of workers is fixed
+     * @param maxQueueDepth Maximum number of prefetched elements
+     * @param ordered       If true: return elements in the order of the partitions. If false: return elements as soon
+     *                      as they are available
+     * @param deviceId      Device to use for the worker threads. May be null
+     */
+    protected BaseAdaptivePrefetchIterator(@NonNull List<? extends Iterator<T>> partitions, int minWorkers, int maxWorkers,
+                                           int maxQueueDepth, boolean ordered, Integer deviceId) {
+        Preconditions.checkArgument(!partitions.isEmpty(), "At least one partition is required");
+        Preconditions.checkArgument(minWorkers > 0 && maxWorkers >= minWorkers, "Invalid number of workers: " +
+                "minWorkers=%s, maxWorkers=%s", minWorkers, maxWorkers);
+        Preconditions.checkArgument(maxQueueDepth > 0, "Maximum queue depth must be positive, got %s", maxQueueDepth);
+        this.partitions = partitions;
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        this.maxQueueDepth = maxQueueDepth;
+        this.ordered = ordered;
+        this.deviceId = deviceId;
+        this.numWorkers = minWorkers;
+        this.queueDepth = Math.min(maxQueueDepth, 2 * minWorkers);
+    }
+
+    /**
+     * Apply the preprocessor (if any) to the element. Called on the worker threads
+     */
+    protected abstract void preProcess(T element);
+
+    /**
+     * Reset the specified partition
+     */
+    protected abstract void resetPartition(Iterator<T> partition);
+
+    /**
+     * Start the worker threads. Called automatically on the first call to {@link #hasNext()} after creation or reset
+     */
+    protected void start() {
+        lock.lock();
+        try {
+            int n = partitions.size();
+            queues = new ArrayList<>();
+            for (int i = 0; i < (ordered ? n : 1); i++) {
+                queues.add(new ArrayDeque<T>());
+            }
+            finished = new boolean[n];
+            numFinished = 0;
+            head = 0;
+            nextPartition = 0;
+            buffered = 0;
+            computing = 0;
+            error = null;
+            running = true;
+            started = true;
+            nextElement = null;
+            windowStartNanos = System.nanoTime();
+            windowStallNanos = 0;
+            windowProducerBlockedNanos = 0;
+            windowCount = 0;
+
+            threads = new ArrayList<>();
+            for (int i = 0; i < Math.min(maxWorkers, n); i++) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, getClass().getSimpleName() + " worker " + i);
+                t.setDaemon(true);
+                threads.add(t);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+    }
+
+    protected void stop() {
+        lock.lock();
+        try {
+            running = false;
+            started = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            workerAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        //Workers are not interrupted: interrupting a thread that is reading from an interruptible channel (such as a
+        //FileChannel) closes that channel permanently. Instead, workers finish the element they are currently
+        //loading, and then exit as running == false. Interrupting is a last resort, after STOP_TIMEOUT_MS
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MS;
+        for (Thread t : threads) {
+            try {
+                t.join(Math.max(1, deadline - System.currentTimeMillis()));
+                if (t.isAlive()) {
+                    log.warn("Prefetch worker thread {} did not stop within {} ms, interrupting", t.getName(), STOP_TIMEOUT_MS);
+                    t.interrupt();
+                    t.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while stopping worker threads", e);
+            }
+        }
+        threads = new ArrayList<>();
+    }
+
+    private void work() {
+        if (deviceId != null)
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+        try {
+            int p;
+            while ((p = claimPartition()) >= 0) {
+                Iterator<T> iter = partitions.get(p);
+                while (true) {
+                    T element = null;
+                    acquireWorker();
+                    try {
+                        if (iter.hasNext()) {
+                            element = iter.next();
+                            preProcess(element);
+                            //Ensure the element has been fully created before passing it to the consumer
+                            Nd4j.getExecutioner().commit();
+                        }
+                    } finally {
+                        releaseWorker();
+                    }
+                    if (element == null || !put(p, element))
+                        break;
+                }
+                finishPartition(p);
+            }
+        } catch (InterruptedException e) {
+            //Stopped by reset() or shutdown(), or interrupted as a last resort after STOP_TIMEOUT_MS
+        } catch (Throwable t) {
+            lock.lock();
+            try {
+                if (error == null)
+                    error = new RuntimeException("Error in prefetch worker thread", t);
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private int claimPartition() {
+        lock.lock();
+        try {
+            if (!running || nextPartition >= partitions.size())
+                return -1;
+            return nextPartition++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquireWorker() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running && computing >= numWorkers) {
+                workerAvailable.await();
+            }
+            if (!running)
+                throw new InterruptedException();
+            computing++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseWorker() {
+        lock.lock();
+        try {
+            computing--;
+            workerAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean put(int partition, T element) throws InterruptedException {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            ArrayDeque<T> queue = queues.get(ordered ? partition : 0);
+            //In ordered mode, the partition currently being returned is limited only by the size of its own queue, as
+            //the shared limit may be used up by elements from later partitions - which the consumer can't return yet
+            while (running && (ordered && partition == head ? queue.size() >= queueDepth : buffered >= queueDepth)) {
+                notFull.await();
+            }
+            long blocked = System.nanoTime() - start;
+            producerBlockedNanos += blocked;
+            windowProducerBlockedNanos += blocked;
+            if (!running)
+                return false;
+            queue.add(element);
+            buffered++;
+            notEmpty.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finishPartition(int partition) {
+        lock.lock();
+        try {
+            finished[partition] = true;
+            numFinished++;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T fetch() {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            try {
+                while (true) {
+                    if (error != null)
+                        throw error;
+                    if (!running)
+                        return null;
+                    if (ordered) {
+                        if (head >= partitions.size())
+                            return null;
+                        if (queues.get(head).isEmpty() && finished[head]) {
+                            queues.set(head, null);
+                            head++;
+                            notFull.signalAll();
+                            continue;
+                        }
+                    } else if (queues.get(0).isEmpty() && numFinished == partitions.size()) {
+                        return null;
+                    }
+
+                    ArrayDeque<T> queue = queues.get(ordered ? head : 0);
+                    if (!queue.isEmpty()) {
+                        buffered--;
+                        notFull.signalAll();
+                        return queue.poll();
+                    }
+                    notEmpty.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for prefetched elements", e);
+            } finally {
+                long stall = System.nanoTime() - start;
+                stallNanos += stall;
+                windowStallNanos += stall;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adjust the number of workers and queue depth based on the stalls in the last window. Must hold the lock
+     */
+    private void tune() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - windowStartNanos);
+        double stallFraction = windowStallNanos / (double) elapsed;
+        double blockedFraction = windowProducerBlockedNanos / ((double) elapsed * numWorkers);
+
+        if (stallFraction > STALL_THRESHOLD) {
+            if (numWorkers < maxWorkers) {
+                numWorkers++;
+                workerAvailable.signalAll();
+            }
+            if (queueDepth < maxQueueDepth) {
+                queueDepth = Math.min(maxQueueDepth, Math.max(queueDepth + 1, 2 * numWorkers));
+                notFull.signalAll();
+            }
+        } else if (stallFraction < STALL_THRESHOLD / 5 && blockedFraction > 0.5 && numWorkers > minWorkers) {
+            numWorkers--;
+        }
+        log.trace("Prefetch tuning: stall fraction {}, producer blocked fraction {} -> {} workers, queue depth {}",
+                stallFraction, blockedFraction, numWorkers, queueDepth);
+
+        windowStartNanos = now;
+        windowStallNanos = 0;
+        windowProducerBlockedNanos = 0;
+        windowCount = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (isShutdown)
+            return false;
+        if (!started)
+            start();
+        if (nextElement == null)
+            nextElement = fetch();
+        return nextElement != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        T ret = nextElement;
+        nextElement = null;
+        lock.lock();
+        try {
+            batchesReturned++;
+            if (++windowCount >= TUNING_WINDOW)
+                tune();
+        } finally {
+            lock.unlock();
+        }
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop the worker threads and reset all partitions. Worker threads are restarted on the next call to hasNext()
+     */
+    public void reset() {
+        stop();
+        for (Iterator<T> p : partitions) {
+            resetPartition(p);
+        }
+        isShutdown = false;
+    }
+
+    /**
+     * Stop the worker threads. After calling this method, the iterator can only be used again after calling
+     * {@link #reset()}, which also resets all partitions
+     */
+    public void shutdown() {
+        stop();
+        isShutdown = true;
+    }
+
+    /**
+     * @return Total time (in milliseconds) the consumer has spent waiting for elements to become available
+     */
+    public long getStallTimeMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(stallNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Fraction of the time since this iterator was created that the consumer has spent waiting for elements
+     */
+    public double getStallFraction() {
+        lock.lock();
+        try {
+            return stallNanos / (double) Math.max(1, System.nanoTime() - startNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return True if the consumer has spent more than {@link #STALL_THRESHOLD} of the time waiting for elements -
+     * i.e., the consumer (for example, network training) is limited by the speed of the input pipeline
+     */
+    public boolean isInputBound() {
+        return getStallFraction() > STALL_THRESHOLD;
+    }
+
+    /**
+     * @return Total time (in milliseconds) the worker threads have spent blocked on a full prefetch queue
+     */
+    public long getProducerBlockedTimeMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(producerBlockedNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Total number of elements returned so far
+     */
+    public long getBatchesReturned() {
+        lock.lock();
+        try {
+            return batchesReturned;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Current number of active worker threads
+     */
+    public int getNumWorkers() {
+        lock.lock();
+        try {
+            return numWorkers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Current maximum number of prefetched elements
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queueDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
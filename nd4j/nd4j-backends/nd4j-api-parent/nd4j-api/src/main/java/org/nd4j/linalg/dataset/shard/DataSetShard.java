@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.shard;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BooleanPointer;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.LongPointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.bytedeco.javacpp.indexer.Bfloat16Indexer;
+import org.bytedeco.javacpp.indexer.BooleanIndexer;
+import org.bytedeco.javacpp.indexer.ByteIndexer;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
+import org.bytedeco.javacpp.indexer.Indexer;
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.javacpp.indexer.LongIndexer;
+import org.bytedeco.javacpp.indexer.ShortIndexer;
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+import org.bytedeco.javacpp.indexer.UIntIndexer;
+import org.bytedeco.javacpp.indexer.UShortIndexer;
+import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A shard file of minibatches, as written by {@link DataSetShardWriter}, providing random access to any minibatch.<br>
+ * Minibatches are loaded by memory mapping the region of the file they are stored in: the arrays of the returned
+ * DataSet are backed directly by the mapped file (no deserialization or copying), hence loading is limited only by
+ * disk/page cache speed.<br>
+ * The file is mapped copy-on-write, so the returned arrays can be modified in-place (for example, by a normalizer)
+ * without affecting the file or later loads of the same minibatch. Copy-on-write mapping requires write access to the
+ * file: if the file is read-only, arrays are copied out of a read-only mapping instead.<br>
+ * <br>
+ * File format (all values little endian):<br>
+ * - Header ({@link #HEADER_SIZE} bytes): magic, version, number of minibatches, index offset and length<br>
+ * - Array data: raw c order array contents, each aligned to {@link #ALIGNMENT} bytes, followed by the (Java serialized)
+ * example metadata, if any<br>
+ * - Index: for each minibatch, the flags for the arrays present, the byte range of the minibatch, and the data type
+ * (as a FlatBuffers DType code - see {@link FlatBuffersMapper#getDataTypeAsByte(DataType)}), shape and offset of each
+ * array<br>
+ * <br>
+ * Note: On CUDA, the mapped data is copied to the device when first used.
+ */
+@Slf4j
+public class DataSetShard implements Closeable {
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 64;
+    public static final int ALIGNMENT = 64;
+
+    protected static final byte[] MAGIC = "ND4JSHRD".getBytes(StandardCharsets.US_ASCII);
+    protected static final int FEATURES_PRESENT = 1;
+    protected static final int LABELS_PRESENT = 1 << 1;
+    protected static final int LABELS_SAME_AS_FEATURES = 1 << 2;
+    protected static final int FEATURES_MASK_PRESENT = 1 << 3;
+    protected static final int LABELS_MASK_PRESENT = 1 << 4;
+    protected static final int METADATA_PRESENT = 1 << 5;
+
+    @Getter
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final boolean copy;
+    private final Batch[] batches;
+
+    /**
+     * @param file Shard file to open
+     */
+    public DataSetShard(@NonNull File file) throws IOException {
+        Preconditions.checkArgument(file.isFile(), "Shard file does not exist or is a directory: %s", file);
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new UnsupportedOperationException("DataSet shards are only supported on little endian platforms");
+        }
+        this.file = file;
+        this.copy = !file.canWrite();
+        if (copy) {
+            log.debug("Shard file is not writable - minibatches will be copied from a read-only mapping: {}", file);
+        }
+        this.raf = new RandomAccessFile(file, copy ? "r" : "rw");
+        this.channel = raf.getChannel();
+        try {
+            this.batches = readIndex();
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private Batch[] readIndex() throws IOException {
+        if (channel.size() < HEADER_SIZE)
+            throw new IOException("Invalid shard file: file is too small (" + channel.size() + " bytes): " + file);
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Invalid or incomplete shard file (no shard header found - shard writer may not " +
+                    "have been closed): " + file);
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported shard file version " + version + " (expected " + VERSION + "): " + file);
+        int numBatches = header.getInt();
+        long indexOffset = header.getLong();
+        long indexLength = header.getLong();
+        if (indexOffset + indexLength > channel.size())
+            throw new IOException("Invalid or truncated shard file: index extends past end of file: " + file);
+
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexLength).order(ByteOrder.LITTLE_ENDIAN);
+        Batch[] out = new Batch[numBatches];
+        for (int i = 0; i < numBatches; i++) {
+            Batch b = new Batch();
+            b.flags = index.getInt();
+            b.start = index.getLong();
+            b.end = index.getLong();
+            int[] arrayFlags = {FEATURES_PRESENT, LABELS_PRESENT, FEATURES_MASK_PRESENT, LABELS_MASK_PRESENT};
+            for (int j = 0; j < arrayFlags.length; j++) {
+                if ((b.flags & arrayFlags[j]) != 0) {
+                    DataType dataType = dataType(index.getInt());
+                    long[] shape = new long[index.getInt()];
+                    for (int k = 0; k < shape.length; k++) {
+                        shape[k] = index.getLong();
+                    }
+                    b.arrays[j] = new ArrayEntry(dataType, shape, index.getLong());
+                }
+            }
+            if ((b.flags & METADATA_PRESENT) != 0) {
+                b.metaOffset = index.getLong();
+                b.metaLength = index.getInt();
+            }
+            out[i] = b;
+        }
+        return out;
+    }
+
+    private DataType dataType(int code) throws IOException {
+        if (code >= Byte.MIN_VALUE && code <= Byte.MAX_VALUE) {
+            try {
+                return FlatBuffersMapper.getDataTypeFromByte((byte) code);
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid shard file: unknown data type code " + code + " in index: " + file, e);
+            }
+        }
+        throw new IOException("Invalid shard file: unknown data type code " + code + " in index: " + file);
+    }
+
+    /**
+     * @return Number of minibatches in the shard
+     */
+    public int numBatches() {
+        return batches.length;
+    }
+
+    /**
+     * Get the number of examples in the specified minibatch, without loading it
+     *
+     * @param batch Index of the minibatch
+     */
+    public long numExamples(int batch) {
+        Batch b = getBatch(batch);
+        ArrayEntry e = b.arrays[0] != null ? b.arrays[0] : b.arrays[1];
+        return e == null || e.shape.length == 0 ? 0 : e.shape[0];
+    }
+
+    /**
+     * Load the specified minibatch
+     *
+     * @param batch Index of the minibatch, 0 to {@link #numBatches()}-1 inclusive
+     * @return The minibatch
+     */
+    public DataSet get(int batch) throws IOException {
+        Batch b = getBatch(batch);
+        ByteBuffer region = channel.map(copy ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.PRIVATE, b.start,
+                b.end - b.start);
+
+        INDArray[] arrays = new INDArray[4];
+        for (int i = 0; i < arrays.length; i++) {
+            if (b.arrays[i] != null) {
+                arrays[i] = toArray(region, b.start, b.arrays[i]);
+            }
+        }
+        INDArray labels = (b.flags & LABELS_SAME_AS_FEATURES) != 0 ? arrays[0] : arrays[1];
+        DataSet ds = new DataSet(arrays[0], labels, arrays[2], arrays[3]);
+
+        if ((b.flags & METADATA_PRESENT) != 0) {
+            byte[] bytes = new byte[b.metaLength];
+            ((Buffer) region).position((int) (b.metaOffset - b.start));
+            region.get(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                ds.setExampleMetaData((List<? extends Serializable>) ois.readObject());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Error deserializing example metadata for minibatch " + batch + " of " + file, e);
+            }
+        }
+        return ds;
+    }
+
+    private Batch getBatch(int batch) {
+        Preconditions.checkArgument(batch >= 0 && batch < batches.length, "Invalid minibatch index %s: shard has %s " +
+                "minibatches", batch, batches.length);
+        return batches[batch];
+    }
+
+    private INDArray toArray(ByteBuffer region, long regionStart, ArrayEntry e) {
+        long length = ArrayUtil.prodLong(e.shape);
+        if (length == 0) {
+            return Nd4j.create(e.dataType, e.shape);
+        }
+        ByteBuffer slice = region.duplicate();
+        ((Buffer) slice).position((int) (e.offset - regionStart));
+        slice = slice.slice().order(ByteOrder.nativeOrder());
+
+        DataBuffer buffer = wrap(slice, e.dataType, length);
+        if (copy) {
+            buffer = buffer.dup();
+        }
+        return Nd4j.create(buffer, e.shape, Nd4j.getStrides(e.shape, 'c'), 0, 'c', e.dataType);
+    }
+
+    /**
+     * Create a DataBuffer backed directly by the memory of the specified (direct) buffer, without copying.
+     * The typed pointers are subclassed to hold a reference to the mapped buffer: this ensures the mapping is not
+     * released (when the buffer is garbage collected) while the DataBuffer is still in use.
+     */
+    private static DataBuffer wrap(final ByteBuffer mapped, DataType dataType, long length) {
+        Pointer base = new BytePointer(mapped);
+        Pointer p;
+        Indexer indexer;
+        switch (dataType) {
+            case DOUBLE:
+                p = new DoublePointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                indexer = DoubleIndexer.create((DoublePointer) p);
+                break;
+            case FLOAT:
+                p = new FloatPointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                indexer = FloatIndexer.create((FloatPointer) p);
+                break;
+            case HALF:
+            case BFLOAT16:
+            case SHORT:
+            case UINT16:
+                p = new ShortPointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                if (dataType == DataType.HALF)
+                    indexer = HalfIndexer.create((ShortPointer) p);
+                else if (dataType == DataType.BFLOAT16)
+                    indexer = Bfloat16Indexer.create((ShortPointer) p);
+                else if (dataType == DataType.SHORT)
+                    indexer = ShortIndexer.create((ShortPointer) p);
+                else
+                    indexer = UShortIndexer.create((ShortPointer) p);
+                break;
+            case INT:
+            case UINT32:
+                p = new IntPointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                indexer = dataType == DataType.INT ? IntIndexer.create((IntPointer) p) : UIntIndexer.create((IntPointer) p);
+                break;
+            case LONG:
+            case UINT64:
+                p = new LongPointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                indexer = LongIndexer.create((LongPointer) p);
+                break;
+            case BYTE:
+            case UBYTE:
+                p = new BytePointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                indexer = dataType == DataType.BYTE ? ByteIndexer.create((BytePointer) p) : UByteIndexer.create((BytePointer) p);
+                break;
+            case BOOL:
+                p = new BooleanPointer(base) { private final ByteBuffer ref = mapped; }.capacity(length);
+                indexer = BooleanIndexer.create((BooleanPointer) p);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + dataType);
+        }
+        return Nd4j.createBuffer(p, dataType, length, indexer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private static class Batch {
+        private int flags;
+        private long start;
+        private long end;
+        private final ArrayEntry[] arrays = new ArrayEntry[4];     //Features, labels, features mask, labels mask
+        private long metaOffset;
+        private int metaLength;
+    }
+
+    private static class ArrayEntry {
+        private final DataType dataType;
+        private final long[] shape;
+        private final long offset;
+
+        private ArrayEntry(DataType dataType, long[] shape, long offset) {
+            this.dataType = dataType;
+            this.shape = shape;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.shard;
+
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A DataSetIterator over the minibatches in one or more shard files, as written by {@link DataSetShardWriter}.<br>
+ * Minibatches are memory mapped (see {@link DataSetShard}) rather than deserialized, hence loading is limited only by
+ * disk/page cache speed.<br>
+ * Optionally, the order of the minibatches (across all shards) can be shuffled on each reset, by providing a
+ * {@link Random} instance.
+ */
+public class DataSetShardIterator implements DataSetIterator, Closeable {
+
+    private final List<DataSetShard> shards = new ArrayList<>();
+    private final Random rng;
+    private final int[] shardIdx;
+    private final int[] batchIdx;
+    private int[] order;
+    private int cursor;
+    private DataSetPreProcessor preProcessor;
+
+    /**
+     * Create an iterator over all shard files (files matching {@link DataSetShardWriter#DEFAULT_PATTERN}) in the
+     * specified directory, with no shuffling
+     *
+     * @param dir Directory containing the shard files
+     */
+    public DataSetShardIterator(@NonNull File dir) throws IOException {
+        this(listShards(dir), null);
+    }
+
+    /**
+     * @param shardFiles Shard files to iterate over
+     * @param rng        If non-null: used to shuffle the order of the minibatches on each reset. If null: the
+     *                   minibatches are returned in order
+     */
+    public DataSetShardIterator(@NonNull Collection<File> shardFiles, Random rng) throws IOException {
+        this.rng = rng;
+        try {
+            for (File f : shardFiles) {
+                shards.add(new DataSetShard(f));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        int total = 0;
+        for (DataSetShard s : shards) {
+            total += s.numBatches();
+        }
+        shardIdx = new int[total];
+        batchIdx = new int[total];
+        int k = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            for (int j = 0; j < shards.get(i).numBatches(); j++) {
+                shardIdx[k] = i;
+                batchIdx[k++] = j;
+            }
+        }
+        reset();
+    }
+
+    private static List<File> listShards(File dir) {
+        Preconditions.checkArgument(dir.isDirectory(), "Not a directory: %s", dir);
+        List<File> out = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            File f = new File(dir, String.format(DataSetShardWriter.DEFAULT_PATTERN, i));
+            if (!f.exists())
+                break;
+            out.add(f);
+        }
+        Preconditions.checkState(!out.isEmpty(), "No shard files found in directory: %s", dir);
+        return out;
+    }
+
+    /**
+     * @return Total number of minibatches, across all shards
+     */
+    public int numBatches() {
+        return shardIdx.length;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public int inputColumns() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+        if (rng == null) {
+            return;
+        }
+        if (order == null) {
+            order = new int[shardIdx.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+
+    @Override
+    public int batch() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < shardIdx.length;
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        int idx = order == null ? cursor : order[cursor];
+        DataSetShard shard = shards.get(shardIdx[idx]);
+        DataSet ds;
+        try {
+            ds = shard.get(batchIdx[idx]);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading minibatch " + batchIdx[idx] + " from shard " + shard.getFile(), e);
+        }
+        cursor++;
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataSetShard s : shards) {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.shard;
+
+import lombok.NonNull;
+import org.bytedeco.javacpp.BytePointer;
+import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes minibatches ({@link DataSet} objects) to a single binary shard file, for loading via {@link DataSetShard}
+ * and {@link DataSetShardIterator}.<br>
+ * Unlike {@link DataSet#save(File)}, the array contents are written as raw (c order, little endian) data aligned to
+ * {@link DataSetShard#ALIGNMENT} bytes, with the shapes and offsets of all arrays stored in an index at the end of the
+ * file. This allows the arrays to be memory mapped when loading, without deserialization or copying.<br>
+ * The shard is only valid once {@link #close()} has been called.
+ * <br>
+ * Usage - for example, to convert minibatches previously saved with {@link DataSet#save(File)}:
+ * <pre>
+ * {@code
+ * List<File> shards = DataSetShardWriter.writeShards(new ExistingMiniBatchDataSetIterator(dir), shardDir, 1000);
+ * DataSetIterator iter = new DataSetShardIterator(shards, new Random(12345));
+ * }
+ * </pre>
+ */
+public class DataSetShardWriter implements Closeable {
+    public static final String DEFAULT_PATTERN = "shard-%d.bin";
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(DataSetShard.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private int numBatches;
+    private boolean closed;
+
+    /**
+     * @param file File to write the shard to. Will be overwritten if it exists
+     */
+    public DataSetShardWriter(@NonNull File file) throws IOException {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new UnsupportedOperationException("DataSet shards are only supported on little endian platforms");
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        //Header is written last, once the location of the index is known
+        channel.write(ByteBuffer.allocate(DataSetShard.HEADER_SIZE));
+    }
+
+    /**
+     * Append the specified minibatch to the shard
+     *
+     * @param ds Minibatch to write
+     */
+    public void write(@NonNull DataSet ds) throws IOException {
+        Preconditions.checkState(!closed, "Shard writer has already been closed");
+        INDArray features = ds.getFeatures();
+        INDArray labels = ds.getLabels();
+        INDArray featuresMask = ds.getFeaturesMaskArray();
+        INDArray labelsMask = ds.getLabelsMaskArray();
+        List<Serializable> meta = ds.getExampleMetaData();
+
+        int flags = 0;
+        if (features != null)
+            flags |= DataSetShard.FEATURES_PRESENT;
+        if (labels != null)
+            flags |= (labels == features ? DataSetShard.LABELS_SAME_AS_FEATURES : DataSetShard.LABELS_PRESENT);
+        if (featuresMask != null)
+            flags |= DataSetShard.FEATURES_MASK_PRESENT;
+        if (labelsMask != null)
+            flags |= DataSetShard.LABELS_MASK_PRESENT;
+        if (meta != null && !meta.isEmpty())
+            flags |= DataSetShard.METADATA_PRESENT;
+
+        List<INDArray> arrays = new ArrayList<>();
+        arrays.add(features);
+        arrays.add(labels == features ? null : labels);
+        arrays.add(featuresMask);
+        arrays.add(labelsMask);
+
+        Nd4j.getExecutioner().commit();
+        long batchStart = align(channel.position());
+        ByteBuffer entry = ByteBuffer.allocate(indexEntrySize(arrays)).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(flags);
+        entry.putLong(batchStart);
+        int batchEndPos = entry.position();
+        entry.putLong(0);       //Batch end: set once all arrays have been written
+        for (INDArray arr : arrays) {
+            if (arr != null) {
+                long offset = writeArray(arr);
+                entry.putInt(FlatBuffersMapper.getDataTypeAsByte(arr.dataType()));
+                entry.putInt(arr.rank());
+                for (long l : arr.shape()) {
+                    entry.putLong(l);
+                }
+                entry.putLong(offset);
+            }
+        }
+
+        if ((flags & DataSetShard.METADATA_PRESENT) != 0) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(new ArrayList<>(meta));
+            }
+            byte[] bytes = baos.toByteArray();
+            long offset = channel.position();
+            writeFully(ByteBuffer.wrap(bytes));
+            entry.putLong(offset);
+            entry.putInt(bytes.length);
+        }
+
+        long batchEnd = Math.max(batchStart, channel.position());
+        Preconditions.checkState(batchEnd - batchStart <= Integer.MAX_VALUE, "Minibatches larger than 2GB are not " +
+                "supported: minibatch %s is %s bytes", numBatches, batchEnd - batchStart);
+        entry.putLong(batchEndPos, batchEnd);
+        index.write(entry.array(), 0, entry.position());
+        numBatches++;
+    }
+
+    private long writeArray(INDArray arr) throws IOException {
+        Preconditions.checkArgument(arr.dataType() != DataType.UTF8 && arr.dataType() != DataType.COMPRESSED,
+                "Unable to write arrays of type %s to a shard", arr.dataType());
+        if (arr.isView() || arr.ordering() != 'c' || arr.data().length() != arr.length()) {
+            arr = arr.dup('c');
+        }
+        Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+
+        long offset = align(channel.position());
+        channel.position(offset);
+        long numBytes = arr.length() * arr.dataType().width();
+        if (numBytes > 0) {
+            writeFully(new BytePointer(arr.data().pointer()).capacity(numBytes).asByteBuffer());
+        }
+        return offset;
+    }
+
+    private static int indexEntrySize(List<INDArray> arrays) {
+        int size = 4 + 8 + 8 + 8 + 4;   //Flags, batch start and end, metadata offset and length
+        for (INDArray arr : arrays) {
+            if (arr != null)
+                size += 4 + 4 + 8 * arr.rank() + 8;
+        }
+        return size;
+    }
+
+    private void writeFully(ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) {
+            channel.write(bb);
+        }
+    }
+
+    private static long align(long position) {
+        return (position + DataSetShard.ALIGNMENT - 1) / DataSetShard.ALIGNMENT * DataSetShard.ALIGNMENT;
+    }
+
+    /**
+     * @return Number of minibatches written so far
+     */
+    public int numBatches() {
+        return numBatches;
+    }
+
+    /**
+     * Write the index and header, and close the shard file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            long indexOffset = align(channel.position());
+            channel.position(indexOffset);
+            byte[] indexBytes = index.toByteArray();
+            writeFully(ByteBuffer.wrap(indexBytes));
+
+            header.put(DataSetShard.MAGIC);
+            header.putInt(DataSetShard.VERSION);
+            header.putInt(numBatches);
+            header.putLong(indexOffset);
+            header.putLong(indexBytes.length);
+            header.position(0);
+            channel.position(0);
+            writeFully(header);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Write all minibatches from the iterator to shard files in the specified directory, with (at most) the specified
+     * number of minibatches per shard. Files are named according to {@link #DEFAULT_PATTERN}
+     *
+     * @param iter            Iterator to write the minibatches of. For example, a DataSetIterator, or an
+     *                        ExistingMiniBatchDataSetIterator to convert previously saved minibatches
+     * @param dir             Directory to write the shards to
+     * @param batchesPerShard Maximum number of minibatches per shard
+     * @return The shard files that were written
+     */
+    public static List<File> writeShards(@NonNull Iterator<? extends DataSet> iter, @NonNull File dir,
+                                         int batchesPerShard) throws IOException {
+        Preconditions.checkArgument(batchesPerShard > 0, "Number of batches per shard must be positive, got %s", batchesPerShard);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory: " + dir.getAbsolutePath());
+        }
+        List<File> out = new ArrayList<>();
+        DataSetShardWriter w = null;
+        try {
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                if (w == null || w.numBatches() >= batchesPerShard) {
+                    if (w != null)
+                        w.close();
+                    File f = new File(dir, String.format(DEFAULT_PATTERN, out.size()));
+                    w = new DataSetShardWriter(f);
+                    out.add(f);
+                }
+                w.write(ds);
+            }
+        } finally {
+            if (w != null)
+                w.close();
+        }
+        return out;
+    }
+}
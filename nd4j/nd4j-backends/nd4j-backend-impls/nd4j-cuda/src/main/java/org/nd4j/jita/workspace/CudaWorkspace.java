@@ -203,9 +203,11 @@ public class CudaWorkspace extends Nd4jWorkspace {
                     return alloc(requiredMemory, kind, type, initialize);
                 }
 
-                if (!trimmer)
+                if (!trimmer) {
                     spilledAllocationsSize.addAndGet(requiredMemory);
-                else
+                    spilledAllocationsTotal.addAndGet(requiredMemory);
+                    spilledAllocationsCount.incrementAndGet();
+                } else
                     pinnedAllocationsSize.addAndGet(requiredMemory);
 
                 if (isDebug.get()) {
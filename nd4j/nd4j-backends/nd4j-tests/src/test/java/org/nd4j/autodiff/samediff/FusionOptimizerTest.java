@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.Test;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.transform.FusionOptimizer;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Swish;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FusionOptimizerTest extends BaseNd4jTest {
+
+    public FusionOptimizerTest(Nd4jBackend b) {
+        super(b);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testDenseFusion() {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w0 = sd.var("w0", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b0 = sd.var("b0", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable w1 = sd.constant("w1", Nd4j.rand(DataType.FLOAT, 5, 3));
+        SDVariable b1 = sd.constant("b1", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable l0 = sd.nn().relu("l0", sd.nn().biasAdd(in.mmul(w0), b0, true), 0.0);
+        SDVariable out = sd.nn().biasAdd("out", l0.mmul(w1), b1, true);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray exp = out.eval(Collections.singletonMap("in", inArr));
+
+        SameDiff fused = FusionOptimizer.optimize(sd);
+        assertEquals(2, fused.ops().length);
+        assertTrue(fused.getVariableOutputOp("l0") instanceof ReluLayer);
+        assertTrue(fused.getVariableOutputOp("out") instanceof XwPlusB);
+        assertEquals(exp, fused.getVariable("out").eval(Collections.singletonMap("in", inArr)));
+
+        //Original should be unmodified
+        assertEquals(5, sd.ops().length);
+    }
+
+    @Test
+    public void testNoFusionOfUsedIntermediate() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable mmul = in.mmul("mmul", w);
+        SDVariable out = sd.nn().biasAdd("out", mmul, b, true);
+        SDVariable other = mmul.mul("other", 2.0);
+
+        SameDiff fused = FusionOptimizer.optimize(sd);
+        assertEquals(3, fused.ops().length);
+
+        //Requested output: should not be fused away
+        sd.setOutputs("mmul");
+        assertEquals(0, FusionOptimizer.optimizeInPlace(sd, null));
+    }
+
+    @Test
+    public void testConv2dBatchNormFusion() {
+        Nd4j.getRandom().setSeed(12345);
+        for (boolean nhwc : new boolean[]{false, true}) {
+            SameDiff sd = SameDiff.create();
+            long[] inShape = nhwc ? new long[]{-1, 8, 8, 3} : new long[]{-1, 3, 8, 8};
+            SDVariable in = sd.placeHolder("in", DataType.FLOAT, inShape);
+            SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 3, 3, 3, 4));
+            SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 4));
+            Conv2DConfig c = Conv2DConfig.builder().kH(3).kW(3).isSameMode(true).dataFormat(nhwc ? Conv2DConfig.NHWC : Conv2DConfig.NCHW).build();
+            SDVariable conv = sd.cnn().conv2d(in, w, b, c);
+            SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.FLOAT, 4));
+            SDVariable var = sd.constant("var", Nd4j.rand(DataType.FLOAT, 4).addi(0.5));
+            SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.FLOAT, 4));
+            SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.FLOAT, 4));
+            SDVariable bn = sd.nn().batchNorm(conv, mean, var, gamma, beta, 1e-3, nhwc ? 3 : 1);
+            SDVariable out = sd.nn().relu("out", bn, 0.0);
+
+            INDArray inArr = nhwc ? Nd4j.rand(DataType.FLOAT, 2, 8, 8, 3) : Nd4j.rand(DataType.FLOAT, 2, 3, 8, 8);
+            INDArray exp = out.eval(Collections.singletonMap("in", inArr));
+
+            SameDiff fused = FusionOptimizer.optimize(sd);
+            assertEquals(2, fused.ops().length);
+            INDArray actual = fused.getVariable("out").eval(Collections.singletonMap("in", inArr));
+            assertTrue(exp.equalsWithEps(actual, 1e-4));
+            //Original weights and batch norm parameters are no longer used, so are removed
+            for (String name : new String[]{"w", "b", "mean", "var", "gamma", "beta"}) {
+                assertNull(name, fused.getVariables().get(name));
+            }
+
+            //Preserved constants are not removed
+            fused = sd.dup();
+            FusionOptimizer.optimizeInPlace(fused, Collections.singletonList("w"));
+            assertEquals(2, fused.ops().length);
+            assertNotNull(fused.getVariables().get("w"));
+            assertNull(fused.getVariables().get("mean"));
+        }
+    }
+
+    @Test
+    public void testElementwiseFusion() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable x = in.mul(2.0).mul(3.0).mul(0.5).add(1.0).add(2.0);
+        SDVariable out = x.mul("out", sd.nn().sigmoid(x));
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray exp = out.eval(Collections.singletonMap("in", inArr));
+
+        SameDiff fused = FusionOptimizer.optimize(sd);
+        assertEquals(3, fused.ops().length);
+        assertTrue(fused.getVariableOutputOp("out") instanceof Swish);
+        INDArray actual = fused.getVariable("out").eval(Collections.singletonMap("in", inArr));
+        assertTrue(exp.equalsWithEps(actual, 1e-5));
+    }
+
+    @Test
+    public void testNoScalarFusionForIntegerTypes() {
+        //Scalar op chains are only fused for floating point inputs
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.INT, -1, 4);
+        in.mul(0.5).mul("out", 2.0);
+
+        SameDiff fused = FusionOptimizer.optimize(sd);
+        assertEquals(2, fused.ops().length);
+        INDArray inArr = Nd4j.createFromArray(new int[][]{{1, 2, 3, 4}});
+        assertEquals(sd.getVariable("out").eval(Collections.singletonMap("in", inArr)),
+                fused.getVariable("out").eval(Collections.singletonMap("in", inArr)));
+    }
+
+    @Test
+    public void testSetOpFusion() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable mmul = in.mmul("mmul", w);
+        sd.nn().biasAdd("out", mmul, b, true);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String, INDArray> ph = Collections.singletonMap("in", inArr);
+        INDArray exp = sd.output(ph, "out").get("out");
+
+        sd.setOpFusion(true);
+        assertEquals(exp, sd.output(ph, "out").get("out"));
+        assertEquals(1, sd.ops().length);
+        DifferentialFunction df = sd.getVariableOutputOp("out");
+        assertTrue(df instanceof XwPlusB);
+        assertNull(sd.getVariables().get("mmul"));
+
+        //Persisted graph should contain the fused op
+        SameDiff restored = SameDiff.fromFlatBuffers(sd.asFlatBuffers(true));
+        assertEquals(exp, restored.output(ph, "out").get("out"));
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.Test;
+import org.nd4j.autodiff.samediff.transform.GraphOptimizer;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GraphOptimizerTest extends BaseNd4jTest {
+
+    public GraphOptimizerTest(Nd4jBackend b) {
+        super(b);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testConstantFolding() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable c1 = sd.constant("c1", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable c2 = sd.constant("c2", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable w = c1.add(c2).mul(2.0);             //Constant-only subgraph
+        SDVariable out = in.mmul("out", w);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String, INDArray> ph = Collections.singletonMap("in", inArr);
+        INDArray exp = sd.output(ph, "out").get("out");
+
+        int folded = GraphOptimizer.foldConstants(sd);
+        assertEquals(2, folded);
+        assertEquals(1, sd.getOps().size());
+        assertEquals(VariableType.CONSTANT, sd.getVariable(w.name()).getVariableType());
+        assertEquals(exp, sd.output(ph, "out").get("out"));
+
+        //c1 and c2 are no longer used
+        GraphOptimizer.removeUnusedOps(sd, Collections.singletonList("out"));
+        assertFalse(sd.hasVariable("c1"));
+        assertFalse(sd.hasVariable("c2"));
+        assertEquals(exp, sd.output(ph, "out").get("out"));
+    }
+
+    @Test
+    public void testRemoveUnusedOps() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable label = sd.placeHolder("label", DataType.FLOAT, -1, 3);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable out = sd.nn().tanh("out", in.mmul(w));
+        SDVariable unused = sd.constant("unusedConst", Nd4j.rand(DataType.FLOAT, 3));
+        sd.math().squaredDifference("sqDiff", out, label).add(unused).mean("unused");
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String, INDArray> ph = Collections.singletonMap("in", inArr);
+        INDArray exp = sd.output(ph, "out").get("out");
+
+        int removed = GraphOptimizer.removeUnusedOps(sd, Collections.singletonList("out"));
+        assertEquals(3, removed);
+        assertEquals(2, sd.getOps().size());
+        assertFalse(sd.hasVariable("sqDiff"));
+        assertFalse(sd.hasVariable("unused"));
+        assertFalse(sd.hasVariable("unusedConst"));
+        //Placeholders and variables are kept
+        assertTrue(sd.hasVariable("label"));
+        assertTrue(sd.hasVariable("w"));
+        assertEquals(exp, sd.output(ph, "out").get("out"));
+    }
+
+    @Test
+    public void testDeduplicateConstants() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 3);
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 3);
+        SDVariable c1 = sd.constant("c1", arr);
+        SDVariable c2 = sd.constant("c2", arr.dup());
+        SDVariable c3 = sd.constant("c3", arr.add(1.0));
+        SDVariable c4 = sd.constant("c4", arr.castTo(DataType.DOUBLE));
+        SDVariable out = in.add(c1).mul(c2).sub("out", c3);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 2, 3);
+        Map<String, INDArray> ph = Collections.singletonMap("in", inArr);
+        INDArray exp = sd.output(ph, "out").get("out");
+
+        assertEquals(1, GraphOptimizer.deduplicateConstants(sd, null));
+        assertTrue(sd.hasVariable("c1"));
+        assertFalse(sd.hasVariable("c2"));
+        assertTrue(sd.hasVariable("c3"));
+        assertTrue(sd.hasVariable("c4"));
+        assertEquals(2, sd.getVariables().get("c1").getInputsForOp().size());
+        assertEquals(exp, sd.output(ph, "out").get("out"));
+    }
+
+    @Test
+    public void testOptimizeAndSave() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 3, 4));
+        SDVariable b1 = sd.constant("b1", Nd4j.ones(DataType.FLOAT, 3));
+        SDVariable b2 = sd.constant("b2", Nd4j.ones(DataType.FLOAT, 3));
+        SDVariable wt = w.permute(1, 0);
+        SDVariable out = in.mmul(wt).add(b1).add(b2).add(sd.math().exp(b1));
+        out.rename("out");
+        in.mmul(wt).mul("unused", 3.0);
+        sd.setOutputs("out");
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String, INDArray> ph = Collections.singletonMap("in", inArr);
+        INDArray exp = sd.output(ph, "out").get("out");
+        int opsBefore = sd.getOps().size();
+
+        SameDiff optimized = GraphOptimizer.optimize(sd);
+        assertEquals(opsBefore, sd.getOps().size());       //Original is not modified
+        //permute and exp are folded, b1/b2 are merged; unused branch is removed
+        assertEquals(4, optimized.getOps().size());
+        assertFalse(optimized.hasVariable("unused"));
+        assertEquals(exp, optimized.output(ph, "out").get("out"));
+
+        SameDiff restored = SameDiff.fromFlatBuffers(optimized.asFlatBuffers(true));
+        assertEquals(4, restored.getOps().size());
+        assertEquals(exp, restored.output(ph, "out").get("out"));
+    }
+}
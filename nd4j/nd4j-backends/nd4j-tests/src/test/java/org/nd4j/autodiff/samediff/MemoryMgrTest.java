@@ -1,7 +1,10 @@
 package org.nd4j.autodiff.samediff;
 
+import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.ConcurrentArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticPlanMemoryMgr;
 import org.nd4j.linalg.BaseNd4jTest;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -9,9 +12,15 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
+@Slf4j
 public class MemoryMgrTest extends BaseNd4jTest {
 
     public MemoryMgrTest(Nd4jBackend b){
@@ -116,4 +125,226 @@ public class MemoryMgrTest extends BaseNd4jTest {
         assertEquals(2000, mmgr.getLruCacheValues().size());
     }
 
+    @Test
+    public void testConcurrentCacheSizeClasses() {
+        ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(0.25, 0);
+
+        INDArray arr = Nd4j.create(DataType.FLOAT, 25);
+        mmgr.release(arr);
+        assertEquals(100, mmgr.getCurrentCacheBytes());
+
+        //25 elements is in size class [16, 32) -> requests of up to 16 elements can be served from it
+        INDArray a1 = mmgr.allocate(false, DataType.FLOAT, 4, 8);
+        assertEquals(0, mmgr.getHits());
+        assertEquals(1, mmgr.getMisses());
+
+        //Different datatype should not be served from the cache
+        INDArray a2 = mmgr.allocate(false, DataType.DOUBLE, 16);
+        assertEquals(0, mmgr.getHits());
+        assertEquals(2, mmgr.getMisses());
+
+        INDArray a3 = mmgr.allocate(false, DataType.FLOAT, 4, 4);
+        assertEquals(1, mmgr.getHits());
+        assertArrayEquals(new long[]{4, 4}, a3.shape());
+        assertEquals(0, mmgr.getCurrentCacheBytes());
+    }
+
+    @Test
+    public void testConcurrentCacheEviction() throws Exception {
+        ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(0.25, 0);
+        Field f = ConcurrentArrayCacheMemoryMgr.class.getDeclaredField("maxCacheBytes");
+        f.setAccessible(true);
+        f.set(mmgr, 1000);
+        assertEquals(1000, mmgr.getMaxCacheBytes());
+
+        INDArray[] arrays = new INDArray[10];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = Nd4j.create(DataType.FLOAT, 25);       //100 bytes each
+            mmgr.release(arrays[i]);
+        }
+        assertEquals(1000, mmgr.getCurrentCacheBytes());
+        assertEquals(0, mmgr.getEvictions());
+
+        //Cache is full: releasing another array should evict one
+        mmgr.release(Nd4j.create(DataType.FLOAT, 25));
+        assertEquals(1000, mmgr.getCurrentCacheBytes());
+        assertEquals(1, mmgr.getEvictions());
+
+        //Too large to ever cache
+        INDArray large = Nd4j.create(DataType.FLOAT, 1000);
+        mmgr.release(large);
+        assertTrue(large.wasClosed());
+        assertEquals(1000, mmgr.getCurrentCacheBytes());
+
+        for (int i = 1; i <= 10; i++) {
+            mmgr.allocate(false, DataType.FLOAT, 16);
+            assertEquals(1000 - 100 * i, mmgr.getCurrentCacheBytes());
+        }
+        assertEquals(10, mmgr.getHits());
+
+        mmgr.close();
+        assertEquals(0, mmgr.getCurrentCacheBytes());
+    }
+
+    @Test
+    public void testConcurrentCacheReclaimDeadThreads() throws Exception {
+        final ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(0.25, 4);
+        Field f = ConcurrentArrayCacheMemoryMgr.class.getDeclaredField("maxCacheBytes");
+        f.setAccessible(true);
+        f.set(mmgr, 1000);
+
+        //Arrays released by a short-lived thread end up in that thread's magazine
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 4; i++) {
+                    mmgr.release(Nd4j.create(DataType.FLOAT, 25));       //100 bytes each
+                }
+            }
+        });
+        t.start();
+        t.join();
+        assertEquals(400, mmgr.getCurrentCacheBytes());
+
+        //Fill the cache from this thread, then release one more: the terminated thread's magazine should be reclaimed
+        for (int i = 0; i < 7; i++) {
+            mmgr.release(Nd4j.create(DataType.FLOAT, 25));
+        }
+        assertEquals(1000, mmgr.getCurrentCacheBytes());
+        assertEquals(1, mmgr.getEvictions());
+
+        //Detached allocations should not be served from the cache
+        mmgr.allocate(true, DataType.FLOAT, 16);
+        assertEquals(0, mmgr.getHits());
+        assertEquals(1000, mmgr.getCurrentCacheBytes());
+
+        //All remaining cached arrays (including those from the terminated thread) should be reusable by this thread
+        for (int i = 0; i < 10; i++) {
+            mmgr.allocate(false, DataType.FLOAT, 16);
+        }
+        assertEquals(10, mmgr.getHits());
+        assertEquals(0, mmgr.getCurrentCacheBytes());
+    }
+
+    @Test
+    public void testConcurrentCacheMultiThreaded() throws Exception {
+        final ConcurrentArrayCacheMemoryMgr mmgr = new ConcurrentArrayCacheMemoryMgr(0.25, 2);
+        int nThreads = 8;
+        final int nIter = 1000;
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random r = new Random(seed);
+                        for (int i = 0; i < nIter; i++) {
+                            int length = 1 + r.nextInt(100);
+                            INDArray arr = mmgr.allocate(false, DataType.FLOAT, length);
+                            arr.assign(seed);
+                            if (arr.length() != length || arr.minNumber().intValue() != seed || arr.maxNumber().intValue() != seed) {
+                                failed.set(true);
+                            }
+                            mmgr.release(arr);
+                        }
+                    } catch (Throwable t) {
+                        log.error("Error in thread", t);
+                        failed.set(true);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(nThreads * nIter, mmgr.getHits() + mmgr.getMisses());
+        assertTrue(mmgr.getHits() > 0);
+    }
+
+
+    @Test
+    public void testStaticPlanMemoryMgr() {
+        StaticPlanMemoryMgr mmgr = new StaticPlanMemoryMgr(4);
+        INDArray first = null;
+        for (int iter = 0; iter < 3; iter++) {
+            mmgr.beginExecution();
+            //a and b are live at the same time; c can reuse a's memory; d is never released
+            INDArray a = mmgr.allocate(false, DataType.FLOAT, 10);
+            INDArray b = mmgr.allocate(false, DataType.FLOAT, 2, 3);
+            a.assign(1.0);
+            b.assign(2.0);
+            mmgr.release(a);
+            INDArray c = mmgr.allocate(false, DataType.FLOAT, 8);
+            c.assign(3.0);
+            assertEquals(Nd4j.valueArrayOf(new long[]{2, 3}, 2.0f), b);
+            if (iter > 0) {
+                //c should reuse the memory of a, as their lifetimes don't overlap
+                assertEquals(3.0f, a.getFloat(0), 0.0f);
+            }
+            mmgr.release(b);
+            mmgr.release(c);
+            INDArray d = mmgr.allocate(false, DataType.FLOAT, 4);
+            INDArray out = mmgr.allocate(true, DataType.FLOAT, 4);
+            mmgr.endExecution();
+
+            if (iter == 0) {
+                first = out;
+                assertEquals(1, mmgr.getNumPlans());
+                //Arena: a and b are live at the same time (10 + 6 elements); c fits at offset 0 after a is released
+                assertEquals((10 + 6) * 4, mmgr.getArenaBytes());
+            } else {
+                assertFalse(d.isView());                //Not released during execution: not placed in arena
+                assertNotSame(first, out);              //Detached arrays: not placed in arena
+            }
+        }
+        assertEquals(1, mmgr.getNumPlans());
+        assertEquals(2, mmgr.getNumPlannedExecutions());
+
+        //Different shapes: plan should be rebuilt
+        mmgr.beginExecution();
+        INDArray a = mmgr.allocate(false, DataType.FLOAT, 20);
+        mmgr.release(a);
+        mmgr.endExecution();
+        assertEquals(2, mmgr.getNumPlans());
+        assertEquals(20 * 4, mmgr.getArenaBytes());
+        mmgr.close();
+    }
+
+    @Test
+    public void testStaticMemoryPlanningSameDiff() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable h = sd.math.tanh(in.mmul(w));
+        SDVariable h2 = sd.math.exp(h).add(sd.math.sin(h));
+        sd.nn.softmax("out", h2.mul(2.0));
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", input), "out");
+
+        sd.setStaticMemoryPlanning(true);
+        List<INDArray> outs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            outs.add(sd.outputSingle(Collections.singletonMap("in", input), "out"));
+        }
+        for (INDArray out : outs) {
+            //Outputs must not be overwritten by later executions
+            assertEquals(exp, out);
+        }
+        StaticPlanMemoryMgr mmgr = (StaticPlanMemoryMgr) sd.getSessions().get(Thread.currentThread().getId()).getMmgr();
+        assertEquals(1, mmgr.getNumPlans());
+        assertEquals(3, mmgr.getNumPlannedExecutions());
+
+        //Different batch size: replan
+        INDArray input2 = Nd4j.rand(DataType.FLOAT, 5, 4);
+        INDArray out2 = sd.outputSingle(Collections.singletonMap("in", input2), "out");
+        assertEquals(2, mmgr.getNumPlans());
+        sd.setStaticMemoryPlanning(false);
+        assertEquals(sd.outputSingle(Collections.singletonMap("in", input2), "out"), out2);
+    }
 }
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.Test;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SameDiffParallelExecutionTest extends BaseNd4jTest {
+
+    public SameDiffParallelExecutionTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    private static SameDiff branchedGraph(int numBranches) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable[] branches = new SDVariable[numBranches];
+        for (int i = 0; i < numBranches; i++) {
+            SDVariable w0 = sd.var("w0_" + i, Nd4j.rand(DataType.FLOAT, 8, 16));
+            SDVariable w1 = sd.var("w1_" + i, Nd4j.rand(DataType.FLOAT, 16, 4));
+            SDVariable h = sd.math.tanh(in.mmul(w0));
+            branches[i] = sd.nn.sigmoid(h.mmul(w1));
+        }
+        SDVariable merged = sd.concat("merged", 1, branches);
+        sd.sum("out", merged, 1);
+        return sd;
+    }
+
+    @Test
+    public void testParallelBranches() {
+        SameDiff sd = branchedGraph(8);
+        INDArray in = Nd4j.rand(DataType.FLOAT, 5, 8);
+        Map<String, INDArray> exp = sd.output(Collections.singletonMap("in", in), "merged", "out");
+
+        sd.enableParallelOpExecution(4);
+        assertNotNull(sd.getOpExecutor());
+        try {
+            for (int i = 0; i < 5; i++) {
+                Map<String, INDArray> out = sd.output(Collections.singletonMap("in", in), "merged", "out");
+                assertEquals(exp, out);
+            }
+
+            //Different batch size
+            INDArray in2 = Nd4j.rand(DataType.FLOAT, 3, 8);
+            INDArray out2 = sd.output(Collections.singletonMap("in", in2), "out").get("out");
+            sd.disableParallelOpExecution();
+            assertNull(sd.getOpExecutor());
+            assertEquals(sd.output(Collections.singletonMap("in", in2), "out").get("out"), out2);
+        } finally {
+            sd.disableParallelOpExecution();
+        }
+    }
+
+    @Test
+    public void testParallelControlFlow() {
+        SameDiff sd = SameDiff.create();
+        SDVariable countIn = sd.constant(5);
+        SDVariable sumIn = sd.constant(0);
+        SDVariable[] sum = sd.whileLoop("while_1", new SDVariable[]{countIn, sumIn},
+                (s, vars) -> vars[0].gt(0),
+                (s, vars) -> new SDVariable[]{vars[0].sub(1), vars[1].add(vars[0])});
+        String outName = sum[1].name();
+
+        sd.enableParallelOpExecution(4);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(15, sd.output(Collections.emptyMap(), outName).get(outName).getInt(0));
+            }
+        } finally {
+            sd.disableParallelOpExecution();
+        }
+    }
+
+    @Test
+    public void testParallelMultipleCallers() throws Exception {
+        final SameDiff sd = branchedGraph(4);
+        final INDArray in = Nd4j.rand(DataType.FLOAT, 4, 8);
+        final INDArray exp = sd.outputSingle(Collections.singletonMap("in", in), "out");
+
+        ExecutorService opExec = Executors.newFixedThreadPool(4);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        sd.enableParallelOpExecution(opExec);
+        try {
+            List<Future<INDArray>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(callers.submit(() -> sd.outputSingle(Collections.singletonMap("in", in), "out")));
+            }
+            for (Future<INDArray> f : futures) {
+                assertEquals(exp, f.get());
+            }
+
+            //User-provided executor should not be shut down
+            sd.disableParallelOpExecution();
+            assertFalse(opExec.isShutdown());
+        } finally {
+            sd.disableParallelOpExecution();
+            callers.shutdown();
+            opExec.shutdown();
+        }
+    }
+}
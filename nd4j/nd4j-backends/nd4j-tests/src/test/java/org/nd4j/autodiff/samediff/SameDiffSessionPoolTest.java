@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.Test;
+import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.InferenceSessionPool;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SameDiffSessionPoolTest extends BaseNd4jTest {
+
+    public SameDiffSessionPoolTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    private static SameDiff simpleGraph() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        sd.nn.softmax("out", in.mmul(w).add(b));
+        return sd;
+    }
+
+    @Test
+    public void testCreateSession() {
+        SameDiff sd = simpleGraph();
+        INDArray in = Nd4j.rand(DataType.FLOAT, 5, 4);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", in), "out");
+
+        INDArray out;
+        try (SameDiffSession s = sd.createSession()) {
+            out = s.outputSingle(Collections.singletonMap("in", in), "out");
+            assertEquals(1, sd.getSessionPool().numBorrowed());
+        }
+        assertEquals(exp, out);
+        assertEquals(0, sd.getSessionPool().numBorrowed());
+        assertEquals(1, sd.getSessionPool().numIdle());
+    }
+
+    @Test
+    public void testPooledOutputManyThreads() throws Exception {
+        SameDiff sd = simpleGraph();
+        INDArray in = Nd4j.rand(DataType.FLOAT, 5, 4);
+        final INDArray exp = sd.outputSingle(Collections.singletonMap("in", in), "out");
+
+        int maxSessions = 2;
+        sd.enableSessionPool(maxSessions, 0);
+
+        //Short-lived threads: one per task. Without pooling, this would create one session per thread
+        ExecutorService exec = Executors.newCachedThreadPool();
+        List<Future<INDArray>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(exec.submit(() -> sd.outputSingle(Collections.singletonMap("in", in), "out")));
+        }
+        for (Future<INDArray> f : futures) {
+            assertEquals(exp, f.get());
+        }
+        exec.shutdown();
+        assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+
+        InferenceSessionPool pool = sd.getSessionPool();
+        assertEquals(0, pool.numBorrowed());
+        assertTrue(pool.numIdle() <= maxSessions);
+    }
+
+    @Test
+    public void testEvictionAndInvalidation() throws Exception {
+        SameDiff sd = simpleGraph();
+        InferenceSessionPool pool = new InferenceSessionPool(sd, 2, 10);
+
+        InferenceSession s1 = pool.borrow();
+        InferenceSession s2 = pool.borrow();
+        assertNull(pool.borrow(10, TimeUnit.MILLISECONDS));        //Pool exhausted
+        pool.release(s1);
+        assertSame(s1, pool.borrow());                              //Idle session is reused
+        pool.release(s1);
+        pool.release(s2);
+        assertEquals(2, pool.numIdle());
+
+        Thread.sleep(50);
+        pool.evictIdle();
+        assertEquals(0, pool.numIdle());
+
+        //Sessions borrowed before invalidation should not be returned to the pool
+        InferenceSession s3 = pool.borrow();
+        pool.invalidate();
+        pool.release(s3);
+        assertEquals(0, pool.numIdle());
+        assertNotSame(s3, pool.borrow());
+    }
+
+    @Test
+    public void testOutputAsync() throws Exception {
+        SameDiff sd = simpleGraph();
+        INDArray in = Nd4j.rand(DataType.FLOAT, 5, 4);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", in), "out");
+
+        List<CompletableFuture<Map<String, INDArray>>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(sd.outputAsync(Collections.singletonMap("in", in), "out"));
+        }
+        for (CompletableFuture<Map<String, INDArray>> f : futures) {
+            assertEquals(exp, f.get(30, TimeUnit.SECONDS).get("out"));
+        }
+
+        //Errors should be propagated via the future
+        try {
+            sd.outputAsync(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 3)), "out").get(30, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            //OK
+        }
+
+        //Rejected when the executor queue is full
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        exec.shutdown();
+        CompletableFuture<Map<String, INDArray>> rejected = sd.outputAsync(Collections.singletonMap("in", in), exec, "out");
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        sd.disableAsyncOutput();
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2020 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.shard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class DataSetShardTest extends BaseNd4jTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    public DataSetShardTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> expected = new ArrayList<>();
+        //Features and labels only
+        expected.add(new DataSet(Nd4j.rand(DataType.FLOAT, 5, 4), Nd4j.rand(DataType.FLOAT, 5, 3)));
+        //Different data types, masks, and a features view (written as a c order copy)
+        INDArray fView = Nd4j.rand(DataType.DOUBLE, 3, 2, 6).permute(0, 2, 1);
+        INDArray labels = Nd4j.createFromArray(new int[][]{{0, 1}, {1, 0}, {1, 1}});
+        expected.add(new DataSet(fView, labels, Nd4j.ones(DataType.FLOAT, 3, 6), Nd4j.createFromArray(true, false, true)));
+        //Labels same as features, and metadata
+        INDArray f = Nd4j.linspace(DataType.HALF, 1, 12, 1).reshape(3, 4);
+        DataSet same = new DataSet(f, f);
+        List<Serializable> meta = Arrays.<Serializable>asList("a", "b", "c");
+        same.setExampleMetaData(meta);
+        expected.add(same);
+        //Empty arrays
+        expected.add(new DataSet(Nd4j.create(DataType.FLOAT, 0, 4), Nd4j.create(DataType.FLOAT, 0, 3)));
+
+        File file = testDir.newFile();
+        try (DataSetShardWriter w = new DataSetShardWriter(file)) {
+            for (DataSet ds : expected) {
+                w.write(ds);
+            }
+        }
+
+        try (DataSetShard shard = new DataSetShard(file)) {
+            assertEquals(expected.size(), shard.numBatches());
+            for (int i = 0; i < expected.size(); i++) {
+                DataSet exp = expected.get(i);
+                DataSet act = shard.get(i);
+                assertEquals(exp.getFeatures(), act.getFeatures());
+                assertEquals(exp.getLabels(), act.getLabels());
+                assertEquals(exp.getFeaturesMaskArray(), act.getFeaturesMaskArray());
+                assertEquals(exp.getLabelsMaskArray(), act.getLabelsMaskArray());
+                assertEquals('c', act.getFeatures().ordering());
+                assertEquals(exp.numExamples(), shard.numExamples(i));
+            }
+
+            DataSet loaded = shard.get(2);
+            assertSame(loaded.getFeatures(), loaded.getLabels());
+            assertEquals(meta, loaded.getExampleMetaData());
+
+            //In-place modification of a loaded minibatch should not affect the file, or later loads
+            INDArray before = shard.get(0).getFeatures().dup();
+            shard.get(0).getFeatures().muli(10);
+            assertEquals(before, shard.get(0).getFeatures());
+        }
+        try (DataSetShard shard = new DataSetShard(file)) {
+            assertEquals(expected.get(0).getFeatures(), shard.get(0).getFeatures());
+        }
+    }
+
+    @Test
+    public void testUnknownDataTypeCode() throws Exception {
+        File file = testDir.newFile();
+        try (DataSetShardWriter w = new DataSetShardWriter(file)) {
+            w.write(new DataSet(Nd4j.rand(DataType.FLOAT, 5, 4), Nd4j.rand(DataType.FLOAT, 5, 3)));
+        }
+
+        //Overwrite the data type code of the features array: after the index entry's flags, batch start and batch end
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 16);
+            long indexOffset = header.getLong(0);
+            ByteBuffer code = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 99);
+            channel.write(code, indexOffset + 4 + 8 + 8);
+        }
+
+        try {
+            new DataSetShard(file).close();
+            fail("Expected exception");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("unknown data type code 99"));
+        }
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(new DataSet(Nd4j.rand(DataType.FLOAT, 4, 5).addi(i), Nd4j.rand(DataType.FLOAT, 4, 2)));
+        }
+
+        File dir = testDir.newFolder();
+        List<File> shards = DataSetShardWriter.writeShards(expected.iterator(), dir, 3);
+        assertEquals(4, shards.size());
+
+        //In order
+        DataSetShardIterator iter = new DataSetShardIterator(dir);
+        assertEquals(10, iter.numBatches());
+        for (int epoch = 0; epoch < 2; epoch++) {
+            List<DataSet> actual = new ArrayList<>();
+            while (iter.hasNext()) {
+                actual.add(iter.next());
+            }
+            assertEquals(expected, actual);
+            iter.reset();
+        }
+        iter.close();
+
+        //Shuffled: each minibatch should be returned exactly once per epoch, in different orders
+        iter = new DataSetShardIterator(shards, new Random(12345));
+        Set<List<Integer>> orders = new HashSet<>();
+        for (int epoch = 0; epoch < 3; epoch++) {
+            List<Integer> order = new ArrayList<>();
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                int idx = expected.indexOf(ds);
+                assertTrue(idx >= 0);
+                assertFalse(order.contains(idx));
+                order.add(idx);
+            }
+            assertEquals(10, order.size());
+            orders.add(order);
+            iter.reset();
+        }
+        assertTrue(orders.size() > 1);
+        iter.close();
+    }
+}